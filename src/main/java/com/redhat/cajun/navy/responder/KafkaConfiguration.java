@@ -3,7 +3,6 @@ package com.redhat.cajun.navy.responder;
 import java.util.HashMap;
 import java.util.Map;
 
-import com.redhat.cajun.navy.responder.message.Message;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
@@ -21,7 +20,6 @@ import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.listener.ContainerProperties;
-import org.springframework.kafka.support.serializer.JsonSerializer;
 
 @Configuration
 @EnableKafka
@@ -36,22 +34,78 @@ public class KafkaConfiguration {
     @Value(value = "${kafka.concurrency}")
     private Integer concurrency;
 
+    @Value(value = "${kafka.max-poll-records:500}")
+    private Integer maxPollRecords;
+
+    @Value(value = "${kafka.idle-event-interval-ms:1000}")
+    private Long idleEventInterval;
+
+    @Value(value = "${kafka.retry.max-poll-interval-ms:900000}")
+    private Integer retryMaxPollInterval;
+
+    @Value(value = "${kafka.producer.linger-ms:20}")
+    private Integer lingerMs;
+
+    @Value(value = "${kafka.producer.batch-size:65536}")
+    private Integer batchSize;
+
+    @Value(value = "${kafka.state.compression-type:lz4}")
+    private String stateCompressionType;
+
+    @Value(value = "${kafka.state.linger-ms:50}")
+    private Integer stateLingerMs;
+
+    @Value(value = "${kafka.state.batch-size:262144}")
+    private Integer stateBatchSize;
+
+    /**
+     * Messages are serialized before they are written to the outbox, so the producer only deals with strings.
+     */
     @Bean
-    public ProducerFactory<String, Message<?>> producerFactory() {
+    public ProducerFactory<String, String> producerFactory() {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
         return new DefaultKafkaProducerFactory<>(configProps);
     }
 
     @Bean
-    public KafkaTemplate<String, Message<?>> kafkaTemplate() {
+    public KafkaTemplate<String, String> kafkaTemplate() {
         return new KafkaTemplate<>(producerFactory());
     }
 
+    /**
+     * The responder state topic gets the full state of every changed responder, so its producer compresses larger
+     * batches, and is idempotent so that the last state of a responder is not overwritten by an earlier one on a retry.
+     */
+    @Bean
+    public ProducerFactory<String, String> stateProducerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
+        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, stateLingerMs);
+        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, stateBatchSize);
+        configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, stateCompressionType);
+        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, Boolean.TRUE);
+        configProps.put(ProducerConfig.ACKS_CONFIG, "all");
+        return new DefaultKafkaProducerFactory<>(configProps);
+    }
+
+    @Bean
+    public KafkaTemplate<String, String> stateKafkaTemplate() {
+        return new KafkaTemplate<>(stateProducerFactory());
+    }
+
     @Bean
     public ConsumerFactory<String, String> consumerFactory() {
+        return new DefaultKafkaConsumerFactory<>(consumerConfig());
+    }
+
+    private Map<String, Object> consumerConfig() {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
         configProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
@@ -59,7 +113,8 @@ public class KafkaConfiguration {
         configProps.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         configProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         configProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, Boolean.FALSE);
-        return new DefaultKafkaConsumerFactory<>(configProps);
+        configProps.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        return configProps;
     }
 
     @Bean
@@ -71,4 +126,28 @@ public class KafkaConfiguration {
         return factory;
     }
 
+    @Bean
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, String>> batchKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(concurrency);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        // the parallel listener commits the records processed since the last poll on idle events
+        factory.getContainerProperties().setIdleEventInterval(idleEventInterval);
+        return factory;
+    }
+
+    /**
+     * The retry listener waits for each record to be due, so its consumers get one record per poll, and may wait up to
+     * the delay of their retry topic between two polls.
+     */
+    @Bean
+    public ConsumerFactory<String, String> retryConsumerFactory() {
+        Map<String, Object> configProps = consumerConfig();
+        configProps.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 1);
+        configProps.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, retryMaxPollInterval);
+        return new DefaultKafkaConsumerFactory<>(configProps);
+    }
+
 }
@@ -1,27 +1,78 @@
 package com.redhat.cajun.navy.responder;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import javax.servlet.http.HttpServletRequest;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.cajun.navy.responder.model.ImportResult;
 import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.model.ResponderChanges;
+import com.redhat.cajun.navy.responder.model.ResponderLookup;
 import com.redhat.cajun.navy.responder.model.ResponderStats;
+import com.redhat.cajun.navy.responder.model.ResponderUpdateStatus;
+import com.redhat.cajun.navy.responder.service.AvailableRespondersCache;
+import com.redhat.cajun.navy.responder.service.ResponderEventStream;
+import com.redhat.cajun.navy.responder.service.ResponderExporter;
+import com.redhat.cajun.navy.responder.service.ResponderFileFormat;
+import com.redhat.cajun.navy.responder.service.ResponderImporter;
 import com.redhat.cajun.navy.responder.service.ResponderService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/")
 public class RespondersController {
 
+    private static final int DEFAULT_NEAREST_LIMIT = 10;
+
+    private static final int MAX_CHANGES_LIMIT = 10000;
+
+    private static final int MAX_IDS = 1000;
+
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private static final String TEXT_CSV_VALUE = "text/csv";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
     @Autowired
     private ResponderService responderService;
 
+    @Autowired
+    private ResponderImporter responderImporter;
+
+    @Autowired
+    private ResponderExporter responderExporter;
+
+    @Autowired
+    private AvailableRespondersCache availableRespondersCache;
+
+    @Autowired
+    private ResponderEventStream responderEventStream;
+
     @RequestMapping(value = "/stats", method = RequestMethod.GET, produces = MimeTypeUtils.APPLICATION_JSON_VALUE)
     public ResponderStats stats() {
         return responderService.getResponderStats();
@@ -37,6 +88,22 @@ public class RespondersController {
         }
     }
 
+    /**
+     * Looks up several responders at once. The results are in the order of the ids, and tell which ids were not found.
+     */
+    @RequestMapping(value = "/responders/byids", method = RequestMethod.GET, produces = MimeTypeUtils.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<ResponderLookup>> respondersByIds(@RequestParam List<Long> ids) {
+        if (ids.isEmpty() || ids.size() > MAX_IDS) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        List<Responder> responders = responderService.getResponders(ids);
+        List<ResponderLookup> lookups = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            lookups.add(new ResponderLookup(Long.toString(ids.get(i)), responders.get(i)));
+        }
+        return new ResponseEntity<>(lookups, HttpStatus.OK);
+    }
+
     @RequestMapping(value = "/responder/byname/{name}", method = RequestMethod.GET, produces = MimeTypeUtils.APPLICATION_JSON_VALUE)
     public ResponseEntity<Responder> responderByName(@PathVariable String name) {
         Responder responder = responderService.getResponderByName(name);
@@ -47,9 +114,72 @@ public class RespondersController {
         }
     }
 
+    /**
+     * Serves the cached encoding of the available responders, compressed if the client accepts gzip, and answers
+     * 304 when the client already has it.
+     */
     @RequestMapping(value = "/responders/available", method = RequestMethod.GET, produces = MimeTypeUtils.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<Responder>> activeResponders() {
-        return new ResponseEntity<>(responderService.availableResponders(), HttpStatus.OK);
+    public ResponseEntity<byte[]> activeResponders(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                   @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        AvailableRespondersCache.Payload payload = availableRespondersCache.get();
+        boolean gzip = payload.getGzip() != null && acceptEncoding != null && acceptEncoding.contains("gzip");
+        String etag = gzip ? payload.getGzipEtag() : payload.getEtag();
+        if (payload.matches(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).varyBy(HttpHeaders.ACCEPT_ENCODING).build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .contentType(MediaType.APPLICATION_JSON_UTF8);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(payload.getGzip());
+        }
+        return response.body(payload.getJson());
+    }
+
+    /**
+     * Pushes the changes of the responders matching the filters, and the stats, as Server-Sent Events. The bounding
+     * box is optional, but must be complete when given.
+     */
+    @RequestMapping(value = "/responders/stream", method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamResponders(@RequestParam(defaultValue = "false") boolean available,
+                                                       @RequestParam(required = false) Double minLatitude,
+                                                       @RequestParam(required = false) Double maxLatitude,
+                                                       @RequestParam(required = false) Double minLongitude,
+                                                       @RequestParam(required = false) Double maxLongitude) {
+        boolean noBox = minLatitude == null && maxLatitude == null && minLongitude == null && maxLongitude == null;
+        boolean box = minLatitude != null && maxLatitude != null && minLongitude != null && maxLongitude != null
+                && minLatitude <= maxLatitude && minLongitude <= maxLongitude;
+        if (!noBox && !box) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(responderEventStream.subscribe(new ResponderEventStream.Filter(available,
+                minLatitude, maxLatitude, minLongitude, maxLongitude)), HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/responders/nearest", method = RequestMethod.GET, produces = MimeTypeUtils.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<Responder>> nearestResponders(@RequestParam double latitude, @RequestParam double longitude,
+                                                             @RequestParam(required = false) Integer limit,
+                                                             @RequestParam(required = false) Double radius,
+                                                             @RequestParam(required = false) Integer minBoatCapacity,
+                                                             @RequestParam(required = false) Boolean medicalKit) {
+        if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180 || (limit != null && limit < 1) || (radius != null && radius < 0)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        // without a limit, all the responders within the radius are returned
+        int max = (limit != null ? limit : (radius != null ? Integer.MAX_VALUE : DEFAULT_NEAREST_LIMIT));
+        return new ResponseEntity<>(responderService.nearestResponders(latitude, longitude, max, radius, minBoatCapacity, medicalKit), HttpStatus.OK);
+    }
+
+    /**
+     * Returns the responders changed and deleted since a watermark, starting from 0. The <code>nextSince</code> of the
+     * response is the watermark of the next request.
+     */
+    @RequestMapping(value = "/responders/changes", method = RequestMethod.GET, produces = MimeTypeUtils.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ResponderChanges> responderChanges(@RequestParam(defaultValue = "0") long since,
+                                                             @RequestParam(defaultValue = "1000") int limit) {
+        if (since < 0 || limit < 1) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(responderService.changesSince(since, Math.min(limit, MAX_CHANGES_LIMIT)), HttpStatus.OK);
     }
 
     @RequestMapping(value = "/responder", method = RequestMethod.POST, consumes = MimeTypeUtils.APPLICATION_JSON_VALUE)
@@ -59,6 +189,9 @@ public class RespondersController {
         return new ResponseEntity(HttpStatus.CREATED);
     }
 
+    /**
+     * Creates all the responders, or none of them if one cannot be created.
+     */
     @RequestMapping(value = "/responders", method = RequestMethod.POST, consumes = MimeTypeUtils.APPLICATION_JSON_VALUE)
     public ResponseEntity createResponders(@RequestBody List<Responder> responders) {
 
@@ -66,12 +199,101 @@ public class RespondersController {
         return new ResponseEntity(HttpStatus.CREATED);
     }
 
+    /**
+     * Imports responders from a NDJSON or CSV body, which is read as a stream.
+     */
+    @RequestMapping(value = "/responders/import", method = RequestMethod.POST, consumes = {APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE},
+            produces = MimeTypeUtils.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ImportResult> importResponders(HttpServletRequest request) throws IOException {
+
+        try (Reader reader = importReader(request)) {
+            return new ResponseEntity<>(responderImporter.importResponders(reader, importFormat(request)), HttpStatus.OK);
+        }
+    }
+
+    /**
+     * Same as {@link #importResponders(HttpServletRequest)} with <code>progress=true</code>: the result so far is
+     * streamed as a NDJSON line after each chunk, and the last line is the final result.
+     */
+    @RequestMapping(value = "/responders/import", method = RequestMethod.POST, params = "progress=true",
+            consumes = {APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE}, produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> importRespondersWithProgress(HttpServletRequest request) {
+
+        ResponderFileFormat format = importFormat(request);
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            try (Reader reader = importReader(request)) {
+                writeLine(writer, responderImporter.importResponders(reader, format, progress -> {
+                    try {
+                        writeLine(writer, progress);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE + ";charset=UTF-8"))
+                .body(body);
+    }
+
+    private static ResponderFileFormat importFormat(HttpServletRequest request) {
+        return MediaType.parseMediaType(TEXT_CSV_VALUE).includes(MediaType.parseMediaType(request.getContentType()))
+                ? ResponderFileFormat.CSV : ResponderFileFormat.NDJSON;
+    }
+
+    private static Reader importReader(HttpServletRequest request) throws IOException {
+        Charset charset = MediaType.parseMediaType(request.getContentType()).getCharset();
+        return new InputStreamReader(request.getInputStream(), charset != null ? charset : StandardCharsets.UTF_8);
+    }
+
+    private static void writeLine(Writer writer, ImportResult result) throws IOException {
+        writer.write(mapper.writeValueAsString(result));
+        writer.write('\n');
+        writer.flush();
+    }
+
+    /**
+     * Streams the responders matching the given flags as NDJSON or CSV, while they are read from the database.
+     */
+    @RequestMapping(value = "/responders/export", method = RequestMethod.GET)
+    public ResponseEntity<StreamingResponseBody> exportResponders(@RequestParam(defaultValue = "ndjson") String format,
+                                                                  @RequestParam(required = false) Boolean enrolled,
+                                                                  @RequestParam(required = false) Boolean available,
+                                                                  @RequestParam(required = false) Boolean person) {
+        ResponderFileFormat fileFormat;
+        try {
+            fileFormat = ResponderFileFormat.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            responderExporter.exportResponders(writer, fileFormat, enrolled, available, person);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(fileFormat.getMediaType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=responders." + format.toLowerCase())
+                .body(body);
+    }
+
     @RequestMapping(value = "/responder", method = RequestMethod.PUT, consumes = MimeTypeUtils.APPLICATION_JSON_VALUE)
     public ResponseEntity updateResponder(@RequestBody Responder responder) {
         responderService.updateResponder(responder);
         return new ResponseEntity(HttpStatus.NO_CONTENT);
     }
 
+    /**
+     * Applies partial updates to many responders, and returns the status of each update in the order of the updates.
+     */
+    @RequestMapping(value = "/responders", method = RequestMethod.PUT, consumes = MimeTypeUtils.APPLICATION_JSON_VALUE,
+            produces = MimeTypeUtils.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<ResponderUpdateStatus>> updateResponders(@RequestBody List<Responder> responders) {
+        return new ResponseEntity<>(responderService.updateResponders(responders), HttpStatus.OK);
+    }
+
     @RequestMapping(value = "/responders/reset", method = RequestMethod.POST)
     public ResponseEntity reset() {
         responderService.reset();
@@ -0,0 +1,80 @@
+package com.redhat.cajun.navy.responder.dao;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Change sequence numbers of the write transactions.
+ * <p>
+ * Each transaction which writes responders takes one number from the <code>responder_change_sequence</code> database
+ * sequence, and stamps it on all the responders and tombstones it writes. Transactions do not commit in the order of
+ * their numbers, so the running transactions of this instance are tracked: changes above
+ * {@link #visibleWatermark()} must not be handed out yet, as a running transaction could still commit a lower number.
+ * Transactions of other instances of the service are not tracked.
+ */
+@Component
+public class ChangeSequence {
+
+    static final String SEQUENCE = "responder_change_sequence";
+
+    /**
+     * Lower bound of the number of each running transaction.
+     */
+    private final Map<Object, Long> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong highest = new AtomicLong();
+
+    /**
+     * @param nextval takes the next number from the database sequence.
+     * @return the number of the current transaction, taken on the first call within the transaction.
+     */
+    long current(LongSupplier nextval) {
+        Long current = (Long) TransactionSynchronizationManager.getResource(this);
+        if (current != null) {
+            return current;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return record(nextval.getAsLong());
+        }
+        // registered before taking the number, which is necessarily above all the numbers taken so far
+        Object transaction = new Object();
+        inFlight.put(transaction, highest.get() + 1);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                inFlight.remove(transaction);
+                TransactionSynchronizationManager.unbindResourceIfPossible(ChangeSequence.this);
+            }
+        });
+        long number = record(nextval.getAsLong());
+        inFlight.put(transaction, number);
+        TransactionSynchronizationManager.bindResource(this, number);
+        return number;
+    }
+
+    /**
+     * @return the number taken by the current transaction, -1 if it has not taken one.
+     */
+    public long ofCurrentTransaction() {
+        Long current = (Long) TransactionSynchronizationManager.getResource(this);
+        return current == null ? -1 : current;
+    }
+
+    /**
+     * @return the highest number below the numbers of the running transactions of this instance.
+     */
+    public long visibleWatermark() {
+        return inFlight.values().stream().mapToLong(n -> n - 1).min().orElse(Long.MAX_VALUE);
+    }
+
+    private long record(long number) {
+        highest.accumulateAndGet(number, Math::max);
+        return number;
+    }
+}
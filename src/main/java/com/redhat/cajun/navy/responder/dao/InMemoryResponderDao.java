@@ -0,0 +1,308 @@
+package com.redhat.cajun.navy.responder.dao;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.OptimisticLockException;
+
+import com.redhat.cajun.navy.responder.entity.OutboxEventEntity;
+import com.redhat.cajun.navy.responder.entity.ProcessedMessageEntity;
+import com.redhat.cajun.navy.responder.entity.ResponderEntity;
+import com.redhat.cajun.navy.responder.entity.ResponderTombstoneEntity;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link ResponderDao} which keeps everything in memory, selected with <code>responder.storage=memory</code>. Meant
+ * for load tests without a database.
+ * <p>
+ * Changes are applied immediately and are not rolled back with the transaction, and nothing survives a restart.
+ */
+@Component
+@ConditionalOnProperty(name = "responder.storage", havingValue = "memory")
+public class InMemoryResponderDao implements ResponderDao {
+
+    private final Map<Long, ResponderEntity> responders = new ConcurrentHashMap<>();
+
+    private final ConcurrentSkipListMap<Long, OutboxEventEntity> outbox = new ConcurrentSkipListMap<>();
+
+    private final AtomicLong responderIds = new AtomicLong();
+
+    private final AtomicLong outboxIds = new AtomicLong();
+
+    private final Map<Long, ResponderTombstoneEntity> tombstones = new ConcurrentHashMap<>();
+
+    private final AtomicLong changeSeqs = new AtomicLong();
+
+    private final Map<String, ProcessedMessageEntity> processedMessages = new ConcurrentHashMap<>();
+
+    @Autowired
+    private ChangeSequence changeSequence;
+
+    @Override
+    public void create(ResponderEntity responder) {
+        create(responder, changeSeq());
+    }
+
+    @Override
+    public void createAll(List<ResponderEntity> responders) {
+        long changeSeq = changeSeq();
+        responders.forEach(r -> create(r, changeSeq));
+    }
+
+    private void create(ResponderEntity responder, long changeSeq) {
+        long id = responderIds.incrementAndGet();
+        new DirectFieldAccessor(responder).setPropertyValue("id", id);
+        new DirectFieldAccessor(responder).setPropertyValue("changeSeq", changeSeq);
+        responders.put(id, new ResponderEntity.Builder(responder).version(0).build());
+    }
+
+    @Override
+    public ResponderEntity findById(long id) {
+        return responders.get(id);
+    }
+
+    @Override
+    public List<ResponderEntity> findByIds(Collection<Long> ids) {
+        return ids.stream().distinct().map(responders::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    @Override
+    public ResponderEntity findByName(String name) {
+        List<ResponderEntity> results = find(r -> Objects.equals(name, r.getName()));
+        if (results.isEmpty()) {
+            return null;
+        } else if (results.size() == 1) {
+            return results.get(0);
+        } else {
+            throw new NonUniqueResultException("Found several Responders with name '" + name + "'");
+        }
+    }
+
+    @Override
+    public ResponderEntity merge(ResponderEntity responder) {
+        long changeSeq = changeSeq();
+        return responders.compute(responder.getId(), (id, current) -> {
+            if (current == null || current.getVersion() != responder.getVersion()) {
+                throw new OptimisticLockException("Responder with id '" + id + "' was updated or deleted by another transaction");
+            }
+            return new ResponderEntity.Builder(responder).version(current.getVersion() + 1).changeSeq(changeSeq).build();
+        });
+    }
+
+    @Override
+    public ResponderUpdateResult conditionalUpdate(ResponderEntity changes) {
+        AtomicReference<ResponderUpdateResult> result = new AtomicReference<>(
+                new ResponderUpdateResult(ResponderUpdateResult.Outcome.NOT_FOUND, null, null));
+        responders.computeIfPresent(changes.getId(), (id, current) -> {
+            if (!changed(current, changes)) {
+                result.set(new ResponderUpdateResult(ResponderUpdateResult.Outcome.UNCHANGED, current, current));
+                return current;
+            }
+            ResponderEntity updated = apply(current, changes, changeSeq());
+            result.set(new ResponderUpdateResult(ResponderUpdateResult.Outcome.UPDATED, current, updated));
+            return updated;
+        });
+        return result.get();
+    }
+
+    @Override
+    public List<ResponderUpdateResult> conditionalUpdateAll(List<ResponderEntity> changes) {
+        return changes.stream().map(this::conditionalUpdate).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<ResponderEntity> allResponders() {
+        return new ArrayList<>(responders.values());
+    }
+
+    @Override
+    public void streamResponders(Boolean enrolled, Boolean available, Boolean person, int fetchSize, Consumer<ResponderEntity> action) {
+        responders.values().stream()
+                .filter(r -> (enrolled == null || enrolled.equals(r.isEnrolled()))
+                        && (available == null || available.equals(r.isAvailable()))
+                        && (person == null || person.equals(r.isPerson())))
+                .sorted(Comparator.comparingLong(ResponderEntity::getId))
+                .forEachOrdered(action);
+    }
+
+    @Override
+    public List<ResponderEntity> availableResponders() {
+        return find(r -> Boolean.TRUE.equals(r.isAvailable()) && Boolean.TRUE.equals(r.isEnrolled()));
+    }
+
+    @Override
+    public List<ResponderEntity> nearestAvailableResponders(NearestQuery query) {
+        return find(query::matches).stream().sorted(query.nearestFirst()).limit(query.getLimit()).collect(Collectors.toList());
+    }
+
+    @Override
+    public void reset() {
+        long changeSeq = changeSeq();
+        responders.replaceAll((id, r) -> {
+            ResponderEntity.Builder builder = new ResponderEntity.Builder(r).available(true).enrolled(false)
+                    .version(r.getVersion() + 1).changeSeq(changeSeq);
+            if (Boolean.TRUE.equals(r.isPerson())) {
+                builder.currentPositionLatitude(null).currentPositionLongitude(null);
+            }
+            return builder.build();
+        });
+    }
+
+    @Override
+    public void clear() {
+        long changeSeq = changeSeq();
+        responders.values().removeIf(r -> {
+            if (Boolean.FALSE.equals(r.isPerson())) {
+                tombstones.put(r.getId(), new ResponderTombstoneEntity.Builder(r.getId(), changeSeq).build());
+                return true;
+            }
+            return false;
+        });
+        responders.replaceAll((id, r) -> !Boolean.TRUE.equals(r.isPerson()) ? r
+                : new ResponderEntity.Builder(r).available(true).enrolled(false).version(r.getVersion() + 1)
+                        .currentPositionLatitude(null).currentPositionLongitude(null).changeSeq(changeSeq).build());
+    }
+
+    @Override
+    public Long enrolledRespondersCount() {
+        return responders.values().stream().filter(r -> Boolean.TRUE.equals(r.isEnrolled())).count();
+    }
+
+    @Override
+    public Long activeRespondersCount() {
+        return responders.values().stream()
+                .filter(r -> Boolean.TRUE.equals(r.isEnrolled()) && Boolean.FALSE.equals(r.isAvailable())).count();
+    }
+
+    @Override
+    public void createOutboxEvent(OutboxEventEntity event) {
+        long id = outboxIds.incrementAndGet();
+        new DirectFieldAccessor(event).setPropertyValue("id", id);
+        outbox.put(id, event);
+    }
+
+    @Override
+    public List<OutboxEventEntity> outboxEvents(int max) {
+        return outbox.values().stream().limit(max).collect(Collectors.toList());
+    }
+
+    @Override
+    public void deleteOutboxEvents(List<Long> ids) {
+        ids.forEach(outbox::remove);
+    }
+
+    @Override
+    public void createProcessedMessage(ProcessedMessageEntity message) {
+        processedMessages.put(message.getMessageId(), message);
+    }
+
+    @Override
+    public boolean processedMessageExists(String messageId, long since) {
+        ProcessedMessageEntity message = processedMessages.get(messageId);
+        return message != null && message.getProcessedAt() >= since;
+    }
+
+    @Override
+    public int deleteProcessedMessages(long before) {
+        int deleted = 0;
+        for (ProcessedMessageEntity message : processedMessages.values()) {
+            if (message.getProcessedAt() < before && processedMessages.remove(message.getMessageId(), message)) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public long maxChangeSeq() {
+        return Math.max(responders.values().stream().mapToLong(ResponderEntity::getChangeSeq).max().orElse(0),
+                tombstones.values().stream().mapToLong(ResponderTombstoneEntity::getChangeSeq).max().orElse(0));
+    }
+
+    @Override
+    public List<ResponderEntity> changedResponders(long since, long upTo, int max) {
+        return responders.values().stream()
+                .filter(r -> r.getChangeSeq() > since && r.getChangeSeq() <= upTo)
+                .sorted(Comparator.comparingLong(ResponderEntity::getChangeSeq).thenComparingLong(ResponderEntity::getId))
+                .limit(max)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<ResponderTombstoneEntity> tombstones(long since, long upTo) {
+        return tombstones.values().stream()
+                .filter(t -> t.getChangeSeq() > since && t.getChangeSeq() <= upTo)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Numbers are tracked by the {@link ChangeSequence} as for the other engines, as changes which are applied
+     * concurrently may be stored out of order.
+     */
+    private long changeSeq() {
+        return changeSequence.current(changeSeqs::incrementAndGet);
+    }
+
+    private List<ResponderEntity> find(Predicate<ResponderEntity> filter) {
+        return responders.values().stream().filter(filter).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the responder with the non null fields of the changes, and the next version.
+     */
+    static ResponderEntity apply(ResponderEntity current, ResponderEntity changes, long changeSeq) {
+        return new ResponderEntity.Builder(current.getId(), current.getVersion() + 1)
+                .name(changes.getName() == null ? current.getName() : changes.getName())
+                .phoneNumber(changes.getPhoneNumber() == null ? current.getPhoneNumber() : changes.getPhoneNumber())
+                .currentPositionLatitude(changes.getCurrentPositionLatitude() == null ? current.getCurrentPositionLatitude() : changes.getCurrentPositionLatitude())
+                .currentPositionLongitude(changes.getCurrentPositionLongitude() == null ? current.getCurrentPositionLongitude() : changes.getCurrentPositionLongitude())
+                .boatCapacity(changes.getBoatCapacity() == null ? current.getBoatCapacity() : changes.getBoatCapacity())
+                .medicalKit(changes.getMedicalKit() == null ? current.getMedicalKit() : changes.getMedicalKit())
+                .available(changes.isAvailable() == null ? current.isAvailable() : changes.isAvailable())
+                .person(changes.isPerson() == null ? current.isPerson() : changes.isPerson())
+                .enrolled(changes.isEnrolled() == null ? current.isEnrolled() : changes.isEnrolled())
+                .changeSeq(changeSeq)
+                .build();
+    }
+
+    /**
+     * @return true if at least one of the non null fields of the changes differs from the current responder.
+     */
+    static boolean changed(ResponderEntity current, ResponderEntity changes) {
+        return changed(changes.getName(), current.getName())
+                || changed(changes.getPhoneNumber(), current.getPhoneNumber())
+                || changed(changes.getCurrentPositionLatitude(), current.getCurrentPositionLatitude())
+                || changed(changes.getCurrentPositionLongitude(), current.getCurrentPositionLongitude())
+                || changed(changes.getBoatCapacity(), current.getBoatCapacity())
+                || changed(changes.getMedicalKit(), current.getMedicalKit())
+                || changed(changes.isAvailable(), current.isAvailable())
+                || changed(changes.isPerson(), current.isPerson())
+                || changed(changes.isEnrolled(), current.isEnrolled());
+    }
+
+    private static boolean changed(Object value, Object current) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof BigDecimal && current instanceof BigDecimal) {
+            // numeric comparison, as in the database
+            return ((BigDecimal) value).compareTo((BigDecimal) current) != 0;
+        }
+        return !value.equals(current);
+    }
+}
@@ -0,0 +1,327 @@
+package com.redhat.cajun.navy.responder.dao;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+import com.redhat.cajun.navy.responder.entity.OutboxEventEntity;
+import com.redhat.cajun.navy.responder.entity.ProcessedMessageEntity;
+import com.redhat.cajun.navy.responder.entity.ResponderEntity;
+import com.redhat.cajun.navy.responder.entity.ResponderTombstoneEntity;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link ResponderDao} backed by JPA. This is the default storage engine, selected with
+ * <code>responder.storage=jpa</code>.
+ */
+@Component
+@ConditionalOnProperty(name = "responder.storage", havingValue = "jpa", matchIfMissing = true)
+public class JpaResponderDao implements ResponderDao {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private ChangeSequence changeSequence;
+
+    @Override
+    public void create(ResponderEntity responder) {
+        new DirectFieldAccessor(responder).setPropertyValue("changeSeq", changeSeq());
+        entityManager.persist(responder);
+    }
+
+    /**
+     * Persists the responders and flushes them at once, so that Hibernate sends the inserts as JDBC batches of
+     * <code>hibernate.jdbc.batch_size</code>. The entities are detached afterwards.
+     */
+    @Override
+    public void createAll(List<ResponderEntity> responders) {
+        long changeSeq = changeSeq();
+        responders.forEach(r -> new DirectFieldAccessor(r).setPropertyValue("changeSeq", changeSeq));
+        responders.forEach(entityManager::persist);
+        entityManager.flush();
+        responders.forEach(entityManager::detach);
+    }
+
+    void deleteAll() {
+        Query deleteAll = entityManager.createQuery("DELETE FROM ResponderEntity");
+        deleteAll.executeUpdate();
+        entityManager.createQuery("DELETE FROM ResponderTombstoneEntity").executeUpdate();
+    }
+
+    @Override
+    public ResponderEntity findById(long id) {
+        return entityManager.find(ResponderEntity.class, id, LockModeType.OPTIMISTIC);
+    }
+
+    @Override
+    public List<ResponderEntity> findByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return entityManager.createQuery("SELECT r FROM ResponderEntity r WHERE r.id IN :ids", ResponderEntity.class)
+                .setParameter("ids", ids)
+                .getResultList();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ResponderEntity findByName(String name) {
+        Query q = entityManager.createQuery("SELECT r FROM ResponderEntity r WHERE r.name = :name");
+        q.setParameter("name", name);
+        List<ResponderEntity> results = q.getResultList();
+        if (results.isEmpty()) {
+            return null;
+        } else if (results.size() == 1) {
+            return results.get(0);
+        } else {
+            throw new NonUniqueResultException("Found several Responders with name '" + name + "'");
+        }
+    }
+
+    @Override
+    public ResponderEntity merge(ResponderEntity responder) {
+        ResponderEntity r = entityManager.merge(new ResponderEntity.Builder(responder).changeSeq(changeSeq()).build());
+        entityManager.flush();
+        return r;
+    }
+
+    /**
+     * Bypasses the persistence context, so it should not be mixed with managed instances of the same responder in one
+     * transaction.
+     */
+    @Override
+    public ResponderUpdateResult conditionalUpdate(ResponderEntity changes) {
+        long changeSeq = changeSeq();
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> ResponderSql.conditionalUpdate(connection, changes, changeSeq));
+    }
+
+    /**
+     * Bypasses the persistence context, as {@link #conditionalUpdate(ResponderEntity)}.
+     */
+    @Override
+    public List<ResponderUpdateResult> conditionalUpdateAll(List<ResponderEntity> changes) {
+        long changeSeq = changeSeq();
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> ResponderSql.conditionalUpdateAll(connection, changes, changeSeq));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ResponderEntity> allResponders() {
+        return (List<ResponderEntity>) entityManager.createQuery("SELECT r FROM ResponderEntity r").getResultList();
+    }
+
+    /**
+     * Each responder is detached once passed to the action, so the persistence context does not grow.
+     */
+    @Override
+    public void streamResponders(Boolean enrolled, Boolean available, Boolean person, int fetchSize, Consumer<ResponderEntity> action) {
+        StringBuilder jpql = new StringBuilder("SELECT r FROM ResponderEntity r WHERE 1 = 1");
+        if (enrolled != null) {
+            jpql.append(" AND r.enrolled = :enrolled");
+        }
+        if (available != null) {
+            jpql.append(" AND r.available = :available");
+        }
+        if (person != null) {
+            jpql.append(" AND r.person = :person");
+        }
+        Session session = entityManager.unwrap(Session.class);
+        org.hibernate.query.Query<ResponderEntity> q = session.createQuery(jpql.append(" ORDER BY r.id").toString(), ResponderEntity.class);
+        if (enrolled != null) {
+            q.setParameter("enrolled", enrolled);
+        }
+        if (available != null) {
+            q.setParameter("available", available);
+        }
+        if (person != null) {
+            q.setParameter("person", person);
+        }
+        q.setFetchSize(fetchSize);
+        q.setReadOnly(true);
+        try (ScrollableResults results = q.scroll(ScrollMode.FORWARD_ONLY)) {
+            while (results.next()) {
+                ResponderEntity responder = (ResponderEntity) results.get(0);
+                action.accept(responder);
+                session.detach(responder);
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ResponderEntity> availableResponders() {
+        return (List<ResponderEntity>) entityManager.createQuery("SELECT r FROM ResponderEntity r WHERE r.available = true and r.enrolled = true")
+                .getResultList();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ResponderEntity> nearestAvailableResponders(NearestQuery query) {
+        String cosine = ":sinLat * sin(radians(r.currentPositionLatitude)) + :cosLat * cos(radians(r.currentPositionLatitude))"
+                + " * cos(radians(r.currentPositionLongitude) - :lon)";
+        Query nearest = entityManager.createQuery("SELECT r FROM ResponderEntity r WHERE r.available = true AND r.enrolled = true"
+                + " AND r.currentPositionLatitude IS NOT NULL AND r.currentPositionLongitude IS NOT NULL"
+                + (query.getMinBoatCapacity() == null ? "" : " AND r.boatCapacity >= :minBoatCapacity")
+                + (query.isMedicalKit() ? " AND r.medicalKit = true" : "")
+                + " AND " + cosine + " >= :minCos ORDER BY " + cosine + " DESC, r.id")
+                .setParameter("sinLat", query.sinLatitude())
+                .setParameter("cosLat", query.cosLatitude())
+                .setParameter("lon", query.longitudeRadians())
+                .setParameter("minCos", query.minCosine())
+                .setMaxResults(query.getLimit());
+        if (query.getMinBoatCapacity() != null) {
+            nearest.setParameter("minBoatCapacity", query.getMinBoatCapacity());
+        }
+        return (List<ResponderEntity>) nearest.getResultList();
+    }
+
+    /**
+     * Entities in the persistence context are detached, as they no longer reflect the database.
+     */
+    @Override
+    public void reset() {
+        long changeSeq = changeSeq();
+        entityManager.flush();
+        entityManager.createQuery("UPDATE ResponderEntity r SET r.available = true, r.enrolled = false, "
+                + "r.version = r.version + 1, r.changeSeq = :changeSeq WHERE r.person IS NULL OR r.person = false")
+                .setParameter("changeSeq", changeSeq)
+                .executeUpdate();
+        entityManager.createQuery("UPDATE ResponderEntity r SET r.available = true, r.enrolled = false, "
+                + "r.currentPositionLatitude = NULL, r.currentPositionLongitude = NULL, "
+                + "r.version = r.version + 1, r.changeSeq = :changeSeq WHERE r.person = true")
+                .setParameter("changeSeq", changeSeq)
+                .executeUpdate();
+        entityManager.clear();
+    }
+
+    /**
+     * Entities in the persistence context are detached, as they no longer reflect the database.
+     */
+    @Override
+    public void clear() {
+        long changeSeq = changeSeq();
+        entityManager.flush();
+        entityManager.createNativeQuery("INSERT INTO responder_tombstone (responder_id, change_seq) "
+                + "SELECT responder_id, ? FROM responder WHERE person = false")
+                .setParameter(1, changeSeq)
+                .executeUpdate();
+        entityManager.createQuery("DELETE FROM ResponderEntity r WHERE r.person = false").executeUpdate();
+        entityManager.createQuery("UPDATE ResponderEntity r SET r.available = true, r.enrolled = false, "
+                + "r.currentPositionLatitude = NULL, r.currentPositionLongitude = NULL, "
+                + "r.version = r.version + 1, r.changeSeq = :changeSeq WHERE r.person = true")
+                .setParameter("changeSeq", changeSeq)
+                .executeUpdate();
+        entityManager.clear();
+    }
+
+    @Override
+    public Long enrolledRespondersCount() {
+        return (Long) entityManager.createQuery("SELECT COUNT(r.id) FROM ResponderEntity r WHERE r.enrolled = true").getSingleResult();
+    }
+
+    @Override
+    public Long activeRespondersCount() {
+        return (Long) entityManager
+                .createQuery("SELECT COUNT(r.id) FROM ResponderEntity r WHERE r.enrolled = true AND r.available = false").getSingleResult();
+
+    }
+
+    @Override
+    public void createOutboxEvent(OutboxEventEntity event) {
+        entityManager.persist(event);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<OutboxEventEntity> outboxEvents(int max) {
+        return (List<OutboxEventEntity>) entityManager.createQuery("SELECT e FROM OutboxEventEntity e ORDER BY e.id")
+                .setMaxResults(max)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+    }
+
+    @Override
+    public void deleteOutboxEvents(List<Long> ids) {
+        Query delete = entityManager.createQuery("DELETE FROM OutboxEventEntity e WHERE e.id IN :ids");
+        delete.setParameter("ids", ids);
+        delete.executeUpdate();
+    }
+
+    @Override
+    public void createProcessedMessage(ProcessedMessageEntity message) {
+        entityManager.merge(message);
+    }
+
+    @Override
+    public boolean processedMessageExists(String messageId, long since) {
+        return !entityManager.createQuery("SELECT m.messageId FROM ProcessedMessageEntity m WHERE m.messageId = :messageId "
+                + "AND m.processedAt >= :since")
+                .setParameter("messageId", messageId)
+                .setParameter("since", since)
+                .getResultList().isEmpty();
+    }
+
+    @Override
+    public int deleteProcessedMessages(long before) {
+        return entityManager.createQuery("DELETE FROM ProcessedMessageEntity m WHERE m.processedAt < :before")
+                .setParameter("before", before)
+                .executeUpdate();
+    }
+
+    @Override
+    public long maxChangeSeq() {
+        Long responders = (Long) entityManager.createQuery("SELECT MAX(r.changeSeq) FROM ResponderEntity r").getSingleResult();
+        Long tombstones = (Long) entityManager.createQuery("SELECT MAX(t.changeSeq) FROM ResponderTombstoneEntity t").getSingleResult();
+        return Math.max(responders == null ? 0 : responders, tombstones == null ? 0 : tombstones);
+    }
+
+    @Override
+    public List<ResponderEntity> changedResponders(long since, long upTo, int max) {
+        return entityManager.createQuery("SELECT r FROM ResponderEntity r WHERE r.changeSeq > :since AND r.changeSeq <= :upTo "
+                + "ORDER BY r.changeSeq, r.id", ResponderEntity.class)
+                .setParameter("since", since)
+                .setParameter("upTo", upTo)
+                .setMaxResults(max)
+                .getResultList();
+    }
+
+    @Override
+    public List<ResponderTombstoneEntity> tombstones(long since, long upTo) {
+        return entityManager.createQuery("SELECT t FROM ResponderTombstoneEntity t WHERE t.changeSeq > :since AND t.changeSeq <= :upTo",
+                ResponderTombstoneEntity.class)
+                .setParameter("since", since)
+                .setParameter("upTo", upTo)
+                .getResultList();
+    }
+
+    /**
+     * Takes the number from the sequence with the SQL of the dialect, so that it also works on the test database.
+     */
+    private long changeSeq() {
+        Session session = entityManager.unwrap(Session.class);
+        String nextval = ((SessionFactoryImplementor) session.getSessionFactory()).getJdbcServices().getDialect()
+                .getSequenceNextValString(ChangeSequence.SEQUENCE);
+        return changeSequence.current(() -> session.doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(nextval); ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }));
+    }
+}
@@ -0,0 +1,272 @@
+package com.redhat.cajun.navy.responder.dao;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.OptimisticLockException;
+
+import com.redhat.cajun.navy.responder.entity.OutboxEventEntity;
+import com.redhat.cajun.navy.responder.entity.ProcessedMessageEntity;
+import com.redhat.cajun.navy.responder.entity.ResponderEntity;
+import com.redhat.cajun.navy.responder.entity.ResponderTombstoneEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link ResponderDao} which keeps the responders in memory-mapped files on the local disk, selected with
+ * <code>responder.storage=mapped</code>. Meant for single node deployments without a database server.
+ * <p>
+ * The files are kept in <code>responder.storage.mapped.directory</code>, see {@link MappedResponderStore}. Every
+ * change is written to a write-ahead log, forced to disk with <code>responder.storage.mapped.fsync</code>, and the
+ * data files are forced to disk every <code>responder.storage.mapped.checkpoint-interval</code> milliseconds. As with
+ * the in-memory engine, changes are applied immediately and are not rolled back with the transaction.
+ */
+@Component
+@ConditionalOnProperty(name = "responder.storage", havingValue = "mapped")
+public class MappedResponderDao implements ResponderDao {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedResponderDao.class);
+
+    @Autowired
+    private ChangeSequence changeSequence;
+
+    @Value("${responder.storage.mapped.directory:data}")
+    private String directory = "data";
+
+    @Value("${responder.storage.mapped.fsync:false}")
+    private boolean fsync;
+
+    @Value("${responder.storage.mapped.initial-capacity:10000}")
+    private int initialCapacity = 10000;
+
+    private MappedResponderStore store;
+
+    @PostConstruct
+    public void init() throws IOException {
+        store = MappedResponderStore.open(Paths.get(directory), fsync, initialCapacity);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        store.close();
+    }
+
+    @Scheduled(fixedDelayString = "${responder.storage.mapped.checkpoint-interval:60000}")
+    public void checkpoint() {
+        try {
+            store.checkpoint();
+        } catch (IOException | RuntimeException e) {
+            log.error("Error checkpointing the responder store", e);
+        }
+    }
+
+    @Override
+    public void create(ResponderEntity responder) {
+        createAll(Collections.singletonList(responder));
+    }
+
+    @Override
+    public synchronized void createAll(List<ResponderEntity> responders) {
+        long changeSeq = changeSeq();
+        List<ResponderEntity> created = new ArrayList<>(responders.size());
+        for (ResponderEntity responder : responders) {
+            new DirectFieldAccessor(responder).setPropertyValue("id", store.nextResponderId());
+            new DirectFieldAccessor(responder).setPropertyValue("changeSeq", changeSeq);
+            created.add(new ResponderEntity.Builder(responder).version(0).build());
+        }
+        store.putAll(created);
+    }
+
+    @Override
+    public ResponderEntity findById(long id) {
+        return store.get(id);
+    }
+
+    @Override
+    public List<ResponderEntity> findByIds(Collection<Long> ids) {
+        return ids.stream().distinct().map(store::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    @Override
+    public ResponderEntity findByName(String name) {
+        List<ResponderEntity> results = store.find(r -> Objects.equals(name, r.getName()));
+        if (results.isEmpty()) {
+            return null;
+        } else if (results.size() == 1) {
+            return results.get(0);
+        } else {
+            throw new NonUniqueResultException("Found several Responders with name '" + name + "'");
+        }
+    }
+
+    @Override
+    public synchronized ResponderEntity merge(ResponderEntity responder) {
+        ResponderEntity current = store.get(responder.getId());
+        if (current == null || current.getVersion() != responder.getVersion()) {
+            throw new OptimisticLockException("Responder with id '" + responder.getId() + "' was updated or deleted by another transaction");
+        }
+        ResponderEntity merged = new ResponderEntity.Builder(responder).version(current.getVersion() + 1)
+                .changeSeq(changeSeq()).build();
+        store.putAll(Collections.singletonList(merged));
+        return merged;
+    }
+
+    @Override
+    public ResponderUpdateResult conditionalUpdate(ResponderEntity changes) {
+        return conditionalUpdateAll(Collections.singletonList(changes)).get(0);
+    }
+
+    @Override
+    public synchronized List<ResponderUpdateResult> conditionalUpdateAll(List<ResponderEntity> changes) {
+        List<ResponderUpdateResult> results = new ArrayList<>(changes.size());
+        List<ResponderEntity> updated = new ArrayList<>();
+        for (ResponderEntity change : changes) {
+            ResponderEntity current = store.get(change.getId());
+            if (current == null) {
+                results.add(new ResponderUpdateResult(ResponderUpdateResult.Outcome.NOT_FOUND, null, null));
+            } else if (!InMemoryResponderDao.changed(current, change)) {
+                results.add(new ResponderUpdateResult(ResponderUpdateResult.Outcome.UNCHANGED, current, current));
+            } else {
+                ResponderEntity update = InMemoryResponderDao.apply(current, change, changeSeq());
+                results.add(new ResponderUpdateResult(ResponderUpdateResult.Outcome.UPDATED, current, update));
+                updated.add(update);
+            }
+        }
+        if (!updated.isEmpty()) {
+            // a single write to the log for all the updates
+            store.putAll(updated);
+        }
+        return results;
+    }
+
+    @Override
+    public List<ResponderEntity> allResponders() {
+        return store.find(r -> true);
+    }
+
+    @Override
+    public void streamResponders(Boolean enrolled, Boolean available, Boolean person, int fetchSize, Consumer<ResponderEntity> action) {
+        store.find(r -> (enrolled == null || enrolled.equals(r.isEnrolled()))
+                        && (available == null || available.equals(r.isAvailable()))
+                        && (person == null || person.equals(r.isPerson())))
+                .stream()
+                .sorted(Comparator.comparingLong(ResponderEntity::getId))
+                .forEachOrdered(action);
+    }
+
+    @Override
+    public List<ResponderEntity> availableResponders() {
+        return store.find(r -> Boolean.TRUE.equals(r.isAvailable()) && Boolean.TRUE.equals(r.isEnrolled()));
+    }
+
+    @Override
+    public List<ResponderEntity> nearestAvailableResponders(NearestQuery query) {
+        return store.find(query::matches).stream().sorted(query.nearestFirst()).limit(query.getLimit()).collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized void reset() {
+        long changeSeq = changeSeq();
+        store.putAll(store.find(r -> true).stream().map(r -> reset(r, changeSeq)).collect(Collectors.toList()));
+    }
+
+    @Override
+    public synchronized void clear() {
+        long changeSeq = changeSeq();
+        List<ResponderEntity> all = store.find(r -> true);
+        store.deleteAll(all.stream().filter(r -> Boolean.FALSE.equals(r.isPerson())).map(ResponderEntity::getId)
+                .collect(Collectors.toList()), changeSeq);
+        store.putAll(all.stream().filter(r -> Boolean.TRUE.equals(r.isPerson())).map(r -> reset(r, changeSeq))
+                .collect(Collectors.toList()));
+    }
+
+    private static ResponderEntity reset(ResponderEntity responder, long changeSeq) {
+        ResponderEntity.Builder builder = new ResponderEntity.Builder(responder).available(true).enrolled(false)
+                .version(responder.getVersion() + 1).changeSeq(changeSeq);
+        if (Boolean.TRUE.equals(responder.isPerson())) {
+            builder.currentPositionLatitude(null).currentPositionLongitude(null);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Long enrolledRespondersCount() {
+        return (long) store.find(r -> Boolean.TRUE.equals(r.isEnrolled())).size();
+    }
+
+    @Override
+    public Long activeRespondersCount() {
+        return (long) store.find(r -> Boolean.TRUE.equals(r.isEnrolled()) && Boolean.FALSE.equals(r.isAvailable())).size();
+    }
+
+    @Override
+    public void createOutboxEvent(OutboxEventEntity event) {
+        new DirectFieldAccessor(event).setPropertyValue("id", store.nextOutboxId());
+        store.addOutboxEvent(event);
+    }
+
+    @Override
+    public List<OutboxEventEntity> outboxEvents(int max) {
+        return store.outboxEvents(max);
+    }
+
+    @Override
+    public void deleteOutboxEvents(List<Long> ids) {
+        store.deleteOutboxEvents(ids);
+    }
+
+    @Override
+    public void createProcessedMessage(ProcessedMessageEntity message) {
+        store.putProcessedMessage(message);
+    }
+
+    @Override
+    public boolean processedMessageExists(String messageId, long since) {
+        ProcessedMessageEntity message = store.processedMessage(messageId);
+        return message != null && message.getProcessedAt() >= since;
+    }
+
+    @Override
+    public int deleteProcessedMessages(long before) {
+        return store.deleteProcessedMessages(before);
+    }
+
+    @Override
+    public long maxChangeSeq() {
+        return store.maxChangeSeq();
+    }
+
+    @Override
+    public List<ResponderEntity> changedResponders(long since, long upTo, int max) {
+        return store.find(r -> r.getChangeSeq() > since && r.getChangeSeq() <= upTo).stream()
+                .sorted(Comparator.comparingLong(ResponderEntity::getChangeSeq).thenComparingLong(ResponderEntity::getId))
+                .limit(max)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<ResponderTombstoneEntity> tombstones(long since, long upTo) {
+        return store.tombstones(since, upTo);
+    }
+
+    private long changeSeq() {
+        return changeSequence.current(store::nextChangeSeq);
+    }
+
+}
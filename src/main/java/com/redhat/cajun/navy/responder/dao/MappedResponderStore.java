@@ -0,0 +1,944 @@
+package com.redhat.cajun.navy.responder.dao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import com.redhat.cajun.navy.responder.entity.OutboxEventEntity;
+import com.redhat.cajun.navy.responder.entity.ProcessedMessageEntity;
+import com.redhat.cajun.navy.responder.entity.ResponderEntity;
+import com.redhat.cajun.navy.responder.entity.ResponderTombstoneEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Files of the {@link MappedResponderDao}, in one directory:
+ * <ul>
+ * <li><code>responders.dat</code>: fixed-width records of {@link #RECORD_SIZE} bytes, one per slot, a slot with id 0
+ * being free. Names, phone numbers and decimals which do not fit a long are references to the string heap.</li>
+ * <li><code>strings.dat</code>: the string heap, where strings are appended as their length and UTF-8 bytes. A record
+ * keeps the reference of a string which did not change. The file does not shrink, but a checkpoint rewrites the live
+ * strings from the start of the heap once the strings no longer referenced take more than half of it.</li>
+ * <li><code>tombstones.dat</code>: the tombstones, appended as the responder id and the change sequence number.</li>
+ * <li><code>wal.log</code>: the write-ahead log, where each change is appended, with a CRC32, before it is applied
+ * to the mapped files. It also holds the outbox events and the processed messages.</li>
+ * </ul>
+ * The data files are memory-mapped and written in place. A checkpoint forces them to disk and starts a new log with
+ * the outbox events and processed messages only. When the store is opened, the log is replayed over the data files;
+ * the log entries hold the full state of the responders, so entries which had already reached the data files are
+ * applied again without harm, and replay stops at the first incomplete entry.
+ * <p>
+ * Reads run concurrently, writes are serialized. The mapped files are limited to 2 GB each.
+ */
+class MappedResponderStore implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedResponderStore.class);
+
+    static final String RESPONDERS_FILE = "responders.dat";
+
+    static final String STRINGS_FILE = "strings.dat";
+
+    static final String TOMBSTONES_FILE = "tombstones.dat";
+
+    static final String WAL_FILE = "wal.log";
+
+    static final int RECORD_SIZE = 80;
+
+    private static final int HEADER_SIZE = 64;
+
+    private static final int TOMBSTONE_SIZE = 16;
+
+    private static final long MIN_COMPACTION_GARBAGE = 1024 * 1024;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int RESPONDERS_MAGIC = 0x52535052;
+
+    private static final int STRINGS_MAGIC = 0x52535053;
+
+    private static final int TOMBSTONES_MAGIC = 0x52535054;
+
+    // offsets within a record
+    private static final int ID = 0;
+    private static final int VERSION = 8;
+    private static final int CHANGE_SEQ = 16;
+    private static final int NAME = 24;
+    private static final int PHONE_NUMBER = 32;
+    private static final int LATITUDE = 40;
+    private static final int LONGITUDE = 53;
+    private static final int BOAT_CAPACITY = 66;
+    private static final int MEDICAL_KIT = 71;
+    private static final int AVAILABLE = 72;
+    private static final int PERSON = 73;
+    private static final int ENROLLED = 74;
+
+    // decimal encodings
+    private static final byte NO_DECIMAL = 0;
+    private static final byte LONG_DECIMAL = 1;
+    private static final byte STRING_DECIMAL = 2;
+
+    // log entry types
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte OUTBOX_ADD = 3;
+    private static final byte OUTBOX_DELETE = 4;
+    private static final byte MESSAGE = 5;
+    private static final byte MESSAGE_DELETE = 6;
+
+    private final Path directory;
+
+    private final boolean fsync;
+
+    private final MappedFile responders;
+
+    private final MappedFile strings;
+
+    private final MappedFile tombstoneFile;
+
+    private FileChannel wal;
+
+    private long walSize;
+
+    private long checkpointWalSize = -1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Long, Integer> slots = new HashMap<>();
+
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+    private int nextSlot;
+
+    private long stringsEnd = HEADER_SIZE;
+
+    private final Map<Long, ResponderTombstoneEntity> tombstones = new HashMap<>();
+
+    private final TreeMap<Long, OutboxEventEntity> outbox = new TreeMap<>();
+
+    private final Map<String, ProcessedMessageEntity> processedMessages = new HashMap<>();
+
+    private final AtomicLong responderIds = new AtomicLong();
+
+    private final AtomicLong changeSeqs = new AtomicLong();
+
+    private final AtomicLong storedChangeSeq = new AtomicLong();
+
+    private final AtomicLong outboxIds = new AtomicLong();
+
+    private MappedResponderStore(Path directory, boolean fsync, int initialCapacity) throws IOException {
+        this.directory = directory;
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+        responders = new MappedFile(directory.resolve(RESPONDERS_FILE), RESPONDERS_MAGIC,
+                HEADER_SIZE + (long) Math.max(initialCapacity, 1) * RECORD_SIZE);
+        strings = new MappedFile(directory.resolve(STRINGS_FILE), STRINGS_MAGIC, 1 << 20);
+        tombstoneFile = new MappedFile(directory.resolve(TOMBSTONES_FILE), TOMBSTONES_MAGIC,
+                HEADER_SIZE + 1024L * TOMBSTONE_SIZE);
+    }
+
+    /**
+     * Opens the store in the given directory, creating it if needed, and replays the log.
+     *
+     * @param fsync           true to force the log to disk on every write, otherwise the writes since the last
+     *                        checkpoint survive a crash of the process but not of the machine.
+     * @param initialCapacity the number of records the responders file is created with.
+     */
+    static MappedResponderStore open(Path directory, boolean fsync, int initialCapacity) throws IOException {
+        MappedResponderStore store = new MappedResponderStore(directory, fsync, initialCapacity);
+        try {
+            store.load();
+        } catch (IOException | RuntimeException e) {
+            store.closeFiles();
+            throw e;
+        }
+        return store;
+    }
+
+    private void load() throws IOException {
+        long start = System.currentTimeMillis();
+        ByteBuffer records = responders.buffer;
+        int capacity = slotCapacity();
+        int lastUsed = -1;
+        for (int slot = 0; slot < capacity; slot++) {
+            int at = offset(slot);
+            long id = records.getLong(at + ID);
+            if (id == 0) {
+                continue;
+            }
+            slots.put(id, slot);
+            lastUsed = slot;
+            responderIds.accumulateAndGet(id, Math::max);
+            storedChangeSeq.accumulateAndGet(records.getLong(at + CHANGE_SEQ), Math::max);
+            // strings past the end of the live ones were not referenced anymore, and are overwritten
+            stringsEnd = Math.max(stringsEnd, stringEnd(records.getLong(at + NAME)));
+            stringsEnd = Math.max(stringsEnd, stringEnd(records.getLong(at + PHONE_NUMBER)));
+            if (records.get(at + LATITUDE) == STRING_DECIMAL) {
+                stringsEnd = Math.max(stringsEnd, stringEnd(records.getLong(at + LATITUDE + 5)));
+            }
+            if (records.get(at + LONGITUDE) == STRING_DECIMAL) {
+                stringsEnd = Math.max(stringsEnd, stringEnd(records.getLong(at + LONGITUDE + 5)));
+            }
+        }
+        nextSlot = lastUsed + 1;
+        for (int slot = 0; slot < nextSlot; slot++) {
+            if (records.getLong(offset(slot) + ID) == 0) {
+                freeSlots.add(slot);
+            }
+        }
+        for (int at = HEADER_SIZE; at + TOMBSTONE_SIZE <= tombstoneFile.buffer.capacity(); at += TOMBSTONE_SIZE) {
+            long id = tombstoneFile.buffer.getLong(at);
+            if (id == 0) {
+                break;
+            }
+            long changeSeq = tombstoneFile.buffer.getLong(at + 8);
+            tombstones.put(id, new ResponderTombstoneEntity.Builder(id, changeSeq).build());
+            responderIds.accumulateAndGet(id, Math::max);
+            storedChangeSeq.accumulateAndGet(changeSeq, Math::max);
+        }
+
+        int replayed = 0;
+        Path walPath = directory.resolve(WAL_FILE);
+        if (Files.exists(walPath)) {
+            byte[] bytes = Files.readAllBytes(walPath);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.remaining() >= 8) {
+                int length = buffer.getInt();
+                int crc = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                CRC32 check = new CRC32();
+                check.update(bytes, buffer.position(), length);
+                if ((int) check.getValue() != crc) {
+                    break;
+                }
+                apply(ByteBuffer.wrap(bytes, buffer.position(), length).slice());
+                buffer.position(buffer.position() + length);
+                replayed++;
+            }
+            if (buffer.hasRemaining()) {
+                log.warn("Ignoring the incomplete end of " + walPath + " after " + replayed + " entries");
+            }
+        }
+        changeSeqs.set(storedChangeSeq.get());
+        checkpoint();
+        log.info("Opened responder store " + directory + " with " + slots.size() + " responders, " + replayed
+                + " log entries replayed in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    long nextResponderId() {
+        return responderIds.incrementAndGet();
+    }
+
+    long nextChangeSeq() {
+        return changeSeqs.incrementAndGet();
+    }
+
+    long nextOutboxId() {
+        return outboxIds.incrementAndGet();
+    }
+
+    ResponderEntity get(long id) {
+        lock.readLock().lock();
+        try {
+            Integer slot = slots.get(id);
+            return slot == null ? null : read(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the responders matching the filter, in no particular order.
+     */
+    List<ResponderEntity> find(Predicate<ResponderEntity> filter) {
+        lock.readLock().lock();
+        try {
+            List<ResponderEntity> found = new ArrayList<>();
+            for (int slot : slots.values()) {
+                ResponderEntity responder = read(slot);
+                if (filter.test(responder)) {
+                    found.add(responder);
+                }
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the highest change sequence number stored, which can be below the last number taken.
+     */
+    long maxChangeSeq() {
+        return storedChangeSeq.get();
+    }
+
+    List<ResponderTombstoneEntity> tombstones(long since, long upTo) {
+        lock.readLock().lock();
+        try {
+            return tombstones.values().stream()
+                    .filter(t -> t.getChangeSeq() > since && t.getChangeSeq() <= upTo)
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    List<OutboxEventEntity> outboxEvents(int max) {
+        lock.readLock().lock();
+        try {
+            return outbox.values().stream().limit(max).collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    ProcessedMessageEntity processedMessage(String messageId) {
+        lock.readLock().lock();
+        try {
+            return processedMessages.get(messageId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores the responders, replacing the records of the same ids, with a single write to the log.
+     */
+    void putAll(Collection<ResponderEntity> changed) {
+        write(batch -> changed.forEach(r -> writeResponder(batch.begin(PUT), r)), () -> changed.forEach(this::applyPut));
+    }
+
+    /**
+     * Deletes the responders, and leaves a tombstone with the given change sequence number for each of them.
+     */
+    void deleteAll(Collection<Long> ids, long changeSeq) {
+        write(batch -> ids.forEach(id -> {
+            DataOutputStream out = batch.begin(DELETE);
+            writeLong(out, id);
+            writeLong(out, changeSeq);
+        }), () -> ids.forEach(id -> applyDelete(id, changeSeq)));
+    }
+
+    void addOutboxEvent(OutboxEventEntity event) {
+        write(batch -> writeOutboxEvent(batch.begin(OUTBOX_ADD), event), () -> applyOutboxEvent(event));
+    }
+
+    void deleteOutboxEvents(Collection<Long> ids) {
+        write(batch -> ids.forEach(id -> writeLong(batch.begin(OUTBOX_DELETE), id)), () -> ids.forEach(outbox::remove));
+    }
+
+    void putProcessedMessage(ProcessedMessageEntity message) {
+        write(batch -> writeProcessedMessage(batch.begin(MESSAGE), message),
+                () -> processedMessages.put(message.getMessageId(), message));
+    }
+
+    /**
+     * @return the number of processed messages deleted.
+     */
+    int deleteProcessedMessages(long before) {
+        lock.writeLock().lock();
+        try {
+            List<String> expired = processedMessages.values().stream().filter(m -> m.getProcessedAt() < before)
+                    .map(ProcessedMessageEntity::getMessageId).collect(Collectors.toList());
+            if (!expired.isEmpty()) {
+                write(batch -> expired.forEach(id -> writeString(batch.begin(MESSAGE_DELETE), id)),
+                        () -> expired.forEach(processedMessages::remove));
+            }
+            return expired.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forces the data files to disk and starts a new log, unless nothing was written since the last checkpoint. The
+     * string heap is compacted first when most of it is garbage.
+     */
+    void checkpoint() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (walSize == checkpointWalSize) {
+                return;
+            }
+            long live = liveStringBytes();
+            long garbage = stringsEnd - HEADER_SIZE - live;
+            if (garbage > live && garbage >= MIN_COMPACTION_GARBAGE) {
+                compactStrings();
+            }
+            responders.buffer.force();
+            strings.buffer.force();
+            tombstoneFile.buffer.force();
+
+            replaceLog(logState());
+            checkpointWalSize = walSize;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the size of the string heap, including the strings which are not referenced anymore.
+     */
+    long stringHeapSize() {
+        lock.readLock().lock();
+        try {
+            return stringsEnd - HEADER_SIZE;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the strings of the responders from the start of the heap. The log is first replaced with one holding
+     * the full state of the responders, so that a crash while the records are rewritten is recovered by replaying it:
+     * replay keeps a reference only if it still holds the same string, and appends the string otherwise.
+     */
+    private void compactStrings() throws IOException {
+        long start = System.currentTimeMillis();
+        long before = stringsEnd - HEADER_SIZE;
+        List<Integer> live = new ArrayList<>(slots.values());
+        List<ResponderEntity> all = live.stream().map(this::read).collect(Collectors.toList());
+        LogBatch batch = logState();
+        all.forEach(r -> writeResponder(batch.begin(PUT), r));
+        replaceLog(batch);
+
+        ByteBuffer records = responders.buffer;
+        stringsEnd = HEADER_SIZE;
+        for (int i = 0; i < live.size(); i++) {
+            int at = offset(live.get(i));
+            ResponderEntity responder = all.get(i);
+            records.putLong(at + NAME, putString(-1, responder.getName()));
+            records.putLong(at + PHONE_NUMBER, putString(-1, responder.getPhoneNumber()));
+            putDecimal(at + LATITUDE, true, responder.getCurrentPositionLatitude());
+            putDecimal(at + LONGITUDE, true, responder.getCurrentPositionLongitude());
+        }
+        log.info("Compacted the string heap of " + directory + " from " + before + " to " + (stringsEnd - HEADER_SIZE)
+                + " bytes in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * @return the number of bytes of the heap taken by the strings the records refer to.
+     */
+    private long liveStringBytes() {
+        ByteBuffer records = responders.buffer;
+        long live = 0;
+        for (int slot : slots.values()) {
+            int at = offset(slot);
+            live += stringSize(records.getLong(at + NAME)) + stringSize(records.getLong(at + PHONE_NUMBER));
+            if (records.get(at + LATITUDE) == STRING_DECIMAL) {
+                live += stringSize(records.getLong(at + LATITUDE + 5));
+            }
+            if (records.get(at + LONGITUDE) == STRING_DECIMAL) {
+                live += stringSize(records.getLong(at + LONGITUDE + 5));
+            }
+        }
+        return live;
+    }
+
+    private long stringSize(long ref) {
+        long end = stringEnd(ref);
+        return end > ref ? end - ref : 0;
+    }
+
+    /**
+     * @return the log entries of the outbox events and the processed messages.
+     */
+    private LogBatch logState() {
+        LogBatch batch = new LogBatch();
+        outbox.values().forEach(event -> writeOutboxEvent(batch.begin(OUTBOX_ADD), event));
+        processedMessages.values().forEach(message -> writeProcessedMessage(batch.begin(MESSAGE), message));
+        return batch;
+    }
+
+    /**
+     * Replaces the log with the entries, through a temporary file moved over it.
+     */
+    private void replaceLog(LogBatch batch) throws IOException {
+        Path walPath = directory.resolve(WAL_FILE);
+        Path temp = directory.resolve(WAL_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, batch.toByteBuffer());
+            channel.force(true);
+        }
+        if (wal != null) {
+            wal.close();
+        }
+        Files.move(temp, walPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        wal = FileChannel.open(walPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        walSize = wal.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkpoint();
+        } finally {
+            closeFiles();
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void closeFiles() throws IOException {
+        if (wal != null) {
+            wal.close();
+        }
+        responders.channel.close();
+        strings.channel.close();
+        tombstoneFile.channel.close();
+    }
+
+    private interface LogWriter {
+        void write(LogBatch batch);
+    }
+
+    /**
+     * Appends the entries to the log, then applies them, under the write lock.
+     */
+    private void write(LogWriter writer, Runnable apply) {
+        lock.writeLock().lock();
+        try {
+            LogBatch batch = new LogBatch();
+            writer.write(batch);
+            ByteBuffer entries = batch.toByteBuffer();
+            int size = entries.remaining();
+            writeFully(wal, entries);
+            if (fsync) {
+                wal.force(false);
+            }
+            walSize += size;
+            apply.run();
+        } catch (IOException e) {
+            throw new IllegalStateException("Error writing to the responder store " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(ByteBuffer entry) throws IOException {
+        try {
+            byte type = entry.get();
+            switch (type) {
+                case PUT:
+                    applyPut(readResponder(entry));
+                    break;
+                case DELETE:
+                    applyDelete(entry.getLong(), entry.getLong());
+                    break;
+                case OUTBOX_ADD:
+                    applyOutboxEvent(new OutboxEventEntity.Builder(entry.getLong(), readString(entry), readString(entry)).build());
+                    break;
+                case OUTBOX_DELETE:
+                    outbox.remove(entry.getLong());
+                    break;
+                case MESSAGE:
+                    ProcessedMessageEntity message = new ProcessedMessageEntity.Builder(readString(entry), entry.getLong()).build();
+                    processedMessages.put(message.getMessageId(), message);
+                    break;
+                case MESSAGE_DELETE:
+                    processedMessages.remove(readString(entry));
+                    break;
+                default:
+                    throw new IOException("Invalid log entry type " + type + " in " + directory.resolve(WAL_FILE));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Invalid log entry in " + directory.resolve(WAL_FILE), e);
+        }
+    }
+
+    private void applyPut(ResponderEntity responder) {
+        long id = responder.getId();
+        Integer slot = slots.get(id);
+        boolean created = slot == null;
+        if (created) {
+            slot = freeSlots.isEmpty() ? nextSlot++ : freeSlots.poll();
+            responders.ensure(offset(slot) + RECORD_SIZE);
+        }
+        ByteBuffer records = responders.buffer;
+        int at = offset(slot);
+        // the strings of a free slot belong to a deleted responder, and may have been overwritten
+        long nameRef = putString(created ? -1 : records.getLong(at + NAME), responder.getName());
+        long phoneNumberRef = putString(created ? -1 : records.getLong(at + PHONE_NUMBER), responder.getPhoneNumber());
+        putDecimal(at + LATITUDE, created, responder.getCurrentPositionLatitude());
+        putDecimal(at + LONGITUDE, created, responder.getCurrentPositionLongitude());
+        records.putLong(at + VERSION, responder.getVersion());
+        records.putLong(at + CHANGE_SEQ, responder.getChangeSeq());
+        records.putLong(at + NAME, nameRef);
+        records.putLong(at + PHONE_NUMBER, phoneNumberRef);
+        records.put(at + BOAT_CAPACITY, (byte) (responder.getBoatCapacity() == null ? 0 : 1));
+        records.putInt(at + BOAT_CAPACITY + 1, responder.getBoatCapacity() == null ? 0 : responder.getBoatCapacity());
+        records.put(at + MEDICAL_KIT, toByte(responder.getMedicalKit()));
+        records.put(at + AVAILABLE, toByte(responder.isAvailable()));
+        records.put(at + PERSON, toByte(responder.isPerson()));
+        records.put(at + ENROLLED, toByte(responder.isEnrolled()));
+        records.putLong(at + ID, id);
+        slots.put(id, slot);
+        responderIds.accumulateAndGet(id, Math::max);
+        storedChangeSeq.accumulateAndGet(responder.getChangeSeq(), Math::max);
+    }
+
+    private void applyDelete(long id, long changeSeq) {
+        Integer slot = slots.remove(id);
+        if (slot != null) {
+            int at = offset(slot);
+            for (int i = 0; i < RECORD_SIZE; i += 8) {
+                responders.buffer.putLong(at + i, 0);
+            }
+            freeSlots.add(slot);
+        }
+        if (!tombstones.containsKey(id)) {
+            int at = HEADER_SIZE + tombstones.size() * TOMBSTONE_SIZE;
+            tombstoneFile.ensure(at + TOMBSTONE_SIZE);
+            tombstoneFile.buffer.putLong(at + 8, changeSeq);
+            tombstoneFile.buffer.putLong(at, id);
+            tombstones.put(id, new ResponderTombstoneEntity.Builder(id, changeSeq).build());
+        }
+        responderIds.accumulateAndGet(id, Math::max);
+        storedChangeSeq.accumulateAndGet(changeSeq, Math::max);
+    }
+
+    private void applyOutboxEvent(OutboxEventEntity event) {
+        outbox.put(event.getId(), event);
+        outboxIds.accumulateAndGet(event.getId(), Math::max);
+    }
+
+    private ResponderEntity read(int slot) {
+        ByteBuffer records = responders.buffer;
+        int at = offset(slot);
+        return new ResponderEntity.Builder(records.getLong(at + ID), records.getLong(at + VERSION))
+                .changeSeq(records.getLong(at + CHANGE_SEQ))
+                .name(getString(records.getLong(at + NAME)))
+                .phoneNumber(getString(records.getLong(at + PHONE_NUMBER)))
+                .currentPositionLatitude(getDecimal(at + LATITUDE))
+                .currentPositionLongitude(getDecimal(at + LONGITUDE))
+                .boatCapacity(records.get(at + BOAT_CAPACITY) == 0 ? null : records.getInt(at + BOAT_CAPACITY + 1))
+                .medicalKit(toBoolean(records.get(at + MEDICAL_KIT)))
+                .available(toBoolean(records.get(at + AVAILABLE)))
+                .person(toBoolean(records.get(at + PERSON)))
+                .enrolled(toBoolean(records.get(at + ENROLLED)))
+                .build();
+    }
+
+    /**
+     * Writes a decimal as a flag, a scale and an unscaled value, or a reference to its string form when the unscaled
+     * value does not fit a long.
+     */
+    private void putDecimal(int at, boolean created, BigDecimal value) {
+        ByteBuffer records = responders.buffer;
+        if (value == null) {
+            records.put(at, NO_DECIMAL);
+            records.putInt(at + 1, 0);
+            records.putLong(at + 5, 0);
+        } else if (value.unscaledValue().bitLength() < 64) {
+            records.put(at, LONG_DECIMAL);
+            records.putInt(at + 1, value.scale());
+            records.putLong(at + 5, value.unscaledValue().longValue());
+        } else {
+            long current = !created && records.get(at) == STRING_DECIMAL ? records.getLong(at + 5) : -1;
+            long ref = putString(current, value.toString());
+            records.put(at, STRING_DECIMAL);
+            records.putInt(at + 1, 0);
+            records.putLong(at + 5, ref);
+        }
+    }
+
+    private BigDecimal getDecimal(int at) {
+        ByteBuffer records = responders.buffer;
+        switch (records.get(at)) {
+            case LONG_DECIMAL:
+                return BigDecimal.valueOf(records.getLong(at + 5), records.getInt(at + 1));
+            case STRING_DECIMAL:
+                return new BigDecimal(getString(records.getLong(at + 5)));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the reference of the string in the heap, the current reference if it holds the same string, or -1 for
+     * null.
+     */
+    private long putString(long current, String value) {
+        if (value == null) {
+            return -1;
+        }
+        if (current >= 0 && value.equals(getString(current))) {
+            return current;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        long ref = stringsEnd;
+        strings.ensure(ref + 4 + bytes.length);
+        strings.buffer.putInt((int) ref, bytes.length);
+        ByteBuffer target = strings.buffer.duplicate();
+        target.position((int) ref + 4);
+        target.put(bytes);
+        stringsEnd = ref + 4 + bytes.length;
+        return ref;
+    }
+
+    private String getString(long ref) {
+        if (ref < HEADER_SIZE || ref + 4 > strings.buffer.capacity()) {
+            return null;
+        }
+        int length = strings.buffer.getInt((int) ref);
+        if (length < 0 || ref + 4 + length > strings.buffer.capacity()) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer source = strings.buffer.duplicate();
+        source.position((int) ref + 4);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the end of the string at the given reference, or the start of the heap if the reference is not valid.
+     */
+    private long stringEnd(long ref) {
+        if (ref < HEADER_SIZE || ref + 4 > strings.buffer.capacity()) {
+            return HEADER_SIZE;
+        }
+        int length = strings.buffer.getInt((int) ref);
+        return length < 0 || ref + 4 + length > strings.buffer.capacity() ? HEADER_SIZE : ref + 4 + length;
+    }
+
+    private int slotCapacity() {
+        return (responders.buffer.capacity() - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    private static byte toByte(Boolean value) {
+        return (byte) (value == null ? -1 : value ? 1 : 0);
+    }
+
+    private static Boolean toBoolean(byte value) {
+        return value < 0 ? null : value == 1;
+    }
+
+    private static void writeResponder(DataOutputStream out, ResponderEntity responder) {
+        writeLong(out, responder.getId());
+        writeLong(out, responder.getVersion());
+        writeLong(out, responder.getChangeSeq());
+        writeString(out, responder.getName());
+        writeString(out, responder.getPhoneNumber());
+        writeString(out, responder.getCurrentPositionLatitude() == null ? null : responder.getCurrentPositionLatitude().toString());
+        writeString(out, responder.getCurrentPositionLongitude() == null ? null : responder.getCurrentPositionLongitude().toString());
+        try {
+            out.writeBoolean(responder.getBoatCapacity() != null);
+            out.writeInt(responder.getBoatCapacity() == null ? 0 : responder.getBoatCapacity());
+            out.writeByte(toByte(responder.getMedicalKit()));
+            out.writeByte(toByte(responder.isAvailable()));
+            out.writeByte(toByte(responder.isPerson()));
+            out.writeByte(toByte(responder.isEnrolled()));
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    private static ResponderEntity readResponder(ByteBuffer entry) {
+        ResponderEntity.Builder builder = new ResponderEntity.Builder(entry.getLong(), entry.getLong())
+                .changeSeq(entry.getLong())
+                .name(readString(entry))
+                .phoneNumber(readString(entry));
+        String latitude = readString(entry);
+        String longitude = readString(entry);
+        boolean hasBoatCapacity = entry.get() != 0;
+        int boatCapacity = entry.getInt();
+        return builder
+                .currentPositionLatitude(latitude == null ? null : new BigDecimal(latitude))
+                .currentPositionLongitude(longitude == null ? null : new BigDecimal(longitude))
+                .boatCapacity(hasBoatCapacity ? boatCapacity : null)
+                .medicalKit(toBoolean(entry.get()))
+                .available(toBoolean(entry.get()))
+                .person(toBoolean(entry.get()))
+                .enrolled(toBoolean(entry.get()))
+                .build();
+    }
+
+    private static void writeOutboxEvent(DataOutputStream out, OutboxEventEntity event) {
+        writeLong(out, event.getId());
+        writeString(out, event.getMessageKey());
+        writeString(out, event.getPayload());
+    }
+
+    private static void writeProcessedMessage(DataOutputStream out, ProcessedMessageEntity message) {
+        writeString(out, message.getMessageId());
+        writeLong(out, message.getProcessedAt());
+    }
+
+    private static void writeLong(DataOutputStream out, long value) {
+        try {
+            out.writeLong(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) {
+        try {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    private static String readString(ByteBuffer entry) {
+        int length = entry.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        entry.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Log entries framed with their length and CRC32.
+     */
+    private static class LogBatch {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private final DataOutputStream framed = new DataOutputStream(bytes);
+
+        private final ByteArrayOutputStream entry = new ByteArrayOutputStream();
+
+        private final DataOutputStream out = new DataOutputStream(entry);
+
+        private boolean open;
+
+        DataOutputStream begin(byte type) {
+            end();
+            entry.reset();
+            open = true;
+            try {
+                out.writeByte(type);
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            return out;
+        }
+
+        ByteBuffer toByteBuffer() {
+            end();
+            return ByteBuffer.wrap(bytes.toByteArray());
+        }
+
+        private void end() {
+            if (!open) {
+                return;
+            }
+            open = false;
+            byte[] payload = entry.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            try {
+                framed.writeInt(payload.length);
+                framed.writeInt((int) crc.getValue());
+                framed.write(payload);
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * A file mapped in full, with a header holding its magic number and format version, which doubles in size when
+     * it is full.
+     */
+    private static class MappedFile {
+
+        private final Path path;
+
+        private final FileChannel channel;
+
+        private MappedByteBuffer buffer;
+
+        MappedFile(Path path, int magic, long initialSize) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                if (channel.size() == 0) {
+                    map(initialSize);
+                    buffer.putInt(0, magic);
+                    buffer.putInt(4, FORMAT_VERSION);
+                } else {
+                    map(channel.size());
+                    if (channel.size() < HEADER_SIZE || buffer.getInt(0) != magic) {
+                        throw new IOException(path + " is not a responder store file");
+                    }
+                    if (buffer.getInt(4) != FORMAT_VERSION) {
+                        throw new IOException("Unsupported format version " + buffer.getInt(4) + " of " + path);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        void ensure(long size) {
+            if (size <= buffer.capacity()) {
+                return;
+            }
+            long grown = Math.min(Math.max(size, 2L * buffer.capacity()), Integer.MAX_VALUE);
+            try {
+                if (grown < size) {
+                    throw new IOException(path + " cannot grow over 2 GB");
+                }
+                map(grown);
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+
+        private void map(long size) throws IOException {
+            // mapping past the end of the file extends it
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.redhat.cajun.navy.responder.dao;
+
+import java.util.Comparator;
+
+import com.redhat.cajun.navy.responder.entity.ResponderEntity;
+
+/**
+ * Query of {@link ResponderDao#nearestAvailableResponders(NearestQuery)}.
+ * <p>
+ * Responders are ranked by the cosine of their central angle to the point, from the spherical law of cosines, which
+ * decreases with the distance and only needs <code>sin</code>, <code>cos</code> and <code>radians</code>, so that the
+ * JPA engine orders and limits the rows in the database.
+ */
+public class NearestQuery {
+
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private final double latitude;
+
+    private final double longitude;
+
+    private final int limit;
+
+    private final double radiusKm;
+
+    private final Integer minBoatCapacity;
+
+    private final boolean medicalKit;
+
+    /**
+     * @param limit           the maximum number of responders to return.
+     * @param radiusKm        the maximum distance to the point, in kilometers.
+     * @param minBoatCapacity the minimum boat capacity, or null.
+     * @param medicalKit      if true, only responders with a medical kit are returned.
+     */
+    public NearestQuery(double latitude, double longitude, int limit, double radiusKm, Integer minBoatCapacity,
+                        boolean medicalKit) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.limit = limit;
+        this.radiusKm = radiusKm;
+        this.minBoatCapacity = minBoatCapacity;
+        this.medicalKit = medicalKit;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public double getRadiusKm() {
+        return radiusKm;
+    }
+
+    public Integer getMinBoatCapacity() {
+        return minBoatCapacity;
+    }
+
+    public boolean isMedicalKit() {
+        return medicalKit;
+    }
+
+    double sinLatitude() {
+        return Math.sin(Math.toRadians(latitude));
+    }
+
+    double cosLatitude() {
+        return Math.cos(Math.toRadians(latitude));
+    }
+
+    double longitudeRadians() {
+        return Math.toRadians(longitude);
+    }
+
+    /**
+     * @return the lowest cosine of a responder within the radius, slightly lowered so that rounding does not drop a
+     * responder on the boundary, or -2 if the radius covers the whole earth.
+     */
+    double minCosine() {
+        double angle = radiusKm / EARTH_RADIUS_KM;
+        return angle >= Math.PI ? -2 : Math.cos(angle) - 1e-12;
+    }
+
+    /**
+     * @return true if the responder is available, enrolled, has a position and matches the filters of the query.
+     */
+    boolean matches(ResponderEntity responder) {
+        return Boolean.TRUE.equals(responder.isAvailable()) && Boolean.TRUE.equals(responder.isEnrolled())
+                && responder.getCurrentPositionLatitude() != null && responder.getCurrentPositionLongitude() != null
+                && (minBoatCapacity == null
+                        || (responder.getBoatCapacity() != null && responder.getBoatCapacity() >= minBoatCapacity))
+                && (!medicalKit || Boolean.TRUE.equals(responder.getMedicalKit()))
+                && cosine(responder) >= minCosine();
+    }
+
+    /**
+     * Orders the responders from the nearest, then by id, as the JPA engine does.
+     */
+    Comparator<ResponderEntity> nearestFirst() {
+        return Comparator.comparingDouble((ResponderEntity r) -> -cosine(r)).thenComparingLong(ResponderEntity::getId);
+    }
+
+    private double cosine(ResponderEntity responder) {
+        double lat = Math.toRadians(responder.getCurrentPositionLatitude().doubleValue());
+        double lon = Math.toRadians(responder.getCurrentPositionLongitude().doubleValue());
+        return sinLatitude() * Math.sin(lat) + cosLatitude() * Math.cos(lat) * Math.cos(lon - longitudeRadians());
+    }
+}
@@ -1,95 +1,150 @@
 package com.redhat.cajun.navy.responder.dao;
 
+import java.util.Collection;
 import java.util.List;
-import javax.persistence.EntityManager;
-import javax.persistence.LockModeType;
-import javax.persistence.NonUniqueResultException;
-import javax.persistence.PersistenceContext;
-import javax.persistence.Query;
+import java.util.function.Consumer;
 
+import com.redhat.cajun.navy.responder.entity.OutboxEventEntity;
+import com.redhat.cajun.navy.responder.entity.ProcessedMessageEntity;
 import com.redhat.cajun.navy.responder.entity.ResponderEntity;
-import org.springframework.stereotype.Component;
-
-@Component
-public class ResponderDao {
-
-    @PersistenceContext
-    private EntityManager entityManager;
-
-    public void create(ResponderEntity responder) {
-        entityManager.persist(responder);
-    }
-
-    void deleteAll() {
-        Query deleteAll = entityManager.createQuery("DELETE FROM ResponderEntity");
-        deleteAll.executeUpdate();
-    }
-
-    public ResponderEntity findById(long id) {
-        return entityManager.find(ResponderEntity.class, id, LockModeType.OPTIMISTIC);
-    }
-
-    @SuppressWarnings("unchecked")
-    public ResponderEntity findByName(String name) {
-        Query q = entityManager.createQuery("SELECT r FROM ResponderEntity r WHERE r.name = :name");
-        q.setParameter("name", name);
-        List<ResponderEntity> results = q.getResultList();
-        if (results.isEmpty()) {
-            return null;
-        } else if (results.size() == 1) {
-            return results.get(0);
-        } else {
-            throw new NonUniqueResultException("Found several Responders with name '" + name + "'");
-        }
-    }
-
-    public ResponderEntity merge(ResponderEntity responder) {
-        ResponderEntity r = entityManager.merge(responder);
-        entityManager.flush();
-        return r;
-    }
-
-    @SuppressWarnings("unchecked")
-    public List<ResponderEntity> availableResponders() {
-        return (List<ResponderEntity>) entityManager.createQuery("SELECT r FROM ResponderEntity r WHERE r.available = true and r.enrolled = true")
-                .getResultList();
-    }
-
-    @SuppressWarnings("unchecked")
-    public void reset() {
-        Query select = entityManager.createQuery("SELECT r FROM ResponderEntity r");
-        List<ResponderEntity> results = select.getResultList();
-        results.stream()
-            .map(r -> {
-                ResponderEntity.Builder rb = new ResponderEntity.Builder(r).available(true).enrolled(false);
-                if (r.isPerson()) {
-                    rb.currentPositionLatitude(null).currentPositionLongitude(null);
-                }
-                return rb.build();
-            }).forEach(r -> entityManager.merge(r));
-        entityManager.flush();
-    }
-
-    @SuppressWarnings("unchecked")
-    public void clear() {
-        Query deleteNonPersons = entityManager.createQuery("DELETE FROM ResponderEntity r where r.person = false");
-        deleteNonPersons.executeUpdate();
-        Query persons = entityManager.createQuery("SELECT r FROM ResponderEntity r where r.person = true");
-        List<ResponderEntity> results = persons.getResultList();
-        results.stream()
-                .map(r -> new ResponderEntity.Builder(r).available(true).enrolled(false)
-                        .currentPositionLatitude(null).currentPositionLongitude(null).build())
-                .forEach(r -> entityManager.merge(r));
-        entityManager.flush();
-    }
-
-    public Long enrolledRespondersCount() {
-        return (Long) entityManager.createQuery("SELECT COUNT(r.id) FROM ResponderEntity r WHERE r.enrolled = true").getSingleResult();
-    }
-
-    public Long activeRespondersCount() {
-        return (Long) entityManager
-                .createQuery("SELECT COUNT(r.id) FROM ResponderEntity r WHERE r.enrolled = true AND r.available = false").getSingleResult();
-
-    }
+import com.redhat.cajun.navy.responder.entity.ResponderTombstoneEntity;
+
+/**
+ * Storage of the responders and of the outbox events.
+ * <p>
+ * The storage engine is selected with the <code>responder.storage</code> property: <code>jpa</code> (default),
+ * <code>memory</code> or <code>mapped</code>. All methods must be called within a transaction.
+ * <p>
+ * All the writes to the responders stamp them with the {@link ChangeSequence change sequence number} of the
+ * transaction, and deletions leave a tombstone with that number.
+ * <p>
+ * The tables and sequences used by the database engines besides those of the responders are created by
+ * <code>db/responder-schema.sql</code>.
+ */
+public interface ResponderDao {
+
+    /**
+     * Stores a new responder, and sets its id.
+     */
+    void create(ResponderEntity responder);
+
+    /**
+     * Stores new responders with a single batch of statements, and sets their ids.
+     */
+    void createAll(List<ResponderEntity> responders);
+
+    /**
+     * @return the responder, or null if not found.
+     */
+    ResponderEntity findById(long id);
+
+    /**
+     * Reads several responders with a single query.
+     *
+     * @return the responders found, in no particular order.
+     */
+    List<ResponderEntity> findByIds(Collection<Long> ids);
+
+    /**
+     * @return the responder, or null if not found.
+     * @throws javax.persistence.NonUniqueResultException if several responders have that name.
+     */
+    ResponderEntity findByName(String name);
+
+    /**
+     * Updates a responder.
+     *
+     * @throws javax.persistence.OptimisticLockException if the version of the responder is not the stored version.
+     */
+    ResponderEntity merge(ResponderEntity responder);
+
+    /**
+     * Updates the non null fields of the given responder in a single operation, provided that at least one of them
+     * differs from the stored value.
+     */
+    ResponderUpdateResult conditionalUpdate(ResponderEntity changes);
+
+    /**
+     * Applies {@link #conditionalUpdate(ResponderEntity)} to many responders with as few statements as possible. The
+     * ids must be distinct.
+     *
+     * @return the results in the order of the changes.
+     */
+    List<ResponderUpdateResult> conditionalUpdateAll(List<ResponderEntity> changes);
+
+    List<ResponderEntity> allResponders();
+
+    /**
+     * Passes the responders matching the given flags, null meaning any value, to the action in id order. The
+     * responders are read with a forward-only cursor which fetches <code>fetchSize</code> rows at a time, and are not
+     * kept by the storage engine.
+     */
+    void streamResponders(Boolean enrolled, Boolean available, Boolean person, int fetchSize, Consumer<ResponderEntity> action);
+
+    /**
+     * @return the responders which are available and enrolled.
+     */
+    List<ResponderEntity> availableResponders();
+
+    /**
+     * @return the available and enrolled responders within the radius of the query which match its filters, nearest
+     * first, with ties ordered by id, at most <code>query.getLimit()</code> of them.
+     */
+    List<ResponderEntity> nearestAvailableResponders(NearestQuery query);
+
+    /**
+     * Un-enrolls all the responders and makes them available. The position of the responders which are persons is
+     * cleared.
+     */
+    void reset();
+
+    /**
+     * Deletes the responders which are not persons, and resets the others.
+     */
+    void clear();
+
+    Long enrolledRespondersCount();
+
+    Long activeRespondersCount();
+
+    void createOutboxEvent(OutboxEventEntity event);
+
+    /**
+     * Returns the oldest events of the outbox, locked until the end of the transaction so that concurrent relays
+     * do not send them twice.
+     */
+    List<OutboxEventEntity> outboxEvents(int max);
+
+    void deleteOutboxEvents(List<Long> ids);
+
+    /**
+     * Records a processed command message, replacing an earlier record of the same message.
+     */
+    void createProcessedMessage(ProcessedMessageEntity message);
+
+    /**
+     * @return true if the message was recorded as processed at or after the given time.
+     */
+    boolean processedMessageExists(String messageId, long since);
+
+    /**
+     * Deletes the records of the messages processed before the given time.
+     */
+    int deleteProcessedMessages(long before);
+
+    /**
+     * @return the highest change sequence number of the responders and the tombstones, or 0 if there is none.
+     */
+    long maxChangeSeq();
+
+    /**
+     * @return the responders with a change sequence number in <code>(since, upTo]</code>, ordered by change sequence
+     * number and id.
+     */
+    List<ResponderEntity> changedResponders(long since, long upTo, int max);
+
+    /**
+     * @return the tombstones with a change sequence number in <code>(since, upTo]</code>.
+     */
+    List<ResponderTombstoneEntity> tombstones(long since, long upTo);
 }
@@ -0,0 +1,195 @@
+package com.redhat.cajun.navy.responder.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.cajun.navy.responder.entity.ResponderEntity;
+
+/**
+ * Hand written SQL of the JPA storage engine, for the statements JPQL cannot express.
+ */
+final class ResponderSql {
+
+    static final String COLUMNS = "responder_id, responder_name, responder_phone_number, responder_current_gps_lat, "
+            + "responder_current_gps_long, boat_capacity, has_medical_kit, available, person, enrolled, version, change_seq";
+
+    private static final String[] UPDATABLE_COLUMNS = {"responder_name", "responder_phone_number",
+            "responder_current_gps_lat", "responder_current_gps_long", "boat_capacity", "has_medical_kit", "available",
+            "person", "enrolled"};
+
+    private static final String[] UPDATABLE_COLUMN_TYPES = {"varchar", "varchar", "numeric", "numeric", "integer",
+            "boolean", "boolean", "boolean", "boolean"};
+
+    private static final int[] UPDATABLE_COLUMN_SQL_TYPES = {Types.VARCHAR, Types.VARCHAR, Types.NUMERIC,
+            Types.NUMERIC, Types.INTEGER, Types.BOOLEAN, Types.BOOLEAN, Types.BOOLEAN, Types.BOOLEAN};
+
+    /**
+     * Locks the row, updates the non null fields if at least one of them differs from the current value, and returns
+     * the row before the update and, if it was updated, the row after the update. PostgreSQL only.
+     */
+    private static final String CONDITIONAL_UPDATE = conditionalUpdateStatement();
+
+    /**
+     * Rows updated by one statement of {@link #conditionalUpdateAll}, which keeps the number of parameters well below
+     * the limit of PostgreSQL.
+     */
+    private static final int MAX_UPDATE_ROWS = 1000;
+
+    private ResponderSql() {
+    }
+
+    static ResponderUpdateResult conditionalUpdate(Connection connection, ResponderEntity changes, long changeSeq) throws SQLException {
+        Object[] values = updatableValues(changes);
+        try (PreparedStatement ps = connection.prepareStatement(CONDITIONAL_UPDATE)) {
+            int index = 1;
+            ps.setLong(index++, changes.getId());
+            for (int i = 0; i < values.length; i++) {
+                ps.setObject(index++, values[i], UPDATABLE_COLUMN_SQL_TYPES[i]);
+            }
+            ps.setLong(index++, changeSeq);
+            for (int i = 0; i < values.length; i++) {
+                ps.setObject(index++, values[i], UPDATABLE_COLUMN_SQL_TYPES[i]);
+                ps.setObject(index++, values[i], UPDATABLE_COLUMN_SQL_TYPES[i]);
+            }
+            ResponderEntity previous = null;
+            ResponderEntity current = null;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if ("previous".equals(rs.getString("row_type"))) {
+                        previous = toEntity(rs);
+                    } else {
+                        current = toEntity(rs);
+                    }
+                }
+            }
+            return updateResult(previous, current);
+        }
+    }
+
+    /**
+     * Same as {@link #conditionalUpdate(Connection, ResponderEntity, long)} for many responders, with one statement
+     * per {@link #MAX_UPDATE_ROWS} responders. The rows are locked in id order. The ids must be distinct.
+     *
+     * @return the results in the order of the changes.
+     */
+    static List<ResponderUpdateResult> conditionalUpdateAll(Connection connection, List<ResponderEntity> changes,
+                                                            long changeSeq) throws SQLException {
+        List<ResponderUpdateResult> results = new ArrayList<>(changes.size());
+        for (int from = 0; from < changes.size(); from += MAX_UPDATE_ROWS) {
+            List<ResponderEntity> rows = changes.subList(from, Math.min(from + MAX_UPDATE_ROWS, changes.size()));
+            Map<Long, ResponderEntity> previous = new HashMap<>();
+            Map<Long, ResponderEntity> current = new HashMap<>();
+            try (PreparedStatement ps = connection.prepareStatement(conditionalUpdateAllStatement(rows.size()))) {
+                int index = 1;
+                for (ResponderEntity row : rows) {
+                    ps.setLong(index++, row.getId());
+                    index = bindUpdatableValues(ps, index, row);
+                }
+                ps.setLong(index, changeSeq);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ResponderEntity entity = toEntity(rs);
+                        ("previous".equals(rs.getString("row_type")) ? previous : current).put(entity.getId(), entity);
+                    }
+                }
+            }
+            rows.forEach(row -> results.add(updateResult(previous.get(row.getId()), current.get(row.getId()))));
+        }
+        return results;
+    }
+
+    private static ResponderUpdateResult updateResult(ResponderEntity previous, ResponderEntity current) {
+        if (previous == null) {
+            return new ResponderUpdateResult(ResponderUpdateResult.Outcome.NOT_FOUND, null, null);
+        } else if (current == null) {
+            return new ResponderUpdateResult(ResponderUpdateResult.Outcome.UNCHANGED, previous, previous);
+        }
+        return new ResponderUpdateResult(ResponderUpdateResult.Outcome.UPDATED, previous, current);
+    }
+
+    /**
+     * Binds the updatable fields of a responder, in the order of {@link #UPDATABLE_COLUMNS}, starting at the given
+     * index.
+     *
+     * @return the index of the next parameter.
+     */
+    static int bindUpdatableValues(PreparedStatement ps, int index, ResponderEntity responder) throws SQLException {
+        Object[] values = updatableValues(responder);
+        for (int i = 0; i < values.length; i++) {
+            ps.setObject(index++, values[i], UPDATABLE_COLUMN_SQL_TYPES[i]);
+        }
+        return index;
+    }
+
+    static ResponderEntity toEntity(ResultSet rs) throws SQLException {
+        return new ResponderEntity.Builder(rs.getLong("responder_id"), rs.getLong("version"))
+                .name(rs.getString("responder_name"))
+                .phoneNumber(rs.getString("responder_phone_number"))
+                .currentPositionLatitude(rs.getBigDecimal("responder_current_gps_lat"))
+                .currentPositionLongitude(rs.getBigDecimal("responder_current_gps_long"))
+                .boatCapacity(rs.getObject("boat_capacity", Integer.class))
+                .medicalKit(rs.getObject("has_medical_kit", Boolean.class))
+                .available(rs.getObject("available", Boolean.class))
+                .person(rs.getObject("person", Boolean.class))
+                .enrolled(rs.getObject("enrolled", Boolean.class))
+                .changeSeq(rs.getLong("change_seq"))
+                .build();
+    }
+
+    private static Object[] updatableValues(ResponderEntity responder) {
+        return new Object[]{responder.getName(), responder.getPhoneNumber(), responder.getCurrentPositionLatitude(),
+                responder.getCurrentPositionLongitude(), responder.getBoatCapacity(), responder.getMedicalKit(),
+                responder.isAvailable(), responder.isPerson(), responder.isEnrolled()};
+    }
+
+    private static String conditionalUpdateStatement() {
+        StringBuilder set = new StringBuilder();
+        StringBuilder changed = new StringBuilder();
+        for (int i = 0; i < UPDATABLE_COLUMNS.length; i++) {
+            String column = UPDATABLE_COLUMNS[i];
+            String parameter = "CAST(? AS " + UPDATABLE_COLUMN_TYPES[i] + ")";
+            set.append(column).append(" = COALESCE(").append(parameter).append(", r.").append(column).append("), ");
+            changed.append(i == 0 ? "" : " OR ")
+                    .append("(").append(parameter).append(" IS NOT NULL AND ").append(parameter)
+                    .append(" IS DISTINCT FROM r.").append(column).append(")");
+        }
+        return "WITH cur AS (SELECT * FROM responder WHERE responder_id = ? FOR UPDATE), "
+                + "upd AS (UPDATE responder r SET " + set + "change_seq = ?, version = r.version + 1 "
+                + "FROM cur WHERE r.responder_id = cur.responder_id AND (" + changed + ") RETURNING r.*) "
+                + "SELECT 'previous' AS row_type, cur.* FROM cur "
+                + "UNION ALL SELECT 'current' AS row_type, upd.* FROM upd";
+    }
+
+    private static String conditionalUpdateAllStatement(int rows) {
+        StringBuilder columns = new StringBuilder("responder_id");
+        StringBuilder row = new StringBuilder("(CAST(? AS bigint)");
+        StringBuilder set = new StringBuilder();
+        StringBuilder changed = new StringBuilder();
+        for (int i = 0; i < UPDATABLE_COLUMNS.length; i++) {
+            String column = UPDATABLE_COLUMNS[i];
+            columns.append(", ").append(column);
+            row.append(", CAST(? AS ").append(UPDATABLE_COLUMN_TYPES[i]).append(")");
+            set.append(column).append(" = COALESCE(chg.").append(column).append(", r.").append(column).append("), ");
+            changed.append(i == 0 ? "" : " OR ")
+                    .append("(chg.").append(column).append(" IS NOT NULL AND chg.").append(column)
+                    .append(" IS DISTINCT FROM r.").append(column).append(")");
+        }
+        row.append(")");
+        return "WITH chg (" + columns + ") AS (VALUES " + String.join(", ", Collections.nCopies(rows, row)) + "), "
+                + "cur AS (SELECT r.* FROM responder r JOIN chg ON r.responder_id = chg.responder_id "
+                + "ORDER BY r.responder_id FOR UPDATE OF r), "
+                + "upd AS (UPDATE responder r SET " + set + "change_seq = ?, version = r.version + 1 "
+                + "FROM chg JOIN cur ON cur.responder_id = chg.responder_id "
+                + "WHERE r.responder_id = chg.responder_id AND (" + changed + ") RETURNING r.*) "
+                + "SELECT 'previous' AS row_type, cur.* FROM cur "
+                + "UNION ALL SELECT 'current' AS row_type, upd.* FROM upd";
+    }
+}
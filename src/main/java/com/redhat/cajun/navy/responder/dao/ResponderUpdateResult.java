@@ -0,0 +1,43 @@
+package com.redhat.cajun.navy.responder.dao;
+
+import com.redhat.cajun.navy.responder.entity.ResponderEntity;
+
+/**
+ * Result of {@link ResponderDao#conditionalUpdate(ResponderEntity)}.
+ */
+public class ResponderUpdateResult {
+
+    public enum Outcome {
+        NOT_FOUND, UNCHANGED, UPDATED
+    }
+
+    private final Outcome outcome;
+
+    private final ResponderEntity previous;
+
+    private final ResponderEntity current;
+
+    public ResponderUpdateResult(Outcome outcome, ResponderEntity previous, ResponderEntity current) {
+        this.outcome = outcome;
+        this.previous = previous;
+        this.current = current;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * @return the responder before the update, or null if it was not found.
+     */
+    public ResponderEntity getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @return the responder after the update, which is the previous state if it was unchanged.
+     */
+    public ResponderEntity getCurrent() {
+        return current;
+    }
+}
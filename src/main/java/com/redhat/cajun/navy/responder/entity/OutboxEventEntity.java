@@ -0,0 +1,62 @@
+package com.redhat.cajun.navy.responder.entity;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+@Entity
+@Access(AccessType.FIELD)
+@SequenceGenerator(name="OutboxSeq", sequenceName="responder_outbox_sequence")
+@Table(name = "responder_outbox")
+public class OutboxEventEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO, generator="OutboxSeq")
+    @Column(name = "id")
+    private long id;
+
+    @Column(name = "message_key")
+    private String messageKey;
+
+    @Column(name = "payload", length = 4000)
+    private String payload;
+
+    public long getId() {
+        return id;
+    }
+
+    public String getMessageKey() {
+        return messageKey;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public static class Builder {
+
+        private final OutboxEventEntity event;
+
+        public Builder(String messageKey, String payload) {
+            this.event = new OutboxEventEntity();
+            event.messageKey = messageKey;
+            event.payload = payload;
+        }
+
+        public Builder(long id, String messageKey, String payload) {
+            this(messageKey, payload);
+            event.id = id;
+        }
+
+        public OutboxEventEntity build() {
+            return event;
+        }
+
+    }
+}
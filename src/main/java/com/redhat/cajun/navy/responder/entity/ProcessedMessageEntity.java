@@ -0,0 +1,47 @@
+package com.redhat.cajun.navy.responder.entity;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Records the id of a command message which has been applied, with the time at which it was applied.
+ */
+@Entity
+@Access(AccessType.FIELD)
+@Table(name = "responder_processed_message")
+public class ProcessedMessageEntity {
+
+    @Id
+    @Column(name = "message_id")
+    private String messageId;
+
+    @Column(name = "processed_at")
+    private long processedAt;
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public long getProcessedAt() {
+        return processedAt;
+    }
+
+    public static class Builder {
+
+        private final ProcessedMessageEntity message;
+
+        public Builder(String messageId, long processedAt) {
+            message = new ProcessedMessageEntity();
+            message.messageId = messageId;
+            message.processedAt = processedAt;
+        }
+
+        public ProcessedMessageEntity build() {
+            return message;
+        }
+    }
+}
@@ -54,6 +54,12 @@ public class ResponderEntity {
     @Version
     private long version;
 
+    /**
+     * Change sequence number of the transaction which last wrote the responder.
+     */
+    @Column(name = "change_seq")
+    private long changeSeq;
+
     public long getId() {
         return id;
     }
@@ -98,6 +104,10 @@ public class ResponderEntity {
         return version;
     }
 
+    public long getChangeSeq() {
+        return changeSeq;
+    }
+
     public static class Builder {
 
         private final ResponderEntity responder;
@@ -125,6 +135,7 @@ public class ResponderEntity {
             responder.name = r.getName();
             responder.phoneNumber = r.getPhoneNumber();
             responder.version = r.getVersion();
+            responder.changeSeq = r.getChangeSeq();
         }
 
         public Builder name(String name) {
@@ -147,31 +158,41 @@ public class ResponderEntity {
             return this;
         }
 
-        public Builder boatCapacity(int boatCapacity) {
+        public Builder boatCapacity(Integer boatCapacity) {
             responder.boatCapacity = boatCapacity;
             return this;
         }
 
-        public Builder medicalKit(boolean medicalKit) {
+        public Builder medicalKit(Boolean medicalKit) {
             responder.medicalKit = medicalKit;
             return this;
         }
 
-        public Builder available(boolean available) {
+        public Builder available(Boolean available) {
             responder.available = available;
             return this;
         }
 
-        public Builder person(boolean person) {
+        public Builder person(Boolean person) {
             responder.person = person;
             return this;
         }
 
-        public Builder enrolled(boolean enrolled) {
+        public Builder enrolled(Boolean enrolled) {
             responder.enrolled = enrolled;
             return this;
         }
 
+        public Builder version(long version) {
+            responder.version = version;
+            return this;
+        }
+
+        public Builder changeSeq(long changeSeq) {
+            responder.changeSeq = changeSeq;
+            return this;
+        }
+
 
         public ResponderEntity build() {
             return responder;
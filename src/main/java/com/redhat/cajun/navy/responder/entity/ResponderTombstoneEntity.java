@@ -0,0 +1,47 @@
+package com.redhat.cajun.navy.responder.entity;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Records the deletion of a responder, with the change sequence number of the deleting transaction.
+ */
+@Entity
+@Access(AccessType.FIELD)
+@Table(name = "responder_tombstone")
+public class ResponderTombstoneEntity {
+
+    @Id
+    @Column(name = "responder_id")
+    private long responderId;
+
+    @Column(name = "change_seq")
+    private long changeSeq;
+
+    public long getResponderId() {
+        return responderId;
+    }
+
+    public long getChangeSeq() {
+        return changeSeq;
+    }
+
+    public static class Builder {
+
+        private final ResponderTombstoneEntity tombstone;
+
+        public Builder(long responderId, long changeSeq) {
+            tombstone = new ResponderTombstoneEntity();
+            tombstone.responderId = responderId;
+            tombstone.changeSeq = changeSeq;
+        }
+
+        public ResponderTombstoneEntity build() {
+            return tombstone;
+        }
+    }
+}
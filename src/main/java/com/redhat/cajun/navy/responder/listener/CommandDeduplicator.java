@@ -0,0 +1,153 @@
+package com.redhat.cajun.navy.responder.listener;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.PostConstruct;
+
+import com.redhat.cajun.navy.responder.dao.ResponderDao;
+import com.redhat.cajun.navy.responder.entity.ProcessedMessageEntity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Drops the command messages which are redelivered after they have been applied, by remembering the ids of the
+ * messages applied within the last <code>listener.dedup.window</code> milliseconds.
+ * <p>
+ * The ids are kept in memory, up to <code>listener.dedup.max-size</code> ids, the oldest being forgotten first. With
+ * <code>listener.dedup.persisted</code>, they are also recorded in the database, in the transaction which applies the
+ * command, so that redeliveries are recognized after a restart or by another instance of the service.
+ * <p>
+ * Lookups are counted by the <code>responder.command.dedup</code> meter, tagged with <code>result=hit</code> for a
+ * duplicate and <code>result=miss</code> otherwise.
+ */
+@Component
+public class CommandDeduplicator {
+
+    private static final Logger log = LoggerFactory.getLogger(CommandDeduplicator.class);
+
+    @Autowired
+    private ResponderDao responderDao;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${listener.dedup.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${listener.dedup.max-size:100000}")
+    private int maxSize = 100000;
+
+    @Value("${listener.dedup.window:3600000}")
+    private long window = 3600000;
+
+    @Value("${listener.dedup.persisted:false}")
+    private boolean persisted;
+
+    // insertion ordered, so the oldest ids come first
+    private final LinkedHashMap<String, Long> processed = new LinkedHashMap<>();
+
+    private Counter hits;
+
+    private Counter misses;
+
+    @PostConstruct
+    public void init() {
+        hits = meterRegistry.counter("responder.command.dedup", "result", "hit");
+        misses = meterRegistry.counter("responder.command.dedup", "result", "miss");
+    }
+
+    /**
+     * @return true if the message with the given id has already been applied. Messages without id are never
+     * duplicates.
+     */
+    public boolean isDuplicate(String messageId) {
+        if (!enabled || messageId == null) {
+            return false;
+        }
+        long since = System.currentTimeMillis() - window;
+        boolean duplicate;
+        synchronized (processed) {
+            Long processedAt = processed.get(messageId);
+            duplicate = processedAt != null && processedAt >= since;
+        }
+        if (!duplicate && persisted) {
+            TransactionTemplate template = new TransactionTemplate(transactionManager);
+            template.setReadOnly(true);
+            duplicate = template.execute(s -> responderDao.processedMessageExists(messageId, since));
+        }
+        (duplicate ? hits : misses).increment();
+        if (duplicate) {
+            log.debug("Message with id '" + messageId + "' has already been processed");
+        }
+        return duplicate;
+    }
+
+    public void process(String messageId, Runnable action) {
+        process(messageId == null ? Collections.emptyList() : Collections.singletonList(messageId), action);
+    }
+
+    /**
+     * Applies the given messages, and remembers their ids once applied. With <code>listener.dedup.persisted</code>,
+     * the ids are recorded in a transaction which the changes of the action join, unless the action commits them in
+     * transactions of its own, as {@link com.redhat.cajun.navy.responder.service.ResponderService#updateResponders}
+     * does. The ids are then recorded once all of them have committed.
+     */
+    public void process(Collection<String> messageIds, Runnable action) {
+        if (!enabled || messageIds.isEmpty()) {
+            action.run();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (persisted) {
+            new TransactionTemplate(transactionManager).execute(s -> {
+                action.run();
+                messageIds.forEach(id -> responderDao.createProcessedMessage(new ProcessedMessageEntity.Builder(id, now).build()));
+                return null;
+            });
+        } else {
+            action.run();
+        }
+        synchronized (processed) {
+            for (String messageId : messageIds) {
+                // moves a redelivered id to the end
+                processed.remove(messageId);
+                processed.put(messageId, now);
+            }
+            long since = now - window;
+            Iterator<Map.Entry<String, Long>> oldest = processed.entrySet().iterator();
+            while (oldest.hasNext()) {
+                Map.Entry<String, Long> entry = oldest.next();
+                if (processed.size() <= maxSize && entry.getValue() >= since) {
+                    break;
+                }
+                oldest.remove();
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${listener.dedup.purge-interval:60000}")
+    public void purge() {
+        if (enabled && persisted) {
+            int deleted = new TransactionTemplate(transactionManager)
+                    .execute(s -> responderDao.deleteProcessedMessages(System.currentTimeMillis() - window));
+            if (deleted > 0) {
+                log.debug("Deleted " + deleted + " processed message records");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+package com.redhat.cajun.navy.responder.listener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the command records which could not be applied aside, so that the partition they come from keeps flowing.
+ * <p>
+ * With <code>listener.retry.enabled</code>, a failed record is published to the first retry topic, and then to the
+ * next one each time it fails again, until it lands on the dead-letter topic. There is one retry topic per delay of
+ * <code>listener.retry.delays</code>, named <code>&lt;topic-prefix&gt;-retry-1</code>,
+ * <code>&lt;topic-prefix&gt;-retry-2</code>..., and the dead-letter topic is <code>&lt;topic-prefix&gt;-dlt</code>.
+ * Records which cannot be parsed go straight to the dead-letter topic. The records carry the error, the tier, the time
+ * at which they are due and the position of the original record in headers.
+ * <p>
+ * Records moved aside are counted by the <code>responder.command.retry</code> meter, tagged with the tier they are
+ * sent to, <code>dlt</code> for the dead-letter topic.
+ */
+@Component
+public class CommandRetryRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(CommandRetryRouter.class);
+
+    static final String TIER_HEADER = "retry-tier";
+
+    static final String DUE_HEADER = "retry-due";
+
+    static final String ERROR_CLASS_HEADER = "error-class";
+
+    static final String ERROR_MESSAGE_HEADER = "error-message";
+
+    static final String ORIGINAL_TOPIC_HEADER = "original-topic";
+
+    static final String ORIGINAL_PARTITION_HEADER = "original-partition";
+
+    static final String ORIGINAL_OFFSET_HEADER = "original-offset";
+
+    @Autowired
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${listener.retry.enabled:false}")
+    private boolean enabled;
+
+    @Value("${listener.retry.delays:5000,60000}")
+    private String delays = "5000,60000";
+
+    @Value("${listener.retry.topic-prefix:${listener.destination.update-responder-command}}")
+    private String topicPrefix;
+
+    @Value("${listener.retry.send-timeout:30000}")
+    private long sendTimeout = 30000;
+
+    @Value("${kafka.retry.max-poll-interval-ms:900000}")
+    private long maxPollInterval = 900000;
+
+    private List<Long> tierDelays;
+
+    @PostConstruct
+    public void init() {
+        tierDelays = Arrays.stream(delays.split(",")).map(String::trim).filter(d -> !d.isEmpty())
+                .map(Long::valueOf).collect(Collectors.toList());
+        if (enabled && tierDelays.isEmpty()) {
+            throw new IllegalStateException("listener.retry.delays needs at least one delay");
+        }
+        // the retry listener waits up to the delay of a record between two polls, and is evicted from the group if
+        // that exceeds the poll interval
+        long longest = tierDelays.stream().mapToLong(Long::longValue).max().orElse(0);
+        if (enabled && longest >= maxPollInterval) {
+            throw new IllegalStateException("listener.retry.delays has a delay of " + longest
+                    + " ms, which must be shorter than kafka.retry.max-poll-interval-ms (" + maxPollInterval + " ms)");
+        }
+    }
+
+    public String[] getRetryTopics() {
+        List<String> topics = new ArrayList<>();
+        for (int tier = 1; tier <= tierDelays.size(); tier++) {
+            topics.add(retryTopic(tier));
+        }
+        return topics.toArray(new String[0]);
+    }
+
+    /**
+     * Publishes a failed record to the next retry topic, or to the dead-letter topic if it has been through all the
+     * tiers or if it is not worth retrying.
+     *
+     * @throws IllegalStateException if retries are disabled or the record could not be published, in which case the
+     * record should not be acknowledged.
+     */
+    public void route(ConsumerRecord<String, String> record, Exception error, boolean retryable) {
+
+        if (!enabled) {
+            throw new IllegalStateException(error.getMessage(), error);
+        }
+        int tier = tier(record) + 1;
+        boolean deadLetter = !retryable || tier > tierDelays.size();
+        String topic = deadLetter ? topicPrefix + "-dlt" : retryTopic(tier);
+
+        ProducerRecord<String, String> retry = new ProducerRecord<>(topic, record.key(), record.value());
+        copyOrSet(record, retry, ORIGINAL_TOPIC_HEADER, record.topic());
+        copyOrSet(record, retry, ORIGINAL_PARTITION_HEADER, Integer.toString(record.partition()));
+        copyOrSet(record, retry, ORIGINAL_OFFSET_HEADER, Long.toString(record.offset()));
+        header(retry, ERROR_CLASS_HEADER, error.getClass().getName());
+        header(retry, ERROR_MESSAGE_HEADER, String.valueOf(error.getMessage()));
+        if (!deadLetter) {
+            header(retry, TIER_HEADER, Integer.toString(tier));
+            header(retry, DUE_HEADER, Long.toString(System.currentTimeMillis() + tierDelays.get(tier - 1)));
+        }
+
+        log.warn("Moving record at offset " + record.offset() + " of " + record.topic() + ":" + record.partition()
+                + " to " + topic + " after " + error.getClass().getName() + ": " + error.getMessage());
+        try {
+            kafkaTemplate.send(retry).get(sendTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e.getMessage(), e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Error sending failed record to " + topic, e);
+        }
+        meterRegistry.counter("responder.command.retry", "tier", deadLetter ? "dlt" : Integer.toString(tier)).increment();
+    }
+
+    /**
+     * @return the retry tier the record comes from, 0 for the command topic.
+     */
+    static int tier(ConsumerRecord<String, String> record) {
+        String tier = header(record, TIER_HEADER);
+        return tier == null ? 0 : Integer.parseInt(tier);
+    }
+
+    /**
+     * @return the time at which a retried record is due, 0 for a record of the command topic.
+     */
+    static long due(ConsumerRecord<String, String> record) {
+        String due = header(record, DUE_HEADER);
+        return due == null ? 0 : Long.parseLong(due);
+    }
+
+    private String retryTopic(int tier) {
+        return topicPrefix + "-retry-" + tier;
+    }
+
+    private static String header(ConsumerRecord<String, String> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    private static void header(ProducerRecord<String, String> record, String name, String value) {
+        record.headers().add(name, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void copyOrSet(ConsumerRecord<String, String> from, ProducerRecord<String, String> to, String name,
+                                  String value) {
+        String original = header(from, name);
+        header(to, name, original == null ? value : original);
+    }
+
+}
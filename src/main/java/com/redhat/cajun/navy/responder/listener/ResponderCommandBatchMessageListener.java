@@ -0,0 +1,228 @@
+package com.redhat.cajun.navy.responder.listener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.redhat.cajun.navy.responder.message.Message;
+import com.redhat.cajun.navy.responder.message.MessageReader;
+import com.redhat.cajun.navy.responder.message.UpdateResponderCommand;
+import com.redhat.cajun.navy.responder.message.UpdateRespondersCommand;
+import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.service.ResponderService;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Batch variant of {@link ResponderCommandMessageListener}, enabled with <code>listener.mode=batch</code>.
+ * <p>
+ * All the commands for the same responder received in one poll are merged into a single update, so a responder
+ * which moved several times within the poll window costs one transaction instead of one per command.
+ * A batched 'UpdateRespondersCommand' is applied with one bulk update, after the commands received before it.
+ * <p>
+ * When the update of a responder fails, the records of its commands are moved aside by the {@link CommandRetryRouter},
+ * and the rest of the batch is applied. When they cannot be moved aside, the rest of the batch is left unprocessed: the
+ * offsets are committed up to the first unprocessed record of each partition, and the consumer seeks back to it.
+ */
+@Component
+@ConditionalOnProperty(name = "listener.mode", havingValue = "batch")
+public class ResponderCommandBatchMessageListener {
+
+    private final static Logger log = LoggerFactory.getLogger(ResponderCommandBatchMessageListener.class);
+
+    private static final String UPDATE_RESPONDER_COMMAND = "UpdateResponderCommand";
+
+    private static final MessageReader messageReader =
+            new MessageReader(ResponderCommandMessageListener.acceptedMessageTypes());
+
+    @Autowired
+    private ResponderService responderService;
+
+    @Autowired
+    private CommandDeduplicator deduplicator;
+
+    @Autowired
+    private CommandRetryRouter retryRouter;
+
+    @KafkaListener(topics = "${listener.destination.update-responder-command}", containerFactory = "batchKafkaListenerContainerFactory")
+    public void processMessages(List<ConsumerRecord<String, String>> records, Acknowledgment ack, Consumer<?, ?> consumer) {
+
+        // commands are grouped per responder, in the order in which the responders first appear in the batch
+        Map<String, List<Command>> commandsByResponder = new LinkedHashMap<>();
+        // a message can be redelivered within the same poll
+        Set<String> messageIds = new HashSet<>();
+        // the records which failed and could not be moved aside, and those left behind them
+        List<ConsumerRecord<String, String>> unprocessed = new ArrayList<>();
+        int next = 0;
+        while (next < records.size() && unprocessed.isEmpty()) {
+            ConsumerRecord<String, String> record = records.get(next++);
+            Optional<Message<?>> message;
+            try {
+                message = messageReader.read(record.value());
+            } catch (Exception e) {
+                log.error("Error processing msg " + record.value(), e);
+                unprocessed.addAll(moveAside(Collections.singletonList(record), e, false));
+                continue;
+            }
+            if (!message.isPresent() || deduplicator.isDuplicate(message.get().getId())
+                    || (message.get().getId() != null && !messageIds.add(message.get().getId()))) {
+                continue;
+            }
+            if (message.get().getBody() instanceof UpdateRespondersCommand) {
+                // the commands received before the batched command are applied first
+                unprocessed.addAll(processUpdateResponderCommands(commandsByResponder));
+                commandsByResponder.clear();
+                if (!unprocessed.isEmpty()) {
+                    unprocessed.add(record);
+                    continue;
+                }
+                try {
+                    deduplicator.process(message.get().getId(), () -> ResponderCommandMessageListener.updateResponders(
+                            responderService, ((UpdateRespondersCommand) message.get().getBody()).getUpdates()));
+                } catch (Exception e) {
+                    log.error("Error processing msg " + record.value(), e);
+                    unprocessed.addAll(moveAside(Collections.singletonList(record), e, true));
+                }
+            } else {
+                @SuppressWarnings("unchecked")
+                Message<UpdateResponderCommand> command = (Message<UpdateResponderCommand>) message.get();
+                commandsByResponder.computeIfAbsent(command.getBody().getResponder().getId(), id -> new ArrayList<>())
+                        .add(new Command(record, command));
+            }
+        }
+        if (unprocessed.isEmpty()) {
+            unprocessed.addAll(processUpdateResponderCommands(commandsByResponder));
+        } else {
+            commandsByResponder.values().forEach(commands -> commands.forEach(c -> unprocessed.add(c.record)));
+        }
+        if (unprocessed.isEmpty()) {
+            ack.acknowledge();
+            return;
+        }
+        unprocessed.addAll(records.subList(next, records.size()));
+        seekToUnprocessed(records, unprocessed, consumer);
+    }
+
+    /**
+     * Commits the offsets of every partition up to its first unprocessed record, and seeks the consumer back to it,
+     * so that the next poll gets the unprocessed records again rather than moving past them.
+     */
+    private void seekToUnprocessed(List<ConsumerRecord<String, String>> records,
+                                   List<ConsumerRecord<String, String>> unprocessed, Consumer<?, ?> consumer) {
+        Map<TopicPartition, Long> seekTo = new HashMap<>();
+        unprocessed.forEach(r -> seekTo.merge(new TopicPartition(r.topic(), r.partition()), r.offset(), Math::min));
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        records.forEach(r -> {
+            TopicPartition partition = new TopicPartition(r.topic(), r.partition());
+            offsets.put(partition, new OffsetAndMetadata(seekTo.getOrDefault(partition, r.offset() + 1)));
+        });
+        consumer.commitSync(offsets);
+        seekTo.forEach((partition, offset) -> {
+            log.warn("Seeking " + partition + " back to offset " + offset + " after a failure");
+            consumer.seek(partition, offset);
+        });
+    }
+
+    /**
+     * @return the records which could not be moved aside, none if they were.
+     */
+    private List<ConsumerRecord<String, String>> moveAside(List<ConsumerRecord<String, String>> records, Exception error,
+                                                           boolean retryable) {
+        try {
+            records.forEach(r -> retryRouter.route(r, error, retryable));
+            return Collections.emptyList();
+        } catch (Exception e) {
+            log.error("Error moving aside " + records.size() + " failed records", e);
+            return records;
+        }
+    }
+
+    /**
+     * Applies the commands of each responder, until the commands of a responder fail and cannot be moved aside.
+     *
+     * @return the records of the commands which were neither applied nor moved aside.
+     */
+    private List<ConsumerRecord<String, String>> processUpdateResponderCommands(Map<String, List<Command>> commandsByResponder) {
+        List<ConsumerRecord<String, String>> unprocessed = new ArrayList<>();
+        if (!commandsByResponder.isEmpty()) {
+            log.debug("Processing messages for " + commandsByResponder.size() + " responders");
+            for (List<Command> commands : commandsByResponder.values()) {
+                if (!unprocessed.isEmpty()) {
+                    commands.forEach(c -> unprocessed.add(c.record));
+                    continue;
+                }
+                try {
+                    processUpdateResponderCommands(commands);
+                } catch (Exception e) {
+                    log.error("Error processing " + commands.size() + " messages for responder '"
+                            + commands.get(0).message.getBody().getResponder().getId() + "'", e);
+                    unprocessed.addAll(moveAside(commands.stream().map(c -> c.record).collect(Collectors.toList()), e, true));
+                }
+            }
+        }
+        return unprocessed;
+    }
+
+    private void processUpdateResponderCommands(List<Command> commands) {
+
+        List<Message<UpdateResponderCommand>> messages = commands.stream().map(c -> c.message).collect(Collectors.toList());
+        Responder responder = messages.stream().map(m -> m.getBody().getResponder())
+                .reduce(ResponderCommandBatchMessageListener::merge).orElseThrow(IllegalStateException::new);
+
+        log.debug("Processing " + messages.size() + " '" + UPDATE_RESPONDER_COMMAND + "' messages for responder '"
+                + responder.getId() + "'");
+
+        // A responder updated event message is only sent for the commands with a 'incidentId' header
+        List<String> incidentIds = messages.stream().map(ResponderCommandMessageListener::incidentIds)
+                .flatMap(List::stream).collect(Collectors.toList());
+        List<String> messageIds = messages.stream().map(Message::getId).filter(Objects::nonNull).collect(Collectors.toList());
+        deduplicator.process(messageIds, () -> responderService.updateResponder(responder, incidentIds));
+    }
+
+    /**
+     * Applies the non-null fields of a later command on top of an earlier one.
+     */
+    static Responder merge(Responder earlier, Responder later) {
+        return new Responder.Builder(later.getId())
+                .name(later.getName() == null ? earlier.getName() : later.getName())
+                .phoneNumber(later.getPhoneNumber() == null ? earlier.getPhoneNumber() : later.getPhoneNumber())
+                .latitude(later.getLatitude() == null ? earlier.getLatitude() : later.getLatitude())
+                .longitude(later.getLongitude() == null ? earlier.getLongitude() : later.getLongitude())
+                .boatCapacity(later.getBoatCapacity() == null ? earlier.getBoatCapacity() : later.getBoatCapacity())
+                .medicalKit(later.isMedicalKit() == null ? earlier.isMedicalKit() : later.isMedicalKit())
+                .available(later.isAvailable() == null ? earlier.isAvailable() : later.isAvailable())
+                .person(later.isPerson() == null ? earlier.isPerson() : later.isPerson())
+                .enrolled(later.isEnrolled() == null ? earlier.isEnrolled() : later.isEnrolled())
+                .build();
+    }
+
+    private static class Command {
+
+        private final ConsumerRecord<String, String> record;
+
+        private final Message<UpdateResponderCommand> message;
+
+        Command(ConsumerRecord<String, String> record, Message<UpdateResponderCommand> message) {
+            this.record = record;
+            this.message = message;
+        }
+    }
+
+}
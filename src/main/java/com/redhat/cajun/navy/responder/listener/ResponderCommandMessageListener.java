@@ -1,102 +1,137 @@
 package com.redhat.cajun.navy.responder.listener;
 
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.jayway.jsonpath.JsonPath;
 import com.redhat.cajun.navy.responder.message.Message;
-import com.redhat.cajun.navy.responder.message.ResponderUpdatedEvent;
+import com.redhat.cajun.navy.responder.message.MessageReader;
 import com.redhat.cajun.navy.responder.message.UpdateResponderCommand;
+import com.redhat.cajun.navy.responder.message.UpdateRespondersCommand;
 import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.model.ResponderUpdateStatus;
 import com.redhat.cajun.navy.responder.service.ResponderService;
-import org.apache.commons.lang3.tuple.Triple;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.Acknowledgment;
-import org.springframework.kafka.support.KafkaHeaders;
-import org.springframework.kafka.support.SendResult;
-import org.springframework.messaging.handler.annotation.Header;
-import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
-import org.springframework.util.concurrent.ListenableFuture;
 
 @Component
+@ConditionalOnProperty(name = "listener.mode", havingValue = "record", matchIfMissing = true)
 public class ResponderCommandMessageListener {
 
     private final static Logger log = LoggerFactory.getLogger(ResponderCommandMessageListener.class);
 
     private static final String UPDATE_RESPONDER_COMMAND = "UpdateResponderCommand";
-    private static final String[] ACCEPTED_MESSAGE_TYPES = {UPDATE_RESPONDER_COMMAND};
+
+    private static final String UPDATE_RESPONDERS_COMMAND = "UpdateRespondersCommand";
+
+    private static final MessageReader messageReader = new MessageReader(acceptedMessageTypes());
 
     @Autowired
     private ResponderService responderService;
 
     @Autowired
-    private KafkaTemplate<String, Message<?>> kafkaTemplate;
+    private CommandDeduplicator deduplicator;
 
-    @Value("${sender.destination.reporter-updated-event}")
-    private String destination;
+    @Autowired
+    private CommandRetryRouter retryRouter;
 
     @KafkaListener(topics = "${listener.destination.update-responder-command}")
-    public void processMessage(@Payload String messageAsJson,
-                               @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
-                               @Header(KafkaHeaders.RECEIVED_PARTITION_ID) int partition, Acknowledgment ack) {
-
-        acceptMessageType(messageAsJson, ack).ifPresent(m -> processUpdateResponderCommand(messageAsJson, topic, partition, ack));
+    public void processMessage(ConsumerRecord<String, String> record, Acknowledgment ack) {
+        processMessage(record, ack, messageReader, responderService, deduplicator, retryRouter);
     }
 
-    private void processUpdateResponderCommand(String messageAsJson, String topic, int partition, Acknowledgment ack) {
+    /**
+     * Applies the command of a record, and acknowledges it once applied, or once moved aside by the retry router when
+     * it fails.
+     */
+    static void processMessage(ConsumerRecord<String, String> record, Acknowledgment ack, MessageReader messageReader,
+                               ResponderService responderService, CommandDeduplicator deduplicator,
+                               CommandRetryRouter retryRouter) {
 
-        Message<UpdateResponderCommand> message;
+        Optional<Message<?>> message;
         try {
-            message = new ObjectMapper().readValue(messageAsJson, new TypeReference<Message<UpdateResponderCommand>>() {});
-            Responder responder = message.getBody().getResponder();
-
-            log.debug("Processing '" + UPDATE_RESPONDER_COMMAND + "' message for responder '" + responder.getId()
-                    + "' from topic:partition " + topic + ":" + partition);
-
-            Triple<Boolean, String, Responder> result = responderService.updateResponder(responder);
-
-            // Only send a responder updated event message if there is a 'incidentId' header in the incoming message
-            if (message.getHeaderValue("incidentId") != null) {
-                String status = (result.getLeft() ? "success" : "error");
-                ResponderUpdatedEvent event = new ResponderUpdatedEvent.Builder(status, result.getRight())
-                        .statusMessage(result.getMiddle()).build();
-                Message eventMessage = new Message.Builder<>("ResponderUpdatedEvent",
-                        "ResponderService", event)
-                        .header("incidentId", message.getHeaderValue("incidentId"))
-                        .build();
-                ListenableFuture<SendResult<String, Message<?>>> future = kafkaTemplate.send(destination, responder.getId(), eventMessage);
-                future.addCallback(
-                        res -> log.debug("Sent 'ResponderUpdatedEvent' message for responder " + responder.getId()),
-                        ex -> log.error("Error sending 'IncidentReportedEvent' message for incident " + responder.getId(), ex));
-            }
-            ack.acknowledge();
+            message = messageReader.read(record.value());
         } catch (Exception e) {
-            log.error("Error processing msg " + messageAsJson, e);
-            throw new IllegalStateException(e.getMessage(), e);
+            log.error("Error processing msg " + record.value(), e);
+            // a payload which cannot be parsed is not worth retrying
+            retryRouter.route(record, e, false);
+            ack.acknowledge();
+            return;
+        }
+        if (!message.isPresent() || deduplicator.isDuplicate(message.get().getId())) {
+            ack.acknowledge();
+            return;
         }
-
-    }
-
-    private Optional<String> acceptMessageType(String messageAsJson, Acknowledgment ack) {
         try {
-            String messageType = JsonPath.read(messageAsJson, "$.messageType");
-            if (Arrays.asList(ACCEPTED_MESSAGE_TYPES).contains(messageType)) {
-                return Optional.of(messageType);
+            if (message.get().getBody() instanceof UpdateRespondersCommand) {
+                processUpdateRespondersCommand(message.get(), record, responderService, deduplicator);
+            } else {
+                processUpdateResponderCommand(message.get(), record, responderService, deduplicator);
             }
-            log.debug("Message with type '" + messageType + "' is ignored");
         } catch (Exception e) {
-            log.warn("Unexpected message without 'messageType' field.");
+            log.error("Error processing msg " + record.value(), e);
+            retryRouter.route(record, e, true);
         }
         ack.acknowledge();
-        return Optional.empty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void processUpdateResponderCommand(Message<?> message, ConsumerRecord<String, String> record,
+                                                      ResponderService responderService, CommandDeduplicator deduplicator) {
+
+        Responder responder = ((Message<UpdateResponderCommand>) message).getBody().getResponder();
+
+        log.debug("Processing '" + UPDATE_RESPONDER_COMMAND + "' message for responder '" + responder.getId()
+                + "' from topic:partition " + record.topic() + ":" + record.partition());
+
+        // A responder updated event message is only sent if there is a 'incidentId' header in the incoming message
+        deduplicator.process(message.getId(), () -> responderService.updateResponder(responder, incidentIds(message)));
+    }
+
+    private static void processUpdateRespondersCommand(Message<?> message, ConsumerRecord<String, String> record,
+                                                       ResponderService responderService, CommandDeduplicator deduplicator) {
+
+        UpdateRespondersCommand command = (UpdateRespondersCommand) message.getBody();
+
+        log.debug("Processing '" + UPDATE_RESPONDERS_COMMAND + "' message with " + command.getUpdates().size()
+                + " updates from topic:partition " + record.topic() + ":" + record.partition());
+
+        deduplicator.process(message.getId(), () -> updateResponders(responderService, command.getUpdates()));
+    }
+
+    static Map<String, Class<?>> acceptedMessageTypes() {
+        Map<String, Class<?>> messageTypes = new HashMap<>();
+        messageTypes.put(UPDATE_RESPONDER_COMMAND, UpdateResponderCommand.class);
+        messageTypes.put(UPDATE_RESPONDERS_COMMAND, UpdateRespondersCommand.class);
+        return messageTypes;
+    }
+
+    /**
+     * Applies the updates of a batched command with one bulk update. A responder updated event message is only sent
+     * for the updates with an incident id.
+     */
+    static void updateResponders(ResponderService responderService, List<UpdateRespondersCommand.Update> updates) {
+        List<ResponderUpdateStatus> statuses = responderService.updateResponders(
+                updates.stream().map(UpdateRespondersCommand.Update::getResponder).collect(Collectors.toList()),
+                updates.stream().map(UpdateRespondersCommand.Update::getIncidentId).collect(Collectors.toList()));
+        long failed = statuses.stream().filter(s -> s.getStatus() == ResponderUpdateStatus.Status.FAILED).count();
+        if (failed > 0) {
+            log.warn(failed + " of the " + updates.size() + " updates of a '" + UPDATE_RESPONDERS_COMMAND + "' message failed");
+        }
+    }
+
+    static List<String> incidentIds(Message<?> message) {
+        String incidentId = message.getHeaderValue("incidentId");
+        return (incidentId == null ? Collections.emptyList() : Collections.singletonList(incidentId));
     }
 
 }
@@ -0,0 +1,371 @@
+package com.redhat.cajun.navy.responder.listener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.redhat.cajun.navy.responder.message.Message;
+import com.redhat.cajun.navy.responder.message.MessageReader;
+import com.redhat.cajun.navy.responder.message.UpdateResponderCommand;
+import com.redhat.cajun.navy.responder.message.UpdateRespondersCommand;
+import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.service.ResponderService;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Parallel variant of {@link ResponderCommandMessageListener}, enabled with <code>listener.mode=parallel</code>.
+ * <p>
+ * The records of a poll are spread over a pool of single threaded workers by hashing the responder id, so the
+ * commands for one responder are still applied in order while different responders are updated concurrently.
+ * The listener does not wait for the records of a poll to be processed before the next poll, so a slow responder only
+ * holds back its worker. After each poll, and while the consumer is idle, the offset of every partition is committed
+ * up to the last record for which all the earlier records of the partition have been processed. A partition with more
+ * than <code>listener.parallel.max-in-flight</code> records in flight waits for its oldest records before the next
+ * poll.
+ * <p>
+ * The updates of a batched 'UpdateRespondersCommand' are split over the workers in the same way, each worker applying
+ * its share with one bulk update.
+ * <p>
+ * A record which fails is moved aside by the {@link CommandRetryRouter}, and counts as processed. When it cannot be
+ * moved aside, the later records of its partition are skipped, the offset of the partition is not committed past it,
+ * and the consumer seeks back to it so that it is delivered again.
+ */
+@Component
+@ConditionalOnProperty(name = "listener.mode", havingValue = "parallel")
+public class ResponderCommandParallelMessageListener {
+
+    private final static Logger log = LoggerFactory.getLogger(ResponderCommandParallelMessageListener.class);
+
+    private static final String UPDATE_RESPONDER_COMMAND = "UpdateResponderCommand";
+
+    private static final String UPDATE_RESPONDERS_COMMAND = "UpdateRespondersCommand";
+
+    private static final MessageReader messageReader =
+            new MessageReader(ResponderCommandMessageListener.acceptedMessageTypes());
+
+    @Autowired
+    private ResponderService responderService;
+
+    @Autowired
+    private CommandDeduplicator deduplicator;
+
+    @Autowired
+    private CommandRetryRouter retryRouter;
+
+    @Value("${listener.parallel.workers:8}")
+    private int workers;
+
+    @Value("${listener.parallel.max-in-flight:1000}")
+    private int maxInFlight = 1000;
+
+    private ExecutorService[] executors;
+
+    // the records submitted to the workers and not committed yet, per consumer, each only used by its consumer thread
+    private final Map<Consumer<?, ?>, Map<TopicPartition, InFlight>> inFlight = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        executors = new ExecutorService[workers];
+        AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < workers; i++) {
+            executors[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "responder-command-worker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+        for (ExecutorService executor : executors) {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    @KafkaListener(topics = "${listener.destination.update-responder-command}", containerFactory = "batchKafkaListenerContainerFactory")
+    public void processMessages(List<ConsumerRecord<String, String>> records, Consumer<?, ?> consumer) {
+
+        Map<TopicPartition, InFlight> partitions = inFlight.computeIfAbsent(consumer, c -> new HashMap<>());
+        for (ConsumerRecord<String, String> record : records) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            InFlight pending = partitions.get(partition);
+            if (pending != null && record.offset() <= pending.last) {
+                // the partition was revoked and assigned again, and its records are delivered again
+                pending.stop();
+                pending = null;
+            }
+            if (pending == null) {
+                pending = new InFlight();
+                partitions.put(partition, pending);
+            }
+            pending.add(record.offset(), submit(record, pending));
+        }
+        commit(consumer, false);
+    }
+
+    /**
+     * Commits the records processed while the consumer is idle, as no poll returns records to trigger the commit.
+     */
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        if (event.getConsumer() != null) {
+            commit(event.getConsumer(), false);
+        }
+    }
+
+    /**
+     * Commits the offsets of the partitions of a consumer up to the last record for which all the earlier records have
+     * been processed, and seeks the consumer back to the first record which failed and could not be moved aside.
+     *
+     * @param drain true to wait for all the records in flight, false to only wait for the oldest records of the
+     *              partitions which have more than <code>listener.parallel.max-in-flight</code> records in flight.
+     */
+    void commit(Consumer<?, ?> consumer, boolean drain) {
+
+        Map<TopicPartition, InFlight> partitions = inFlight.get(consumer);
+        if (partitions == null || partitions.isEmpty()) {
+            return;
+        }
+        Set<TopicPartition> assignment = consumer.assignment();
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        Map<TopicPartition, Long> seeks = new HashMap<>();
+        Iterator<Map.Entry<TopicPartition, InFlight>> iterator = partitions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<TopicPartition, InFlight> entry = iterator.next();
+            InFlight pending = entry.getValue();
+            if (!assignment.contains(entry.getKey())) {
+                // its new owner starts from the last committed offset
+                pending.stop();
+                iterator.remove();
+                continue;
+            }
+            long failed = pending.collect(drain ? 0 : maxInFlight);
+            if (pending.processed > pending.committed) {
+                offsets.put(entry.getKey(), new OffsetAndMetadata(pending.processed));
+                pending.committed = pending.processed;
+            }
+            if (failed >= 0) {
+                pending.stop();
+                iterator.remove();
+                seeks.put(entry.getKey(), failed);
+            }
+        }
+        if (!offsets.isEmpty()) {
+            consumer.commitSync(offsets);
+        }
+        seeks.forEach((partition, offset) -> {
+            log.warn("Seeking " + partition + " back to offset " + offset + " after a failure");
+            consumer.seek(partition, offset);
+        });
+    }
+
+    private Future<?> submit(ConsumerRecord<String, String> record, InFlight partition) {
+        Optional<Message<?>> message;
+        try {
+            message = messageReader.read(record.value());
+        } catch (Exception e) {
+            log.error("Error processing msg " + record.value(), e);
+            CompletableFuture<Void> routed = new CompletableFuture<>();
+            try {
+                moveAside(record, e, false, partition);
+                routed.complete(null);
+            } catch (Exception routingError) {
+                routed.completeExceptionally(routingError);
+            }
+            return routed;
+        }
+        if (!message.isPresent()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (message.get().getBody() instanceof UpdateRespondersCommand) {
+            return submit(message.get(), record, partition);
+        }
+        @SuppressWarnings("unchecked")
+        Message<UpdateResponderCommand> command = (Message<UpdateResponderCommand>) message.get();
+        String responderId = command.getBody().getResponder().getId();
+        return executors[worker(responderId)].submit(() -> {
+            partition.checkNotStopped();
+            try {
+                // checked by the worker, after the earlier copies of a message redelivered within the same poll
+                if (deduplicator.isDuplicate(command.getId())) {
+                    return;
+                }
+                try {
+                    processUpdateResponderCommand(command, record.topic(), record.partition());
+                } catch (Exception e) {
+                    log.error("Error processing msg " + record.value(), e);
+                    retryRouter.route(record, e, true);
+                }
+            } catch (RuntimeException e) {
+                partition.stop();
+                throw e;
+            }
+        });
+    }
+
+    private Future<?> submit(Message<?> message, ConsumerRecord<String, String> record, InFlight partition) {
+        UpdateRespondersCommand command = (UpdateRespondersCommand) message.getBody();
+        log.debug("Processing '" + UPDATE_RESPONDERS_COMMAND + "' message with " + command.getUpdates().size()
+                + " updates from topic:partition " + record.topic() + ":" + record.partition());
+
+        Map<Integer, List<UpdateRespondersCommand.Update>> updatesByWorker = new LinkedHashMap<>();
+        command.getUpdates().forEach(update -> updatesByWorker
+                .computeIfAbsent(worker(update.getResponder().getId()), w -> new ArrayList<>()).add(update));
+        return CompletableFuture.supplyAsync(() -> {
+            partition.checkNotStopped();
+            return deduplicator.isDuplicate(message.getId());
+        }, executors[worker(String.valueOf(message.getId()))]).thenCompose(duplicate -> duplicate
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.allOf(updatesByWorker.entrySet().stream()
+                .map(e -> CompletableFuture.runAsync(() -> ResponderCommandMessageListener.updateResponders(responderService,
+                        e.getValue()), executors[e.getKey()]))
+                .toArray(CompletableFuture[]::new))
+                // the workers apply their share in transactions of their own, so the message is only remembered once
+                // all of them are done, and moved aside as a whole if one of them fails
+                .handle((done, error) -> {
+                    if (error == null) {
+                        deduplicator.process(message.getId(), () -> {});
+                    } else {
+                        Throwable cause = (error instanceof CompletionException ? error.getCause() : error);
+                        log.error("Error processing msg " + record.value(), cause);
+                        moveAside(record, cause instanceof Exception ? (Exception) cause
+                                : new IllegalStateException(cause.getMessage(), cause), true, partition);
+                    }
+                    return null;
+                }));
+    }
+
+    /**
+     * Moves a failed record aside, or stops the processing of the later records of its partition if it cannot be.
+     */
+    private void moveAside(ConsumerRecord<String, String> record, Exception error, boolean retryable, InFlight partition) {
+        try {
+            retryRouter.route(record, error, retryable);
+        } catch (RuntimeException e) {
+            partition.stop();
+            throw e;
+        }
+    }
+
+    private int worker(String responderId) {
+        return Math.floorMod(responderId.hashCode(), executors.length);
+    }
+
+    private void processUpdateResponderCommand(Message<UpdateResponderCommand> message, String topic, int partition) {
+
+        Responder responder = message.getBody().getResponder();
+
+        log.debug("Processing '" + UPDATE_RESPONDER_COMMAND + "' message for responder '" + responder.getId()
+                + "' from topic:partition " + topic + ":" + partition);
+
+        // A responder updated event message is only sent if there is a 'incidentId' header in the incoming message
+        deduplicator.process(message.getId(),
+                () -> responderService.updateResponder(responder, ResponderCommandMessageListener.incidentIds(message)));
+    }
+
+    /**
+     * The records of a partition submitted to the workers and not committed yet, in the order of their offsets.
+     */
+    private static class InFlight {
+
+        private final Deque<Pending> pending = new ArrayDeque<>();
+
+        // once a record failed and could not be moved aside, the later records are left to be delivered again
+        private volatile boolean stopped;
+
+        private long last = -1;
+
+        private long processed = -1;
+
+        private long committed = -1;
+
+        void add(long offset, Future<?> future) {
+            pending.add(new Pending(offset, future));
+            last = offset;
+        }
+
+        void stop() {
+            stopped = true;
+        }
+
+        void checkNotStopped() {
+            if (stopped) {
+                throw new CancellationException("An earlier record of the partition failed");
+            }
+        }
+
+        /**
+         * Removes the processed records at the head, waiting for the oldest records while more than the limit are in
+         * flight.
+         *
+         * @return the offset of the first record which failed, -1 if none did.
+         */
+        long collect(int limit) {
+            while (!pending.isEmpty()) {
+                Pending head = pending.peek();
+                if (!head.future.isDone() && pending.size() <= limit) {
+                    break;
+                }
+                try {
+                    head.future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e.getMessage(), e);
+                } catch (ExecutionException | CancellationException e) {
+                    return head.offset;
+                }
+                processed = head.offset + 1;
+                pending.poll();
+            }
+            return -1;
+        }
+    }
+
+    private static class Pending {
+
+        private final long offset;
+
+        private final Future<?> future;
+
+        Pending(long offset, Future<?> future) {
+            this.offset = offset;
+            this.future = future;
+        }
+    }
+
+}
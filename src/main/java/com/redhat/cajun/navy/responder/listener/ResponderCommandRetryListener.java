@@ -0,0 +1,100 @@
+package com.redhat.cajun.navy.responder.listener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.redhat.cajun.navy.responder.message.MessageReader;
+import com.redhat.cajun.navy.responder.service.ResponderService;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.AcknowledgingMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Applies the commands moved to the retry topics by the {@link CommandRetryRouter}, enabled with
+ * <code>listener.retry.enabled=true</code>.
+ * <p>
+ * All the records of a retry topic are delayed by the same amount, so they become due in the order of the topic. Each
+ * retry topic has its own listener container, whose consumers wait until the record they got is due, which only holds
+ * back that retry topic, and apply it as the record listener does. A record which fails again moves to the next tier.
+ */
+@Component
+@ConditionalOnProperty(name = "listener.retry.enabled", havingValue = "true")
+public class ResponderCommandRetryListener implements SmartLifecycle {
+
+    private final static Logger log = LoggerFactory.getLogger(ResponderCommandRetryListener.class);
+
+    private static final MessageReader messageReader =
+            new MessageReader(ResponderCommandMessageListener.acceptedMessageTypes());
+
+    @Autowired
+    private ResponderService responderService;
+
+    @Autowired
+    private CommandDeduplicator deduplicator;
+
+    @Autowired
+    private CommandRetryRouter retryRouter;
+
+    @Autowired
+    @Qualifier("retryConsumerFactory")
+    private ConsumerFactory<String, String> retryConsumerFactory;
+
+    @Value("${kafka.concurrency}")
+    private int concurrency;
+
+    private final List<ConcurrentMessageListenerContainer<String, String>> containers = new ArrayList<>();
+
+    @Override
+    public synchronized void start() {
+        for (String topic : retryRouter.getRetryTopics()) {
+            ContainerProperties properties = new ContainerProperties(topic);
+            properties.setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+            properties.setMessageListener((AcknowledgingMessageListener<String, String>) this::processMessage);
+            ConcurrentMessageListenerContainer<String, String> container =
+                    new ConcurrentMessageListenerContainer<>(retryConsumerFactory, properties);
+            container.setConcurrency(concurrency);
+            container.setBeanName(topic + "-listener");
+            container.start();
+            containers.add(container);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        containers.forEach(ConcurrentMessageListenerContainer::stop);
+        containers.clear();
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return !containers.isEmpty();
+    }
+
+    public void processMessage(ConsumerRecord<String, String> record, Acknowledgment ack) {
+
+        long wait = CommandRetryRouter.due(record) - System.currentTimeMillis();
+        if (wait > 0) {
+            log.debug("Waiting " + wait + " ms for record at offset " + record.offset() + " of " + record.topic() + ":"
+                    + record.partition());
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+        ResponderCommandMessageListener.processMessage(record, ack, messageReader, responderService, deduplicator, retryRouter);
+    }
+
+}
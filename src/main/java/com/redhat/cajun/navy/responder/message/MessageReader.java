@@ -0,0 +1,122 @@
+package com.redhat.cajun.navy.responder.message;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a {@link Message} envelope in a single streaming pass.
+ * <p>
+ * The message type is checked as soon as it is read, so messages with a type which is not accepted are dropped
+ * without parsing the rest of the payload. The body is bound directly to the class registered for the message type,
+ * and only buffered when it comes before the <code>messageType</code> field.
+ * <p>
+ * Instances are thread-safe and meant to be shared.
+ */
+public class MessageReader {
+
+    private final static Logger log = LoggerFactory.getLogger(MessageReader.class);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final ObjectReader headerReader = mapper.readerFor(new TypeReference<Map<String, String>>() {});
+
+    private final Map<String, ObjectReader> bodyReaders = new HashMap<>();
+
+    public MessageReader(Map<String, Class<?>> acceptedMessageTypes) {
+        acceptedMessageTypes.forEach((messageType, bodyType) -> bodyReaders.put(messageType, mapper.readerFor(bodyType)));
+    }
+
+    /**
+     * @return the message, or an empty optional if the message type is not accepted or the message has no type.
+     * @throws IOException if the payload of a message with an accepted type cannot be parsed.
+     */
+    public Optional<Message<?>> read(String messageAsJson) throws IOException {
+
+        String messageType = null;
+        ObjectReader bodyReader = null;
+        String id = null;
+        String invokingService = null;
+        Long timestamp = null;
+        Map<String, String> header = null;
+        Object body = null;
+        TokenBuffer bufferedBody = null;
+
+        try (JsonParser parser = mapper.getFactory().createParser(messageAsJson)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                log.warn("Unexpected message without 'messageType' field.");
+                return Optional.empty();
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "messageType":
+                        messageType = parser.getValueAsString();
+                        bodyReader = bodyReaders.get(messageType);
+                        if (bodyReader == null) {
+                            log.debug("Message with type '" + messageType + "' is ignored");
+                            return Optional.empty();
+                        }
+                        break;
+                    case "id":
+                        id = parser.getValueAsString();
+                        break;
+                    case "invokingService":
+                        invokingService = parser.getValueAsString();
+                        break;
+                    case "timestamp":
+                        timestamp = parser.getValueAsLong();
+                        break;
+                    case "header":
+                        header = headerReader.readValue(parser);
+                        break;
+                    case "body":
+                        if (bodyReader != null) {
+                            body = bodyReader.readValue(parser);
+                        } else {
+                            bufferedBody = new TokenBuffer(parser);
+                            bufferedBody.copyCurrentStructure(parser);
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            if (messageType == null) {
+                log.warn("Unexpected message without 'messageType' field.");
+                return Optional.empty();
+            }
+            throw e;
+        }
+
+        if (messageType == null) {
+            log.warn("Unexpected message without 'messageType' field.");
+            return Optional.empty();
+        }
+        if (bufferedBody != null) {
+            body = bodyReader.readValue(bufferedBody.asParser());
+        }
+
+        Message.Builder<Object> builder = new Message.Builder<>(messageType, invokingService, body).id(id);
+        if (timestamp != null) {
+            builder.timestamp(timestamp);
+        }
+        if (header != null) {
+            header.forEach(builder::header);
+        }
+        return Optional.of(builder.build());
+    }
+
+}
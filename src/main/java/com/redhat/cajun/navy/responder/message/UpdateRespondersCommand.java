@@ -0,0 +1,35 @@
+package com.redhat.cajun.navy.responder.message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.redhat.cajun.navy.responder.model.Responder;
+
+/**
+ * Batched variant of {@link UpdateResponderCommand}, carrying many responder updates in one message. Each update can
+ * have its own incident id, for which a 'ResponderUpdatedEvent' is sent.
+ */
+public class UpdateRespondersCommand {
+
+    private List<Update> updates = new ArrayList<>();
+
+    public List<Update> getUpdates() {
+        return updates;
+    }
+
+    public static class Update {
+
+        private Responder responder;
+
+        private String incidentId;
+
+        public Responder getResponder() {
+            return responder;
+        }
+
+        public String getIncidentId() {
+            return incidentId;
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.redhat.cajun.navy.responder.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a responder import: the number of records read, imported and rejected, and the first errors with the
+ * line they were found on.
+ */
+public class ImportResult {
+
+    private long read;
+
+    private long imported;
+
+    private long failed;
+
+    private List<LineError> errors = new ArrayList<>();
+
+    public long getRead() {
+        return read;
+    }
+
+    public void setRead(long read) {
+        this.read = read;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public void setImported(long imported) {
+        this.imported = imported;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public List<LineError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<LineError> errors) {
+        this.errors = errors;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResult{" +
+                "read=" + read +
+                ", imported=" + imported +
+                ", failed=" + failed +
+                '}';
+    }
+
+    public static class LineError {
+
+        private long line;
+
+        private String message;
+
+        public LineError() {
+        }
+
+        public LineError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public void setLine(long line) {
+            this.line = line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+    }
+}
@@ -74,6 +74,20 @@ public class Responder {
             responder.id = id;
         }
 
+        public Builder(Responder r) {
+            this.responder = new Responder();
+            responder.id = r.getId();
+            responder.name = r.getName();
+            responder.phoneNumber = r.getPhoneNumber();
+            responder.latitude = r.getLatitude();
+            responder.longitude = r.getLongitude();
+            responder.boatCapacity = r.getBoatCapacity();
+            responder.medicalKit = r.isMedicalKit();
+            responder.available = r.isAvailable();
+            responder.person = r.isPerson();
+            responder.enrolled = r.isEnrolled();
+        }
+
         public Builder name(String name) {
             responder.name = name;
             return this;
@@ -109,12 +123,12 @@ public class Responder {
             return this;
         }
 
-        public Builder person(boolean person) {
+        public Builder person(Boolean person) {
             responder.person = person;
             return this;
         }
 
-        public Builder enrolled(boolean enrolled) {
+        public Builder enrolled(Boolean enrolled) {
             responder.enrolled = enrolled;
             return this;
         }
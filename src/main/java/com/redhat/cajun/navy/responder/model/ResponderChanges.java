@@ -0,0 +1,52 @@
+package com.redhat.cajun.navy.responder.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of the responder changes feed: the responders created or updated and the ids of the responders deleted since
+ * a given watermark. Clients pass <code>nextSince</code> as the watermark of their next request, and keep requesting
+ * while <code>more</code> is true.
+ */
+public class ResponderChanges {
+
+    private List<Responder> changed = new ArrayList<>();
+
+    private List<String> deleted = new ArrayList<>();
+
+    private long nextSince;
+
+    private boolean more;
+
+    public List<Responder> getChanged() {
+        return changed;
+    }
+
+    public void setChanged(List<Responder> changed) {
+        this.changed = changed;
+    }
+
+    public List<String> getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(List<String> deleted) {
+        this.deleted = deleted;
+    }
+
+    public long getNextSince() {
+        return nextSince;
+    }
+
+    public void setNextSince(long nextSince) {
+        this.nextSince = nextSince;
+    }
+
+    public boolean isMore() {
+        return more;
+    }
+
+    public void setMore(boolean more) {
+        this.more = more;
+    }
+}
@@ -0,0 +1,47 @@
+package com.redhat.cajun.navy.responder.model;
+
+/**
+ * The result of looking up one responder id: the responder, or <code>found</code> false if there is no responder with
+ * that id.
+ */
+public class ResponderLookup {
+
+    private String id;
+
+    private boolean found;
+
+    private Responder responder;
+
+    public ResponderLookup() {
+    }
+
+    public ResponderLookup(String id, Responder responder) {
+        this.id = id;
+        this.found = responder != null;
+        this.responder = responder;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public boolean isFound() {
+        return found;
+    }
+
+    public void setFound(boolean found) {
+        this.found = found;
+    }
+
+    public Responder getResponder() {
+        return responder;
+    }
+
+    public void setResponder(Responder responder) {
+        this.responder = responder;
+    }
+}
@@ -0,0 +1,64 @@
+package com.redhat.cajun.navy.responder.model;
+
+/**
+ * The outcome of one update of a bulk update, with the state of the responder after the update when it exists.
+ */
+public class ResponderUpdateStatus {
+
+    public enum Status {
+        UPDATED, UNCHANGED, NOT_FOUND, CONFLICT, FAILED
+    }
+
+    private String id;
+
+    private Status status;
+
+    private Responder responder;
+
+    private String message;
+
+    public ResponderUpdateStatus() {
+    }
+
+    public ResponderUpdateStatus(String id, Status status, Responder responder, String message) {
+        this.id = id;
+        this.status = status;
+        this.responder = responder;
+        this.message = message;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public Responder getResponder() {
+        return responder;
+    }
+
+    public void setResponder(Responder responder) {
+        this.responder = responder;
+    }
+
+    /**
+     * @return the reason of a failure, or null.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
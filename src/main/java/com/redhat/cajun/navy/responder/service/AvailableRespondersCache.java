@@ -0,0 +1,141 @@
+package com.redhat.cajun.navy.responder.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+/**
+ * The list of available responders, encoded as JSON and optionally compressed with gzip, with its ETag.
+ * <p>
+ * The encoded list is kept until the {@link ResponderRegistry} sees a change to the available responders. When the
+ * registry is not loaded, which is always the case unless <code>responder.registry.enabled=true</code>, the list is
+ * encoded again on every call.
+ */
+@Component
+public class AvailableRespondersCache {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Smaller lists are not worth compressing.
+     */
+    private static final int GZIP_MIN_SIZE = 1024;
+
+    @Autowired
+    private ResponderService responderService;
+
+    @Autowired
+    private ResponderRegistry registry;
+
+    @Value("${responder.available-cache.gzip:true}")
+    private boolean gzip = true;
+
+    private volatile Payload cached;
+
+    public Payload get() {
+        if (!registry.isLoaded()) {
+            return encode(-1);
+        }
+        Payload payload = cached;
+        if (payload != null && payload.version == registry.availableVersion()) {
+            return payload;
+        }
+        synchronized (this) {
+            // read the version before the list, so that a change made in between triggers a new encoding
+            long version = registry.availableVersion();
+            payload = cached;
+            if (payload == null || payload.version != version) {
+                payload = encode(version);
+                cached = payload;
+            }
+            return payload;
+        }
+    }
+
+    private Payload encode(long version) {
+        byte[] json;
+        try {
+            json = mapper.writeValueAsBytes(responderService.availableResponders());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Error encoding the available responders", e);
+        }
+        byte[] compressed = null;
+        if (gzip && json.length >= GZIP_MIN_SIZE) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+            try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+                gzipOut.write(json);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            compressed = out.toByteArray();
+        }
+        return new Payload(version, json, compressed, "\"" + DigestUtils.md5DigestAsHex(json) + "\"");
+    }
+
+    public static class Payload {
+
+        private final long version;
+
+        private final byte[] json;
+
+        private final byte[] gzip;
+
+        private final String etag;
+
+        Payload(long version, byte[] json, byte[] gzip, String etag) {
+            this.version = version;
+            this.json = json;
+            this.gzip = gzip;
+            this.etag = etag;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        /**
+         * @return the compressed JSON, or null if it is not compressed.
+         */
+        public byte[] getGzip() {
+            return gzip;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * The ETag of the compressed representation, which must differ from the ETag of the JSON.
+         */
+        public String getGzipEtag() {
+            return etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+
+        /**
+         * @return true if the value of an If-None-Match header matches one of the representations.
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag) || tag.equals(getGzipEtag())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
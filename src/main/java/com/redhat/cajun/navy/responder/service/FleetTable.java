@@ -0,0 +1,395 @@
+package com.redhat.cajun.navy.responder.service;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.redhat.cajun.navy.responder.model.Responder;
+
+/**
+ * Struct-of-arrays table of the responders of the {@link ResponderRegistry}, with one dense slot per responder.
+ * <p>
+ * Each field is a column indexed by slot: coordinates are int unscaled values with their decimal scale, so that they
+ * are returned as they were stored, the boat capacity is an int, and the flags are bitsets, with a second bitset
+ * telling whether the flag is set at all. Filters on the flags, such as the available responders or the stats, are
+ * bitset operations. Ids are mapped to slots by an open-addressing hash table of ints, and the slots of removed
+ * responders are reused. Coordinates which do not fit an int are kept aside. The version of the row of each responder
+ * is kept along, so that updates delivered out of order can be told apart.
+ * <p>
+ * Reads run concurrently, writes are serialized. The table is only filled when the registry is enabled, otherwise the
+ * stats and the available responders are read from the database.
+ */
+class FleetTable {
+
+    private static final int AVAILABLE = 0;
+    private static final int ENROLLED = 1;
+    private static final int PERSON = 2;
+    private static final int MEDICAL_KIT = 3;
+
+    private static final byte NO_COORDINATE = -1;
+    private static final byte LARGE_COORDINATE = -2;
+
+    private static final int NO_BOAT_CAPACITY = Integer.MIN_VALUE;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+
+    private long[] versions = new long[INITIAL_CAPACITY];
+
+    private String[] names = new String[INITIAL_CAPACITY];
+
+    private String[] phoneNumbers = new String[INITIAL_CAPACITY];
+
+    private int[] latitudes = new int[INITIAL_CAPACITY];
+
+    private byte[] latitudeScales = new byte[INITIAL_CAPACITY];
+
+    private int[] longitudes = new int[INITIAL_CAPACITY];
+
+    private byte[] longitudeScales = new byte[INITIAL_CAPACITY];
+
+    private int[] boatCapacities = new int[INITIAL_CAPACITY];
+
+    private final BitSet[] flags = {new BitSet(), new BitSet(), new BitSet(), new BitSet()};
+
+    private final BitSet[] flagsSet = {new BitSet(), new BitSet(), new BitSet(), new BitSet()};
+
+    private final BitSet used = new BitSet();
+
+    // slot + 1 of each id, 0 for an empty bucket
+    private int[] buckets = new int[2 * INITIAL_CAPACITY];
+
+    private int size;
+
+    private int[] freeSlots = new int[16];
+
+    private int freeCount;
+
+    private int nextSlot;
+
+    private final Map<Integer, BigDecimal> largeLatitudes = new HashMap<>();
+
+    private final Map<Integer, BigDecimal> largeLongitudes = new HashMap<>();
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            Arrays.fill(names, null);
+            Arrays.fill(phoneNumbers, null);
+            for (int flag = AVAILABLE; flag <= MEDICAL_KIT; flag++) {
+                flags[flag].clear();
+                flagsSet[flag].clear();
+            }
+            used.clear();
+            Arrays.fill(buckets, 0);
+            largeLatitudes.clear();
+            largeLongitudes.clear();
+            size = 0;
+            freeCount = 0;
+            nextSlot = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    Responder get(long id) {
+        lock.readLock().lock();
+        try {
+            int slot = slot(id);
+            return slot < 0 ? null : read(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the version of the responder, or -1 if there is no responder with this id.
+     */
+    long version(long id) {
+        lock.readLock().lock();
+        try {
+            int slot = slot(id);
+            return slot < 0 ? -1 : versions[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return all the responders, each with its version.
+     */
+    List<VersionedResponder> rows() {
+        lock.readLock().lock();
+        try {
+            List<VersionedResponder> rows = new ArrayList<>(size);
+            for (int slot = used.nextSetBit(0); slot >= 0; slot = used.nextSetBit(slot + 1)) {
+                rows.add(new VersionedResponder(read(slot), versions[slot]));
+            }
+            return rows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the responders which are available and enrolled.
+     */
+    List<Responder> available() {
+        lock.readLock().lock();
+        try {
+            BitSet available = (BitSet) flags[AVAILABLE].clone();
+            available.and(flags[ENROLLED]);
+            return read(available);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long enrolledCount() {
+        lock.readLock().lock();
+        try {
+            return flags[ENROLLED].cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of responders which are enrolled and not available, not counting those whose availability is
+     * not set, as the database counts them.
+     */
+    long activeCount() {
+        lock.readLock().lock();
+        try {
+            BitSet active = (BitSet) flags[ENROLLED].clone();
+            active.and(flagsSet[AVAILABLE]);
+            active.andNot(flags[AVAILABLE]);
+            return active.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores a responder, replacing the responder with the same id whatever its version.
+     *
+     * @return the replaced responder, or null.
+     */
+    Responder put(Responder responder, long version) {
+        long id = Long.parseLong(responder.getId());
+        lock.writeLock().lock();
+        try {
+            int slot = slot(id);
+            Responder previous = null;
+            if (slot >= 0) {
+                previous = read(slot);
+            } else {
+                slot = allocate(id);
+            }
+            versions[slot] = version;
+            names[slot] = responder.getName();
+            phoneNumbers[slot] = responder.getPhoneNumber();
+            latitudeScales[slot] = writeCoordinate(slot, responder.getLatitude(), latitudes, largeLatitudes);
+            longitudeScales[slot] = writeCoordinate(slot, responder.getLongitude(), longitudes, largeLongitudes);
+            boatCapacities[slot] = responder.getBoatCapacity() == null ? NO_BOAT_CAPACITY : responder.getBoatCapacity();
+            writeFlag(slot, AVAILABLE, responder.isAvailable());
+            writeFlag(slot, ENROLLED, responder.isEnrolled());
+            writeFlag(slot, PERSON, responder.isPerson());
+            writeFlag(slot, MEDICAL_KIT, responder.isMedicalKit());
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the removed responder, or null.
+     */
+    Responder remove(long id) {
+        lock.writeLock().lock();
+        try {
+            int slot = slot(id);
+            if (slot < 0) {
+                return null;
+            }
+            Responder previous = read(slot);
+            removeBucket(id);
+            names[slot] = null;
+            phoneNumbers[slot] = null;
+            largeLatitudes.remove(slot);
+            largeLongitudes.remove(slot);
+            for (int flag = AVAILABLE; flag <= MEDICAL_KIT; flag++) {
+                flags[flag].clear(slot);
+                flagsSet[flag].clear(slot);
+            }
+            used.clear(slot);
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, 2 * freeCount);
+            }
+            freeSlots[freeCount++] = slot;
+            size--;
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int allocate(long id) {
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot++;
+        if (slot >= ids.length) {
+            int capacity = 2 * ids.length;
+            ids = Arrays.copyOf(ids, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            names = Arrays.copyOf(names, capacity);
+            phoneNumbers = Arrays.copyOf(phoneNumbers, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            latitudeScales = Arrays.copyOf(latitudeScales, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            longitudeScales = Arrays.copyOf(longitudeScales, capacity);
+            boatCapacities = Arrays.copyOf(boatCapacities, capacity);
+        }
+        ids[slot] = id;
+        used.set(slot);
+        size++;
+        if (2 * size > buckets.length) {
+            rehash(2 * buckets.length);
+        } else {
+            insertBucket(id, slot);
+        }
+        return slot;
+    }
+
+    private List<Responder> read(BitSet slots) {
+        List<Responder> responders = new ArrayList<>(slots.cardinality());
+        for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+            responders.add(read(slot));
+        }
+        return responders;
+    }
+
+    private Responder read(int slot) {
+        return new Responder.Builder(Long.toString(ids[slot]))
+                .name(names[slot])
+                .phoneNumber(phoneNumbers[slot])
+                .latitude(readCoordinate(slot, latitudes, latitudeScales, largeLatitudes))
+                .longitude(readCoordinate(slot, longitudes, longitudeScales, largeLongitudes))
+                .boatCapacity(boatCapacities[slot] == NO_BOAT_CAPACITY ? null : boatCapacities[slot])
+                .available(readFlag(slot, AVAILABLE))
+                .enrolled(readFlag(slot, ENROLLED))
+                .person(readFlag(slot, PERSON))
+                .medicalKit(readFlag(slot, MEDICAL_KIT))
+                .build();
+    }
+
+    private static byte writeCoordinate(int slot, BigDecimal value, int[] column, Map<Integer, BigDecimal> large) {
+        large.remove(slot);
+        if (value == null) {
+            column[slot] = 0;
+            return NO_COORDINATE;
+        }
+        BigInteger unscaled = value.unscaledValue();
+        if (unscaled.bitLength() < 32 && value.scale() >= 0 && value.scale() <= Byte.MAX_VALUE) {
+            column[slot] = unscaled.intValue();
+            return (byte) value.scale();
+        }
+        column[slot] = 0;
+        large.put(slot, value);
+        return LARGE_COORDINATE;
+    }
+
+    private static BigDecimal readCoordinate(int slot, int[] column, byte[] scales, Map<Integer, BigDecimal> large) {
+        byte scale = scales[slot];
+        if (scale == NO_COORDINATE) {
+            return null;
+        }
+        if (scale == LARGE_COORDINATE) {
+            return large.get(slot);
+        }
+        return BigDecimal.valueOf(column[slot], scale);
+    }
+
+    private void writeFlag(int slot, int flag, Boolean value) {
+        flags[flag].set(slot, Boolean.TRUE.equals(value));
+        flagsSet[flag].set(slot, value != null);
+    }
+
+    private Boolean readFlag(int slot, int flag) {
+        return flagsSet[flag].get(slot) ? flags[flag].get(slot) : null;
+    }
+
+    private int slot(long id) {
+        int mask = buckets.length - 1;
+        for (int bucket = hash(id) & mask; buckets[bucket] != 0; bucket = (bucket + 1) & mask) {
+            int slot = buckets[bucket] - 1;
+            if (ids[slot] == id) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insertBucket(long id, int slot) {
+        int mask = buckets.length - 1;
+        int bucket = hash(id) & mask;
+        while (buckets[bucket] != 0) {
+            bucket = (bucket + 1) & mask;
+        }
+        buckets[bucket] = slot + 1;
+    }
+
+    private void removeBucket(long id) {
+        int mask = buckets.length - 1;
+        int bucket = hash(id) & mask;
+        while (ids[buckets[bucket] - 1] != id) {
+            bucket = (bucket + 1) & mask;
+        }
+        // moves back the entries after the removed one which would not be found anymore
+        buckets[bucket] = 0;
+        int next = bucket;
+        while (true) {
+            next = (next + 1) & mask;
+            if (buckets[next] == 0) {
+                return;
+            }
+            int home = hash(ids[buckets[next] - 1]) & mask;
+            boolean reachable = bucket <= next ? bucket < home && home <= next : bucket < home || home <= next;
+            if (!reachable) {
+                buckets[bucket] = buckets[next];
+                buckets[next] = 0;
+                bucket = next;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        buckets = new int[capacity];
+        for (int slot = used.nextSetBit(0); slot >= 0; slot = used.nextSetBit(slot + 1)) {
+            insertBucket(ids[slot], slot);
+        }
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
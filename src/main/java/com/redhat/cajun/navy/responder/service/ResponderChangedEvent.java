@@ -0,0 +1,41 @@
+package com.redhat.cajun.navy.responder.service;
+
+import com.redhat.cajun.navy.responder.model.Responder;
+
+/**
+ * Published by {@link ResponderService} when a responder is created or updated. The event is delivered to
+ * transactional event listeners once the transaction has committed.
+ */
+public class ResponderChangedEvent {
+
+    private final Responder previous;
+
+    private final Responder current;
+
+    private final long version;
+
+    public ResponderChangedEvent(Responder previous, Responder current, long version) {
+        this.previous = previous;
+        this.current = current;
+        this.version = version;
+    }
+
+    /**
+     * @return the state of the responder before the change, or null if the responder was created.
+     */
+    public Responder getPrevious() {
+        return previous;
+    }
+
+    public Responder getCurrent() {
+        return current;
+    }
+
+    /**
+     * @return the version of the responder row after the change. Events of the same responder are delivered in any
+     * order by the threads of their transactions, and listeners use it to ignore the older ones.
+     */
+    public long getVersion() {
+        return version;
+    }
+}
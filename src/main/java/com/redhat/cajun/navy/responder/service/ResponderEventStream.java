@@ -0,0 +1,271 @@
+package com.redhat.cajun.navy.responder.service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.model.ResponderStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes responder changes and stats to Server-Sent Events clients.
+ * <p>
+ * Changes are taken from the events that {@link ResponderService} publishes once its transactions have committed,
+ * and queued per client, where a newer change of a responder replaces the one not sent yet. Queues are flushed every
+ * <code>responder.stream.flush-interval</code> milliseconds by a small pool of threads, so a slow client does not hold
+ * back the others, nor the transactions. A client whose queue reaches <code>responder.stream.buffer-size</code>
+ * responders gets a single <code>resync</code> event instead, after which it should reload the responders, as it
+ * should after a reset. Events of a responder older than one already queued or sent to the client are ignored, as
+ * concurrent transactions deliver them in any order.
+ * <p>
+ * The events are <code>responder</code> for a responder matching the filters of the client which was created or
+ * updated, <code>removed</code> with the id of a responder which no longer matches them, <code>stats</code> when the
+ * stats change, and <code>resync</code>.
+ */
+@Component
+public class ResponderEventStream {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponderEventStream.class);
+
+    @Autowired
+    private ResponderRegistry registry;
+
+    @Autowired
+    private ResponderStatsCounters statsCounters;
+
+    @Value("${responder.stream.buffer-size:1000}")
+    private int bufferSize = 1000;
+
+    @Value("${responder.stream.timeout:3600000}")
+    private long timeout;
+
+    @Value("${responder.stream.heartbeat-interval:15000}")
+    private long heartbeatInterval = 15000;
+
+    @Value("${responder.stream.threads:4}")
+    private int threads = 4;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "responder-stream-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+        subscribers.forEach(s -> s.emitter.complete());
+    }
+
+    public SseEmitter subscribe(Filter filter) {
+        return subscribe(new SseEmitter(timeout), filter);
+    }
+
+    SseEmitter subscribe(SseEmitter emitter, Filter filter) {
+        Subscriber subscriber = new Subscriber(emitter, filter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onResponderChanged(ResponderChangedEvent event) {
+        subscribers.forEach(s -> s.offer(event, bufferSize));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRespondersReset(RespondersResetEvent event) {
+        subscribers.forEach(s -> s.resync(event.isClear() ? "clear" : "reset"));
+    }
+
+    @Scheduled(fixedDelayString = "${responder.stream.flush-interval:250}")
+    public void flush() {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        // the same source as ResponderService.getResponderStats, without falling back to the database
+        ResponderStats stats = registry.isLoaded() ? registry.stats()
+                : statsCounters.isInitialized() ? statsCounters.stats() : null;
+        long heartbeatDue = System.currentTimeMillis() - heartbeatInterval;
+        for (Subscriber subscriber : subscribers) {
+            // a client still busy with the previous flush keeps conflating its queue
+            if (subscriber.hasPending(stats, heartbeatDue) && subscriber.sending.compareAndSet(false, true)) {
+                executor.execute(() -> {
+                    try {
+                        if (!subscriber.drain(stats, heartbeatDue)) {
+                            subscribers.remove(subscriber);
+                        }
+                    } finally {
+                        subscriber.sending.set(false);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Selects the responders a client is interested in. A client is told when a responder it was sent stops matching.
+     */
+    public static class Filter {
+
+        private final boolean availableOnly;
+
+        private final Double minLatitude;
+
+        private final Double maxLatitude;
+
+        private final Double minLongitude;
+
+        private final Double maxLongitude;
+
+        /**
+         * @param availableOnly if true, only the available and enrolled responders match.
+         * @param minLatitude   the bounding box of the responders, all null for no bounding box.
+         */
+        public Filter(boolean availableOnly, Double minLatitude, Double maxLatitude, Double minLongitude, Double maxLongitude) {
+            this.availableOnly = availableOnly;
+            this.minLatitude = minLatitude;
+            this.maxLatitude = maxLatitude;
+            this.minLongitude = minLongitude;
+            this.maxLongitude = maxLongitude;
+        }
+
+        boolean matches(Responder responder) {
+            if (responder == null || (availableOnly && !ResponderRegistry.isAvailable(responder))) {
+                return false;
+            }
+            if (minLatitude == null) {
+                return true;
+            }
+            return within(responder.getLatitude(), minLatitude, maxLatitude)
+                    && within(responder.getLongitude(), minLongitude, maxLongitude);
+        }
+
+        private static boolean within(BigDecimal value, double min, double max) {
+            return value != null && value.doubleValue() >= min && value.doubleValue() <= max;
+        }
+    }
+
+    private static class Subscriber {
+
+        private final SseEmitter emitter;
+
+        private final Filter filter;
+
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        private final Map<String, SseEmitter.SseEventBuilder> pending = new LinkedHashMap<>();
+
+        // the latest version offered of each responder
+        private final Map<String, Long> versions = new HashMap<>();
+
+        private String resync;
+
+        private volatile ResponderStats lastStats;
+
+        private volatile long lastSent = System.currentTimeMillis();
+
+        Subscriber(SseEmitter emitter, Filter filter) {
+            this.emitter = emitter;
+            this.filter = filter;
+        }
+
+        synchronized void offer(ResponderChangedEvent event, int bufferSize) {
+            if (resync != null) {
+                // the client reloads the responders once it gets the resync event
+                return;
+            }
+            Responder current = event.getCurrent();
+            Long offered = versions.get(current.getId());
+            if (offered != null && offered >= event.getVersion()) {
+                return;
+            }
+            versions.put(current.getId(), event.getVersion());
+            boolean matches = filter.matches(current);
+            if (!matches && !filter.matches(event.getPrevious())) {
+                return;
+            }
+            if (pending.size() >= bufferSize && !pending.containsKey(current.getId())) {
+                log.debug("Responder stream client fell behind by " + pending.size() + " responders, sending a resync");
+                pending.clear();
+                resync = "overflow";
+                return;
+            }
+            pending.put(current.getId(), matches ? SseEmitter.event().name("responder").data(current)
+                    : SseEmitter.event().name("removed").data(current.getId()));
+        }
+
+        synchronized void resync(String reason) {
+            pending.clear();
+            resync = reason;
+        }
+
+        synchronized boolean hasPending(ResponderStats stats, long heartbeatDue) {
+            return resync != null || !pending.isEmpty() || (stats != null && !stats.equals(lastStats))
+                    || lastSent < heartbeatDue;
+        }
+
+        /**
+         * @return false if the client is gone.
+         */
+        boolean drain(ResponderStats stats, long heartbeatDue) {
+            List<SseEmitter.SseEventBuilder> events = new ArrayList<>();
+            synchronized (this) {
+                if (resync != null) {
+                    events.add(SseEmitter.event().name("resync").data(resync));
+                    resync = null;
+                }
+                events.addAll(pending.values());
+                pending.clear();
+            }
+            if (stats != null && !stats.equals(lastStats)) {
+                events.add(SseEmitter.event().name("stats").data(stats));
+                lastStats = stats;
+            }
+            if (events.isEmpty() && lastSent < heartbeatDue) {
+                events.add(SseEmitter.event().comment("heartbeat"));
+            }
+            try {
+                for (SseEmitter.SseEventBuilder event : events) {
+                    emitter.send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Responder stream client disconnected: " + e.getMessage());
+                return false;
+            }
+            lastSent = System.currentTimeMillis();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.redhat.cajun.navy.responder.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.redhat.cajun.navy.responder.model.Responder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Writes responders as NDJSON or CSV while they are read from the database, so that exports of any size are done in
+ * constant memory. The CSV columns are the fields of the responders, and exported files can be imported again.
+ */
+@Service
+public class ResponderExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponderExporter.class);
+
+    static final String CSV_HEADER = "id,name,phoneNumber,latitude,longitude,boatCapacity,medicalKit,available,person,enrolled";
+
+    @Autowired
+    private ResponderService responderService;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    /**
+     * @return the number of exported responders.
+     */
+    public long exportResponders(Writer writer, ResponderFileFormat format, Boolean enrolled, Boolean available,
+                                 Boolean person) throws IOException {
+
+        ObjectWriter jsonWriter = mapper.writerFor(Responder.class);
+        long[] count = {0};
+        if (format == ResponderFileFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+        try {
+            responderService.exportResponders(enrolled, available, person, responder -> {
+                try {
+                    if (format == ResponderFileFormat.CSV) {
+                        writeCsv(writer, responder);
+                    } else {
+                        writer.write(jsonWriter.writeValueAsString(responder));
+                    }
+                    writer.write('\n');
+                    count[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        log.info("Exported " + count[0] + " responders");
+        return count[0];
+    }
+
+    private static void writeCsv(Writer writer, Responder responder) throws IOException {
+        Object[] values = {responder.getId(), responder.getName(), responder.getPhoneNumber(), responder.getLatitude(),
+                responder.getLongitude(), responder.getBoatCapacity(), responder.isMedicalKit(), responder.isAvailable(),
+                responder.isPerson(), responder.isEnrolled()};
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (values[i] instanceof BigDecimal) {
+                writer.write(((BigDecimal) values[i]).toPlainString());
+            } else if (values[i] != null) {
+                writer.write(csvValue(values[i].toString()));
+            }
+        }
+    }
+
+    static String csvValue(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0
+                && value.trim().length() == value.length()) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
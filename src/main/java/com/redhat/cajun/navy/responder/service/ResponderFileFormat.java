@@ -0,0 +1,22 @@
+package com.redhat.cajun.navy.responder.service;
+
+/**
+ * Formats of the responder files which are imported and exported. Both have one responder per line, and CSV files
+ * start with a header line naming the fields.
+ */
+public enum ResponderFileFormat {
+
+    NDJSON("application/x-ndjson"),
+
+    CSV("text/csv");
+
+    private final String mediaType;
+
+    ResponderFileFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+}
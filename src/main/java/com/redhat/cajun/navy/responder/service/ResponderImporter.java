@@ -0,0 +1,217 @@
+package com.redhat.cajun.navy.responder.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.cajun.navy.responder.model.ImportResult;
+import com.redhat.cajun.navy.responder.model.Responder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Imports responders from a stream of NDJSON or CSV records, one record per line, except that quoted CSV values may
+ * contain line breaks.
+ * <p>
+ * Records are parsed as they are read and created in chunks of <code>responder.ingest.chunk-size</code>, so only one
+ * chunk is held in memory. Each chunk is committed in its own transaction, and stays committed if a later chunk fails.
+ * Lines which cannot be parsed are skipped and reported, as are the lines of a chunk which
+ * cannot be created. Records spanning several lines are reported at their first line. CSV input must start with a header line naming the fields of the responders. Ids in the input
+ * are ignored, all the responders are created.
+ */
+@Service
+public class ResponderImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponderImporter.class);
+
+    @Autowired
+    private ResponderService responderService;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @Value("${responder.ingest.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${responder.import.max-errors:100}")
+    private int maxErrors;
+
+    public ImportResult importResponders(Reader input, ResponderFileFormat format) throws IOException {
+        return importResponders(input, format, progress -> {
+        });
+    }
+
+    /**
+     * Same as {@link #importResponders(Reader, ResponderFileFormat)}, passing the result so far to the progress
+     * listener after each chunk. The listener must not keep the result, which changes as the import goes on.
+     */
+    public ImportResult importResponders(Reader input, ResponderFileFormat format, Consumer<ImportResult> progress)
+            throws IOException {
+
+        ImportResult result = new ImportResult();
+        List<Responder> chunk = new ArrayList<>();
+        List<Long> chunkLines = new ArrayList<>();
+        String[] header = null;
+        long lineNumber = 0;
+
+        BufferedReader reader = new BufferedReader(input);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            long recordLine = lineNumber;
+            if (format == ResponderFileFormat.CSV) {
+                // an odd number of quotes leaves a quoted value open, which goes on with the next line
+                int quotes = quotes(line);
+                String next;
+                while (quotes % 2 != 0 && (next = reader.readLine()) != null) {
+                    lineNumber++;
+                    line = line + '\n' + next;
+                    quotes += quotes(next);
+                }
+            }
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            if (format == ResponderFileFormat.CSV && header == null) {
+                try {
+                    header = parseCsvLine(line).toArray(new String[0]);
+                } catch (IllegalArgumentException e) {
+                    error(result, recordLine, "Invalid header: " + e.getMessage());
+                    return result;
+                }
+                continue;
+            }
+            result.setRead(result.getRead() + 1);
+            try {
+                chunk.add(format == ResponderFileFormat.CSV ? fromCsv(header, line) : fromJson(line));
+                chunkLines.add(recordLine);
+            } catch (IOException | IllegalArgumentException e) {
+                failed(result, recordLine, e.getMessage());
+            }
+            if (chunk.size() >= chunkSize) {
+                flush(result, chunk, chunkLines, progress);
+            }
+        }
+        flush(result, chunk, chunkLines, progress);
+        log.info("Import done: " + result);
+        return result;
+    }
+
+    private void flush(ImportResult result, List<Responder> chunk, List<Long> chunkLines, Consumer<ImportResult> progress) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            responderService.createResponders(chunk);
+            result.setImported(result.getImported() + chunk.size());
+        } catch (RuntimeException e) {
+            log.warn("Error creating the responders of lines " + chunkLines.get(0) + " to "
+                    + chunkLines.get(chunkLines.size() - 1), e);
+            chunkLines.forEach(l -> failed(result, l, "Not created: " + e.getMessage()));
+        }
+        log.info("Import in progress: " + result);
+        progress.accept(result);
+        chunk.clear();
+        chunkLines.clear();
+    }
+
+    private void failed(ImportResult result, long line, String message) {
+        result.setFailed(result.getFailed() + 1);
+        error(result, line, message);
+    }
+
+    private void error(ImportResult result, long line, String message) {
+        if (result.getErrors().size() < maxErrors) {
+            result.getErrors().add(new ImportResult.LineError(line, message));
+        }
+    }
+
+    private Responder fromJson(String line) throws IOException {
+        JsonNode node = mapper.readTree(line);
+        if (!node.isObject()) {
+            throw new IllegalArgumentException("Expected a JSON object");
+        }
+        ((ObjectNode) node).remove("id");
+        return mapper.treeToValue(node, Responder.class);
+    }
+
+    private Responder fromCsv(String[] header, String line) {
+        List<String> values = parseCsvLine(line);
+        if (values.size() != header.length) {
+            throw new IllegalArgumentException("Expected " + header.length + " values, found " + values.size());
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            if (!values.get(i).isEmpty()) {
+                fields.put(header[i], values.get(i));
+            }
+        }
+        fields.remove("id");
+        return mapper.convertValue(fields, Responder.class);
+    }
+
+    private static int quotes(String line) {
+        int quotes = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        return quotes;
+    }
+
+    /**
+     * Splits a CSV record. Values may be quoted, with doubled quotes inside quoted values, and line breaks inside
+     * quoted values are kept as <code>\n</code>. Whitespace around values is trimmed, except inside quotes.
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        value.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                if (!wasQuoted && value.toString().trim().isEmpty()) {
+                    // whitespace before the opening quote
+                    value.setLength(0);
+                }
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == ',') {
+                values.add(wasQuoted ? value.toString() : value.toString().trim());
+                value.setLength(0);
+                wasQuoted = false;
+            } else if (!wasQuoted || !Character.isWhitespace(c)) {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted value");
+        }
+        values.add(wasQuoted ? value.toString() : value.toString().trim());
+        return values;
+    }
+}
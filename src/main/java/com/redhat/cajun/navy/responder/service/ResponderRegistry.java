@@ -0,0 +1,335 @@
+package com.redhat.cajun.navy.responder.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.NonUniqueResultException;
+
+import com.redhat.cajun.navy.responder.dao.ChangeSequence;
+import com.redhat.cajun.navy.responder.dao.ResponderDao;
+import com.redhat.cajun.navy.responder.entity.ResponderEntity;
+import com.redhat.cajun.navy.responder.entity.ResponderTombstoneEntity;
+import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.model.ResponderStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * In-memory read model of all the responders.
+ * <p>
+ * The registry is loaded when the application starts, before the Kafka listeners and the web server, and is kept
+ * current by the events that {@link ResponderService} publishes once its transactions have committed. Changes made by
+ * other instances of the service are not seen, so the registry is disabled by default, and should only be enabled with
+ * <code>responder.registry.enabled=true</code> in deployments running a single instance. Until the registry is loaded,
+ * and while it is disabled, reads go to the database.
+ * <p>
+ * Events of the same responder committed by concurrent transactions are delivered in any order, so each responder is
+ * kept with the version of its row, and an event older than the stored version is ignored.
+ * <p>
+ * With <code>responder.snapshot.enabled</code>, the registry is saved to a {@link ResponderSnapshot} file every
+ * <code>responder.snapshot.interval</code> milliseconds and on shutdown, and the next start loads the snapshot and
+ * only reads the changes committed after its watermark from the database. The registry is loaded from the database
+ * when there is no usable snapshot.
+ * <p>
+ * The responders are stored in a columnar {@link FleetTable}, so that the available responders and the stats are
+ * computed from bitsets. Updates are serialized, reads run concurrently with them.
+ */
+@Component
+public class ResponderRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponderRegistry.class);
+
+    @Autowired
+    private ResponderDao responderDao;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ChangeSequence changeSequence;
+
+    @Value("${responder.registry.enabled:false}")
+    private boolean enabled;
+
+    @Value("${responder.registry.cell-size:0.1}")
+    private double cellSize = 0.1;
+
+    @Value("${responder.snapshot.enabled:false}")
+    private boolean snapshotEnabled;
+
+    @Value("${responder.snapshot.path:${java.io.tmpdir}/responder-registry.snapshot}")
+    private String snapshotPath;
+
+    private final FleetTable fleet = new FleetTable();
+
+    private final Map<String, Set<Long>> respondersByName = new ConcurrentHashMap<>();
+
+    private SpatialGrid grid;
+
+    private volatile boolean loaded = false;
+
+    private final AtomicLong availableVersion = new AtomicLong();
+
+    private long snapshotWatermark = -1;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("Responder registry is disabled");
+            return;
+        }
+        if (snapshotEnabled && warmStart()) {
+            return;
+        }
+        try {
+            List<VersionedResponder> all = new TransactionTemplate(transactionManager).execute(s -> responderDao.allResponders()
+                    .stream().map(r -> new VersionedResponder(ResponderService.toResponder(r), r.getVersion()))
+                    .collect(Collectors.toList()));
+            load(all);
+            log.info("Responder registry loaded with " + all.size() + " responders");
+        } catch (Exception e) {
+            log.error("Error loading the responder registry, responders will be read from the database", e);
+        }
+    }
+
+    /**
+     * Loads the registry from the snapshot, and applies the changes committed after the watermark of the snapshot.
+     *
+     * @return false if there is no snapshot, or if it cannot be used.
+     */
+    boolean warmStart() {
+        Path path = Paths.get(snapshotPath);
+        if (!Files.exists(path)) {
+            log.info("No responder registry snapshot at " + path);
+            return false;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            ResponderSnapshot snapshot = ResponderSnapshot.read(path);
+            long since = snapshot.getWatermark();
+            boolean[] usable = {true};
+            List<ResponderEntity> changed = new ArrayList<>();
+            List<ResponderTombstoneEntity> deleted = new ArrayList<>();
+            new TransactionTemplate(transactionManager).execute(s -> {
+                long upTo = responderDao.maxChangeSeq();
+                if (upTo < since) {
+                    // the database was replaced or restored since the snapshot was taken
+                    usable[0] = false;
+                    return null;
+                }
+                changed.addAll(responderDao.changedResponders(since, upTo, Integer.MAX_VALUE));
+                deleted.addAll(responderDao.tombstones(since, upTo));
+                return null;
+            });
+            if (!usable[0]) {
+                log.warn("Responder registry snapshot " + path + " is ahead of the database, ignoring it");
+                return false;
+            }
+            load(snapshot.getResponders());
+            changed.forEach(r -> put(ResponderService.toResponder(r), r.getVersion()));
+            deleted.forEach(t -> remove(t.getResponderId()));
+            log.info("Responder registry loaded from snapshot with " + snapshot.getResponders().size()
+                    + " responders, " + changed.size() + " changed and " + deleted.size() + " deleted since, in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            return true;
+        } catch (Exception e) {
+            log.warn("Error loading the responder registry snapshot " + path + ", loading from the database", e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the registry to the snapshot file, unless nothing changed since the last snapshot.
+     */
+    @Scheduled(initialDelayString = "${responder.snapshot.interval:60000}", fixedDelayString = "${responder.snapshot.interval:60000}")
+    @PreDestroy
+    public void saveSnapshot() {
+        if (!enabled || !snapshotEnabled || !loaded) {
+            return;
+        }
+        try {
+            // taken before reading the registry: the registry is updated before a transaction leaves the running
+            // transactions, so it holds all the changes up to the watermark, and maybe some after it
+            long watermark = Math.min(new TransactionTemplate(transactionManager).execute(s -> responderDao.maxChangeSeq()),
+                    changeSequence.visibleWatermark());
+            if (watermark == snapshotWatermark) {
+                return;
+            }
+            ResponderSnapshot.write(Paths.get(snapshotPath), watermark, fleet.rows());
+            snapshotWatermark = watermark;
+            log.debug("Saved responder registry snapshot at watermark " + watermark);
+        } catch (IOException | RuntimeException e) {
+            log.error("Error saving the responder registry snapshot to " + snapshotPath, e);
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    void load(Collection<VersionedResponder> all) {
+        fleet.clear();
+        respondersByName.clear();
+        grid = new SpatialGrid(cellSize);
+        all.forEach(r -> put(r.getResponder(), r.getVersion()));
+        loaded = true;
+        availableVersion.incrementAndGet();
+    }
+
+    /**
+     * Changes after every change to the responders returned by {@link #available()}, once the change is visible.
+     */
+    public long availableVersion() {
+        return availableVersion.get();
+    }
+
+    public Responder get(long id) {
+        return fleet.get(id);
+    }
+
+    public Responder getByName(String name) {
+        Set<Long> ids = respondersByName.get(name);
+        if (ids == null || ids.isEmpty()) {
+            return null;
+        }
+        if (ids.size() > 1) {
+            throw new NonUniqueResultException("Found several Responders with name '" + name + "'");
+        }
+        return fleet.get(ids.iterator().next());
+    }
+
+    public List<Responder> available() {
+        return fleet.available();
+    }
+
+    /**
+     * @return the number of enrolled responders, and of those which are not available.
+     */
+    public ResponderStats stats() {
+        ResponderStats stats = new ResponderStats();
+        stats.setTotal((int) fleet.enrolledCount());
+        stats.setActive((int) fleet.activeCount());
+        return stats;
+    }
+
+    /**
+     * Returns the responders nearest to a point which match the filter, ordered by distance.
+     *
+     * @param limit    the maximum number of responders to return.
+     * @param radiusKm the maximum distance to the point, in kilometers.
+     */
+    public List<Responder> nearest(double latitude, double longitude, int limit, double radiusKm, Predicate<Responder> filter) {
+        return grid.nearest(latitude, longitude, limit, radiusKm, id -> {
+            Responder responder = fleet.get(id);
+            return responder != null && filter.test(responder);
+        }).stream().map(fleet::get).filter(r -> r != null).collect(Collectors.toList());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onResponderChanged(ResponderChangedEvent event) {
+        if (loaded) {
+            put(event.getCurrent(), event.getVersion());
+        }
+    }
+
+    /**
+     * Reads the rows written by the reset again, with the versions the reset gave them. The registry is no longer used
+     * if they cannot be read.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRespondersReset(RespondersResetEvent event) {
+        if (!loaded) {
+            return;
+        }
+        long changeSeq = event.getChangeSeq();
+        List<ResponderEntity> changed = new ArrayList<>();
+        List<ResponderTombstoneEntity> deleted = new ArrayList<>();
+        try {
+            // the event is delivered while the transaction of the reset completes
+            TransactionTemplate template = new TransactionTemplate(transactionManager);
+            template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            template.setReadOnly(true);
+            template.execute(s -> {
+                changed.addAll(responderDao.changedResponders(changeSeq - 1, changeSeq, Integer.MAX_VALUE));
+                deleted.addAll(responderDao.tombstones(changeSeq - 1, changeSeq));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.error("Error reading the responders after a reset, responders will be read from the database", e);
+            loaded = false;
+            return;
+        }
+        deleted.forEach(t -> remove(t.getResponderId()));
+        changed.forEach(r -> put(ResponderService.toResponder(r), r.getVersion()));
+    }
+
+    private synchronized void put(Responder responder, long version) {
+        long id = Long.parseLong(responder.getId());
+        long stored = fleet.version(id);
+        if (stored >= version) {
+            log.debug("Ignoring version " + version + " of responder " + id + ", the registry has version " + stored);
+            return;
+        }
+        Responder previous = fleet.put(responder, version);
+        if (previous != null && previous.getName() != null && !previous.getName().equals(responder.getName())) {
+            removeName(previous.getName(), id);
+        }
+        if (responder.getName() != null) {
+            respondersByName.computeIfAbsent(responder.getName(), name -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+        if (responder.getLatitude() != null && responder.getLongitude() != null) {
+            grid.put(id, responder.getLatitude().doubleValue(), responder.getLongitude().doubleValue());
+        } else {
+            grid.remove(id);
+        }
+        if (isAvailable(responder) || isAvailable(previous)) {
+            availableVersion.incrementAndGet();
+        }
+    }
+
+    private synchronized void remove(long id) {
+        Responder previous = fleet.remove(id);
+        if (previous == null) {
+            return;
+        }
+        if (previous.getName() != null) {
+            removeName(previous.getName(), id);
+        }
+        grid.remove(id);
+        if (isAvailable(previous)) {
+            availableVersion.incrementAndGet();
+        }
+    }
+
+    private void removeName(String name, long id) {
+        respondersByName.computeIfPresent(name, (n, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    static boolean isAvailable(Responder responder) {
+        return responder != null && Boolean.TRUE.equals(responder.isAvailable()) && Boolean.TRUE.equals(responder.isEnrolled());
+    }
+
+}
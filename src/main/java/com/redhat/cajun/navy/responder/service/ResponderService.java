@@ -1,19 +1,39 @@
 package com.redhat.cajun.navy.responder.service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import javax.persistence.OptimisticLockException;
 
+import com.redhat.cajun.navy.responder.dao.ChangeSequence;
+import com.redhat.cajun.navy.responder.dao.NearestQuery;
 import com.redhat.cajun.navy.responder.dao.ResponderDao;
+import com.redhat.cajun.navy.responder.dao.ResponderUpdateResult;
 import com.redhat.cajun.navy.responder.entity.ResponderEntity;
 import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.model.ResponderChanges;
 import com.redhat.cajun.navy.responder.model.ResponderStats;
+import com.redhat.cajun.navy.responder.model.ResponderUpdateStatus;
 import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.apache.commons.lang3.tuple.Triple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Service
 public class ResponderService {
@@ -23,8 +43,48 @@ public class ResponderService {
     @Autowired
     private ResponderDao responderDao;
 
+    @Autowired
+    private ResponderUpdatedEventOutbox outbox;
+
+    @Autowired
+    private ResponderRegistry registry;
+
+    @Autowired
+    private ResponderStatsCounters statsCounters;
+
+    @Autowired
+    private ApplicationEventPublisher publisher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ChangeSequence changeSequence;
+
+    // off by default: the conditional statements are PostgreSQL specific, and the tests, on H2, do not cover them
+    @Value("${responder.update.conditional-sql:false}")
+    private boolean conditionalUpdate;
+
+    @Value("${responder.ingest.chunk-size:1000}")
+    private int ingestChunkSize;
+
+    @Value("${responder.update.chunk-size:500}")
+    private int updateChunkSize;
+
+    @Value("${responder.export.fetch-size:1000}")
+    private int exportFetchSize;
+
+    @Value("${responder.export.timeout:3600}")
+    private int exportTimeout;
+
     @Transactional
     public ResponderStats getResponderStats() {
+        if (registry.isLoaded()) {
+            return registry.stats();
+        }
+        if (statsCounters.isInitialized()) {
+            return statsCounters.stats();
+        }
         ResponderStats stats = new ResponderStats();
         stats.setTotal(responderDao.enrolledRespondersCount().intValue());
         stats.setActive(responderDao.activeRespondersCount().intValue());
@@ -33,17 +93,41 @@ public class ResponderService {
 
     @Transactional
     public Responder getResponder(long id) {
+        if (registry.isLoaded()) {
+            return registry.get(id);
+        }
         return toResponder(responderDao.findById(id));
     }
 
+    /**
+     * Looks up several responders, from the registry or with a single query.
+     *
+     * @return the responders in the order of the ids, with null for the ids which are not found.
+     */
+    @Transactional
+    public List<Responder> getResponders(List<Long> ids) {
+        if (registry.isLoaded()) {
+            return ids.stream().map(registry::get).collect(Collectors.toList());
+        }
+        Map<Long, ResponderEntity> found = responderDao.findByIds(ids).stream()
+                .collect(Collectors.toMap(ResponderEntity::getId, Function.identity()));
+        return ids.stream().map(id -> toResponder(found.get(id))).collect(Collectors.toList());
+    }
+
     @Transactional
     public Responder getResponderByName(String name) {
+        if (registry.isLoaded()) {
+            return registry.getByName(name);
+        }
         return toResponder(responderDao.findByName(name));
     }
 
     @Transactional
     public List<Responder> availableResponders() {
 
+        if (registry.isLoaded()) {
+            return registry.available();
+        }
         return responderDao.availableResponders().stream().map(responderEntity -> new Responder.Builder(Long.toString(responderEntity.getId()))
                 .name(responderEntity.getName())
                 .phoneNumber(responderEntity.getPhoneNumber())
@@ -58,22 +142,137 @@ public class ResponderService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Returns the available responders nearest to a point, ordered by distance. The {@link ResponderRegistry} answers
+     * from its spatial index when it is enabled and loaded, otherwise the storage engine orders and limits the rows.
+     *
+     * @param limit           the maximum number of responders to return.
+     * @param radiusKm        the maximum distance to the point, in kilometers, or null.
+     * @param minBoatCapacity the minimum boat capacity, or null.
+     * @param medicalKit      if true, only responders with a medical kit are returned.
+     */
+    @Transactional
+    public List<Responder> nearestResponders(double latitude, double longitude, int limit, Double radiusKm,
+                                             Integer minBoatCapacity, Boolean medicalKit) {
+
+        double radius = (radiusKm == null ? Double.MAX_VALUE : radiusKm);
+        Predicate<Responder> filter = r -> Boolean.TRUE.equals(r.isAvailable()) && Boolean.TRUE.equals(r.isEnrolled())
+                && (minBoatCapacity == null || (r.getBoatCapacity() != null && r.getBoatCapacity() >= minBoatCapacity))
+                && (!Boolean.TRUE.equals(medicalKit) || Boolean.TRUE.equals(r.isMedicalKit()));
+        if (registry.isLoaded()) {
+            return registry.nearest(latitude, longitude, limit, radius, filter);
+        }
+        // the database orders and limits the rows, the exact distance only trims the boundary of the radius
+        return responderDao.nearestAvailableResponders(new NearestQuery(latitude, longitude, limit, radius, minBoatCapacity,
+                Boolean.TRUE.equals(medicalKit))).stream()
+                .map(ResponderService::toResponder)
+                .filter(r -> distanceKm(latitude, longitude, r) <= radius)
+                .collect(Collectors.toList());
+    }
+
     @Transactional
     public Responder createResponder(Responder responder) {
 
         ResponderEntity entity = fromResponder(responder);
         responderDao.create(entity);
-        return toResponder(entity);
+        Responder created = toResponder(entity);
+        publisher.publishEvent(new ResponderChangedEvent(null, created, entity.getVersion()));
+        return created;
     }
 
-    @Transactional
+    /**
+     * Creates the responders in a single transaction, so that either all of them or none are created. They are
+     * inserted in chunks of <code>responder.ingest.chunk-size</code>, each with a single batch. With PostgreSQL, the
+     * <code>reWriteBatchedInserts=true</code> datasource option turns the batches into multi-row inserts.
+     * <p>
+     * {@link ResponderImporter} calls this once per chunk, so that an import commits chunk by chunk.
+     */
     public void createResponders(List<Responder> responders) {
-        responders.stream().map(this::fromResponder).forEach(e -> responderDao.create(e));
+        new TransactionTemplate(transactionManager).execute(s -> {
+            for (int from = 0; from < responders.size(); from += ingestChunkSize) {
+                List<ResponderEntity> entities = responders.subList(from, Math.min(from + ingestChunkSize, responders.size()))
+                        .stream().map(this::fromResponder).collect(Collectors.toList());
+                responderDao.createAll(entities);
+                entities.forEach(e -> publisher.publishEvent(new ResponderChangedEvent(null, toResponder(e), e.getVersion())));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Passes the responders matching the given flags, null meaning any value, to the action in id order. They are read
+     * from the database with a cursor, in a read-only transaction with a timeout of
+     * <code>responder.export.timeout</code> seconds.
+     */
+    public void exportResponders(Boolean enrolled, Boolean available, Boolean person, Consumer<Responder> action) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        template.setTimeout(exportTimeout);
+        template.execute(s -> {
+            responderDao.streamResponders(enrolled, available, person, exportFetchSize, e -> action.accept(toResponder(e)));
+            return null;
+        });
+    }
+
+    /**
+     * Returns the responders changed and deleted after the <code>since</code> watermark, in change order.
+     * <p>
+     * Only the changes below the changes still being written by running transactions are returned, so that a client
+     * following <code>nextSince</code> does not miss a change committed late with a lower number. A page never splits
+     * the changes of one transaction, so it may hold more than <code>limit</code> responders.
+     */
+    @Transactional(readOnly = true)
+    public ResponderChanges changesSince(long since, int limit) {
+        // the highest stored number is read first, any number above the watermark read after it is still in flight
+        long bound = Math.min(responderDao.maxChangeSeq(), changeSequence.visibleWatermark());
+        ResponderChanges changes = new ResponderChanges();
+        changes.setNextSince(since);
+        if (bound <= since) {
+            return changes;
+        }
+        long upTo = bound;
+        List<ResponderEntity> changed = responderDao.changedResponders(since, upTo, limit);
+        if (!changed.isEmpty() && changed.size() >= limit) {
+            long first = changed.get(0).getChangeSeq();
+            long last = changed.get(changed.size() - 1).getChangeSeq();
+            if (first == last) {
+                changed = responderDao.changedResponders(last - 1, last, Integer.MAX_VALUE);
+                upTo = last;
+            } else {
+                changed = changed.stream().filter(r -> r.getChangeSeq() != last).collect(Collectors.toList());
+                upTo = last - 1;
+            }
+        }
+        changes.setChanged(changed.stream().map(ResponderService::toResponder).collect(Collectors.toList()));
+        changes.setDeleted(responderDao.tombstones(since, upTo).stream()
+                .map(t -> Long.toString(t.getResponderId())).collect(Collectors.toList()));
+        changes.setNextSince(upTo);
+        changes.setMore(upTo < bound);
+        return changes;
     }
 
     @Transactional
     public Triple<Boolean, String, Responder> updateResponder(Responder toUpdate) {
+        return updateResponder(toUpdate, Collections.emptyList());
+    }
+
+    /**
+     * Updates a responder, and adds a 'ResponderUpdatedEvent' with the result of the update to the outbox for each of
+     * the given incident ids, within the same transaction.
+     */
+    @Transactional
+    public Triple<Boolean, String, Responder> updateResponder(Responder toUpdate, List<String> incidentIds) {
 
+        Triple<Boolean, String, Responder> result = doUpdateResponder(toUpdate);
+        incidentIds.forEach(incidentId -> outbox.enqueue(toUpdate.getId(), incidentId, result));
+        return result;
+    }
+
+    private Triple<Boolean, String, Responder> doUpdateResponder(Responder toUpdate) {
+
+        if (conditionalUpdate) {
+            return doConditionalUpdateResponder(toUpdate);
+        }
         ResponderEntity current = responderDao.findById(new Long(toUpdate.getId()));
         if (current == null) {
             log.warn("Responder with id '" + toUpdate.getId() + "' not found in the database");
@@ -84,25 +283,245 @@ public class ResponderService {
             log.info("Responder with id '" + toUpdate.getId() + "' : state unchanged. Responder record is not updated.");
             return new ImmutableTriple<>(false, "Responder state not changed", toResponder(current));
         }
+        // merge copies the new state onto the managed entity, so the previous state is captured first
+        Responder previous = toResponder(current);
         try {
             ResponderEntity merged = responderDao.merge(toUpdateEntity);
-            return new ImmutableTriple<>(true, "Responder updated", toResponder(merged));
+            Responder updated = toResponder(merged);
+            publisher.publishEvent(new ResponderChangedEvent(previous, updated, merged.getVersion()));
+            return new ImmutableTriple<>(true, "Responder updated", updated);
         } catch (Exception e) {
             log.warn("Exception '" + e.getClass() + "' when updating Responder with id '" + toUpdate.getId() + "'. Responder record is not updated.");
             return new ImmutableTriple<>(false, "Exception '" + e.getClass() + "' when updating Responder", toResponder(current));
         }
     }
 
+    private Triple<Boolean, String, Responder> doConditionalUpdateResponder(Responder toUpdate) {
+
+        ResponderUpdateResult result;
+        try {
+            result = responderDao.conditionalUpdate(fromResponder(toUpdate));
+        } catch (Exception e) {
+            log.warn("Exception '" + e.getClass() + "' when updating Responder with id '" + toUpdate.getId() + "'. Responder record is not updated.");
+            return new ImmutableTriple<>(false, "Exception '" + e.getClass() + "' when updating Responder", null);
+        }
+        switch (result.getOutcome()) {
+            case NOT_FOUND:
+                log.warn("Responder with id '" + toUpdate.getId() + "' not found in the database");
+                return new ImmutableTriple<>(false, "Responder with id + " + toUpdate.getId() + " not found.", null);
+            case UNCHANGED:
+                log.info("Responder with id '" + toUpdate.getId() + "' : state unchanged. Responder record is not updated.");
+                return new ImmutableTriple<>(false, "Responder state not changed", toResponder(result.getCurrent()));
+            default:
+                Responder updated = toResponder(result.getCurrent());
+                publisher.publishEvent(new ResponderChangedEvent(toResponder(result.getPrevious()), updated,
+                        result.getCurrent().getVersion()));
+                return new ImmutableTriple<>(true, "Responder updated", updated);
+        }
+    }
+
+    /**
+     * Applies partial updates to many responders, in chunks of <code>responder.update.chunk-size</code> updates, each
+     * applied with as few statements as possible and committed in its own transaction, which is a new one even when
+     * the caller runs a transaction, so that a failed chunk does not roll the caller back. The updates of one responder
+     * within a chunk are combined, the later values winning, and get the same status.
+     * <p>
+     * When a chunk fails because a responder was updated concurrently, its updates are applied again one transaction
+     * each, and those which fail again get the CONFLICT status. On any other error, the updates of the chunk get the
+     * FAILED status.
+     *
+     * @return the status of each update, in the order of the updates.
+     */
+    public List<ResponderUpdateStatus> updateResponders(List<Responder> updates) {
+        return updateResponders(updates, Collections.nCopies(updates.size(), null));
+    }
+
+    /**
+     * Applies partial updates to many responders like {@link #updateResponders(List)}, and adds a
+     * 'ResponderUpdatedEvent' with the status of each update which has an incident id to the outbox, within the
+     * transaction which applied the update. The events of the updates which could not be applied are added in a
+     * transaction of their own.
+     *
+     * @param incidentIds the incident id of each update, or null.
+     */
+    public List<ResponderUpdateStatus> updateResponders(List<Responder> updates, List<String> incidentIds) {
+        List<ResponderUpdateStatus> statuses = new ArrayList<>(updates.size());
+        for (int from = 0; from < updates.size(); from += updateChunkSize) {
+            int to = Math.min(from + updateChunkSize, updates.size());
+            Map<Long, Responder> combined = new LinkedHashMap<>();
+            Map<Long, List<String>> incidents = new HashMap<>();
+            for (int i = from; i < to; i++) {
+                Long id = parseId(updates.get(i).getId());
+                if (id != null) {
+                    combined.merge(id, updates.get(i), ResponderService::combine);
+                    if (incidentIds.get(i) != null) {
+                        incidents.computeIfAbsent(id, k -> new ArrayList<>()).add(incidentIds.get(i));
+                    }
+                }
+            }
+            Map<Long, ResponderUpdateStatus> byId = updateChunk(combined, incidents);
+            List<Integer> notApplied = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                Long id = parseId(updates.get(i).getId());
+                ResponderUpdateStatus status = id == null ? new ResponderUpdateStatus(updates.get(i).getId(),
+                        ResponderUpdateStatus.Status.NOT_FOUND, null, "Invalid id") : byId.get(id);
+                statuses.add(status);
+                if (incidentIds.get(i) != null && (id == null || status.getStatus() == ResponderUpdateStatus.Status.CONFLICT
+                        || status.getStatus() == ResponderUpdateStatus.Status.FAILED)) {
+                    notApplied.add(i);
+                }
+            }
+            if (!notApplied.isEmpty()) {
+                newTransaction().execute(s -> {
+                    notApplied.forEach(i -> outbox.enqueue(updates.get(i).getId(), incidentIds.get(i), result(statuses.get(i))));
+                    return null;
+                });
+            }
+        }
+        return statuses;
+    }
+
+    private Map<Long, ResponderUpdateStatus> updateChunk(Map<Long, Responder> updates, Map<Long, List<String>> incidents) {
+        TransactionTemplate template = newTransaction();
+        try {
+            return template.execute(s -> enqueue(applyUpdates(updates), incidents));
+        } catch (OptimisticLockException | OptimisticLockingFailureException e) {
+            log.info("Responders of a bulk update were updated concurrently, applying the " + updates.size() + " updates one by one");
+        } catch (RuntimeException e) {
+            log.warn("Error applying a bulk update of " + updates.size() + " responders", e);
+            return updates.keySet().stream().collect(Collectors.toMap(Function.identity(), id ->
+                    new ResponderUpdateStatus(Long.toString(id), ResponderUpdateStatus.Status.FAILED, null, e.getMessage())));
+        }
+        Map<Long, ResponderUpdateStatus> statuses = new HashMap<>();
+        updates.forEach((id, update) -> {
+            try {
+                statuses.putAll(template.execute(s -> enqueue(applyUpdates(Collections.singletonMap(id, update)), incidents)));
+            } catch (OptimisticLockException | OptimisticLockingFailureException e) {
+                statuses.put(id, new ResponderUpdateStatus(Long.toString(id), ResponderUpdateStatus.Status.CONFLICT, null,
+                        "Responder updated concurrently"));
+            } catch (RuntimeException e) {
+                log.warn("Error updating responder with id '" + id + "'", e);
+                statuses.put(id, new ResponderUpdateStatus(Long.toString(id), ResponderUpdateStatus.Status.FAILED, null, e.getMessage()));
+            }
+        });
+        return statuses;
+    }
+
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return template;
+    }
+
+    /**
+     * Applies updates of distinct responders in the current transaction.
+     */
+    private Map<Long, ResponderUpdateStatus> applyUpdates(Map<Long, Responder> updates) {
+        Map<Long, ResponderUpdateStatus> statuses = new HashMap<>();
+        if (conditionalUpdate) {
+            List<Long> ids = new ArrayList<>(updates.keySet());
+            List<ResponderUpdateResult> results = responderDao.conditionalUpdateAll(ids.stream()
+                    .map(id -> fromResponder(updates.get(id))).collect(Collectors.toList()));
+            for (int i = 0; i < ids.size(); i++) {
+                ResponderUpdateResult result = results.get(i);
+                if (result.getOutcome() == ResponderUpdateResult.Outcome.UPDATED) {
+                    publisher.publishEvent(new ResponderChangedEvent(toResponder(result.getPrevious()), toResponder(result.getCurrent()),
+                            result.getCurrent().getVersion()));
+                }
+                statuses.put(ids.get(i), status(ids.get(i), result.getOutcome(), result.getCurrent()));
+            }
+            return statuses;
+        }
+        Map<Long, ResponderEntity> current = responderDao.findByIds(updates.keySet()).stream()
+                .collect(Collectors.toMap(ResponderEntity::getId, Function.identity()));
+        updates.forEach((id, update) -> {
+            ResponderEntity entity = current.get(id);
+            if (entity == null) {
+                statuses.put(id, status(id, ResponderUpdateResult.Outcome.NOT_FOUND, null));
+                return;
+            }
+            ResponderEntity toUpdateEntity = fromResponder(update, entity);
+            if (!stateChanged(entity, toUpdateEntity)) {
+                statuses.put(id, status(id, ResponderUpdateResult.Outcome.UNCHANGED, entity));
+                return;
+            }
+            Responder previous = toResponder(entity);
+            ResponderEntity merged = responderDao.merge(toUpdateEntity);
+            publisher.publishEvent(new ResponderChangedEvent(previous, toResponder(merged), merged.getVersion()));
+            statuses.put(id, status(id, ResponderUpdateResult.Outcome.UPDATED, merged));
+        });
+        return statuses;
+    }
+
+    private Map<Long, ResponderUpdateStatus> enqueue(Map<Long, ResponderUpdateStatus> statuses, Map<Long, List<String>> incidents) {
+        statuses.forEach((id, status) -> incidents.getOrDefault(id, Collections.emptyList())
+                .forEach(incidentId -> outbox.enqueue(status.getId(), incidentId, result(status))));
+        return statuses;
+    }
+
+    /**
+     * @return the status of an update as the result of {@link #updateResponder(Responder, List)}.
+     */
+    private static Triple<Boolean, String, Responder> result(ResponderUpdateStatus status) {
+        switch (status.getStatus()) {
+            case UPDATED:
+                return new ImmutableTriple<>(true, "Responder updated", status.getResponder());
+            case UNCHANGED:
+                return new ImmutableTriple<>(false, "Responder state not changed", status.getResponder());
+            case NOT_FOUND:
+                return new ImmutableTriple<>(false, status.getMessage() != null ? status.getMessage()
+                        : "Responder with id + " + status.getId() + " not found.", null);
+            default:
+                return new ImmutableTriple<>(false, status.getMessage(), status.getResponder());
+        }
+    }
+
+    private static ResponderUpdateStatus status(long id, ResponderUpdateResult.Outcome outcome, ResponderEntity current) {
+        return new ResponderUpdateStatus(Long.toString(id), ResponderUpdateStatus.Status.valueOf(outcome.name()),
+                toResponder(current), null);
+    }
+
+    private static Long parseId(String id) {
+        try {
+            return id == null ? null : Long.valueOf(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Combines two partial updates of a responder, the values of the later one winning.
+     */
+    private static Responder combine(Responder earlier, Responder later) {
+        return new Responder.Builder(earlier.getId())
+                .name(later.getName() != null ? later.getName() : earlier.getName())
+                .phoneNumber(later.getPhoneNumber() != null ? later.getPhoneNumber() : earlier.getPhoneNumber())
+                .latitude(later.getLatitude() != null ? later.getLatitude() : earlier.getLatitude())
+                .longitude(later.getLongitude() != null ? later.getLongitude() : earlier.getLongitude())
+                .boatCapacity(later.getBoatCapacity() != null ? later.getBoatCapacity() : earlier.getBoatCapacity())
+                .medicalKit(later.isMedicalKit() != null ? later.isMedicalKit() : earlier.isMedicalKit())
+                .available(later.isAvailable() != null ? later.isAvailable() : earlier.isAvailable())
+                .person(later.isPerson() != null ? later.isPerson() : earlier.isPerson())
+                .enrolled(later.isEnrolled() != null ? later.isEnrolled() : earlier.isEnrolled())
+                .build();
+    }
+
     @Transactional
     public void reset() {
         log.info("Reset called");
         responderDao.reset();
+        publisher.publishEvent(new RespondersResetEvent(false, changeSequence.ofCurrentTransaction()));
     }
 
     @Transactional
     public void clear() {
         log.info("Clear called");
         responderDao.clear();
+        publisher.publishEvent(new RespondersResetEvent(true, changeSequence.ofCurrentTransaction()));
+    }
+
+    private static double distanceKm(double latitude, double longitude, Responder responder) {
+        return SpatialGrid.distanceKm(latitude, longitude, responder.getLatitude().doubleValue(), responder.getLongitude().doubleValue());
     }
 
     private boolean stateChanged(ResponderEntity current, ResponderEntity updated) {
@@ -175,7 +594,7 @@ public class ResponderService {
                 .build();
     }
 
-    private Responder toResponder(ResponderEntity responder) {
+    static Responder toResponder(ResponderEntity responder) {
 
         if (responder == null) {
             return null;
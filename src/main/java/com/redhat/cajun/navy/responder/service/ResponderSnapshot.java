@@ -0,0 +1,230 @@
+package com.redhat.cajun.navy.responder.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import com.redhat.cajun.navy.responder.model.Responder;
+
+/**
+ * Binary snapshot of the responders and the versions of their rows, with the change sequence watermark up to which it
+ * holds all the changes.
+ * <p>
+ * The file starts with a magic number, the format version, the watermark and the number of responders, followed by
+ * the responders and a CRC32 of everything before it. It is written to a temporary file which then replaces the
+ * previous snapshot, and read with a memory-mapped buffer.
+ * <p>
+ * Snapshots are only taken of an enabled registry, so <code>responder.snapshot.enabled</code> has no effect unless
+ * <code>responder.registry.enabled=true</code>.
+ */
+class ResponderSnapshot {
+
+    static final int MAGIC = 0x52535031;
+
+    static final int FORMAT_VERSION = 2;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+
+    private static final int TRAILER_SIZE = 8;
+
+    private final long watermark;
+
+    private final List<VersionedResponder> responders;
+
+    ResponderSnapshot(long watermark, List<VersionedResponder> responders) {
+        this.watermark = watermark;
+        this.responders = responders;
+    }
+
+    long getWatermark() {
+        return watermark;
+    }
+
+    List<VersionedResponder> getResponders() {
+        return responders;
+    }
+
+    static void write(Path file, long watermark, Collection<VersionedResponder> responders) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            List<VersionedResponder> copy = new ArrayList<>(responders);
+            CRC32 crc = new CRC32();
+            try (FileOutputStream stream = new FileOutputStream(temp.toFile());
+                 BufferedOutputStream buffered = new BufferedOutputStream(stream, 1 << 16)) {
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(watermark);
+                out.writeInt(copy.size());
+                for (VersionedResponder row : copy) {
+                    Responder responder = row.getResponder();
+                    out.writeLong(Long.parseLong(responder.getId()));
+                    out.writeLong(row.getVersion());
+                    writeString(out, responder.getName());
+                    writeString(out, responder.getPhoneNumber());
+                    writeDecimal(out, responder.getLatitude());
+                    writeDecimal(out, responder.getLongitude());
+                    writeInteger(out, responder.getBoatCapacity());
+                    writeBoolean(out, responder.isMedicalKit());
+                    writeBoolean(out, responder.isAvailable());
+                    writeBoolean(out, responder.isPerson());
+                    writeBoolean(out, responder.isEnrolled());
+                }
+                out.flush();
+                // the checksum is not part of what it covers
+                new DataOutputStream(buffered).writeLong(crc.getValue());
+                buffered.flush();
+                stream.getFD().sync();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @throws IOException if the file cannot be read, or is not a complete snapshot of the current format.
+     */
+    static ResponderSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid snapshot size " + size + " of " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer content = buffer.duplicate();
+            content.limit((int) size - TRAILER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            if (buffer.getLong((int) size - TRAILER_SIZE) != crc.getValue()) {
+                throw new IOException("Invalid checksum of " + file);
+            }
+            buffer.limit((int) size - TRAILER_SIZE);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a responder snapshot");
+            }
+            int formatVersion = buffer.getInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot format version " + formatVersion + " of " + file);
+            }
+            long watermark = buffer.getLong();
+            int count = buffer.getInt();
+            List<VersionedResponder> responders = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String id = Long.toString(buffer.getLong());
+                long version = buffer.getLong();
+                responders.add(new VersionedResponder(new Responder.Builder(id)
+                        .name(readString(buffer))
+                        .phoneNumber(readString(buffer))
+                        .latitude(readDecimal(buffer))
+                        .longitude(readDecimal(buffer))
+                        .boatCapacity(readInteger(buffer))
+                        .medicalKit(readBoolean(buffer))
+                        .available(readBoolean(buffer))
+                        .person(readBoolean(buffer))
+                        .enrolled(readBoolean(buffer))
+                        .build(), version));
+            }
+            if (buffer.hasRemaining()) {
+                throw new IOException("Unexpected data after the last responder of " + file);
+            }
+            return new ResponderSnapshot(watermark, responders);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot " + file, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        if (value == null) {
+            out.writeByte(0);
+        } else if (value.unscaledValue().bitLength() < 64) {
+            out.writeByte(1);
+            out.writeInt(value.scale());
+            out.writeLong(value.unscaledValue().longValue());
+        } else {
+            out.writeByte(2);
+            out.writeInt(value.scale());
+            byte[] unscaled = value.unscaledValue().toByteArray();
+            out.writeInt(unscaled.length);
+            out.write(unscaled);
+        }
+    }
+
+    private static BigDecimal readDecimal(ByteBuffer buffer) throws IOException {
+        byte type = buffer.get();
+        switch (type) {
+            case 0:
+                return null;
+            case 1:
+                int scale = buffer.getInt();
+                return BigDecimal.valueOf(buffer.getLong(), scale);
+            case 2:
+                int bigScale = buffer.getInt();
+                byte[] unscaled = new byte[buffer.getInt()];
+                buffer.get(unscaled);
+                return new BigDecimal(new BigInteger(unscaled), bigScale);
+            default:
+                throw new IOException("Invalid decimal type " + type);
+        }
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(ByteBuffer buffer) {
+        return buffer.get() == 0 ? null : buffer.getInt();
+    }
+
+    private static void writeBoolean(DataOutputStream out, Boolean value) throws IOException {
+        out.writeByte(value == null ? -1 : value ? 1 : 0);
+    }
+
+    private static Boolean readBoolean(ByteBuffer buffer) {
+        byte value = buffer.get();
+        return value < 0 ? null : value == 1;
+    }
+
+}
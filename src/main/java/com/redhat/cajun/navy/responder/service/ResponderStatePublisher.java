@@ -0,0 +1,107 @@
+package com.redhat.cajun.navy.responder.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.model.ResponderChanges;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * Publishes the current state of the responders to a log-compacted topic, keyed by responder id, so that other
+ * services can bootstrap and follow it from the topic.
+ * <p>
+ * The committed changes are read from the changes feed of {@link ResponderService#changesSince(long, int)} every
+ * <code>sender.state.publish-interval</code> milliseconds, and each changed responder is published with its full
+ * state, a deleted responder with a null value. A responder changed several times between two runs is published once.
+ * The position in the feed is kept in memory, so all the responders are published again after a restart, which the
+ * compaction of the topic absorbs.
+ */
+@Component
+public class ResponderStatePublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponderStatePublisher.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    private ResponderService responderService;
+
+    @Autowired
+    @Qualifier("stateKafkaTemplate")
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    @Value("${sender.state.enabled:false}")
+    private boolean enabled;
+
+    @Value("${sender.destination.responder-state:responder-state}")
+    private String destination;
+
+    @Value("${sender.state.batch-size:1000}")
+    private int batchSize = 1000;
+
+    @Value("${sender.state.send-timeout:30000}")
+    private long sendTimeout = 30000;
+
+    private long watermark;
+
+    @Scheduled(fixedDelayString = "${sender.state.publish-interval:500}")
+    public void publish() {
+
+        if (!enabled) {
+            return;
+        }
+        ResponderChanges changes;
+        do {
+            changes = responderService.changesSince(watermark, batchSize);
+            List<ListenableFuture<SendResult<String, String>>> futures = new ArrayList<>();
+            for (Responder responder : changes.getChanged()) {
+                futures.add(kafkaTemplate.send(destination, responder.getId(), toJson(responder)));
+            }
+            for (String id : changes.getDeleted()) {
+                futures.add(kafkaTemplate.send(destination, id, null));
+            }
+            if (futures.isEmpty()) {
+                watermark = changes.getNextSince();
+                continue;
+            }
+            kafkaTemplate.flush();
+            try {
+                for (ListenableFuture<SendResult<String, String>> future : futures) {
+                    future.get(sendTimeout, TimeUnit.MILLISECONDS);
+                }
+            } catch (Exception e) {
+                // the same changes are read again on the next run
+                log.error("Error publishing responder state, " + futures.size() + " changes will be published again", e);
+                return;
+            }
+            watermark = changes.getNextSince();
+            log.debug("Published the state of " + futures.size() + " responders");
+        } while (changes.isMore());
+    }
+
+    long getWatermark() {
+        return watermark;
+    }
+
+    private static String toJson(Responder responder) {
+        try {
+            return mapper.writeValueAsString(responder);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.redhat.cajun.navy.responder.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.redhat.cajun.navy.responder.dao.ResponderDao;
+import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.model.ResponderStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Counters of the enrolled and active responders, updated from the changes published by {@link ResponderService}.
+ * <p>
+ * The counters are set from the database by a periodic reconciliation, which also corrects the drift caused by
+ * changes made by other instances of the service, or by events applied while a reconciliation was running. The
+ * reconciliation is skipped while the {@link ResponderRegistry} is loaded, as the stats are then taken from it.
+ */
+@Component
+public class ResponderStatsCounters {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponderStatsCounters.class);
+
+    @Autowired
+    private ResponderDao responderDao;
+
+    @Autowired
+    private ResponderRegistry registry;
+
+    private final AtomicLong enrolled = new AtomicLong();
+
+    private final AtomicLong active = new AtomicLong();
+
+    private volatile boolean initialized = false;
+
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    public ResponderStats stats() {
+        ResponderStats stats = new ResponderStats();
+        stats.setTotal((int) enrolled.get());
+        stats.setActive((int) active.get());
+        return stats;
+    }
+
+    @Scheduled(fixedDelayString = "${responder.stats.reconcile-interval:60000}")
+    @Transactional
+    public void reconcile() {
+        if (registry.isLoaded()) {
+            return;
+        }
+        long enrolledCount = responderDao.enrolledRespondersCount();
+        long activeCount = responderDao.activeRespondersCount();
+        long enrolledDrift = enrolled.getAndSet(enrolledCount) - enrolledCount;
+        long activeDrift = active.getAndSet(activeCount) - activeCount;
+        if (initialized && (enrolledDrift != 0 || activeDrift != 0)) {
+            log.info("Responder stats counters corrected by " + enrolledDrift + " enrolled and " + activeDrift + " active");
+        }
+        initialized = true;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onResponderChanged(ResponderChangedEvent event) {
+        enrolled.addAndGet(enrolled(event.getCurrent()) - enrolled(event.getPrevious()));
+        active.addAndGet(active(event.getCurrent()) - active(event.getPrevious()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRespondersReset(RespondersResetEvent event) {
+        // reset and clear un-enroll all the responders
+        enrolled.set(0);
+        active.set(0);
+    }
+
+    private static int enrolled(Responder responder) {
+        return responder != null && Boolean.TRUE.equals(responder.isEnrolled()) ? 1 : 0;
+    }
+
+    private static int active(Responder responder) {
+        return enrolled(responder) == 1 && Boolean.FALSE.equals(responder.isAvailable()) ? 1 : 0;
+    }
+
+}
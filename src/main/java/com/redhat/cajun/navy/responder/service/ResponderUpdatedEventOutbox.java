@@ -0,0 +1,99 @@
+package com.redhat.cajun.navy.responder.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.cajun.navy.responder.dao.ResponderDao;
+import com.redhat.cajun.navy.responder.entity.OutboxEventEntity;
+import com.redhat.cajun.navy.responder.message.Message;
+import com.redhat.cajun.navy.responder.message.ResponderUpdatedEvent;
+import com.redhat.cajun.navy.responder.model.Responder;
+import org.apache.commons.lang3.tuple.Triple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * Transactional outbox for 'ResponderUpdatedEvent' messages.
+ * <p>
+ * Events are written to the outbox table in the transaction which updates the responder, and relayed to Kafka in
+ * batches, in the order in which they were written. Rows are only deleted once the broker has acknowledged them, so an
+ * event can be sent twice after a crash, but is never lost.
+ */
+@Component
+public class ResponderUpdatedEventOutbox {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponderUpdatedEventOutbox.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    private ResponderDao responderDao;
+
+    @Autowired
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    @Value("${sender.destination.reporter-updated-event}")
+    private String destination;
+
+    @Value("${sender.outbox.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${sender.outbox.send-timeout:30000}")
+    private long sendTimeout;
+
+    /**
+     * Adds a 'ResponderUpdatedEvent' for the result of an update to the outbox. Must be called within the transaction
+     * of the update.
+     */
+    public void enqueue(String responderId, String incidentId, Triple<Boolean, String, Responder> result) {
+
+        String status = (result.getLeft() ? "success" : "error");
+        ResponderUpdatedEvent event = new ResponderUpdatedEvent.Builder(status, result.getRight())
+                .statusMessage(result.getMiddle()).build();
+        Message<ResponderUpdatedEvent> message = new Message.Builder<>("ResponderUpdatedEvent",
+                "ResponderService", event)
+                .header("incidentId", incidentId)
+                .build();
+        try {
+            responderDao.createOutboxEvent(new OutboxEventEntity.Builder(responderId, mapper.writeValueAsString(message)).build());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${sender.outbox.relay-interval:200}")
+    @Transactional
+    public void relay() {
+
+        List<OutboxEventEntity> events = responderDao.outboxEvents(batchSize);
+        if (events.isEmpty()) {
+            return;
+        }
+        List<ListenableFuture<SendResult<String, String>>> futures = new ArrayList<>(events.size());
+        events.forEach(e -> futures.add(kafkaTemplate.send(destination, e.getMessageKey(), e.getPayload())));
+        kafkaTemplate.flush();
+        try {
+            for (ListenableFuture<SendResult<String, String>> future : futures) {
+                future.get(sendTimeout, TimeUnit.MILLISECONDS);
+            }
+        } catch (Exception e) {
+            log.error("Error sending 'ResponderUpdatedEvent' messages, " + events.size() + " events are kept in the outbox", e);
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        responderDao.deleteOutboxEvents(events.stream().map(OutboxEventEntity::getId).collect(Collectors.toList()));
+        log.debug("Sent " + events.size() + " 'ResponderUpdatedEvent' messages");
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.redhat.cajun.navy.responder.service;
+
+/**
+ * Published by {@link ResponderService} after all the responders have been reset, or cleared.
+ * <p>
+ * A reset makes every responder available and not enrolled, and removes the position of persons. A clear also
+ * deletes all the responders which are not persons. The rows written by the reset are stamped with its change
+ * sequence number.
+ */
+public class RespondersResetEvent {
+
+    private final boolean clear;
+
+    private final long changeSeq;
+
+    public RespondersResetEvent(boolean clear, long changeSeq) {
+        this.clear = clear;
+        this.changeSeq = changeSeq;
+    }
+
+    public boolean isClear() {
+        return clear;
+    }
+
+    public long getChangeSeq() {
+        return changeSeq;
+    }
+}
@@ -0,0 +1,191 @@
+package com.redhat.cajun.navy.responder.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongPredicate;
+import java.util.stream.Collectors;
+
+import com.redhat.cajun.navy.responder.dao.NearestQuery;
+
+/**
+ * Grid of fixed size latitude/longitude cells, used to find the responders nearest to a point without looking at
+ * every responder.
+ * <p>
+ * Updates of the same id must not be concurrent, which {@link ResponderRegistry} guarantees by serializing its
+ * updates. Queries can run concurrently with updates.
+ */
+class SpatialGrid {
+
+    static final double EARTH_RADIUS_KM = NearestQuery.EARTH_RADIUS_KM;
+
+    private final double cellSize;
+
+    private final int rows;
+
+    private final int columns;
+
+    private final Map<Long, Set<Long>> cells = new ConcurrentHashMap<>();
+
+    private final Map<Long, double[]> positions = new ConcurrentHashMap<>();
+
+    /**
+     * @param cellSize the size of a cell, in degrees.
+     */
+    SpatialGrid(double cellSize) {
+        if (cellSize <= 0 || cellSize > 90) {
+            throw new IllegalArgumentException("Invalid cell size " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.rows = (int) Math.ceil(180 / cellSize);
+        this.columns = (int) Math.ceil(360 / cellSize);
+    }
+
+    void put(long id, double latitude, double longitude) {
+        long cell = cell(row(latitude), column(longitude));
+        double[] previous = positions.put(id, new double[]{latitude, longitude});
+        if (previous != null) {
+            long previousCell = cell(row(previous[0]), column(previous[1]));
+            if (previousCell == cell) {
+                return;
+            }
+            removeFromCell(previousCell, id);
+        }
+        cells.compute(cell, (k, ids) -> {
+            Set<Long> updated = (ids == null ? ConcurrentHashMap.newKeySet() : ids);
+            updated.add(id);
+            return updated;
+        });
+    }
+
+    void remove(long id) {
+        double[] previous = positions.remove(id);
+        if (previous != null) {
+            removeFromCell(cell(row(previous[0]), column(previous[1])), id);
+        }
+    }
+
+    /**
+     * Returns the ids of the positions nearest to a point, ordered by distance.
+     *
+     * @param limit    the maximum number of ids to return.
+     * @param radiusKm the maximum distance, in kilometers.
+     * @param accept   filter on the ids to return.
+     */
+    List<Long> nearest(double latitude, double longitude, int limit, double radiusKm, LongPredicate accept) {
+
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        PriorityQueue<Candidate> best = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.distance).reversed());
+        int row = row(latitude);
+        int column = column(longitude);
+        for (int ring = 0; ; ring++) {
+            if ((2 * ring + 1) >= columns || (long) (2 * ring + 1) * (2 * ring + 1) > cells.size()) {
+                // probing the rings costs more than looking at every position
+                best.clear();
+                positions.forEach((id, position) -> offer(best, id, position, latitude, longitude, limit, radiusKm, accept));
+                break;
+            }
+            double bound = ringDistanceKm(latitude, ring);
+            if (bound > radiusKm || (best.size() == limit && bound > best.peek().distance)) {
+                break;
+            }
+            for (int r = row - ring; r <= row + ring; r++) {
+                if (r < 0 || r >= rows) {
+                    continue;
+                }
+                boolean edge = (r == row - ring || r == row + ring);
+                for (int c = column - ring; c <= column + ring; c += (edge || ring == 0 ? 1 : 2 * ring)) {
+                    Set<Long> ids = cells.get(cell(r, Math.floorMod(c, columns)));
+                    if (ids != null) {
+                        for (Long id : ids) {
+                            double[] position = positions.get(id);
+                            if (position != null) {
+                                offer(best, id, position, latitude, longitude, limit, radiusKm, accept);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return best.stream()
+                .sorted(Comparator.comparingDouble(c -> c.distance))
+                .map(c -> c.id)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Great circle distance between two points, in kilometers.
+     */
+    static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLat = Math.toRadians(latitude2 - latitude1);
+        double dLon = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Lower bound of the distance between a point and the positions in the cells of the given ring around the cell
+     * of the point. Such positions are at least (ring - 1) cells away in latitude or in longitude.
+     */
+    private double ringDistanceKm(double latitude, int ring) {
+        if (ring <= 1) {
+            return 0;
+        }
+        double span = Math.toRadians((ring - 1) * cellSize);
+        double maxLatitude = Math.toRadians(Math.min(90, Math.abs(latitude) + ring * cellSize));
+        double latitudeBound = span * EARTH_RADIUS_KM;
+        double longitudeBound = 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.cos(maxLatitude) * Math.sin(Math.min(span, Math.PI) / 2)));
+        return Math.min(latitudeBound, longitudeBound);
+    }
+
+    private static void offer(PriorityQueue<Candidate> best, long id, double[] position, double latitude, double longitude,
+                              int limit, double radiusKm, LongPredicate accept) {
+        double distance = distanceKm(latitude, longitude, position[0], position[1]);
+        if (distance > radiusKm || (best.size() == limit && distance >= best.peek().distance) || !accept.test(id)) {
+            return;
+        }
+        if (best.size() == limit) {
+            best.poll();
+        }
+        best.add(new Candidate(id, distance));
+    }
+
+    private void removeFromCell(long cell, long id) {
+        cells.computeIfPresent(cell, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private int row(double latitude) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((latitude + 90) / cellSize)));
+    }
+
+    private int column(double longitude) {
+        return Math.floorMod((int) Math.floor((longitude + 180) / cellSize), columns);
+    }
+
+    private long cell(int row, int column) {
+        return (long) row * columns + column;
+    }
+
+    private static class Candidate {
+
+        private final long id;
+
+        private final double distance;
+
+        Candidate(long id, double distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.redhat.cajun.navy.responder.service;
+
+import com.redhat.cajun.navy.responder.model.Responder;
+
+/**
+ * A responder with the version of its row, as kept by the {@link ResponderRegistry}.
+ */
+class VersionedResponder {
+
+    private final Responder responder;
+
+    private final long version;
+
+    VersionedResponder(Responder responder, long version) {
+        this.responder = responder;
+        this.version = version;
+    }
+
+    Responder getResponder() {
+        return responder;
+    }
+
+    long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,31 @@
+-- Objects the service expects in the PostgreSQL database besides the responder table and responder_sequence.
+-- hibernate.hbm2ddl.auto=validate does not create them: run this script before starting the service, it can be run
+-- again on a database which already has them.
+
+-- transactional outbox of the ResponderUpdatedEvent messages
+CREATE SEQUENCE IF NOT EXISTS responder_outbox_sequence START 1 INCREMENT 1;
+
+CREATE TABLE IF NOT EXISTS responder_outbox (
+    id BIGINT PRIMARY KEY,
+    message_key VARCHAR(255),
+    payload VARCHAR(4000)
+);
+
+-- change sequence number of the transaction which last wrote each responder, for the changes feed
+CREATE SEQUENCE IF NOT EXISTS responder_change_sequence START 1 INCREMENT 1;
+
+ALTER TABLE responder ADD COLUMN IF NOT EXISTS change_seq BIGINT NOT NULL DEFAULT 0;
+CREATE INDEX IF NOT EXISTS responder_change_seq_idx ON responder (change_seq);
+
+-- responders deleted by /responders/clear, with the change sequence number of the deleting transaction
+CREATE TABLE IF NOT EXISTS responder_tombstone (
+    responder_id BIGINT PRIMARY KEY,
+    change_seq BIGINT NOT NULL
+);
+CREATE INDEX IF NOT EXISTS responder_tombstone_change_seq_idx ON responder_tombstone (change_seq);
+
+-- ids of the command messages applied, with listener.dedup.persisted=true
+CREATE TABLE IF NOT EXISTS responder_processed_message (
+    message_id VARCHAR(255) PRIMARY KEY,
+    processed_at BIGINT NOT NULL
+);
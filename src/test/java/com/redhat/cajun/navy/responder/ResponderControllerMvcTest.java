@@ -6,20 +6,42 @@ import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.Reader;
+import java.io.Writer;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import com.redhat.cajun.navy.responder.listener.ResponderCommandMessageListener;
+import com.redhat.cajun.navy.responder.model.ImportResult;
 import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.model.ResponderChanges;
+import com.redhat.cajun.navy.responder.model.ResponderUpdateStatus;
+import com.redhat.cajun.navy.responder.service.AvailableRespondersCache;
+import com.redhat.cajun.navy.responder.service.ResponderEventStream;
+import com.redhat.cajun.navy.responder.service.ResponderExporter;
+import com.redhat.cajun.navy.responder.service.ResponderFileFormat;
+import com.redhat.cajun.navy.responder.service.ResponderImporter;
+import com.redhat.cajun.navy.responder.service.ResponderRegistry;
 import com.redhat.cajun.navy.responder.service.ResponderService;
 import org.junit.Before;
 import org.junit.Test;
@@ -28,19 +50,22 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.util.UriComponentsBuilder;
 
 @ActiveProfiles("test")
 @RunWith(SpringRunner.class)
 @ContextConfiguration(classes = {
-       RespondersController.class, ResponderService.class
+       RespondersController.class, ResponderService.class, AvailableRespondersCache.class
 })
 public class ResponderControllerMvcTest {
 
@@ -55,6 +80,18 @@ public class ResponderControllerMvcTest {
     @MockBean
     private ResponderCommandMessageListener responderCommandMessageListener;
 
+    @MockBean
+    private ResponderImporter responderImporter;
+
+    @MockBean
+    private ResponderExporter responderExporter;
+
+    @MockBean
+    private ResponderRegistry responderRegistry;
+
+    @MockBean
+    private ResponderEventStream responderEventStream;
+
     @Captor
     private ArgumentCaptor<Responder> responderCaptor;
 
@@ -81,6 +118,93 @@ public class ResponderControllerMvcTest {
 
     }
 
+    @Test
+    public void testAvailableRespondersNotModified() throws Exception {
+
+        initService();
+
+        String etag = mockMvc.perform(get("/responders/available"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag, notNullValue());
+
+        mockMvc.perform(get("/responders/available").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+
+        mockMvc.perform(get("/responders/available").header(HttpHeaders.IF_NONE_MATCH, "\"other\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testResponderChanges() throws Exception {
+
+        ResponderChanges changes = new ResponderChanges();
+        changes.setChanged(Collections.singletonList(new Responder.Builder("1").name("John Doe").build()));
+        changes.setDeleted(Collections.singletonList("2"));
+        changes.setNextSince(15L);
+        when(responderService.changesSince(10L, 10000)).thenReturn(changes);
+
+        mockMvc.perform(get("/responders/changes?since=10&limit=50000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.changed[0].name").value("John Doe"))
+                .andExpect(jsonPath("$.deleted[0]").value("2"))
+                .andExpect(jsonPath("$.nextSince").value(15))
+                .andExpect(jsonPath("$.more").value(false));
+
+        mockMvc.perform(get("/responders/changes?since=-1")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/responders/changes?limit=0")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testRespondersByIds() throws Exception {
+
+        when(responderService.getResponders(Arrays.asList(2L, 5L)))
+                .thenReturn(Arrays.asList(new Responder.Builder("2").name("John Doe").build(), null));
+
+        mockMvc.perform(get("/responders/byids?ids=2,5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value("2"))
+                .andExpect(jsonPath("$[0].found").value(true))
+                .andExpect(jsonPath("$[0].responder.name").value("John Doe"))
+                .andExpect(jsonPath("$[1].id").value("5"))
+                .andExpect(jsonPath("$[1].found").value(false));
+    }
+
+    @Test
+    public void testUpdateResponders() throws Exception {
+
+        when(responderService.updateResponders(any())).thenReturn(Arrays.asList(
+                new ResponderUpdateStatus("1", ResponderUpdateStatus.Status.UPDATED, new Responder.Builder("1").available(false).build(), null),
+                new ResponderUpdateStatus("2", ResponderUpdateStatus.Status.NOT_FOUND, null, null)));
+
+        mockMvc.perform(put("/responders").contentType(MimeTypeUtils.APPLICATION_JSON_VALUE)
+                .content("[{\"id\":\"1\",\"available\":false},{\"id\":\"2\",\"available\":false}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("UPDATED"))
+                .andExpect(jsonPath("$[0].responder.available").value(false))
+                .andExpect(jsonPath("$[1].status").value("NOT_FOUND"));
+
+        verify(responderService).updateResponders(responderListCaptor.capture());
+        assertThat(responderListCaptor.getValue().size(), equalTo(2));
+        assertThat(responderListCaptor.getValue().get(1).getId(), equalTo("2"));
+    }
+
+    @Test
+    public void testStreamResponders() throws Exception {
+
+        when(responderEventStream.subscribe(any())).thenReturn(new SseEmitter());
+
+        mockMvc.perform(get("/responders/stream?available=true&minLatitude=30&maxLatitude=31&minLongitude=-71&maxLongitude=-70"))
+                .andExpect(request().asyncStarted());
+        verify(responderEventStream).subscribe(any(ResponderEventStream.Filter.class));
+
+        mockMvc.perform(get("/responders/stream?minLatitude=30")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/responders/stream?minLatitude=31&maxLatitude=30&minLongitude=-71&maxLongitude=-70"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void testCreateResponder() throws Exception {
 
@@ -190,6 +314,110 @@ public class ResponderControllerMvcTest {
         verify(responderService).getResponderByName(eq("John Doe"));
     }
 
+    @Test
+    public void testExportResponders() throws Exception {
+
+        doAnswer(invocation -> {
+            Writer writer = invocation.getArgument(0);
+            writer.write("id,name\n1,John Doe\n");
+            return 1L;
+        }).when(responderExporter).exportResponders(any(Writer.class), eq(ResponderFileFormat.CSV), eq(true), isNull(), isNull());
+
+        MvcResult result = mockMvc.perform(get("/responders/export?format=csv&enrolled=true"))
+                .andExpect(request().asyncStarted()).andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv;charset=UTF-8"))
+                .andExpect(content().string("id,name\n1,John Doe\n"));
+    }
+
+    @Test
+    public void testExportRespondersInvalidFormat() throws Exception {
+
+        mockMvc.perform(get("/responders/export?format=xml")).andExpect(status().isBadRequest());
+        verify(responderExporter, never()).exportResponders(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void testImportResponders() throws Exception {
+
+        ImportResult importResult = new ImportResult();
+        importResult.setRead(1);
+        importResult.setImported(1);
+        when(responderImporter.importResponders(any(Reader.class), eq(ResponderFileFormat.CSV))).thenReturn(importResult);
+
+        final ResultActions result = mockMvc.perform(post("/responders/import").contentType("text/csv")
+                .content("name,boatCapacity\nJohn Doe,3\n"));
+
+        result.andExpect(status().isOk()).andExpect(jsonPath("$.imported").value(1));
+        verify(responderImporter).importResponders(any(Reader.class), eq(ResponderFileFormat.CSV));
+    }
+
+    @Test
+    public void testImportRespondersWithProgress() throws Exception {
+
+        doAnswer(invocation -> {
+            Consumer<ImportResult> progress = invocation.getArgument(2);
+            ImportResult importResult = new ImportResult();
+            importResult.setRead(2);
+            importResult.setImported(2);
+            progress.accept(importResult);
+            importResult.setRead(3);
+            importResult.setImported(3);
+            return importResult;
+        }).when(responderImporter).importResponders(any(Reader.class), eq(ResponderFileFormat.NDJSON), any());
+
+        MvcResult result = mockMvc.perform(post("/responders/import?progress=true").contentType("application/x-ndjson")
+                .content("{\"name\":\"John Doe\"}\n")).andExpect(request().asyncStarted()).andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson;charset=UTF-8"))
+                .andExpect(content().string("{\"read\":2,\"imported\":2,\"failed\":0,\"errors\":[]}\n"
+                        + "{\"read\":3,\"imported\":3,\"failed\":0,\"errors\":[]}\n"));
+        verify(responderImporter, never()).importResponders(any(Reader.class), any(ResponderFileFormat.class));
+    }
+
+    @Test
+    public void testNearestResponders() throws Exception {
+
+        Responder responder = new Responder.Builder("1").name("John Doe").build();
+        when(responderService.nearestResponders(30.1, -70.9, 5, 25.0, 3, true)).thenReturn(Collections.singletonList(responder));
+
+        final ResultActions result = mockMvc.perform(get("/responders/nearest?latitude=30.1&longitude=-70.9&limit=5&radius=25"
+                + "&minBoatCapacity=3&medicalKit=true").accept(MimeTypeUtils.APPLICATION_JSON_VALUE));
+
+        result.andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].name").value("John Doe"));
+    }
+
+    @Test
+    public void testNearestRespondersDefaultLimit() throws Exception {
+
+        when(responderService.nearestResponders(eq(30.1), eq(-70.9), eq(10), isNull(), isNull(), isNull()))
+                .thenReturn(Collections.emptyList());
+
+        final ResultActions result = mockMvc.perform(get("/responders/nearest?latitude=30.1&longitude=-70.9")
+                .accept(MimeTypeUtils.APPLICATION_JSON_VALUE));
+
+        result.andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+        verify(responderService).nearestResponders(eq(30.1), eq(-70.9), eq(10), isNull(), isNull(), isNull());
+    }
+
+    @Test
+    public void testNearestRespondersInvalidLatitude() throws Exception {
+
+        final ResultActions result = mockMvc.perform(get("/responders/nearest?latitude=91&longitude=-70.9")
+                .accept(MimeTypeUtils.APPLICATION_JSON_VALUE));
+
+        result.andExpect(status().isBadRequest());
+        verify(responderService, never()).nearestResponders(any(Double.class), any(Double.class), any(Integer.class),
+                any(), any(), any());
+    }
+
     private void initService() {
         Responder responder1 = new Responder.Builder("1")
                 .name("John Doe")
@@ -0,0 +1,60 @@
+package com.redhat.cajun.navy.responder.dao;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class ChangeSequenceTest {
+
+    private ChangeSequence changeSequence;
+
+    private AtomicLong sequence;
+
+    @Before
+    public void init() {
+        changeSequence = new ChangeSequence();
+        sequence = new AtomicLong(10);
+    }
+
+    @After
+    public void cleanup() {
+        TransactionSynchronizationManager.unbindResourceIfPossible(changeSequence);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testOutsideTransaction() {
+
+        assertThat(changeSequence.current(sequence::incrementAndGet), equalTo(11L));
+        assertThat(changeSequence.current(sequence::incrementAndGet), equalTo(12L));
+        assertThat(changeSequence.visibleWatermark(), equalTo(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testWithinTransaction() {
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        assertThat(changeSequence.current(sequence::incrementAndGet), equalTo(11L));
+        assertThat(changeSequence.current(sequence::incrementAndGet), equalTo(11L));
+        assertThat(changeSequence.visibleWatermark(), equalTo(10L));
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+
+        assertThat(changeSequence.visibleWatermark(), equalTo(Long.MAX_VALUE));
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.initSynchronization();
+        assertThat(changeSequence.current(sequence::incrementAndGet), equalTo(12L));
+    }
+}
@@ -0,0 +1,287 @@
+package com.redhat.cajun.navy.responder.dao;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.OptimisticLockException;
+
+import com.redhat.cajun.navy.responder.entity.OutboxEventEntity;
+import com.redhat.cajun.navy.responder.entity.ProcessedMessageEntity;
+import com.redhat.cajun.navy.responder.entity.ResponderEntity;
+import com.redhat.cajun.navy.responder.entity.ResponderTombstoneEntity;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InMemoryResponderDaoTest {
+
+    private InMemoryResponderDao responderDao;
+
+    @Before
+    public void init() {
+        responderDao = new InMemoryResponderDao();
+        setField(responderDao, null, new ChangeSequence(), ChangeSequence.class);
+    }
+
+    @Test
+    public void testCreateAndFind() {
+
+        ResponderEntity responder = responder("John Doe", true, true, true);
+        responderDao.create(responder);
+
+        assertThat(responder.getId(), not(equalTo(0L)));
+        ResponderEntity found = responderDao.findById(responder.getId());
+        assertThat(found, notNullValue());
+        assertThat(found.getName(), equalTo("John Doe"));
+        assertThat(responderDao.findByName("John Doe").getId(), equalTo(responder.getId()));
+        assertThat(responderDao.findByName("John Foo"), nullValue());
+    }
+
+    @Test
+    public void testFindByIds() {
+
+        ResponderEntity responder1 = responder("John Doe", true, true, true);
+        ResponderEntity responder2 = responder("John Foo", true, true, true);
+        responderDao.createAll(Arrays.asList(responder1, responder2));
+
+        List<ResponderEntity> found = responderDao.findByIds(Arrays.asList(responder2.getId(), 12345L, responder2.getId()));
+
+        assertThat(found.size(), equalTo(1));
+        assertThat(found.get(0).getName(), equalTo("John Foo"));
+    }
+
+    @Test(expected = NonUniqueResultException.class)
+    public void testFindByNameWhenNotUnique() {
+
+        responderDao.create(responder("John Doe", true, true, true));
+        responderDao.create(responder("John Doe", true, true, true));
+
+        responderDao.findByName("John Doe");
+    }
+
+    @Test
+    public void testMerge() {
+
+        ResponderEntity responder = responder("John Doe", true, true, true);
+        responderDao.create(responder);
+
+        ResponderEntity merged = responderDao.merge(new ResponderEntity.Builder(responderDao.findById(responder.getId()))
+                .available(false).build());
+
+        assertThat(merged.getVersion(), equalTo(1L));
+        assertThat(responderDao.findById(responder.getId()).isAvailable(), equalTo(false));
+    }
+
+    @Test(expected = OptimisticLockException.class)
+    public void testMergeWhenStale() {
+
+        ResponderEntity responder = responder("John Doe", true, true, true);
+        responderDao.create(responder);
+        ResponderEntity stale = responderDao.findById(responder.getId());
+        responderDao.merge(new ResponderEntity.Builder(stale).available(false).build());
+
+        responderDao.merge(new ResponderEntity.Builder(stale).enrolled(false).build());
+    }
+
+    @Test
+    public void testConditionalUpdate() {
+
+        ResponderEntity responder = responder("John Doe", true, true, true);
+        responderDao.create(responder);
+
+        ResponderUpdateResult result = responderDao.conditionalUpdate(new ResponderEntity.Builder(responder.getId(), 0L)
+                .currentPositionLatitude(new BigDecimal("30.123450")).build());
+        assertThat(result.getOutcome(), equalTo(ResponderUpdateResult.Outcome.UNCHANGED));
+
+        result = responderDao.conditionalUpdate(new ResponderEntity.Builder(responder.getId(), 0L).available(false).build());
+        assertThat(result.getOutcome(), equalTo(ResponderUpdateResult.Outcome.UPDATED));
+        assertThat(result.getPrevious().isAvailable(), equalTo(true));
+        assertThat(result.getCurrent().isAvailable(), equalTo(false));
+        assertThat(result.getCurrent().getName(), equalTo("John Doe"));
+        assertThat(result.getCurrent().getVersion(), equalTo(1L));
+
+        result = responderDao.conditionalUpdate(new ResponderEntity.Builder(12345L, 0L).available(false).build());
+        assertThat(result.getOutcome(), equalTo(ResponderUpdateResult.Outcome.NOT_FOUND));
+    }
+
+    @Test
+    public void testConditionalUpdateAll() {
+
+        ResponderEntity responder1 = responder("John Doe", true, true, true);
+        ResponderEntity responder2 = responder("John Foo", true, true, true);
+        responderDao.createAll(Arrays.asList(responder1, responder2));
+
+        List<ResponderUpdateResult> results = responderDao.conditionalUpdateAll(Arrays.asList(
+                new ResponderEntity.Builder(responder2.getId(), 0L).available(false).build(),
+                new ResponderEntity.Builder(12345L, 0L).available(false).build(),
+                new ResponderEntity.Builder(responder1.getId(), 0L).available(true).build()));
+
+        assertThat(results.get(0).getOutcome(), equalTo(ResponderUpdateResult.Outcome.UPDATED));
+        assertThat(results.get(1).getOutcome(), equalTo(ResponderUpdateResult.Outcome.NOT_FOUND));
+        assertThat(results.get(2).getOutcome(), equalTo(ResponderUpdateResult.Outcome.UNCHANGED));
+        assertThat(responderDao.findById(responder2.getId()).isAvailable(), equalTo(false));
+    }
+
+    @Test
+    public void testAvailableRespondersAndCounts() {
+
+        responderDao.create(responder("John Doe", true, true, true));
+        responderDao.create(responder("John Foo", false, true, true));
+        responderDao.create(responder("John Bar", true, false, true));
+
+        assertThat(responderDao.availableResponders().size(), equalTo(1));
+        assertThat(responderDao.enrolledRespondersCount(), equalTo(2L));
+        assertThat(responderDao.activeRespondersCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testStreamResponders() {
+
+        responderDao.create(responder("John Doe", true, true, true));
+        responderDao.create(responder("John Foo", false, true, false));
+        responderDao.create(responder("John Bar", true, false, true));
+
+        List<String> names = new ArrayList<>();
+        responderDao.streamResponders(true, null, null, 10, r -> names.add(r.getName()));
+        assertThat(names, equalTo(Arrays.asList("John Doe", "John Foo")));
+
+        names.clear();
+        responderDao.streamResponders(null, true, true, 10, r -> names.add(r.getName()));
+        assertThat(names, equalTo(Arrays.asList("John Doe", "John Bar")));
+    }
+
+    @Test
+    public void testNearestAvailableResponders() {
+
+        responderDao.create(at(responder("John Doe", true, true, true), "30.12345"));
+        responderDao.create(at(responder("John Foo", true, true, true), "30.32345"));
+        responderDao.create(at(responder("John Bar", true, true, true), "30.22345"));
+        responderDao.create(at(responder("John Qux", false, true, true), "30.12345"));
+        responderDao.create(at(responder("John Quux", true, true, true), null));
+
+        assertThat(names(responderDao.nearestAvailableResponders(new NearestQuery(30.12345, -70.98765, 10, 50, null, false))),
+                equalTo(Arrays.asList("John Doe", "John Bar", "John Foo")));
+        assertThat(names(responderDao.nearestAvailableResponders(new NearestQuery(30.12345, -70.98765, 2, 50, null, true))),
+                equalTo(Arrays.asList("John Doe", "John Bar")));
+        assertThat(names(responderDao.nearestAvailableResponders(new NearestQuery(30.12345, -70.98765, 10, 15, 3, true))),
+                equalTo(Arrays.asList("John Doe", "John Bar")));
+        assertThat(responderDao.nearestAvailableResponders(new NearestQuery(30.12345, -70.98765, 10, Double.MAX_VALUE, 4, false))
+                .size(), equalTo(0));
+    }
+
+    @Test
+    public void testResetAndClear() {
+
+        responderDao.create(responder("John Doe", false, true, true));
+        responderDao.create(responder("John Foo", false, true, false));
+
+        responderDao.reset();
+
+        ResponderEntity person = responderDao.findByName("John Doe");
+        assertThat(person.isEnrolled(), equalTo(false));
+        assertThat(person.isAvailable(), equalTo(true));
+        assertThat(person.getCurrentPositionLatitude(), nullValue());
+        assertThat(person.getVersion(), equalTo(1L));
+        assertThat(responderDao.findByName("John Foo").getCurrentPositionLatitude(), notNullValue());
+
+        responderDao.clear();
+
+        assertThat(responderDao.findByName("John Foo"), nullValue());
+        assertThat(responderDao.findByName("John Doe"), notNullValue());
+    }
+
+    @Test
+    public void testChangesAndTombstones() {
+
+        ResponderEntity responder1 = responder("John Doe", true, true, true);
+        ResponderEntity responder2 = responder("John Foo", true, true, false);
+        responderDao.createAll(Arrays.asList(responder1, responder2));
+        long created = responderDao.maxChangeSeq();
+        assertThat(responderDao.changedResponders(0, created, 10).size(), equalTo(2));
+
+        responderDao.conditionalUpdate(new ResponderEntity.Builder(responder1.getId(), 0L).available(false).build());
+        long updated = responderDao.maxChangeSeq();
+        assertThat(updated > created, equalTo(true));
+        List<ResponderEntity> changed = responderDao.changedResponders(created, updated, 10);
+        assertThat(changed.size(), equalTo(1));
+        assertThat(changed.get(0).getId(), equalTo(responder1.getId()));
+        assertThat(responderDao.changedResponders(0, updated, 1).get(0).getChangeSeq(), equalTo(created));
+
+        responderDao.clear();
+        long cleared = responderDao.maxChangeSeq();
+        List<ResponderTombstoneEntity> tombstones = responderDao.tombstones(updated, cleared);
+        assertThat(tombstones.size(), equalTo(1));
+        assertThat(tombstones.get(0).getResponderId(), equalTo(responder2.getId()));
+        assertThat(responderDao.changedResponders(updated, cleared, 10).get(0).getId(), equalTo(responder1.getId()));
+        assertThat(responderDao.tombstones(0, updated).isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void testOutbox() {
+
+        OutboxEventEntity event1 = new OutboxEventEntity.Builder("1", "payload1").build();
+        OutboxEventEntity event2 = new OutboxEventEntity.Builder("2", "payload2").build();
+        responderDao.createOutboxEvent(event1);
+        responderDao.createOutboxEvent(event2);
+
+        List<OutboxEventEntity> events = responderDao.outboxEvents(10);
+        assertThat(events.size(), equalTo(2));
+        assertThat(events.get(0).getPayload(), equalTo("payload1"));
+
+        responderDao.deleteOutboxEvents(Arrays.asList(event1.getId()));
+
+        events = responderDao.outboxEvents(10);
+        assertThat(events.size(), equalTo(1));
+        assertThat(events.get(0).getPayload(), equalTo("payload2"));
+    }
+
+    @Test
+    public void testProcessedMessages() {
+
+        responderDao.createProcessedMessage(new ProcessedMessageEntity.Builder("message1", 100L).build());
+        responderDao.createProcessedMessage(new ProcessedMessageEntity.Builder("message2", 200L).build());
+
+        assertThat(responderDao.processedMessageExists("message1", 100L), equalTo(true));
+        assertThat(responderDao.processedMessageExists("message1", 150L), equalTo(false));
+        assertThat(responderDao.processedMessageExists("message3", 0L), equalTo(false));
+
+        assertThat(responderDao.deleteProcessedMessages(150L), equalTo(1));
+        assertThat(responderDao.processedMessageExists("message1", 0L), equalTo(false));
+        assertThat(responderDao.processedMessageExists("message2", 150L), equalTo(true));
+    }
+
+    private ResponderEntity at(ResponderEntity responder, String latitude) {
+        return new ResponderEntity.Builder(responder)
+                .currentPositionLatitude(latitude == null ? null : new BigDecimal(latitude))
+                .currentPositionLongitude(latitude == null ? null : responder.getCurrentPositionLongitude())
+                .build();
+    }
+
+    private List<String> names(List<ResponderEntity> responders) {
+        return responders.stream().map(ResponderEntity::getName).collect(Collectors.toList());
+    }
+
+    private ResponderEntity responder(String name, boolean available, boolean enrolled, boolean person) {
+        return new ResponderEntity.Builder()
+                .name(name)
+                .phoneNumber("111-222-333")
+                .currentPositionLatitude(new BigDecimal("30.12345"))
+                .currentPositionLongitude(new BigDecimal("-70.98765"))
+                .boatCapacity(3)
+                .medicalKit(true)
+                .available(available)
+                .person(person)
+                .enrolled(enrolled)
+                .build();
+    }
+
+}
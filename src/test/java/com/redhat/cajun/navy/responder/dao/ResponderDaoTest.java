@@ -9,13 +9,18 @@ import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import javax.persistence.NonUniqueResultException;
 import javax.persistence.OptimisticLockException;
 
+import com.redhat.cajun.navy.responder.entity.ProcessedMessageEntity;
 import com.redhat.cajun.navy.responder.entity.ResponderEntity;
+import com.redhat.cajun.navy.responder.entity.ResponderTombstoneEntity;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -33,11 +38,11 @@ import org.springframework.transaction.support.TransactionTemplate;
 
 @RunWith(SpringRunner.class)
 @ActiveProfiles("test")
-@DataJpaTest(includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, value = ResponderDao.class))
+@DataJpaTest(includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, value = {JpaResponderDao.class, ChangeSequence.class}))
 public class ResponderDaoTest {
 
     @Autowired
-    private ResponderDao responderDao;
+    private JpaResponderDao responderDao;
 
     @Autowired
     private PlatformTransactionManager transactionManager;
@@ -64,6 +69,38 @@ public class ResponderDaoTest {
 
     }
 
+    @Test
+    @Transactional
+    public void testCreateAll() {
+
+        responderDao.deleteAll();
+
+        ResponderEntity responder1 = new ResponderEntity.Builder()
+                .name("John Doe")
+                .phoneNumber("111-222-333")
+                .boatCapacity(3)
+                .medicalKit(true)
+                .available(true)
+                .enrolled(true)
+                .build();
+
+        ResponderEntity responder2 = new ResponderEntity.Builder()
+                .name("John Foo")
+                .phoneNumber("999-888-777")
+                .boatCapacity(2)
+                .medicalKit(false)
+                .available(true)
+                .enrolled(true)
+                .build();
+
+        responderDao.createAll(Arrays.asList(responder1, responder2));
+
+        assertThat(responder1.getId(), not(equalTo(0L)));
+        assertThat(responder2.getId(), not(equalTo(responder1.getId())));
+        assertThat(responderDao.findById(responder2.getId()).getName(), equalTo("John Foo"));
+        assertThat(responderDao.allResponders().size(), equalTo(2));
+    }
+
     @Test
     @Transactional
     public void testAvailableResponders() {
@@ -171,6 +208,66 @@ public class ResponderDaoTest {
         assertThat(responders.size(), equalTo(0));
     }
 
+    @Test
+    @Transactional
+    public void testNearestAvailableResponders() {
+
+        responderDao.deleteAll();
+
+        responderDao.create(responder("John Doe", "30.12345", true));
+        responderDao.create(responder("John Foo", "30.32345", true));
+        responderDao.create(responder("John Bar", "30.22345", true));
+        responderDao.create(responder("John Qux", "30.12345", false));
+        responderDao.create(responder("John Quux", null, true));
+
+        assertThat(names(responderDao.nearestAvailableResponders(new NearestQuery(30.12345, -70.98765, 10, 50, null, false))),
+                equalTo(Arrays.asList("John Doe", "John Bar", "John Foo")));
+        assertThat(names(responderDao.nearestAvailableResponders(new NearestQuery(30.12345, -70.98765, 2, 50, null, true))),
+                equalTo(Arrays.asList("John Doe", "John Bar")));
+        assertThat(names(responderDao.nearestAvailableResponders(new NearestQuery(30.12345, -70.98765, 10, 15, 3, true))),
+                equalTo(Arrays.asList("John Doe", "John Bar")));
+        assertThat(responderDao.nearestAvailableResponders(new NearestQuery(30.12345, -70.98765, 10, Double.MAX_VALUE, 4, false))
+                .size(), equalTo(0));
+    }
+
+    @Test
+    @Transactional
+    public void testStreamResponders() {
+
+        responderDao.deleteAll();
+
+        ResponderEntity responder1 = new ResponderEntity.Builder()
+                .name("John Doe")
+                .phoneNumber("111-222-333")
+                .boatCapacity(3)
+                .medicalKit(true)
+                .available(false)
+                .person(true)
+                .enrolled(true)
+                .build();
+
+        ResponderEntity responder2 = new ResponderEntity.Builder()
+                .name("John Foo")
+                .phoneNumber("999-888-777")
+                .boatCapacity(2)
+                .medicalKit(true)
+                .available(true)
+                .person(false)
+                .enrolled(true)
+                .build();
+
+        responderDao.create(responder1);
+        responderDao.create(responder2);
+
+        List<String> names = new ArrayList<>();
+        responderDao.streamResponders(true, null, null, 1, r -> names.add(r.getName()));
+        assertThat(names.size(), equalTo(2));
+
+        names.clear();
+        responderDao.streamResponders(true, true, false, 1, r -> names.add(r.getName()));
+        assertThat(names, equalTo(Arrays.asList("John Foo")));
+    }
+
     @Test
     public void testFindById() {
 
@@ -205,6 +302,38 @@ public class ResponderDaoTest {
         });
     }
 
+    @Test
+    @Transactional
+    public void testFindByIds() {
+
+        responderDao.deleteAll();
+
+        ResponderEntity responder1 = new ResponderEntity.Builder()
+                .name("John Doe")
+                .phoneNumber("111-222-333")
+                .boatCapacity(3)
+                .medicalKit(true)
+                .available(true)
+                .enrolled(true)
+                .build();
+
+        ResponderEntity responder2 = new ResponderEntity.Builder()
+                .name("John Foo")
+                .phoneNumber("999-888-777")
+                .boatCapacity(2)
+                .medicalKit(false)
+                .available(true)
+                .enrolled(true)
+                .build();
+
+        responderDao.createAll(Arrays.asList(responder1, responder2));
+
+        List<ResponderEntity> found = responderDao.findByIds(Arrays.asList(responder2.getId(), responder2.getId() + 1000));
+        assertThat(found.size(), equalTo(1));
+        assertThat(found.get(0).getName(), equalTo("John Foo"));
+        assertThat(responderDao.findByIds(new ArrayList<>()).isEmpty(), is(true));
+    }
+
     @Test
     public void testFindByIdWhenNotFound() {
 
@@ -558,6 +687,7 @@ public class ResponderDaoTest {
             assertThat(r.isPerson(), equalTo(true));
             assertThat(r.getCurrentPositionLatitude(), nullValue());
             assertThat(r.getCurrentPositionLongitude(), nullValue());
+            assertThat(r.getVersion(), equalTo(1L));
             return null;
         });
     }
@@ -612,6 +742,7 @@ public class ResponderDaoTest {
             responderDao.create(responder3);
             return null;
         });
+        long created = template.execute((TransactionStatus s) -> responderDao.maxChangeSeq());
 
         template = new TransactionTemplate(transactionManager);
         template.execute((TransactionStatus s) -> {
@@ -634,6 +765,17 @@ public class ResponderDaoTest {
             assertThat(r.isPerson(), equalTo(true));
             assertThat(r.getCurrentPositionLatitude(), nullValue());
             assertThat(r.getCurrentPositionLongitude(), nullValue());
+            assertThat(r.getVersion(), equalTo(1L));
+
+            long cleared = responderDao.maxChangeSeq();
+            assertThat(cleared > created, is(true));
+            List<ResponderEntity> changed = responderDao.changedResponders(created, cleared, 10);
+            assertThat(changed.size(), equalTo(1));
+            assertThat(changed.get(0).getName(), equalTo("John Foo III"));
+            assertThat(changed.get(0).getChangeSeq(), equalTo(cleared));
+            List<ResponderTombstoneEntity> tombstones = responderDao.tombstones(created, cleared);
+            assertThat(tombstones.size(), equalTo(2));
+            assertThat(responderDao.tombstones(0, created).isEmpty(), is(true));
             return null;
         });
     }
@@ -798,4 +940,39 @@ public class ResponderDaoTest {
             return null;
         });
     }
+
+    @Test
+    @Transactional
+    public void testProcessedMessages() {
+
+        responderDao.createProcessedMessage(new ProcessedMessageEntity.Builder("message1", 100L).build());
+        responderDao.createProcessedMessage(new ProcessedMessageEntity.Builder("message2", 200L).build());
+        // a redelivered message is recorded again
+        responderDao.createProcessedMessage(new ProcessedMessageEntity.Builder("message2", 300L).build());
+
+        assertThat(responderDao.processedMessageExists("message1", 100L), equalTo(true));
+        assertThat(responderDao.processedMessageExists("message1", 150L), equalTo(false));
+        assertThat(responderDao.processedMessageExists("message2", 250L), equalTo(true));
+
+        assertThat(responderDao.deleteProcessedMessages(150L), equalTo(1));
+        assertThat(responderDao.processedMessageExists("message1", 0L), equalTo(false));
+    }
+
+    private ResponderEntity responder(String name, String latitude, boolean available) {
+        return new ResponderEntity.Builder()
+                .name(name)
+                .phoneNumber("111-222-333")
+                .currentPositionLatitude(latitude == null ? null : new BigDecimal(latitude))
+                .currentPositionLongitude(latitude == null ? null : new BigDecimal("-70.98765"))
+                .boatCapacity(3)
+                .medicalKit(true)
+                .available(available)
+                .enrolled(true)
+                .build();
+    }
+
+    private List<String> names(List<ResponderEntity> responders) {
+        return responders.stream().map(ResponderEntity::getName).collect(Collectors.toList());
+    }
+
 }
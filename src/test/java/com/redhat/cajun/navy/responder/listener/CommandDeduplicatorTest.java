@@ -0,0 +1,163 @@
+package com.redhat.cajun.navy.responder.listener;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.persistence.OptimisticLockException;
+
+import com.redhat.cajun.navy.responder.dao.ResponderDao;
+import com.redhat.cajun.navy.responder.entity.ProcessedMessageEntity;
+import com.redhat.cajun.navy.responder.entity.ResponderEntity;
+import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.model.ResponderUpdateStatus;
+import com.redhat.cajun.navy.responder.service.ResponderService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+public class CommandDeduplicatorTest {
+
+    @Mock
+    private ResponderDao responderDao;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Captor
+    private ArgumentCaptor<ProcessedMessageEntity> messageCaptor;
+
+    private MeterRegistry meterRegistry;
+
+    private CommandDeduplicator deduplicator;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        deduplicator = new CommandDeduplicator();
+        setField(deduplicator, null, responderDao, ResponderDao.class);
+        setField(deduplicator, null, transactionManager, PlatformTransactionManager.class);
+        setField(deduplicator, null, meterRegistry, MeterRegistry.class);
+        deduplicator.init();
+    }
+
+    @Test
+    public void testDuplicate() {
+
+        AtomicInteger applied = new AtomicInteger();
+
+        assertThat(deduplicator.isDuplicate("message1"), equalTo(false));
+        deduplicator.process("message1", applied::incrementAndGet);
+        assertThat(deduplicator.isDuplicate("message1"), equalTo(true));
+        assertThat(deduplicator.isDuplicate("message2"), equalTo(false));
+        assertThat(deduplicator.isDuplicate(null), equalTo(false));
+
+        assertThat(applied.get(), equalTo(1));
+        assertThat(meterRegistry.counter("responder.command.dedup", "result", "hit").count(), equalTo(1.0));
+        assertThat(meterRegistry.counter("responder.command.dedup", "result", "miss").count(), equalTo(2.0));
+        verify(responderDao, never()).createProcessedMessage(any());
+    }
+
+    @Test
+    public void testOldestIdsAreForgotten() {
+
+        setField(deduplicator, "maxSize", 2);
+
+        deduplicator.process(Arrays.asList("message1", "message2"), () -> {});
+        deduplicator.process("message3", () -> {});
+
+        assertThat(deduplicator.isDuplicate("message1"), equalTo(false));
+        assertThat(deduplicator.isDuplicate("message2"), equalTo(true));
+        assertThat(deduplicator.isDuplicate("message3"), equalTo(true));
+    }
+
+    @Test
+    public void testIdsExpire() {
+
+        setField(deduplicator, "window", -1L);
+
+        deduplicator.process("message1", () -> {});
+
+        assertThat(deduplicator.isDuplicate("message1"), equalTo(false));
+    }
+
+    @Test
+    public void testPersisted() {
+
+        setField(deduplicator, "persisted", true);
+        when(responderDao.processedMessageExists(eq("message2"), anyLong())).thenReturn(true);
+
+        deduplicator.process("message1", () -> {});
+
+        verify(responderDao).createProcessedMessage(messageCaptor.capture());
+        assertThat(messageCaptor.getValue().getMessageId(), equalTo("message1"));
+        verify(transactionManager).commit(any());
+        assertThat(deduplicator.isDuplicate("message1"), equalTo(true));
+        // processed by another instance, or before a restart
+        assertThat(deduplicator.isDuplicate("message2"), equalTo(true));
+        assertThat(deduplicator.isDuplicate("message3"), equalTo(false));
+        // the lookups of message2 and message3 run in read-only transactions
+        verify(transactionManager, times(3)).commit(any());
+    }
+
+    @Test
+    public void testPersistedWithConflictingBulkUpdate() {
+
+        setField(deduplicator, "persisted", true);
+        PlatformTransactionManager dataSourceTransactionManager =
+                new DataSourceTransactionManager(new DriverManagerDataSource("jdbc:h2:mem:dedup;DB_CLOSE_DELAY=-1"));
+        setField(deduplicator, null, dataSourceTransactionManager, PlatformTransactionManager.class);
+        ResponderService responderService = new ResponderService();
+        setField(responderService, null, responderDao, ResponderDao.class);
+        setField(responderService, null, mock(ApplicationEventPublisher.class), ApplicationEventPublisher.class);
+        setField(responderService, null, dataSourceTransactionManager, PlatformTransactionManager.class);
+        setField(responderService, "updateChunkSize", 10);
+        when(responderDao.findByIds(any())).thenAnswer(invocation -> Collections.singletonList(
+                new ResponderEntity.Builder(1L, 0L).name("John Doe").available(true).build()));
+        when(responderDao.merge(any())).thenThrow(new OptimisticLockException());
+        List<ResponderUpdateStatus> statuses = new ArrayList<>();
+
+        deduplicator.process("message1", () -> statuses.addAll(responderService.updateResponders(
+                Collections.singletonList(new Responder.Builder("1").available(false).build()))));
+
+        assertThat(statuses.get(0).getStatus(), equalTo(ResponderUpdateStatus.Status.CONFLICT));
+        verify(responderDao, times(2)).merge(any());
+        verify(responderDao).createProcessedMessage(messageCaptor.capture());
+        assertThat(messageCaptor.getValue().getMessageId(), equalTo("message1"));
+        assertThat(deduplicator.isDuplicate("message1"), equalTo(true));
+    }
+
+    @Test
+    public void testDisabled() {
+
+        setField(deduplicator, "enabled", false);
+
+        deduplicator.process("message1", () -> {});
+
+        assertThat(deduplicator.isDuplicate("message1"), equalTo(false));
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.redhat.cajun.navy.responder.listener;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.nio.charset.StandardCharsets;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+public class CommandRetryRouterTest {
+
+    @Mock
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    @Captor
+    private ArgumentCaptor<ProducerRecord<String, String>> recordCaptor;
+
+    private MeterRegistry meterRegistry;
+
+    private CommandRetryRouter retryRouter;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        retryRouter = new CommandRetryRouter();
+        setField(retryRouter, null, kafkaTemplate, KafkaTemplate.class);
+        setField(retryRouter, null, meterRegistry, MeterRegistry.class);
+        setField(retryRouter, "enabled", true);
+        setField(retryRouter, "delays", "1000, 60000");
+        setField(retryRouter, "topicPrefix", "commands");
+        retryRouter.init();
+        SettableListenableFuture<Object> sent = new SettableListenableFuture<>();
+        sent.set(null);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenAnswer(invocation -> sent);
+    }
+
+    @Test
+    public void testRetryTopics() {
+
+        assertThat(retryRouter.getRetryTopics(), equalTo(new String[] {"commands-retry-1", "commands-retry-2"}));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDelayLongerThanPollInterval() {
+
+        setField(retryRouter, "delays", "1000, 900000");
+        retryRouter.init();
+    }
+
+    @Test
+    public void testFirstFailure() {
+
+        long before = System.currentTimeMillis();
+        retryRouter.route(new ConsumerRecord<>("commands", 2, 42, "key", "payload"), new IllegalArgumentException("failure"), true);
+
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        ProducerRecord<String, String> sent = recordCaptor.getValue();
+        assertThat(sent.topic(), equalTo("commands-retry-1"));
+        assertThat(sent.key(), equalTo("key"));
+        assertThat(sent.value(), equalTo("payload"));
+        assertThat(header(sent, CommandRetryRouter.TIER_HEADER), equalTo("1"));
+        assertThat(Long.parseLong(header(sent, CommandRetryRouter.DUE_HEADER)) >= before + 1000, equalTo(true));
+        assertThat(header(sent, CommandRetryRouter.ERROR_CLASS_HEADER), equalTo(IllegalArgumentException.class.getName()));
+        assertThat(header(sent, CommandRetryRouter.ERROR_MESSAGE_HEADER), equalTo("failure"));
+        assertThat(header(sent, CommandRetryRouter.ORIGINAL_TOPIC_HEADER), equalTo("commands"));
+        assertThat(header(sent, CommandRetryRouter.ORIGINAL_PARTITION_HEADER), equalTo("2"));
+        assertThat(header(sent, CommandRetryRouter.ORIGINAL_OFFSET_HEADER), equalTo("42"));
+        assertThat(meterRegistry.counter("responder.command.retry", "tier", "1").count(), equalTo(1.0));
+    }
+
+    @Test
+    public void testFailureOfLastTier() {
+
+        ConsumerRecord<String, String> record = new ConsumerRecord<>("commands-retry-2", 0, 7, "key", "payload");
+        record.headers().add(CommandRetryRouter.TIER_HEADER, "2".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(CommandRetryRouter.ORIGINAL_TOPIC_HEADER, "commands".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(CommandRetryRouter.ORIGINAL_OFFSET_HEADER, "42".getBytes(StandardCharsets.UTF_8));
+
+        retryRouter.route(record, new IllegalArgumentException("failure"), true);
+
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        ProducerRecord<String, String> sent = recordCaptor.getValue();
+        assertThat(sent.topic(), equalTo("commands-dlt"));
+        assertThat(header(sent, CommandRetryRouter.TIER_HEADER), nullValue());
+        assertThat(header(sent, CommandRetryRouter.ORIGINAL_TOPIC_HEADER), equalTo("commands"));
+        assertThat(header(sent, CommandRetryRouter.ORIGINAL_PARTITION_HEADER), equalTo("0"));
+        assertThat(header(sent, CommandRetryRouter.ORIGINAL_OFFSET_HEADER), equalTo("42"));
+        assertThat(meterRegistry.counter("responder.command.retry", "tier", "dlt").count(), equalTo(1.0));
+    }
+
+    @Test
+    public void testNotRetryable() {
+
+        retryRouter.route(new ConsumerRecord<>("commands", 0, 1, "key", "not json"), new IllegalArgumentException("parse"), false);
+
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        assertThat(recordCaptor.getValue().topic(), equalTo("commands-dlt"));
+    }
+
+    @Test
+    public void testDisabled() {
+
+        setField(retryRouter, "enabled", false);
+
+        try {
+            retryRouter.route(new ConsumerRecord<>("commands", 0, 1, "key", "payload"), new IllegalArgumentException("failure"), true);
+            Assert.fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), equalTo("failure"));
+        }
+        verify(kafkaTemplate, never()).send(any(ProducerRecord.class));
+    }
+
+    private String header(ProducerRecord<String, String> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,283 @@
+package com.redhat.cajun.navy.responder.listener;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.service.ResponderService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.lang3.tuple.ImmutableTriple;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.springframework.kafka.support.Acknowledgment;
+
+public class ResponderCommandBatchMessageListenerTest {
+
+    @Mock
+    private ResponderService responderService;
+
+    @Mock
+    private Acknowledgment ack;
+
+    @Mock
+    private Consumer<String, String> consumer;
+
+    @Captor
+    private ArgumentCaptor<Responder> responderCaptor;
+
+    private ResponderCommandBatchMessageListener messageListener;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        messageListener = new ResponderCommandBatchMessageListener();
+        setField(messageListener, null, responderService, ResponderService.class);
+        CommandDeduplicator deduplicator = new CommandDeduplicator();
+        setField(deduplicator, null, new SimpleMeterRegistry(), MeterRegistry.class);
+        deduplicator.init();
+        setField(messageListener, null, deduplicator, CommandDeduplicator.class);
+        CommandRetryRouter retryRouter = new CommandRetryRouter();
+        retryRouter.init();
+        setField(messageListener, null, retryRouter, CommandRetryRouter.class);
+    }
+
+    @Test
+    public void testProcessMessagesCoalescesCommandsForSameResponder() {
+
+        String json1 = "{\"messageType\" : \"UpdateResponderCommand\"," +
+                "\"id\" : \"messageId1\"," +
+                "\"invokingService\" : \"messageSender\"," +
+                "\"timestamp\" : 1521148332397," +
+                "\"body\" : {" +
+                "\"responder\" : {" +
+                "\"id\" : \"1\"," +
+                "\"latitude\" : 30.12345," +
+                "\"longitude\" : -70.98765" +
+                "} " +
+                "} " +
+                "}";
+
+        String json2 = "{\"messageType\" : \"UpdateResponderCommand\"," +
+                "\"id\" : \"messageId2\"," +
+                "\"invokingService\" : \"messageSender\"," +
+                "\"timestamp\" : 1521148332398," +
+                "\"header\" : {" +
+                "\"incidentId\" : \"incident\"" +
+                "}," +
+                "\"body\" : {" +
+                "\"responder\" : {" +
+                "\"id\" : \"1\"," +
+                "\"latitude\" : 30.23456," +
+                "\"available\" : false" +
+                "} " +
+                "} " +
+                "}";
+
+        Responder updated = new Responder.Builder("1")
+                .name("John Doe")
+                .latitude(new BigDecimal("30.23456"))
+                .longitude(new BigDecimal("-70.98765"))
+                .available(false)
+                .build();
+        when(responderService.updateResponder(any(Responder.class), anyList())).thenReturn(new ImmutableTriple<>(true, "ok", updated));
+
+        messageListener.processMessages(records(json1, json2), ack, consumer);
+
+        verify(responderService).updateResponder(responderCaptor.capture(), eq(Collections.singletonList("incident")));
+        Responder captured = responderCaptor.getValue();
+        assertThat(captured, notNullValue());
+        assertThat(captured.getId(), equalTo("1"));
+        assertThat(captured.getLatitude(), equalTo(new BigDecimal("30.23456")));
+        assertThat(captured.getLongitude(), equalTo(new BigDecimal("-70.98765")));
+        assertThat(captured.isAvailable(), equalTo(false));
+        assertThat(captured.getName(), nullValue());
+        assertThat(captured.isEnrolled(), nullValue());
+        verify(ack).acknowledge();
+    }
+
+    @Test
+    public void testProcessMessagesDifferentResponders() {
+
+        String json1 = "{\"messageType\" : \"UpdateResponderCommand\"," +
+                "\"id\" : \"messageId1\"," +
+                "\"invokingService\" : \"messageSender\"," +
+                "\"timestamp\" : 1521148332397," +
+                "\"body\" : {" +
+                "\"responder\" : {" +
+                "\"id\" : \"1\"," +
+                "\"available\" : false" +
+                "} " +
+                "} " +
+                "}";
+
+        String json2 = "{\"messageType\" : \"UpdateResponderCommand\"," +
+                "\"id\" : \"messageId2\"," +
+                "\"invokingService\" : \"messageSender\"," +
+                "\"timestamp\" : 1521148332398," +
+                "\"body\" : {" +
+                "\"responder\" : {" +
+                "\"id\" : \"2\"," +
+                "\"available\" : false" +
+                "} " +
+                "} " +
+                "}";
+
+        when(responderService.updateResponder(any(Responder.class), anyList()))
+                .thenReturn(new ImmutableTriple<>(true, "ok", new Responder.Builder("1").build()));
+
+        messageListener.processMessages(records(json1, json2), ack, consumer);
+
+        verify(responderService, times(2)).updateResponder(responderCaptor.capture(), eq(Collections.<String>emptyList()));
+        assertThat(responderCaptor.getAllValues().get(0).getId(), equalTo("1"));
+        assertThat(responderCaptor.getAllValues().get(1).getId(), equalTo("2"));
+        verify(ack).acknowledge();
+    }
+
+    @Test
+    public void testProcessMessagesWithBatchedCommand() {
+
+        String json1 = "{\"messageType\" : \"UpdateResponderCommand\"," +
+                "\"id\" : \"messageId1\"," +
+                "\"invokingService\" : \"messageSender\"," +
+                "\"timestamp\" : 1521148332397," +
+                "\"body\" : {" +
+                "\"responder\" : {" +
+                "\"id\" : \"1\"," +
+                "\"available\" : false" +
+                "} " +
+                "} " +
+                "}";
+
+        String json2 = "{\"messageType\" : \"UpdateRespondersCommand\"," +
+                "\"id\" : \"messageId2\"," +
+                "\"invokingService\" : \"messageSender\"," +
+                "\"timestamp\" : 1521148332398," +
+                "\"body\" : {" +
+                "\"updates\" : [ {" +
+                "\"responder\" : {" +
+                "\"id\" : \"1\"," +
+                "\"available\" : true" +
+                "}, " +
+                "\"incidentId\" : \"incident\"" +
+                "} ] " +
+                "} " +
+                "}";
+
+        String json3 = "{\"messageType\" : \"UpdateResponderCommand\"," +
+                "\"id\" : \"messageId3\"," +
+                "\"invokingService\" : \"messageSender\"," +
+                "\"timestamp\" : 1521148332399," +
+                "\"body\" : {" +
+                "\"responder\" : {" +
+                "\"id\" : \"1\"," +
+                "\"enrolled\" : false" +
+                "} " +
+                "} " +
+                "}";
+
+        when(responderService.updateResponder(any(Responder.class), anyList()))
+                .thenReturn(new ImmutableTriple<>(true, "ok", new Responder.Builder("1").build()));
+
+        messageListener.processMessages(records(json1, json2, json3), ack, consumer);
+
+        // the commands before and after the batched command are not merged across it
+        InOrder inOrder = inOrder(responderService);
+        inOrder.verify(responderService).updateResponder(responderCaptor.capture(), eq(Collections.<String>emptyList()));
+        inOrder.verify(responderService).updateResponders(anyList(), eq(Collections.singletonList("incident")));
+        inOrder.verify(responderService).updateResponder(responderCaptor.capture(), eq(Collections.<String>emptyList()));
+        assertThat(responderCaptor.getAllValues().get(0).isAvailable(), equalTo(false));
+        assertThat(responderCaptor.getAllValues().get(1).isEnrolled(), equalTo(false));
+        verify(ack).acknowledge();
+    }
+
+    @Test
+    public void testProcessMessagesWrongMessageType() {
+
+        String json = "{\"messageType\":\"WrongType\"," +
+                "\"id\":\"messageId\"," +
+                "\"invokingService\":\"messageSender\"," +
+                "\"timestamp\":1521148332397," +
+                "\"body\":{} " +
+                "}";
+
+        messageListener.processMessages(records(json, "{\"field1\":\"value1\"}"), ack, consumer);
+
+        verify(responderService, never()).updateResponder(any(Responder.class), anyList());
+        verify(ack).acknowledge();
+    }
+
+    @Test
+    public void testProcessMessagesFailureInTheMiddleOfTheBatch() {
+
+        String[] json = new String[3];
+        for (int i = 0; i < json.length; i++) {
+            json[i] = "{\"messageType\" : \"UpdateResponderCommand\"," +
+                    "\"id\" : \"messageId" + (i + 1) + "\"," +
+                    "\"invokingService\" : \"messageSender\"," +
+                    "\"timestamp\" : 1521148332397," +
+                    "\"body\" : {" +
+                    "\"responder\" : {" +
+                    "\"id\" : \"" + (i + 1) + "\"," +
+                    "\"available\" : false" +
+                    "} " +
+                    "} " +
+                    "}";
+        }
+
+        when(responderService.updateResponder(any(Responder.class), anyList()))
+                .thenReturn(new ImmutableTriple<>(true, "ok", new Responder.Builder("1").build()));
+        doThrow(new IllegalStateException("database down")).when(responderService)
+                .updateResponder(argThat(r -> r != null && "2".equals(r.getId())), anyList());
+
+        // retries are disabled, so the failed record cannot be moved aside
+        messageListener.processMessages(records(json), ack, consumer);
+
+        verify(responderService, times(2)).updateResponder(responderCaptor.capture(), anyList());
+        assertThat(responderCaptor.getAllValues().get(0).getId(), equalTo("1"));
+        assertThat(responderCaptor.getAllValues().get(1).getId(), equalTo("2"));
+        TopicPartition partition = new TopicPartition("topic", 0);
+        verify(consumer).commitSync(Collections.singletonMap(partition, new OffsetAndMetadata(1)));
+        verify(consumer).seek(partition, 1);
+        verify(consumer, times(1)).seek(any(TopicPartition.class), anyLong());
+        verify(ack, never()).acknowledge();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<ConsumerRecord<String, String>> records(String... values) {
+        ConsumerRecord<String, String>[] records = new ConsumerRecord[values.length];
+        for (int i = 0; i < values.length; i++) {
+            records[i] = new ConsumerRecord<>("topic", 0, i, "key", values[i]);
+        }
+        return Arrays.asList(records);
+    }
+
+}
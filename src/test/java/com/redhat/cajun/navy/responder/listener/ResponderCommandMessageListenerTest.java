@@ -5,30 +5,34 @@ import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.mock;
+import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
-import com.redhat.cajun.navy.responder.message.Message;
-import com.redhat.cajun.navy.responder.message.ResponderUpdatedEvent;
 import com.redhat.cajun.navy.responder.model.Responder;
 import com.redhat.cajun.navy.responder.service.ResponderService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.commons.lang3.tuple.ImmutableTriple;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.Acknowledgment;
-import org.springframework.util.concurrent.ListenableFuture;
 
 public class ResponderCommandMessageListenerTest {
 
@@ -36,33 +40,32 @@ public class ResponderCommandMessageListenerTest {
     private ResponderService responderService;
 
     @Mock
-    private KafkaTemplate kafkaTemplate;
+    private Acknowledgment ack;
 
     @Mock
-    private Acknowledgment ack;
+    private CommandRetryRouter retryRouter;
 
     @Captor
     private ArgumentCaptor<Responder> responderCaptor;
 
     @Captor
-    private ArgumentCaptor<Message<ResponderUpdatedEvent>> messageCaptor;
+    private ArgumentCaptor<List<Responder>> respondersCaptor;
 
     private ResponderCommandMessageListener messageListener;
 
     @Before
-    @SuppressWarnings("unchecked")
     public void init() {
         initMocks(this);
         messageListener = new ResponderCommandMessageListener();
         setField(messageListener, null, responderService, ResponderService.class);
-        setField(messageListener, null, kafkaTemplate, KafkaTemplate.class);
-        setField(messageListener, "destination", "test-topic", String.class);
-        ListenableFuture future = mock(ListenableFuture.class);
-        when(kafkaTemplate.send(anyString(), anyString(), any(Message.class))).thenReturn(future);
+        CommandDeduplicator deduplicator = new CommandDeduplicator();
+        setField(deduplicator, null, new SimpleMeterRegistry(), MeterRegistry.class);
+        deduplicator.init();
+        setField(messageListener, null, deduplicator, CommandDeduplicator.class);
+        setField(messageListener, null, retryRouter, CommandRetryRouter.class);
     }
 
     @Test
-    @SuppressWarnings("unchecked")
     public void testProcessMessageUpdateResponder() {
 
         String json = "{\"messageType\" : \"UpdateResponderCommand\"," +
@@ -89,11 +92,11 @@ public class ResponderCommandMessageListenerTest {
                 .medicalKit(true)
                 .available(false)
                 .build();
-        when(responderService.updateResponder(any(Responder.class))).thenReturn(new ImmutableTriple<>(true, "ok", updated));
+        when(responderService.updateResponder(any(Responder.class), anyList())).thenReturn(new ImmutableTriple<>(true, "ok", updated));
 
-        messageListener.processMessage(json,"topic", 1, ack);
+        messageListener.processMessage(record(json), ack);
 
-        verify(responderService).updateResponder(responderCaptor.capture());
+        verify(responderService).updateResponder(responderCaptor.capture(), eq(Collections.singletonList("incident")));
         Responder captured = responderCaptor.getValue();
         assertThat(captured, notNullValue());
         assertThat(captured.getId(), equalTo("1"));
@@ -104,23 +107,10 @@ public class ResponderCommandMessageListenerTest {
         assertThat(captured.getLongitude(), nullValue());
         assertThat(captured.getBoatCapacity(), nullValue());
         assertThat(captured.isMedicalKit(), nullValue());
-
-        verify(kafkaTemplate).send(eq("test-topic"), eq("1"), messageCaptor.capture());
-        Message<ResponderUpdatedEvent> eventMessage = messageCaptor.getValue();
-        assertThat(eventMessage, notNullValue());
-        assertThat(eventMessage.getInvokingService(), equalTo("ResponderService"));
-        assertThat(eventMessage.getMessageType(), equalTo("ResponderUpdatedEvent"));
-        assertThat(eventMessage.getHeaderValue("incidentId"), equalTo("incident"));
-        ResponderUpdatedEvent event = eventMessage.getBody();
-        assertThat(event, notNullValue());
-        assertThat(event.getResponder(), equalTo(updated));
-        assertThat(event.getStatus(), equalTo("success"));
-        assertThat(event.getStatusMessage(), equalTo("ok"));
         verify(ack).acknowledge();
     }
 
     @Test
-    @SuppressWarnings("unchecked")
     public void testProcessMessageUpdateResponderNoIncidentIdHeader() {
 
         String json = "{\"messageType\" : \"UpdateResponderCommand\"," +
@@ -144,11 +134,11 @@ public class ResponderCommandMessageListenerTest {
                 .medicalKit(true)
                 .available(false)
                 .build();
-        when(responderService.updateResponder(any(Responder.class))).thenReturn(new ImmutableTriple<>(true, "ok", updated));
+        when(responderService.updateResponder(any(Responder.class), anyList())).thenReturn(new ImmutableTriple<>(true, "ok", updated));
 
-        messageListener.processMessage(json,"topic", 1, ack);
+        messageListener.processMessage(record(json), ack);
 
-        verify(responderService).updateResponder(responderCaptor.capture());
+        verify(responderService).updateResponder(responderCaptor.capture(), eq(Collections.<String>emptyList()));
         Responder captured = responderCaptor.getValue();
         assertThat(captured, notNullValue());
         assertThat(captured.getId(), equalTo("1"));
@@ -159,8 +149,67 @@ public class ResponderCommandMessageListenerTest {
         assertThat(captured.getLongitude(), nullValue());
         assertThat(captured.getBoatCapacity(), nullValue());
         assertThat(captured.isMedicalKit(), nullValue());
+        verify(ack).acknowledge();
+    }
+
+    @Test
+    public void testProcessMessageRedelivered() {
+
+        String json = "{\"messageType\" : \"UpdateResponderCommand\"," +
+                "\"id\" : \"messageId\"," +
+                "\"invokingService\" : \"messageSender\"," +
+                "\"timestamp\" : 1521148332397," +
+                "\"body\" : {" +
+                "\"responder\" : {" +
+                "\"id\" : \"1\"," +
+                "\"available\" : false" +
+                "} " +
+                "} " +
+                "}";
+
+        when(responderService.updateResponder(any(Responder.class), anyList()))
+                .thenReturn(new ImmutableTriple<>(true, "ok", new Responder.Builder("1").build()));
+
+        messageListener.processMessage(record(json), ack);
+        messageListener.processMessage(record(json), ack);
+
+        verify(responderService).updateResponder(any(Responder.class), anyList());
+        verify(ack, times(2)).acknowledge();
+    }
 
-        verify(kafkaTemplate, never()).send(anyString(), anyString(), any(Message.class));
+    @Test
+    public void testProcessMessageUpdateResponders() {
+
+        String json = "{\"messageType\" : \"UpdateRespondersCommand\"," +
+                "\"id\" : \"messageId\"," +
+                "\"invokingService\" : \"messageSender\"," +
+                "\"timestamp\" : 1521148332397," +
+                "\"body\" : {" +
+                "\"updates\" : [ {" +
+                "\"responder\" : {" +
+                "\"id\" : \"1\"," +
+                "\"available\" : false" +
+                "}, " +
+                "\"incidentId\" : \"incident\"" +
+                "}, {" +
+                "\"responder\" : {" +
+                "\"id\" : \"2\"," +
+                "\"latitude\" : 30.12345" +
+                "} " +
+                "} ] " +
+                "} " +
+                "}";
+
+        messageListener.processMessage(record(json), ack);
+
+        verify(responderService).updateResponders(respondersCaptor.capture(), eq(Arrays.asList("incident", null)));
+        List<Responder> captured = respondersCaptor.getValue();
+        assertThat(captured.size(), equalTo(2));
+        assertThat(captured.get(0).getId(), equalTo("1"));
+        assertThat(captured.get(0).isAvailable(), equalTo(false));
+        assertThat(captured.get(1).getId(), equalTo("2"));
+        assertThat(captured.get(1).getLatitude(), equalTo(new BigDecimal("30.12345")));
+        verify(responderService, never()).updateResponder(any(Responder.class), anyList());
         verify(ack).acknowledge();
     }
 
@@ -174,9 +223,9 @@ public class ResponderCommandMessageListenerTest {
                 "\"body\":{} " +
                 "}";
 
-        messageListener.processMessage(json,"topic", 1, ack);
+        messageListener.processMessage(record(json), ack);
 
-        verify(responderService, never()).updateResponder(any(Responder.class));
+        verify(responderService, never()).updateResponder(any(Responder.class), anyList());
         verify(ack).acknowledge();
     }
 
@@ -185,10 +234,56 @@ public class ResponderCommandMessageListenerTest {
         String json = "{\"field1\":\"value1\"," +
                 "\"field2\":\"value2\"}";
 
-        messageListener.processMessage(json,"topic", 1, ack);
+        messageListener.processMessage(record(json), ack);
 
-        verify(responderService, never()).updateResponder(any(Responder.class));
+        verify(responderService, never()).updateResponder(any(Responder.class), anyList());
         verify(ack).acknowledge();
     }
 
+    @Test
+    public void testProcessMessageFailureIsRouted() {
+
+        String json = "{\"messageType\" : \"UpdateResponderCommand\"," +
+                "\"id\" : \"messageId\"," +
+                "\"invokingService\" : \"messageSender\"," +
+                "\"timestamp\" : 1521148332397," +
+                "\"body\" : {" +
+                "\"responder\" : {" +
+                "\"id\" : \"1\"," +
+                "\"available\" : false" +
+                "} " +
+                "} " +
+                "}";
+
+        IllegalStateException failure = new IllegalStateException("failure");
+        doThrow(failure).when(responderService).updateResponder(any(Responder.class), anyList());
+        ConsumerRecord<String, String> record = record(json);
+
+        messageListener.processMessage(record, ack);
+
+        verify(retryRouter).route(same(record), same(failure), eq(true));
+        verify(ack).acknowledge();
+    }
+
+    @Test
+    public void testProcessMessageUnparseableIsRouted() {
+
+        String json = "{\"messageType\" : \"UpdateResponderCommand\"," +
+                "\"body\" : {" +
+                "\"responder\" : [1, 2]" +
+                "} " +
+                "}";
+        ConsumerRecord<String, String> record = record(json);
+
+        messageListener.processMessage(record, ack);
+
+        verify(retryRouter).route(same(record), any(Exception.class), eq(false));
+        verify(responderService, never()).updateResponder(any(Responder.class), anyList());
+        verify(ack).acknowledge();
+    }
+
+    private ConsumerRecord<String, String> record(String value) {
+        return new ConsumerRecord<>("topic", 1, 0, "key", value);
+    }
+
 }
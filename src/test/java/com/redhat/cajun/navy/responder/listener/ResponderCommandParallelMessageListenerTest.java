@@ -0,0 +1,251 @@
+package com.redhat.cajun.navy.responder.listener;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.service.ResponderService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.lang3.tuple.ImmutableTriple;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+
+public class ResponderCommandParallelMessageListenerTest {
+
+    @Mock
+    private ResponderService responderService;
+
+    @Mock
+    private Consumer<?, ?> consumer;
+
+    @Captor
+    private ArgumentCaptor<Responder> responderCaptor;
+
+    @Captor
+    private ArgumentCaptor<Map<TopicPartition, OffsetAndMetadata>> offsetsCaptor;
+
+    private ResponderCommandParallelMessageListener messageListener;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        messageListener = new ResponderCommandParallelMessageListener();
+        setField(messageListener, null, responderService, ResponderService.class);
+        CommandDeduplicator deduplicator = new CommandDeduplicator();
+        setField(deduplicator, null, new SimpleMeterRegistry(), MeterRegistry.class);
+        deduplicator.init();
+        setField(messageListener, null, deduplicator, CommandDeduplicator.class);
+        CommandRetryRouter retryRouter = new CommandRetryRouter();
+        retryRouter.init();
+        setField(messageListener, null, retryRouter, CommandRetryRouter.class);
+        setField(messageListener, "workers", 4);
+        // waits for all the records of a poll, unless a test sets a limit
+        setField(messageListener, "maxInFlight", 0);
+        messageListener.init();
+        when(consumer.assignment()).thenReturn(new HashSet<>(Arrays.asList(new TopicPartition("topic", 0),
+                new TopicPartition("topic", 1))));
+    }
+
+    @After
+    public void destroy() throws Exception {
+        messageListener.destroy();
+    }
+
+    @Test
+    public void testProcessMessages() {
+
+        when(responderService.updateResponder(any(Responder.class), anyList()))
+                .thenReturn(new ImmutableTriple<>(true, "ok", new Responder.Builder("1").build()));
+
+        List<ConsumerRecord<String, String>> records = Arrays.asList(
+                new ConsumerRecord<>("topic", 0, 10, "key", command("1", 30)),
+                new ConsumerRecord<>("topic", 1, 20, "key", command("2", 31)),
+                new ConsumerRecord<>("topic", 0, 11, "key", command("1", 32)),
+                new ConsumerRecord<>("topic", 0, 12, "key", "{\"messageType\":\"WrongType\"}"));
+
+        messageListener.processMessages(records, consumer);
+
+        verify(responderService, times(3)).updateResponder(responderCaptor.capture(), anyList());
+        List<Responder> responders = responderCaptor.getAllValues();
+        // commands for the same responder are processed in order
+        int first = indexOf(responders, "1", 30);
+        int second = indexOf(responders, "1", 32);
+        assertThat(first < second, equalTo(true));
+
+        verify(consumer).commitSync(offsetsCaptor.capture());
+        Map<TopicPartition, OffsetAndMetadata> offsets = offsetsCaptor.getValue();
+        assertThat(offsets.get(new TopicPartition("topic", 0)).offset(), equalTo(13L));
+        assertThat(offsets.get(new TopicPartition("topic", 1)).offset(), equalTo(21L));
+    }
+
+    @Test
+    public void testProcessMessagesSeeksBackToFailedRecord() {
+
+        when(responderService.updateResponder(any(Responder.class), anyList())).thenAnswer(invocation -> {
+            Responder responder = invocation.getArgument(0);
+            if (responder.getId().equals("2")) {
+                throw new IllegalArgumentException("failure");
+            }
+            return new ImmutableTriple<>(true, "ok", responder);
+        });
+
+        List<ConsumerRecord<String, String>> records = Arrays.asList(
+                new ConsumerRecord<>("topic", 0, 10, "key", command("1", 30)),
+                new ConsumerRecord<>("topic", 0, 11, "key", command("2", 31)),
+                new ConsumerRecord<>("topic", 0, 12, "key", command("3", 32)),
+                new ConsumerRecord<>("topic", 1, 20, "key", command("4", 33)));
+
+        // retries are disabled, so the failed record cannot be moved aside
+        messageListener.processMessages(records, consumer);
+
+        verify(consumer).commitSync(offsetsCaptor.capture());
+        Map<TopicPartition, OffsetAndMetadata> offsets = offsetsCaptor.getValue();
+        assertThat(offsets.get(new TopicPartition("topic", 0)).offset(), equalTo(11L));
+        assertThat(offsets.get(new TopicPartition("topic", 1)).offset(), equalTo(21L));
+        verify(consumer).seek(new TopicPartition("topic", 0), 11L);
+        verify(consumer, never()).seek(eq(new TopicPartition("topic", 1)), anyLong());
+
+        // the records delivered again after the seek are processed
+        reset(responderService);
+        when(responderService.updateResponder(any(Responder.class), anyList()))
+                .thenReturn(new ImmutableTriple<>(true, "ok", new Responder.Builder("2").build()));
+
+        messageListener.processMessages(records.subList(1, 3), consumer);
+
+        verify(responderService).updateResponder(argThat(r -> r != null && "2".equals(r.getId())), anyList());
+        verify(consumer, times(2)).commitSync(offsetsCaptor.capture());
+        assertThat(offsetsCaptor.getValue().get(new TopicPartition("topic", 0)).offset(), equalTo(13L));
+    }
+
+    @Test(timeout = 10000)
+    public void testProcessMessagesDoesNotWaitForSlowResponder() throws Exception {
+
+        setField(messageListener, "maxInFlight", 1000);
+        CountDownLatch latch = new CountDownLatch(1);
+        when(responderService.updateResponder(any(Responder.class), anyList())).thenAnswer(invocation -> {
+            Responder responder = invocation.getArgument(0);
+            if (responder.getId().equals("1")) {
+                latch.await();
+            }
+            return new ImmutableTriple<>(true, "ok", responder);
+        });
+
+        List<ConsumerRecord<String, String>> records = Arrays.asList(
+                new ConsumerRecord<>("topic", 0, 10, "key", command("1", 30)),
+                new ConsumerRecord<>("topic", 1, 20, "key", command("2", 31)));
+
+        messageListener.processMessages(records, consumer);
+
+        // the other partition is committed while responder 1 is still being updated
+        verify(responderService, timeout(5000)).updateResponder(argThat(r -> r != null && "2".equals(r.getId())), anyList());
+        Thread.sleep(100);
+        messageListener.commit(consumer, false);
+        verify(consumer, atLeastOnce()).commitSync(offsetsCaptor.capture());
+        assertThat(offsetsCaptor.getValue().get(new TopicPartition("topic", 0)), nullValue());
+        assertThat(offsetsCaptor.getValue().get(new TopicPartition("topic", 1)).offset(), equalTo(21L));
+
+        latch.countDown();
+        messageListener.commit(consumer, true);
+        verify(consumer, atLeastOnce()).commitSync(offsetsCaptor.capture());
+        assertThat(offsetsCaptor.getValue().get(new TopicPartition("topic", 0)).offset(), equalTo(11L));
+    }
+
+    @Test
+    public void testProcessMessagesRedeliveredWithinPoll() {
+
+        when(responderService.updateResponder(any(Responder.class), anyList()))
+                .thenReturn(new ImmutableTriple<>(true, "ok", new Responder.Builder("1").build()));
+
+        List<ConsumerRecord<String, String>> records = Arrays.asList(
+                new ConsumerRecord<>("topic", 0, 10, "key", command("1", 30)),
+                new ConsumerRecord<>("topic", 0, 11, "key", command("1", 30)));
+
+        messageListener.processMessages(records, consumer);
+
+        verify(responderService, times(1)).updateResponder(any(Responder.class), anyList());
+        verify(consumer).commitSync(offsetsCaptor.capture());
+        assertThat(offsetsCaptor.getValue().get(new TopicPartition("topic", 0)).offset(), equalTo(12L));
+    }
+
+    @Test
+    public void testProcessMessagesRoutesFailedRecord() {
+
+        CommandRetryRouter retryRouter = mock(CommandRetryRouter.class);
+        setField(messageListener, null, retryRouter, CommandRetryRouter.class);
+        when(responderService.updateResponder(any(Responder.class), anyList())).thenAnswer(invocation -> {
+            Responder responder = invocation.getArgument(0);
+            if (responder.getId().equals("2")) {
+                throw new IllegalArgumentException("failure");
+            }
+            return new ImmutableTriple<>(true, "ok", responder);
+        });
+
+        List<ConsumerRecord<String, String>> records = Arrays.asList(
+                new ConsumerRecord<>("topic", 0, 10, "key", command("1", 30)),
+                new ConsumerRecord<>("topic", 0, 11, "key", command("2", 31)),
+                new ConsumerRecord<>("topic", 0, 12, "key", command("3", 32)));
+
+        messageListener.processMessages(records, consumer);
+
+        verify(retryRouter).route(same(records.get(1)), any(IllegalArgumentException.class), eq(true));
+        verify(consumer).commitSync(offsetsCaptor.capture());
+        assertThat(offsetsCaptor.getValue().get(new TopicPartition("topic", 0)).offset(), equalTo(13L));
+    }
+
+    private int indexOf(List<Responder> responders, String id, int latitude) {
+        for (int i = 0; i < responders.size(); i++) {
+            Responder responder = responders.get(i);
+            if (responder.getId().equals(id) && responder.getLatitude().intValue() == latitude) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String command(String responderId, int latitude) {
+        return "{\"messageType\" : \"UpdateResponderCommand\"," +
+                "\"id\" : \"message-" + responderId + "-" + latitude + "\"," +
+                "\"invokingService\" : \"messageSender\"," +
+                "\"timestamp\" : 1521148332397," +
+                "\"body\" : {" +
+                "\"responder\" : {" +
+                "\"id\" : \"" + responderId + "\"," +
+                "\"latitude\" : " + latitude +
+                "} " +
+                "} " +
+                "}";
+    }
+
+}
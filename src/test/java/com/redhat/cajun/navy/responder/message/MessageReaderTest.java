@@ -0,0 +1,93 @@
+package com.redhat.cajun.navy.responder.message;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import com.redhat.cajun.navy.responder.model.Responder;
+import org.junit.Test;
+
+public class MessageReaderTest {
+
+    private MessageReader messageReader = new MessageReader(
+            Collections.singletonMap("UpdateResponderCommand", UpdateResponderCommand.class));
+
+    @Test
+    public void testReadMessage() throws Exception {
+
+        String json = "{\"messageType\" : \"UpdateResponderCommand\"," +
+                "\"id\" : \"messageId\"," +
+                "\"invokingService\" : \"messageSender\"," +
+                "\"timestamp\" : 1521148332397," +
+                "\"header\" : {" +
+                "\"incidentId\" : \"incident\"" +
+                "}," +
+                "\"body\" : {" +
+                "\"responder\" : {" +
+                "\"id\" : \"1\"," +
+                "\"available\" : false" +
+                "} " +
+                "} " +
+                "}";
+
+        Optional<Message<?>> message = messageReader.read(json);
+
+        assertThat(message.isPresent(), equalTo(true));
+        assertThat(message.get().getId(), equalTo("messageId"));
+        assertThat(message.get().getMessageType(), equalTo("UpdateResponderCommand"));
+        assertThat(message.get().getInvokingService(), equalTo("messageSender"));
+        assertThat(message.get().getTimestamp(), equalTo(1521148332397L));
+        assertThat(message.get().getHeaderValue("incidentId"), equalTo("incident"));
+        assertThat(message.get().getBody(), instanceOf(UpdateResponderCommand.class));
+        Responder responder = ((UpdateResponderCommand) message.get().getBody()).getResponder();
+        assertThat(responder.getId(), equalTo("1"));
+        assertThat(responder.isAvailable(), equalTo(false));
+        assertThat(responder.getName(), nullValue());
+    }
+
+    @Test
+    public void testReadMessageWithBodyBeforeMessageType() throws Exception {
+
+        String json = "{\"id\" : \"messageId\"," +
+                "\"body\" : {" +
+                "\"responder\" : {" +
+                "\"id\" : \"1\"," +
+                "\"available\" : false" +
+                "} " +
+                "}, " +
+                "\"messageType\" : \"UpdateResponderCommand\"" +
+                "}";
+
+        Optional<Message<?>> message = messageReader.read(json);
+
+        assertThat(message.isPresent(), equalTo(true));
+        assertThat(message.get().getHeaderValue("incidentId"), nullValue());
+        Responder responder = ((UpdateResponderCommand) message.get().getBody()).getResponder();
+        assertThat(responder.getId(), equalTo("1"));
+        assertThat(responder.isAvailable(), equalTo(false));
+    }
+
+    @Test
+    public void testReadMessageWrongMessageType() throws Exception {
+
+        // the body is not valid for an UpdateResponderCommand, but is never parsed
+        String json = "{\"messageType\":\"WrongType\"," +
+                "\"id\":\"messageId\"," +
+                "\"body\":{\"responder\" : [1, 2, 3]} " +
+                "}";
+
+        assertThat(messageReader.read(json).isPresent(), equalTo(false));
+    }
+
+    @Test
+    public void testReadMessageWithoutMessageType() throws Exception {
+
+        assertThat(messageReader.read("{\"field1\":\"value1\",\"field2\":\"value2\"}").isPresent(), equalTo(false));
+        assertThat(messageReader.read("not json").isPresent(), equalTo(false));
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.redhat.cajun.navy.responder.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.cajun.navy.responder.dao.ResponderDao;
+import com.redhat.cajun.navy.responder.entity.ResponderEntity;
+import com.redhat.cajun.navy.responder.model.Responder;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.transaction.PlatformTransactionManager;
+
+public class AvailableRespondersCacheTest {
+
+    @Mock
+    private ResponderService responderService;
+
+    @Mock
+    private ResponderRegistry registry;
+
+    private AvailableRespondersCache cache;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        cache = new AvailableRespondersCache();
+        setField(cache, null, responderService, ResponderService.class);
+        setField(cache, null, registry, ResponderRegistry.class);
+        when(registry.isLoaded()).thenReturn(true);
+        when(responderService.availableResponders())
+                .thenReturn(Collections.singletonList(new Responder.Builder("1").name("John Doe").available(true).build()));
+    }
+
+    @Test
+    public void testCachedUntilAvailableRespondersChange() throws Exception {
+
+        when(registry.availableVersion()).thenReturn(1L);
+
+        AvailableRespondersCache.Payload payload = cache.get();
+        assertThat(cache.get(), sameInstance(payload));
+        verify(responderService, times(1)).availableResponders();
+        assertThat(new ObjectMapper().readTree(payload.getJson()).get(0).get("name").asText(), equalTo("John Doe"));
+
+        when(registry.availableVersion()).thenReturn(2L);
+        when(responderService.availableResponders()).thenReturn(Collections.emptyList());
+
+        AvailableRespondersCache.Payload updated = cache.get();
+        assertThat(updated, not(sameInstance(payload)));
+        assertThat(new String(updated.getJson()), equalTo("[]"));
+        assertThat(updated.getEtag(), not(equalTo(payload.getEtag())));
+    }
+
+    @Test
+    public void testNotCachedWhenRegistryNotLoaded() {
+
+        when(registry.isLoaded()).thenReturn(false);
+
+        AvailableRespondersCache.Payload payload = cache.get();
+        assertThat(cache.get().getEtag(), equalTo(payload.getEtag()));
+        verify(responderService, times(2)).availableResponders();
+    }
+
+    @Test
+    public void testCachedWithRegistryEnabled() throws Exception {
+
+        ResponderDao responderDao = mock(ResponderDao.class);
+        when(responderDao.allResponders()).thenReturn(Arrays.asList(
+                new ResponderEntity.Builder(1L, 0L).name("John Doe").available(true).enrolled(true).build(),
+                new ResponderEntity.Builder(2L, 0L).name("John Foo").available(false).enrolled(true).build()));
+        ResponderRegistry enabled = new ResponderRegistry();
+        setField(enabled, null, responderDao, ResponderDao.class);
+        setField(enabled, null, mock(PlatformTransactionManager.class), PlatformTransactionManager.class);
+        setField(enabled, "enabled", true);
+        enabled.init();
+        setField(cache, null, enabled, ResponderRegistry.class);
+        when(responderService.availableResponders()).thenAnswer(invocation -> enabled.available());
+
+        AvailableRespondersCache.Payload payload = cache.get();
+        assertThat(cache.get(), sameInstance(payload));
+        assertThat(new ObjectMapper().readTree(payload.getJson()).size(), equalTo(1));
+
+        Responder available = enabled.get(2L);
+        enabled.onResponderChanged(new ResponderChangedEvent(available, new Responder.Builder(available).available(true).build(), 1));
+
+        AvailableRespondersCache.Payload updated = cache.get();
+        assertThat(updated, not(sameInstance(payload)));
+        assertThat(new ObjectMapper().readTree(updated.getJson()).size(), equalTo(2));
+        verify(responderService, times(2)).availableResponders();
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+
+        List<Responder> responders = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            responders.add(new Responder.Builder(Integer.toString(i)).name("John Doe " + i).available(true).build());
+        }
+        when(responderService.availableResponders()).thenReturn(responders);
+
+        AvailableRespondersCache.Payload payload = cache.get();
+
+        assertThat(payload.getGzip(), notNullValue());
+        byte[] json = new byte[payload.getJson().length];
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(payload.getGzip()))) {
+            int read = 0;
+            while (read < json.length) {
+                read += in.read(json, read, json.length - read);
+            }
+        }
+        assertThat(new ObjectMapper().readTree(json).size(), equalTo(100));
+        assertThat(payload.getGzip().length < payload.getJson().length, equalTo(true));
+    }
+
+    @Test
+    public void testNoGzipForSmallPayloads() {
+
+        assertThat(cache.get().getGzip(), nullValue());
+    }
+
+    @Test
+    public void testMatches() {
+
+        AvailableRespondersCache.Payload payload = cache.get();
+
+        assertThat(payload.matches(null), equalTo(false));
+        assertThat(payload.matches("\"other\""), equalTo(false));
+        assertThat(payload.matches("\"other\", " + payload.getEtag()), equalTo(true));
+        assertThat(payload.matches("W/" + payload.getGzipEtag()), equalTo(true));
+        assertThat(payload.matches("*"), equalTo(true));
+    }
+}
@@ -0,0 +1,134 @@
+package com.redhat.cajun.navy.responder.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.redhat.cajun.navy.responder.model.Responder;
+import org.junit.Test;
+
+public class FleetTableTest {
+
+    @Test
+    public void testPutAndGet() {
+
+        FleetTable fleet = new FleetTable();
+        Responder responder = new Responder.Builder("1").name("John Doe").phoneNumber("111-222-333")
+                .latitude(new BigDecimal("30.12345")).longitude(new BigDecimal("-77.98765")).boatCapacity(3)
+                .available(true).enrolled(false).person(true).medicalKit(false).build();
+        Responder empty = new Responder.Builder("2").build();
+        Responder large = new Responder.Builder("3").latitude(new BigDecimal("30.123456789012345678"))
+                .longitude(new BigDecimal("1E+3")).boatCapacity(0).build();
+
+        assertThat(fleet.put(responder, 0), nullValue());
+        assertThat(fleet.put(empty, 0), nullValue());
+        assertThat(fleet.put(large, 0), nullValue());
+
+        assertThat(fleet.size(), equalTo(3));
+        assertFields(fleet.get(1L), responder);
+        assertFields(fleet.get(2L), empty);
+        assertFields(fleet.get(3L), large);
+        assertThat(fleet.get(4L), nullValue());
+    }
+
+    @Test
+    public void testReplace() {
+
+        FleetTable fleet = new FleetTable();
+        Responder responder = new Responder.Builder("1").name("John Doe").latitude(new BigDecimal("1E+40"))
+                .available(true).enrolled(true).build();
+        Responder replacement = new Responder.Builder("1").name("John Doe Jr").latitude(new BigDecimal("30.5"))
+                .available(false).build();
+        fleet.put(responder, 0);
+
+        assertFields(fleet.put(replacement, 1), responder);
+
+        assertThat(fleet.size(), equalTo(1));
+        assertThat(fleet.version(1L), equalTo(1L));
+        assertThat(fleet.version(2L), equalTo(-1L));
+        assertFields(fleet.get(1L), replacement);
+        assertThat(fleet.available().size(), equalTo(0));
+    }
+
+    @Test
+    public void testRemove() {
+
+        FleetTable fleet = new FleetTable();
+        fleet.put(new Responder.Builder("1").name("John Doe").available(true).enrolled(true).build(), 0);
+        fleet.put(new Responder.Builder("2").name("John Foo").available(true).enrolled(true).build(), 0);
+
+        assertThat(fleet.remove(1L).getName(), equalTo("John Doe"));
+        assertThat(fleet.remove(1L), nullValue());
+        fleet.put(new Responder.Builder("3").name("John Bar").build(), 0);
+
+        assertThat(fleet.size(), equalTo(2));
+        assertThat(fleet.get(1L), nullValue());
+        assertThat(fleet.get(2L).getName(), equalTo("John Foo"));
+        assertThat(fleet.get(3L).getName(), equalTo("John Bar"));
+        assertThat(fleet.get(3L).isAvailable(), nullValue());
+        assertThat(fleet.available().size(), equalTo(1));
+    }
+
+    @Test
+    public void testAvailableAndCounts() {
+
+        FleetTable fleet = new FleetTable();
+        fleet.put(new Responder.Builder("1").available(true).enrolled(true).build(), 0);
+        fleet.put(new Responder.Builder("2").available(false).enrolled(true).build(), 0);
+        fleet.put(new Responder.Builder("3").available(true).enrolled(false).build(), 0);
+        fleet.put(new Responder.Builder("4").enrolled(true).build(), 0);
+        fleet.put(new Responder.Builder("5").available(true).build(), 0);
+
+        assertThat(fleet.available().size(), equalTo(1));
+        assertThat(fleet.available().get(0).getId(), equalTo("1"));
+        assertThat(fleet.enrolledCount(), equalTo(3L));
+        assertThat(fleet.activeCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testMatchesMap() {
+
+        Random random = new Random(42);
+        FleetTable fleet = new FleetTable();
+        Map<Long, Responder> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            long id = random.nextInt(5000);
+            if (random.nextInt(4) == 0) {
+                Responder removed = fleet.remove(id);
+                assertThat(removed, equalTo(expected.remove(id)));
+            } else {
+                Responder responder = new Responder.Builder(Long.toString(id)).name("Responder " + i)
+                        .latitude(BigDecimal.valueOf(random.nextInt(3000000), 5))
+                        .available(random.nextBoolean()).enrolled(random.nextBoolean()).build();
+                fleet.put(responder, i);
+                expected.put(id, responder);
+            }
+        }
+
+        assertThat(fleet.size(), equalTo(expected.size()));
+        assertThat(fleet.rows().size(), equalTo(expected.size()));
+        for (long id = 0; id < 5000; id++) {
+            assertThat(fleet.get(id), equalTo(expected.get(id)));
+        }
+        assertThat(fleet.available().size(), equalTo((int) expected.values().stream()
+                .filter(ResponderRegistry::isAvailable).count()));
+
+        fleet.clear();
+        assertThat(fleet.size(), equalTo(0));
+        assertThat(fleet.get(expected.keySet().iterator().next()), nullValue());
+    }
+
+    private void assertFields(Responder actual, Responder expected) {
+        assertThat(actual, equalTo(expected));
+        assertThat(actual.isEnrolled(), equalTo(expected.isEnrolled()));
+        assertThat(actual.isPerson(), equalTo(expected.isPerson()));
+        assertThat(actual.getLatitude() == null ? null : actual.getLatitude().scale(),
+                equalTo(expected.getLatitude() == null ? null : expected.getLatitude().scale()));
+    }
+
+}
@@ -0,0 +1,191 @@
+package com.redhat.cajun.navy.responder.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.model.ResponderStats;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+public class ResponderEventStreamTest {
+
+    @Mock
+    private ResponderRegistry registry;
+
+    @Mock
+    private ResponderStatsCounters statsCounters;
+
+    private ResponderEventStream stream;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        stream = new ResponderEventStream();
+        setField(stream, null, registry, ResponderRegistry.class);
+        setField(stream, null, statsCounters, ResponderStatsCounters.class);
+        setField(stream, "bufferSize", 2);
+    }
+
+    @Test
+    public void testChangesAreConflated() throws Exception {
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        stream.subscribe(emitter, new ResponderEventStream.Filter(false, null, null, null, null));
+
+        stream.onResponderChanged(new ResponderChangedEvent(null, responder("1", "John Doe", true), 0));
+        stream.onResponderChanged(new ResponderChangedEvent(null, responder("2", "John Foo", true), 0));
+        stream.onResponderChanged(new ResponderChangedEvent(responder("1", "John Doe", true), responder("1", "John Doe II", false), 1));
+        flush();
+
+        assertThat(emitter.events, equalTo(Arrays.asList("responder:John Doe II", "responder:John Foo")));
+    }
+
+    @Test
+    public void testOlderChangesAreIgnored() throws Exception {
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        stream.subscribe(emitter, new ResponderEventStream.Filter(false, null, null, null, null));
+
+        stream.onResponderChanged(new ResponderChangedEvent(responder("1", "John Doe II", true), responder("1", "John Doe III", true), 2));
+        flush();
+        stream.onResponderChanged(new ResponderChangedEvent(responder("1", "John Doe", true), responder("1", "John Doe II", true), 1));
+        flush();
+
+        assertThat(emitter.events, equalTo(Arrays.asList("responder:John Doe III")));
+    }
+
+    @Test
+    public void testFilters() throws Exception {
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        stream.subscribe(emitter, new ResponderEventStream.Filter(true, 30.0, 31.0, -71.0, -70.0));
+
+        stream.onResponderChanged(new ResponderChangedEvent(null, responder("1", "John Doe", true), 0));
+        stream.onResponderChanged(new ResponderChangedEvent(null, new Responder.Builder("2").name("John Foo")
+                .available(true).enrolled(true).latitude(new BigDecimal("35.0")).longitude(new BigDecimal("-70.5")).build(), 0));
+        flush();
+        stream.onResponderChanged(new ResponderChangedEvent(responder("1", "John Doe", true), responder("1", "John Doe", false), 1));
+        flush();
+
+        assertThat(emitter.events, equalTo(Arrays.asList("responder:John Doe", "removed:1")));
+    }
+
+    @Test
+    public void testResyncWhenBufferIsFull() throws Exception {
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        stream.subscribe(emitter, new ResponderEventStream.Filter(false, null, null, null, null));
+
+        stream.onResponderChanged(new ResponderChangedEvent(null, responder("1", "John Doe", true), 0));
+        stream.onResponderChanged(new ResponderChangedEvent(null, responder("2", "John Foo", true), 0));
+        stream.onResponderChanged(new ResponderChangedEvent(null, responder("3", "John Bar", true), 0));
+        stream.onResponderChanged(new ResponderChangedEvent(null, responder("4", "John Baz", true), 0));
+        flush();
+
+        assertThat(emitter.events, equalTo(Arrays.asList("resync:overflow")));
+    }
+
+    @Test
+    public void testStatsAreSentWhenChanged() throws Exception {
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        stream.subscribe(emitter, new ResponderEventStream.Filter(false, null, null, null, null));
+        ResponderStats stats = new ResponderStats();
+        stats.setTotal(5);
+        when(statsCounters.isInitialized()).thenReturn(true);
+        when(statsCounters.stats()).thenReturn(stats);
+
+        flush();
+        flush();
+        stream.onRespondersReset(new RespondersResetEvent(true, 1));
+        flush();
+
+        assertThat(emitter.events, equalTo(Arrays.asList("stats:" + stats, "resync:clear")));
+    }
+
+    @Test
+    public void testStatsFromRegistry() throws Exception {
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        stream.subscribe(emitter, new ResponderEventStream.Filter(false, null, null, null, null));
+        ResponderStats stats = new ResponderStats();
+        stats.setTotal(7);
+        when(registry.isLoaded()).thenReturn(true);
+        when(registry.stats()).thenReturn(stats);
+        when(statsCounters.isInitialized()).thenReturn(true);
+        when(statsCounters.stats()).thenReturn(new ResponderStats());
+
+        flush();
+
+        assertThat(emitter.events, equalTo(Arrays.asList("stats:" + stats)));
+    }
+
+    @Test
+    public void testDisconnectedClientIsRemoved() throws Exception {
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        emitter.fail = true;
+        stream.subscribe(emitter, new ResponderEventStream.Filter(false, null, null, null, null));
+        stream.onResponderChanged(new ResponderChangedEvent(null, responder("1", "John Doe", true), 0));
+
+        flush();
+
+        assertThat(stream.subscriberCount(), equalTo(0));
+    }
+
+    private void flush() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        setField(stream, null, executor, ExecutorService.class);
+        stream.flush();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private Responder responder(String id, String name, boolean available) {
+        return new Responder.Builder(id)
+                .name(name)
+                .latitude(new BigDecimal("30.12345"))
+                .longitude(new BigDecimal("-70.98765"))
+                .available(available)
+                .enrolled(true)
+                .build();
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final List<String> events = new ArrayList<>();
+
+        private boolean fail;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (fail) {
+                throw new IOException("Broken pipe");
+            }
+            // the event name line comes first, then the data
+            List<Object> parts = builder.build().stream().map(ResponseBodyEmitter.DataWithMediaType::getData)
+                    .collect(Collectors.toList());
+            String prefix = (String) parts.get(0);
+            String name = prefix.substring("event:".length(), prefix.indexOf('\n'));
+            Object data = parts.get(1);
+            events.add(name + ":" + (data instanceof Responder ? ((Responder) data).getName() : data));
+        }
+    }
+}
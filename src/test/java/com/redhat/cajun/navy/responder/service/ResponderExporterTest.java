@@ -0,0 +1,79 @@
+package com.redhat.cajun.navy.responder.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.cajun.navy.responder.model.Responder;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+public class ResponderExporterTest {
+
+    @Mock
+    private ResponderService responderService;
+
+    private ResponderExporter exporter;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        exporter = new ResponderExporter();
+        setField(exporter, null, responderService, ResponderService.class);
+        setField(exporter, null, new ObjectMapper(), ObjectMapper.class);
+
+        doAnswer(invocation -> {
+            Consumer<Responder> action = invocation.getArgument(3);
+            action.accept(new Responder.Builder("1").name("Doe, John").phoneNumber("111-222-333")
+                    .latitude(new BigDecimal("30.12345")).longitude(new BigDecimal("-70.98765"))
+                    .boatCapacity(3).medicalKit(true).available(true).person(false).enrolled(true).build());
+            action.accept(new Responder.Builder("2").name("John \"Foo\"").build());
+            return null;
+        }).when(responderService).exportResponders(eq(true), isNull(), isNull(), any());
+    }
+
+    @Test
+    public void testExportCsv() throws Exception {
+
+        StringWriter writer = new StringWriter();
+        long count = exporter.exportResponders(writer, ResponderFileFormat.CSV, true, null, null);
+
+        assertThat(count, equalTo(2L));
+        assertThat(writer.toString(), equalTo(ResponderExporter.CSV_HEADER + "\n"
+                + "1,\"Doe, John\",111-222-333,30.12345,-70.98765,3,true,true,false,true\n"
+                + "2,\"John \"\"Foo\"\"\",,,,,,,,\n"));
+    }
+
+    @Test
+    public void testExportNdjson() throws Exception {
+
+        StringWriter writer = new StringWriter();
+        long count = exporter.exportResponders(writer, ResponderFileFormat.NDJSON, true, null, null);
+
+        assertThat(count, equalTo(2L));
+        String[] lines = writer.toString().split("\n");
+        assertThat(lines.length, equalTo(2));
+        Responder responder = new ObjectMapper().readValue(lines[0], Responder.class);
+        assertThat(responder.getName(), equalTo("Doe, John"));
+        assertThat(responder.getLatitude(), equalTo(new BigDecimal("30.12345")));
+    }
+
+    @Test
+    public void testCsvValue() {
+
+        assertThat(ResponderExporter.csvValue("John Doe"), equalTo("John Doe"));
+        assertThat(ResponderExporter.csvValue(" John"), equalTo("\" John\""));
+        assertThat(ResponderExporter.csvValue("a\nb"), equalTo("\"a\nb\""));
+    }
+}
@@ -0,0 +1,214 @@
+package com.redhat.cajun.navy.responder.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.cajun.navy.responder.model.ImportResult;
+import com.redhat.cajun.navy.responder.model.Responder;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+
+public class ResponderImporterTest {
+
+    @Mock
+    private ResponderService responderService;
+
+    @Captor
+    private ArgumentCaptor<List<Responder>> responderListCaptor;
+
+    private ResponderImporter importer;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        importer = new ResponderImporter();
+        setField(importer, null, responderService, ResponderService.class);
+        setField(importer, null, new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES), ObjectMapper.class);
+        setField(importer, "chunkSize", 2);
+        setField(importer, "maxErrors", 10);
+    }
+
+    @Test
+    public void testImportNdjson() throws Exception {
+
+        String input = "{\"id\":\"5\",\"name\":\"John Doe\",\"latitude\":30.12345,\"boatCapacity\":3}\n"
+                + "\n"
+                + "{\"name\":\"John Foo\",\"boatCapacity\":\"many\"}\n"
+                + "{\"name\":\"John Bar\",\"boatCapacity\":2}\n"
+                + "{\"name\":\"John Baz\",\"boatCapacity\":1}\n";
+
+        ImportResult result = importer.importResponders(new StringReader(input), ResponderFileFormat.NDJSON);
+
+        assertThat(result.getRead(), equalTo(4L));
+        assertThat(result.getImported(), equalTo(3L));
+        assertThat(result.getFailed(), equalTo(1L));
+        assertThat(result.getErrors().size(), equalTo(1));
+        assertThat(result.getErrors().get(0).getLine(), equalTo(3L));
+        verify(responderService, times(2)).createResponders(responderListCaptor.capture());
+        List<Responder> first = responderListCaptor.getAllValues().get(0);
+        assertThat(first.size(), equalTo(2));
+        assertThat(first.get(0).getName(), equalTo("John Doe"));
+        assertThat(first.get(0).getId(), equalTo(null));
+        assertThat(first.get(0).getLatitude(), equalTo(new BigDecimal("30.12345")));
+        assertThat(first.get(1).getName(), equalTo("John Bar"));
+        assertThat(responderListCaptor.getAllValues().get(1).get(0).getName(), equalTo("John Baz"));
+    }
+
+    @Test
+    public void testImportCsv() throws Exception {
+
+        String input = "name,phoneNumber,latitude,longitude,boatCapacity\n"
+                + "\"Doe, John\",111-222-333,30.12345,-70.98765,3\n"
+                + "John Foo,222-333-444,31.12345\n"
+                + "\"John \"\"Bar\"\"\",,,,2\n";
+
+        ImportResult result = importer.importResponders(new StringReader(input), ResponderFileFormat.CSV);
+
+        assertThat(result.getRead(), equalTo(3L));
+        assertThat(result.getImported(), equalTo(2L));
+        assertThat(result.getFailed(), equalTo(1L));
+        assertThat(result.getErrors().get(0).getLine(), equalTo(3L));
+        verify(responderService).createResponders(responderListCaptor.capture());
+        List<Responder> responders = responderListCaptor.getValue();
+        assertThat(responders.get(0).getName(), equalTo("Doe, John"));
+        assertThat(responders.get(0).getLongitude(), equalTo(new BigDecimal("-70.98765")));
+        assertThat(responders.get(0).getBoatCapacity(), equalTo(3));
+        assertThat(responders.get(1).getName(), equalTo("John \"Bar\""));
+        assertThat(responders.get(1).getPhoneNumber(), equalTo(null));
+    }
+
+    @Test
+    public void testImportCsvWithLineBreaksInQuotedValues() throws Exception {
+
+        String input = "name,phoneNumber,boatCapacity\n"
+                + "\"John\nDoe\",111-222-333,3\n"
+                + "\"John \"\"Foo\n\n\"\"\",,2\n"
+                + "John Bar,222-333-444,x\n"
+                + "\"John Baz,333-444-555,1\n"
+                + "John Qux,444-555-666,1\n";
+
+        ImportResult result = importer.importResponders(new StringReader(input), ResponderFileFormat.CSV);
+
+        assertThat(result.getRead(), equalTo(4L));
+        assertThat(result.getImported(), equalTo(2L));
+        assertThat(result.getFailed(), equalTo(2L));
+        assertThat(result.getErrors().get(0).getLine(), equalTo(7L));
+        // the quote is never closed, so the rest of the input is one record
+        assertThat(result.getErrors().get(1).getLine(), equalTo(8L));
+        verify(responderService).createResponders(responderListCaptor.capture());
+        List<Responder> responders = responderListCaptor.getValue();
+        assertThat(responders.get(0).getName(), equalTo("John\nDoe"));
+        assertThat(responders.get(0).getBoatCapacity(), equalTo(3));
+        assertThat(responders.get(1).getName(), equalTo("John \"Foo\n\n\""));
+    }
+
+    @Test
+    public void testImportCsvExportedResponders() throws Exception {
+
+        List<Responder> exported = Arrays.asList(
+                new Responder.Builder("1").name("Doe, John").phoneNumber("111-222-333")
+                        .latitude(new BigDecimal("30.12345")).longitude(new BigDecimal("-70.98765"))
+                        .boatCapacity(3).medicalKit(true).available(true).person(false).enrolled(true).build(),
+                new Responder.Builder("2").name(" \"John\"\nFoo, Jr ").phoneNumber("\n").build(),
+                new Responder.Builder("3").name("John Bar").boatCapacity(0).build());
+        doAnswer(invocation -> {
+            Consumer<Responder> action = invocation.getArgument(3);
+            exported.forEach(action);
+            return null;
+        }).when(responderService).exportResponders(any(), any(), any(), any());
+        ResponderExporter exporter = new ResponderExporter();
+        setField(exporter, null, responderService, ResponderService.class);
+        setField(exporter, null, new ObjectMapper(), ObjectMapper.class);
+        StringWriter writer = new StringWriter();
+        exporter.exportResponders(writer, ResponderFileFormat.CSV, null, null, null);
+        setField(importer, "chunkSize", 10);
+
+        ImportResult result = importer.importResponders(new StringReader(writer.toString()), ResponderFileFormat.CSV);
+
+        assertThat(result.getImported(), equalTo(3L));
+        assertThat(result.getFailed(), equalTo(0L));
+        verify(responderService).createResponders(responderListCaptor.capture());
+        List<Responder> imported = responderListCaptor.getValue();
+        for (int i = 0; i < exported.size(); i++) {
+            Responder expected = exported.get(i);
+            Responder actual = imported.get(i);
+            assertThat(actual.getId(), equalTo(null));
+            assertThat(actual.getName(), equalTo(expected.getName()));
+            assertThat(actual.getPhoneNumber(), equalTo(expected.getPhoneNumber()));
+            assertThat(actual.getLatitude(), equalTo(expected.getLatitude()));
+            assertThat(actual.getLongitude(), equalTo(expected.getLongitude()));
+            assertThat(actual.getBoatCapacity(), equalTo(expected.getBoatCapacity()));
+            assertThat(actual.isMedicalKit(), equalTo(expected.isMedicalKit()));
+            assertThat(actual.isAvailable(), equalTo(expected.isAvailable()));
+            assertThat(actual.isPerson(), equalTo(expected.isPerson()));
+            assertThat(actual.isEnrolled(), equalTo(expected.isEnrolled()));
+        }
+    }
+
+    @Test
+    public void testImportReportsProgress() throws Exception {
+
+        String input = "{\"name\":\"John Doe\"}\n{\"name\":\"John Foo\"}\n{\"name\":\"John Bar\"}\nnot json\n";
+        List<String> progress = new ArrayList<>();
+
+        ImportResult result = importer.importResponders(new StringReader(input), ResponderFileFormat.NDJSON,
+                r -> progress.add(r.getRead() + "/" + r.getImported() + "/" + r.getFailed()));
+
+        assertThat(progress, equalTo(Arrays.asList("2/2/0", "4/3/1")));
+        assertThat(result.getImported(), equalTo(3L));
+    }
+
+    @Test
+    public void testImportWhenChunkFails() throws Exception {
+
+        doThrow(new IllegalStateException("boom")).doNothing().when(responderService).createResponders(any());
+        String input = "{\"name\":\"John Doe\"}\n{\"name\":\"John Foo\"}\n{\"name\":\"John Bar\"}\n";
+
+        ImportResult result = importer.importResponders(new StringReader(input), ResponderFileFormat.NDJSON);
+
+        assertThat(result.getImported(), equalTo(1L));
+        assertThat(result.getFailed(), equalTo(2L));
+        assertThat(result.getErrors().get(0).getLine(), equalTo(1L));
+        assertThat(result.getErrors().get(1).getLine(), equalTo(2L));
+    }
+
+    @Test
+    public void testParseCsvLine() {
+
+        assertThat(ResponderImporter.parseCsvLine("a, \"b,c\" ,,\"d\"\"e\""), equalTo(Arrays.asList("a", "b,c", "", "d\"e")));
+    }
+
+    @Test
+    public void testParseCsvLineKeepsQuotedWhitespace() {
+
+        assertThat(ResponderImporter.parseCsvLine(" \" John \" , Doe ,\"\""), equalTo(Arrays.asList(" John ", "Doe", "")));
+        assertThat(ResponderImporter.parseCsvLine(ResponderExporter.csvValue(" John") + "," + ResponderExporter.csvValue("Doe ")),
+                equalTo(Arrays.asList(" John", "Doe ")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseCsvLineUnterminatedQuote() {
+
+        ResponderImporter.parseCsvLine("a,\"b");
+    }
+}
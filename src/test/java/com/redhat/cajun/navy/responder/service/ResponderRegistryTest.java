@@ -0,0 +1,378 @@
+package com.redhat.cajun.navy.responder.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.persistence.NonUniqueResultException;
+
+import com.redhat.cajun.navy.responder.dao.ChangeSequence;
+import com.redhat.cajun.navy.responder.dao.ResponderDao;
+import com.redhat.cajun.navy.responder.entity.ResponderEntity;
+import com.redhat.cajun.navy.responder.entity.ResponderTombstoneEntity;
+import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.model.ResponderStats;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.springframework.transaction.PlatformTransactionManager;
+
+public class ResponderRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private ResponderDao responderDao;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ChangeSequence changeSequence;
+
+    private ResponderRegistry registry;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        registry = new ResponderRegistry();
+        setField(registry, null, responderDao, ResponderDao.class);
+        setField(registry, null, transactionManager, PlatformTransactionManager.class);
+        registry.load(Arrays.asList(
+                new VersionedResponder(responder("1", "John Doe", true, true, true), 0),
+                new VersionedResponder(responder("2", "John Foo", false, true, true), 0),
+                new VersionedResponder(responder("3", "John Bar", true, false, false), 0),
+                new VersionedResponder(responder("4", "John Baz", true, true, false), 0)));
+    }
+
+    @Test
+    public void testGet() {
+
+        assertThat(registry.isLoaded(), equalTo(true));
+        Responder responder = registry.get(1L);
+        assertThat(responder, notNullValue());
+        assertThat(responder.getName(), equalTo("John Doe"));
+        assertThat(registry.get(5L), nullValue());
+    }
+
+    @Test
+    public void testGetByName() {
+
+        assertThat(registry.getByName("John Foo").getId(), equalTo("2"));
+        assertThat(registry.getByName("Unknown"), nullValue());
+    }
+
+    @Test(expected = NonUniqueResultException.class)
+    public void testGetByNameWhenNotUnique() {
+
+        registry.onResponderChanged(new ResponderChangedEvent(null, responder("5", "John Doe", true, true, true), 0));
+
+        registry.getByName("John Doe");
+    }
+
+    @Test
+    public void testAvailable() {
+
+        List<Responder> available = registry.available();
+        assertThat(available.size(), equalTo(2));
+        assertThat(available.stream().allMatch(r -> r.getId().equals("1") || r.getId().equals("4")), equalTo(true));
+    }
+
+    @Test
+    public void testStats() {
+
+        ResponderStats stats = registry.stats();
+        assertThat(stats.getTotal(), equalTo(3));
+        assertThat(stats.getActive(), equalTo(1));
+
+        Responder previous = registry.get(1L);
+        registry.onResponderChanged(new ResponderChangedEvent(previous, new Responder.Builder(previous).available(false).build(), 1));
+
+        assertThat(registry.stats().getActive(), equalTo(2));
+    }
+
+    @Test
+    public void testOnResponderChanged() {
+
+        Responder previous = registry.get(1L);
+        Responder current = new Responder.Builder(previous).name("John Doe Jr").available(false).build();
+
+        registry.onResponderChanged(new ResponderChangedEvent(previous, current, 1));
+
+        assertThat(registry.get(1L).isAvailable(), equalTo(false));
+        assertThat(registry.getByName("John Doe Jr").getId(), equalTo("1"));
+        assertThat(registry.getByName("John Doe"), nullValue());
+        assertThat(registry.available().size(), equalTo(1));
+    }
+
+    @Test
+    public void testOnResponderChangedOutOfOrder() {
+
+        Responder previous = registry.get(1L);
+        Responder older = new Responder.Builder(previous).name("John Doe Jr").build();
+        Responder newer = new Responder.Builder(previous).name("John Doe III").available(false).build();
+
+        registry.onResponderChanged(new ResponderChangedEvent(older, newer, 2));
+        registry.onResponderChanged(new ResponderChangedEvent(previous, older, 1));
+
+        assertThat(registry.get(1L).getName(), equalTo("John Doe III"));
+        assertThat(registry.getByName("John Doe Jr"), nullValue());
+        assertThat(registry.available().size(), equalTo(1));
+    }
+
+    @Test
+    public void testOnRespondersResetThenOlderChange() {
+
+        Responder previous = registry.get(1L);
+        resetRows(5L, new ResponderEntity.Builder(1L, 3L).name("John Doe").available(true).enrolled(false).person(true).build());
+        registry.onRespondersReset(new RespondersResetEvent(false, 5L));
+
+        // committed before the reset, delivered after it
+        registry.onResponderChanged(new ResponderChangedEvent(previous, new Responder.Builder(previous).enrolled(true).build(), 2));
+
+        assertThat(registry.get(1L).isEnrolled(), equalTo(false));
+    }
+
+    @Test
+    public void testOnRespondersResetTakesVersionsFromDatabase() {
+
+        // a change the registry has not seen yet was committed before the reset
+        resetRows(5L, new ResponderEntity.Builder(1L, 3L).name("John Doe").available(true).enrolled(false).person(true).build());
+        registry.onRespondersReset(new RespondersResetEvent(false, 5L));
+
+        Responder reset = registry.get(1L);
+        registry.onResponderChanged(new ResponderChangedEvent(reset, new Responder.Builder(reset).enrolled(true).build(), 3));
+        assertThat(registry.get(1L).isEnrolled(), equalTo(false));
+        registry.onResponderChanged(new ResponderChangedEvent(reset, new Responder.Builder(reset).enrolled(true).build(), 4));
+        assertThat(registry.get(1L).isEnrolled(), equalTo(true));
+    }
+
+    @Test
+    public void testOnRespondersResetWhenRowsCannotBeRead() {
+
+        when(responderDao.changedResponders(4L, 5L, Integer.MAX_VALUE)).thenThrow(new IllegalStateException("database down"));
+
+        registry.onRespondersReset(new RespondersResetEvent(false, 5L));
+
+        assertThat(registry.isLoaded(), equalTo(false));
+    }
+
+    @Test
+    public void testAvailableVersion() {
+
+        long version = registry.availableVersion();
+
+        Responder notAvailable = registry.get(2L);
+        registry.onResponderChanged(new ResponderChangedEvent(notAvailable, new Responder.Builder(notAvailable).name("John Foo Jr").build(), 1));
+        assertThat(registry.availableVersion(), equalTo(version));
+
+        Responder available = registry.get(4L);
+        registry.onResponderChanged(new ResponderChangedEvent(available, new Responder.Builder(available)
+                .latitude(new BigDecimal("31.12345")).build(), 1));
+        assertThat(registry.availableVersion() > version, equalTo(true));
+
+        version = registry.availableVersion();
+        registry.onResponderChanged(new ResponderChangedEvent(notAvailable, new Responder.Builder(notAvailable).available(true).build(), 2));
+        assertThat(registry.availableVersion() > version, equalTo(true));
+    }
+
+    @Test
+    public void testOnRespondersReset() {
+
+        resetRows(5L,
+                new ResponderEntity.Builder(1L, 1L).name("John Doe").available(true).enrolled(false).person(true).build(),
+                new ResponderEntity.Builder(2L, 1L).name("John Foo").available(true).enrolled(false).person(true)
+                        .currentPositionLatitude(new BigDecimal("30.12345")).build(),
+                new ResponderEntity.Builder(3L, 1L).name("John Bar").available(true).enrolled(false).person(false)
+                        .currentPositionLatitude(new BigDecimal("30.12345")).build(),
+                new ResponderEntity.Builder(4L, 1L).name("John Baz").available(true).enrolled(false).person(false).build());
+
+        registry.onRespondersReset(new RespondersResetEvent(false, 5L));
+
+        assertThat(registry.get(1L).isEnrolled(), equalTo(false));
+        assertThat(registry.get(1L).isAvailable(), equalTo(true));
+        assertThat(registry.get(1L).getLatitude(), nullValue());
+        assertThat(registry.get(2L).isAvailable(), equalTo(true));
+        assertThat(registry.get(3L).getLatitude(), equalTo(new BigDecimal("30.12345")));
+        assertThat(registry.available().size(), equalTo(0));
+    }
+
+    @Test
+    public void testOnRespondersClear() {
+
+        resetRows(5L,
+                new ResponderEntity.Builder(1L, 1L).name("John Doe").available(true).enrolled(false).person(true).build(),
+                new ResponderEntity.Builder(2L, 1L).name("John Foo").available(true).enrolled(false).person(true).build());
+        when(responderDao.tombstones(4L, 5L)).thenReturn(Arrays.asList(new ResponderTombstoneEntity.Builder(3L, 5L).build(),
+                new ResponderTombstoneEntity.Builder(4L, 5L).build()));
+
+        registry.onRespondersReset(new RespondersResetEvent(true, 5L));
+
+        assertThat(registry.get(1L), notNullValue());
+        assertThat(registry.get(2L), notNullValue());
+        assertThat(registry.get(3L), nullValue());
+        assertThat(registry.get(4L), nullValue());
+        assertThat(registry.getByName("John Bar"), nullValue());
+        assertThat(registry.get(1L).isEnrolled(), equalTo(false));
+    }
+
+    @Test
+    public void testNearest() {
+
+        registry.onResponderChanged(new ResponderChangedEvent(null, new Responder.Builder(registry.get(4L))
+                .latitude(new BigDecimal("30.22345")).build(), 1));
+        registry.onResponderChanged(new ResponderChangedEvent(null, new Responder.Builder("5").name("John Qux")
+                .latitude(new BigDecimal("30.12345")).longitude(new BigDecimal("-70.88765"))
+                .boatCapacity(1).available(true).enrolled(true).build(), 0));
+
+        List<Responder> nearest = registry.nearest(30.12345, -70.98765, 10, 100,
+                r -> Boolean.TRUE.equals(r.isAvailable()) && Boolean.TRUE.equals(r.isEnrolled()));
+        assertThat(nearest.size(), equalTo(3));
+        assertThat(nearest.get(0).getId(), equalTo("1"));
+        assertThat(nearest.get(1).getId(), equalTo("5"));
+        assertThat(nearest.get(2).getId(), equalTo("4"));
+
+        nearest = registry.nearest(30.12345, -70.98765, 10, 100, r -> r.getBoatCapacity() >= 2);
+        assertThat(nearest.stream().noneMatch(r -> r.getId().equals("5")), equalTo(true));
+
+        nearest = registry.nearest(30.12345, -70.98765, 2, 100, r -> true);
+        assertThat(nearest.size(), equalTo(2));
+    }
+
+    @Test
+    public void testWarmStart() {
+
+        withSnapshot(registry);
+        when(responderDao.maxChangeSeq()).thenReturn(10L);
+        when(changeSequence.visibleWatermark()).thenReturn(Long.MAX_VALUE);
+        registry.saveSnapshot();
+
+        when(responderDao.maxChangeSeq()).thenReturn(12L);
+        when(responderDao.changedResponders(10L, 12L, Integer.MAX_VALUE)).thenReturn(Collections.singletonList(
+                new ResponderEntity.Builder(2L, 2L).name("John Foo Jr").available(true).enrolled(true).person(false).build()));
+        when(responderDao.tombstones(10L, 12L)).thenReturn(Collections.singletonList(new ResponderTombstoneEntity.Builder(3L, 11L).build()));
+        ResponderRegistry restarted = withSnapshot(new ResponderRegistry());
+        restarted.init();
+
+        assertThat(restarted.isLoaded(), equalTo(true));
+        assertThat(restarted.get(1L).getName(), equalTo("John Doe"));
+        assertThat(restarted.get(1L).getLatitude(), equalTo(new BigDecimal("30.12345")));
+        assertThat(restarted.get(2L).getName(), equalTo("John Foo Jr"));
+        assertThat(restarted.get(3L), nullValue());
+        assertThat(restarted.getByName("John Bar"), nullValue());
+        assertThat(restarted.available().size(), equalTo(3));
+        verify(responderDao, never()).allResponders();
+    }
+
+    @Test
+    public void testWarmStartWhenSnapshotIsAheadOfDatabase() {
+
+        withSnapshot(registry);
+        when(responderDao.maxChangeSeq()).thenReturn(10L);
+        when(changeSequence.visibleWatermark()).thenReturn(Long.MAX_VALUE);
+        registry.saveSnapshot();
+
+        when(responderDao.maxChangeSeq()).thenReturn(0L);
+        ResponderRegistry restarted = withSnapshot(new ResponderRegistry());
+        restarted.init();
+
+        verify(responderDao).allResponders();
+        assertThat(restarted.isLoaded(), equalTo(true));
+        assertThat(restarted.get(1L), nullValue());
+    }
+
+    @Test
+    public void testSaveSnapshotWhenUnchanged() {
+
+        withSnapshot(registry);
+        when(responderDao.maxChangeSeq()).thenReturn(10L);
+        when(changeSequence.visibleWatermark()).thenReturn(Long.MAX_VALUE);
+        registry.saveSnapshot();
+        File snapshot = new File(folder.getRoot(), "registry.snapshot");
+        snapshot.setLastModified(snapshot.lastModified() - 10000);
+        long modified = snapshot.lastModified();
+
+        registry.saveSnapshot();
+
+        assertThat(snapshot.lastModified(), equalTo(modified));
+    }
+
+    @Test
+    public void testInitWhenEnabled() {
+
+        when(responderDao.allResponders()).thenReturn(Arrays.asList(
+                new ResponderEntity.Builder(1L, 2L).name("John Doe").available(true).enrolled(true).person(true).build(),
+                new ResponderEntity.Builder(2L, 0L).name("John Foo").available(false).enrolled(true).person(true).build()));
+        ResponderRegistry enabled = new ResponderRegistry();
+        setField(enabled, null, responderDao, ResponderDao.class);
+        setField(enabled, null, transactionManager, PlatformTransactionManager.class);
+        setField(enabled, "enabled", true);
+
+        enabled.init();
+
+        assertThat(enabled.isLoaded(), equalTo(true));
+        assertThat(enabled.getByName("John Foo").getId(), equalTo("2"));
+        assertThat(enabled.available().size(), equalTo(1));
+        assertThat(enabled.stats().getTotal(), equalTo(2));
+        assertThat(enabled.stats().getActive(), equalTo(1));
+        // older than the row which was loaded
+        enabled.onResponderChanged(new ResponderChangedEvent(null, new Responder.Builder("1").name("John Doe").build(), 1));
+        assertThat(enabled.get(1L).isAvailable(), equalTo(true));
+    }
+
+    @Test
+    public void testInitWhenDisabled() {
+
+        ResponderRegistry disabled = new ResponderRegistry();
+        setField(disabled, null, responderDao, ResponderDao.class);
+        setField(disabled, null, transactionManager, PlatformTransactionManager.class);
+
+        disabled.init();
+
+        assertThat(disabled.isLoaded(), equalTo(false));
+        verify(responderDao, never()).allResponders();
+    }
+
+    private void resetRows(long changeSeq, ResponderEntity... rows) {
+        when(responderDao.changedResponders(changeSeq - 1, changeSeq, Integer.MAX_VALUE)).thenReturn(Arrays.asList(rows));
+    }
+
+    private ResponderRegistry withSnapshot(ResponderRegistry registry) {
+        setField(registry, null, responderDao, ResponderDao.class);
+        setField(registry, null, transactionManager, PlatformTransactionManager.class);
+        setField(registry, null, changeSequence, ChangeSequence.class);
+        setField(registry, "enabled", true);
+        setField(registry, "snapshotEnabled", true);
+        setField(registry, "snapshotPath", folder.getRoot().toPath().resolve("registry.snapshot").toString());
+        return registry;
+    }
+
+    private Responder responder(String id, String name, boolean available, boolean enrolled, boolean person) {
+        return new Responder.Builder(id)
+                .name(name)
+                .phoneNumber("111-222-333")
+                .latitude(new BigDecimal("30.12345"))
+                .longitude(new BigDecimal("-70.98765"))
+                .boatCapacity(3)
+                .medicalKit(true)
+                .available(available)
+                .enrolled(enrolled)
+                .person(person)
+                .build();
+    }
+
+}
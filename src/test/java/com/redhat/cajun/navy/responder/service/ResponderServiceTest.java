@@ -5,10 +5,15 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -18,27 +23,70 @@ import static org.springframework.test.util.ReflectionTestUtils.setField;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PersistenceException;
 
+import com.redhat.cajun.navy.responder.dao.ChangeSequence;
+import com.redhat.cajun.navy.responder.dao.NearestQuery;
 import com.redhat.cajun.navy.responder.dao.ResponderDao;
+import com.redhat.cajun.navy.responder.dao.ResponderUpdateResult;
 import com.redhat.cajun.navy.responder.entity.ResponderEntity;
+import com.redhat.cajun.navy.responder.entity.ResponderTombstoneEntity;
 import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.model.ResponderChanges;
 import com.redhat.cajun.navy.responder.model.ResponderStats;
+import com.redhat.cajun.navy.responder.model.ResponderUpdateStatus;
 import org.apache.commons.lang3.tuple.Triple;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
 
 public class ResponderServiceTest {
 
     @Mock
     private ResponderDao responderDao;
 
+    @Mock
+    private ResponderUpdatedEventOutbox outbox;
+
+    @Mock
+    private ResponderRegistry registry;
+
+    @Mock
+    private ResponderStatsCounters statsCounters;
+
+    @Mock
+    private ApplicationEventPublisher publisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ChangeSequence changeSequence;
+
     @Captor
     private ArgumentCaptor<ResponderEntity> entityCaptor;
 
+    @Captor
+    private ArgumentCaptor<List<ResponderEntity>> entityListCaptor;
+
+    @Captor
+    private ArgumentCaptor<ResponderChangedEvent> changedEventCaptor;
+
+    @Captor
+    private ArgumentCaptor<RespondersResetEvent> resetEventCaptor;
+
+    @Captor
+    private ArgumentCaptor<Triple<Boolean, String, Responder>> resultCaptor;
+
     private ResponderService service;
 
     @Before
@@ -46,6 +94,12 @@ public class ResponderServiceTest {
         initMocks(this);
         service = new ResponderService();
         setField(service, null, responderDao, ResponderDao.class);
+        setField(service, null, outbox, ResponderUpdatedEventOutbox.class);
+        setField(service, null, registry, ResponderRegistry.class);
+        setField(service, null, statsCounters, ResponderStatsCounters.class);
+        setField(service, null, publisher, ApplicationEventPublisher.class);
+        setField(service, null, transactionManager, PlatformTransactionManager.class);
+        setField(service, null, changeSequence, ChangeSequence.class);
     }
 
     @Test
@@ -73,6 +127,47 @@ public class ResponderServiceTest {
         verify(responderDao).findById(eq(1L));
     }
 
+    @Test
+    public void testFindResponderByIdWhenRegistryLoaded() {
+
+        when(registry.isLoaded()).thenReturn(true);
+        when(registry.get(1L)).thenReturn(new Responder.Builder("1").name("John Doe").build());
+
+        Responder responder = service.getResponder(1);
+
+        assertThat(responder, notNullValue());
+        assertThat(responder.getName(), equalTo("John Doe"));
+        verifyZeroInteractions(responderDao);
+    }
+
+    @Test
+    public void testFindRespondersByIds() {
+
+        when(responderDao.findByIds(Arrays.asList(3L, 1L, 2L))).thenReturn(Arrays.asList(
+                new ResponderEntity.Builder(1L, 0L).name("John Doe").build(),
+                new ResponderEntity.Builder(3L, 0L).name("John Foo").build()));
+
+        List<Responder> responders = service.getResponders(Arrays.asList(3L, 1L, 2L));
+
+        assertThat(responders.size(), equalTo(3));
+        assertThat(responders.get(0).getName(), equalTo("John Foo"));
+        assertThat(responders.get(1).getName(), equalTo("John Doe"));
+        assertThat(responders.get(2), nullValue());
+    }
+
+    @Test
+    public void testFindRespondersByIdsWhenRegistryLoaded() {
+
+        when(registry.isLoaded()).thenReturn(true);
+        when(registry.get(1L)).thenReturn(new Responder.Builder("1").name("John Doe").build());
+
+        List<Responder> responders = service.getResponders(Arrays.asList(2L, 1L));
+
+        assertThat(responders.get(0), nullValue());
+        assertThat(responders.get(1).getName(), equalTo("John Doe"));
+        verifyZeroInteractions(responderDao);
+    }
+
     @Test
     public void testFindResponderByIdWhenNotFound() {
 
@@ -140,6 +235,79 @@ public class ResponderServiceTest {
         assertThat(responder.isEnrolled(), equalTo(matched.isEnrolled()));
     }
 
+    @Test
+    public void testNearestRespondersFromDatabase() {
+
+        ResponderEntity near = new ResponderEntity.Builder(1L, 0L).name("John Doe")
+                .currentPositionLatitude(new BigDecimal("30.12345")).currentPositionLongitude(new BigDecimal("-70.98765"))
+                .boatCapacity(3).medicalKit(true).available(true).enrolled(true).build();
+        // on the boundary: kept by the query, trimmed by the exact distance
+        ResponderEntity boundary = new ResponderEntity.Builder(2L, 0L).name("John Foo")
+                .currentPositionLatitude(new BigDecimal("31.12345")).currentPositionLongitude(new BigDecimal("-70.98765"))
+                .boatCapacity(3).medicalKit(true).available(true).enrolled(true).build();
+        ArgumentCaptor<NearestQuery> queryCaptor = ArgumentCaptor.forClass(NearestQuery.class);
+        when(registry.isLoaded()).thenReturn(false);
+        when(responderDao.nearestAvailableResponders(queryCaptor.capture())).thenReturn(Arrays.asList(near, boundary));
+
+        List<Responder> nearest = service.nearestResponders(30.12345, -70.98765, 5, 111.0, 2, true);
+
+        assertThat(nearest.size(), equalTo(1));
+        assertThat(nearest.get(0).getId(), equalTo("1"));
+        assertThat(nearest.get(0).getName(), equalTo("John Doe"));
+        NearestQuery query = queryCaptor.getValue();
+        assertThat(query.getLatitude(), equalTo(30.12345));
+        assertThat(query.getLongitude(), equalTo(-70.98765));
+        assertThat(query.getLimit(), equalTo(5));
+        assertThat(query.getRadiusKm(), equalTo(111.0));
+        assertThat(query.getMinBoatCapacity(), equalTo(2));
+        assertThat(query.isMedicalKit(), equalTo(true));
+        verify(responderDao, never()).availableResponders();
+        verify(registry, never()).nearest(anyDouble(), anyDouble(), anyInt(), anyDouble(), any());
+    }
+
+    @Test
+    public void testNearestRespondersFromDatabaseWithoutRadius() {
+
+        ArgumentCaptor<NearestQuery> queryCaptor = ArgumentCaptor.forClass(NearestQuery.class);
+        when(registry.isLoaded()).thenReturn(false);
+        when(responderDao.nearestAvailableResponders(queryCaptor.capture())).thenReturn(Collections.emptyList());
+
+        assertThat(service.nearestResponders(30.12345, -70.98765, 10, null, null, null).size(), equalTo(0));
+
+        assertThat(queryCaptor.getValue().getRadiusKm(), equalTo(Double.MAX_VALUE));
+        assertThat(queryCaptor.getValue().getMinBoatCapacity(), nullValue());
+        assertThat(queryCaptor.getValue().isMedicalKit(), equalTo(false));
+    }
+
+    @Test
+    public void testNearestRespondersWithRegistryEnabled() {
+
+        ResponderRegistry enabled = new ResponderRegistry();
+        setField(enabled, "enabled", true);
+        enabled.load(Arrays.asList(
+                new VersionedResponder(new Responder.Builder("1").name("John Doe").latitude(new BigDecimal("30.12345"))
+                        .longitude(new BigDecimal("-70.98765")).boatCapacity(3).medicalKit(true)
+                        .available(true).enrolled(true).build(), 0),
+                new VersionedResponder(new Responder.Builder("2").name("John Foo").latitude(new BigDecimal("30.22345"))
+                        .longitude(new BigDecimal("-70.98765")).boatCapacity(1).medicalKit(true)
+                        .available(true).enrolled(true).build(), 0),
+                new VersionedResponder(new Responder.Builder("3").name("John Bar").latitude(new BigDecimal("30.32345"))
+                        .longitude(new BigDecimal("-70.98765")).boatCapacity(3).medicalKit(true)
+                        .available(true).enrolled(true).build(), 0),
+                new VersionedResponder(new Responder.Builder("4").name("John Qux").latitude(new BigDecimal("30.12346"))
+                        .longitude(new BigDecimal("-70.98765")).boatCapacity(3).medicalKit(true)
+                        .available(false).enrolled(true).build(), 0)));
+        setField(service, null, enabled, ResponderRegistry.class);
+
+        List<Responder> nearest = service.nearestResponders(30.12345, -70.98765, 5, 50.0, 2, true);
+
+        assertThat(nearest.size(), equalTo(2));
+        assertThat(nearest.get(0).getId(), equalTo("1"));
+        assertThat(nearest.get(1).getId(), equalTo("3"));
+        assertThat(service.nearestResponders(30.12345, -70.98765, 5, 15.0, 2, true).size(), equalTo(1));
+        verifyZeroInteractions(responderDao);
+    }
+
     @Test
     public void testUpdateResponderAvailable() {
 
@@ -202,6 +370,10 @@ public class ResponderServiceTest {
         assertThat(entity.isAvailable(), equalTo(false));
         assertThat(entity.isPerson(), equalTo(true));
         assertThat(entity.isEnrolled(), equalTo(true));
+        verify(publisher).publishEvent(changedEventCaptor.capture());
+        ResponderChangedEvent event = changedEventCaptor.getValue();
+        assertThat(event.getPrevious().isAvailable(), equalTo(true));
+        assertThat(event.getCurrent().isAvailable(), equalTo(false));
     }
 
     @Test
@@ -341,6 +513,46 @@ public class ResponderServiceTest {
         verify(responderDao, never()).merge(any());
     }
 
+    @Test
+    public void testUpdateResponderWithIncidentIds() {
+
+        Responder toUpdate = new Responder.Builder("1").available(false).build();
+
+        ResponderEntity currentEntity = new ResponderEntity.Builder(1L, 0L)
+                .name("John Doe")
+                .phoneNumber("111-222-333")
+                .currentPositionLatitude(new BigDecimal("30.12345"))
+                .currentPositionLongitude(new BigDecimal("-70.98765"))
+                .boatCapacity(3)
+                .medicalKit(true)
+                .available(true)
+                .person(true)
+                .enrolled(true)
+                .build();
+
+        ResponderEntity updatedEntity = new ResponderEntity.Builder(currentEntity).available(false).build();
+
+        when(responderDao.findById(1L)).thenReturn(currentEntity);
+        when(responderDao.merge(any(ResponderEntity.class))).thenReturn(updatedEntity);
+
+        Triple<Boolean, String, Responder> result = service.updateResponder(toUpdate, Arrays.asList("incident1", "incident2"));
+        assertThat(result.getLeft(), equalTo(true));
+        verify(outbox).enqueue(eq("1"), eq("incident1"), eq(result));
+        verify(outbox).enqueue(eq("1"), eq("incident2"), eq(result));
+    }
+
+    @Test
+    public void testUpdateResponderWithoutIncidentIds() {
+
+        Responder toUpdate = new Responder.Builder("1").available(false).build();
+
+        when(responderDao.findById(1L)).thenReturn(null);
+
+        Triple<Boolean, String, Responder> result = service.updateResponder(toUpdate, Collections.emptyList());
+        assertThat(result.getLeft(), equalTo(false));
+        verify(outbox, never()).enqueue(any(), any(), any());
+    }
+
     @Test
     public void testCreateResponder() {
 
@@ -434,6 +646,38 @@ public class ResponderServiceTest {
         verify(responderDao).activeRespondersCount();
     }
 
+    @Test
+    public void testResponderStatsWhenCountersInitialized() {
+        ResponderStats counted = new ResponderStats();
+        counted.setTotal(10);
+        counted.setActive(5);
+        when(statsCounters.isInitialized()).thenReturn(true);
+        when(statsCounters.stats()).thenReturn(counted);
+
+        ResponderStats stats = service.getResponderStats();
+
+        assertThat(stats.getTotal(), equalTo(10));
+        assertThat(stats.getActive(), equalTo(5));
+        verify(responderDao, never()).enrolledRespondersCount();
+        verify(responderDao, never()).activeRespondersCount();
+    }
+
+    @Test
+    public void testResponderStatsFromRegistry() {
+        ResponderStats fromRegistry = new ResponderStats();
+        fromRegistry.setTotal(10);
+        fromRegistry.setActive(5);
+        when(registry.isLoaded()).thenReturn(true);
+        when(registry.stats()).thenReturn(fromRegistry);
+
+        ResponderStats stats = service.getResponderStats();
+
+        assertThat(stats.getTotal(), equalTo(10));
+        assertThat(stats.getActive(), equalTo(5));
+        verify(statsCounters, never()).stats();
+        verify(responderDao, never()).enrolledRespondersCount();
+    }
+
     @Test
     public void testCreateResponders() {
 
@@ -461,28 +705,350 @@ public class ResponderServiceTest {
                 .enrolled(true)
                 .build();
 
+        Responder toCreate3 = new Responder.Builder(null)
+                .name("John Bar")
+                .phoneNumber("333-444-555")
+                .latitude(new BigDecimal("32.12345"))
+                .longitude(new BigDecimal("-72.98765"))
+                .boatCapacity(2)
+                .medicalKit(false)
+                .available(true)
+                .person(false)
+                .enrolled(true)
+                .build();
+
+        setField(service, "ingestChunkSize", 2);
         doAnswer(invocation -> {
-            ResponderEntity entity = invocation.getArgument(0);
-            assertThat(entity.getId(), equalTo(0L));
-            setField(entity, "id", 100, null);
+            List<ResponderEntity> entities = invocation.getArgument(0);
+            for (ResponderEntity entity : entities) {
+                assertThat(entity.getId(), equalTo(0L));
+                setField(entity, "id", 100, null);
+            }
             return null;
-        }).when(responderDao).create(any(ResponderEntity.class));
+        }).when(responderDao).createAll(any());
+
+        service.createResponders(Arrays.asList(toCreate1, toCreate2, toCreate3));
+
+        verify(responderDao, times(2)).createAll(entityListCaptor.capture());
+        assertThat(entityListCaptor.getAllValues().get(0).size(), equalTo(2));
+        assertThat(entityListCaptor.getAllValues().get(0).get(0).getName(), equalTo("John Doe"));
+        assertThat(entityListCaptor.getAllValues().get(1).size(), equalTo(1));
+        assertThat(entityListCaptor.getAllValues().get(1).get(0).getName(), equalTo("John Bar"));
+        verify(transactionManager).commit(any());
+        verify(publisher, times(3)).publishEvent(changedEventCaptor.capture());
+        assertThat(changedEventCaptor.getAllValues().get(2).getCurrent().getId(), equalTo("100"));
+    }
+
+    @Test
+    public void testCreateRespondersWhenChunkFails() {
+
+        setField(service, "ingestChunkSize", 1);
+        doAnswer(invocation -> null).doThrow(new PersistenceException("boom")).when(responderDao).createAll(any());
+
+        try {
+            service.createResponders(Arrays.asList(new Responder.Builder(null).name("John Doe").build(),
+                    new Responder.Builder(null).name("John Foo").build()));
+            Assert.fail("Expected PersistenceException");
+        } catch (PersistenceException e) {
+            assertThat(e.getMessage(), equalTo("boom"));
+        }
+
+        verify(responderDao, times(2)).createAll(any());
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+    }
+
+    @Test
+    public void testExportResponders() {
+
+        setField(service, "exportFetchSize", 500);
+        ResponderEntity entity = new ResponderEntity.Builder(1L, 0L).name("John Doe").build();
+        doAnswer(invocation -> {
+            Consumer<ResponderEntity> action = invocation.getArgument(4);
+            action.accept(entity);
+            return null;
+        }).when(responderDao).streamResponders(eq(true), isNull(), isNull(), eq(500), any());
+
+        List<Responder> exported = new ArrayList<>();
+        service.exportResponders(true, null, null, exported::add);
+
+        assertThat(exported.size(), equalTo(1));
+        assertThat(exported.get(0).getId(), equalTo("1"));
+        assertThat(exported.get(0).getName(), equalTo("John Doe"));
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    public void testChangesSince() {
+
+        when(responderDao.maxChangeSeq()).thenReturn(12L);
+        when(changeSequence.visibleWatermark()).thenReturn(10L);
+        when(responderDao.changedResponders(5L, 10L, 3)).thenReturn(Arrays.asList(
+                new ResponderEntity.Builder(1L, 0L).changeSeq(7L).build(),
+                new ResponderEntity.Builder(2L, 0L).changeSeq(8L).build(),
+                new ResponderEntity.Builder(3L, 0L).changeSeq(8L).build()));
+        when(responderDao.tombstones(5L, 7L)).thenReturn(Collections.singletonList(
+                new ResponderTombstoneEntity.Builder(4L, 6L).build()));
+
+        ResponderChanges changes = service.changesSince(5L, 3);
+
+        assertThat(changes.getChanged().size(), equalTo(1));
+        assertThat(changes.getChanged().get(0).getId(), equalTo("1"));
+        assertThat(changes.getDeleted(), equalTo(Collections.singletonList("4")));
+        assertThat(changes.getNextSince(), equalTo(7L));
+        assertThat(changes.isMore(), equalTo(true));
+    }
+
+    @Test
+    public void testChangesSinceWithLargeTransaction() {
+
+        when(responderDao.maxChangeSeq()).thenReturn(8L);
+        when(changeSequence.visibleWatermark()).thenReturn(Long.MAX_VALUE);
+        when(responderDao.changedResponders(5L, 8L, 2)).thenReturn(Arrays.asList(
+                new ResponderEntity.Builder(1L, 0L).changeSeq(7L).build(),
+                new ResponderEntity.Builder(2L, 0L).changeSeq(7L).build()));
+        when(responderDao.changedResponders(6L, 7L, Integer.MAX_VALUE)).thenReturn(Arrays.asList(
+                new ResponderEntity.Builder(1L, 0L).changeSeq(7L).build(),
+                new ResponderEntity.Builder(2L, 0L).changeSeq(7L).build(),
+                new ResponderEntity.Builder(3L, 0L).changeSeq(7L).build()));
+        when(responderDao.tombstones(5L, 7L)).thenReturn(Collections.emptyList());
+
+        ResponderChanges changes = service.changesSince(5L, 2);
+
+        assertThat(changes.getChanged().size(), equalTo(3));
+        assertThat(changes.getNextSince(), equalTo(7L));
+        assertThat(changes.isMore(), equalTo(true));
+    }
+
+    @Test
+    public void testChangesSinceWhenNothingVisible() {
+
+        when(responderDao.maxChangeSeq()).thenReturn(8L);
+        when(changeSequence.visibleWatermark()).thenReturn(5L);
+
+        ResponderChanges changes = service.changesSince(5L, 10);
+
+        assertThat(changes.getChanged().isEmpty(), equalTo(true));
+        assertThat(changes.getNextSince(), equalTo(5L));
+        assertThat(changes.isMore(), equalTo(false));
+        verify(responderDao, never()).changedResponders(anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    public void testUpdateResponders() {
+
+        setField(service, "updateChunkSize", 10);
+        ResponderEntity current1 = new ResponderEntity.Builder(1L, 0L).name("John Doe").available(true).enrolled(true).build();
+        ResponderEntity current2 = new ResponderEntity.Builder(2L, 0L).name("John Foo").available(true).build();
+        when(responderDao.findByIds(any())).thenReturn(Arrays.asList(current1, current2));
+        when(responderDao.merge(any(ResponderEntity.class))).thenAnswer(invocation ->
+                new ResponderEntity.Builder((ResponderEntity) invocation.getArgument(0)).version(1L).build());
+
+        List<ResponderUpdateStatus> statuses = service.updateResponders(Arrays.asList(
+                new Responder.Builder("1").available(false).build(),
+                new Responder.Builder("2").available(true).build(),
+                new Responder.Builder("3").available(false).build(),
+                new Responder.Builder("x").available(false).build(),
+                new Responder.Builder("1").enrolled(false).build()));
+
+        assertThat(statuses.size(), equalTo(5));
+        assertThat(statuses.get(0).getStatus(), equalTo(ResponderUpdateStatus.Status.UPDATED));
+        assertThat(statuses.get(0).getResponder().isAvailable(), equalTo(false));
+        assertThat(statuses.get(0).getResponder().isEnrolled(), equalTo(false));
+        assertThat(statuses.get(1).getStatus(), equalTo(ResponderUpdateStatus.Status.UNCHANGED));
+        assertThat(statuses.get(2).getStatus(), equalTo(ResponderUpdateStatus.Status.NOT_FOUND));
+        assertThat(statuses.get(3).getStatus(), equalTo(ResponderUpdateStatus.Status.NOT_FOUND));
+        assertThat(statuses.get(3).getId(), equalTo("x"));
+        assertThat(statuses.get(4).getStatus(), equalTo(ResponderUpdateStatus.Status.UPDATED));
+        verify(responderDao).findByIds(any());
+        verify(responderDao).merge(any(ResponderEntity.class));
+        verify(publisher).publishEvent(any(ResponderChangedEvent.class));
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    public void testUpdateRespondersWithConflict() {
+
+        setField(service, "updateChunkSize", 10);
+        when(responderDao.findByIds(any())).thenAnswer(invocation -> Arrays.asList(
+                new ResponderEntity.Builder(1L, 0L).name("John Doe").available(true).build(),
+                new ResponderEntity.Builder(2L, 0L).name("John Foo").available(true).build()));
+        when(responderDao.merge(any(ResponderEntity.class))).thenAnswer(invocation -> {
+            ResponderEntity entity = invocation.getArgument(0);
+            if (entity.getId() == 1L) {
+                throw new OptimisticLockException("stale");
+            }
+            return new ResponderEntity.Builder(entity).version(1L).build();
+        });
+
+        List<ResponderUpdateStatus> statuses = service.updateResponders(Arrays.asList(
+                new Responder.Builder("1").available(false).build(),
+                new Responder.Builder("2").available(false).build()));
+
+        assertThat(statuses.get(0).getStatus(), equalTo(ResponderUpdateStatus.Status.CONFLICT));
+        assertThat(statuses.get(1).getStatus(), equalTo(ResponderUpdateStatus.Status.UPDATED));
+        verify(responderDao, times(3)).findByIds(any());
+    }
+
+    @Test
+    public void testUpdateRespondersWithIncidentIds() {
+
+        setField(service, "updateChunkSize", 10);
+        when(responderDao.findByIds(any())).thenReturn(Collections.singletonList(
+                new ResponderEntity.Builder(1L, 0L).name("John Doe").available(true).build()));
+        when(responderDao.merge(any(ResponderEntity.class))).thenAnswer(invocation ->
+                new ResponderEntity.Builder((ResponderEntity) invocation.getArgument(0)).version(1L).build());
+
+        service.updateResponders(Arrays.asList(
+                new Responder.Builder("1").available(false).build(),
+                new Responder.Builder("3").available(false).build(),
+                new Responder.Builder("x").available(false).build(),
+                new Responder.Builder("1").enrolled(true).build()),
+                Arrays.asList("incident1", null, "incident3", "incident4"));
+
+        verify(outbox).enqueue(eq("1"), eq("incident1"), resultCaptor.capture());
+        assertThat(resultCaptor.getValue().getLeft(), equalTo(true));
+        assertThat(resultCaptor.getValue().getMiddle(), equalTo("Responder updated"));
+        assertThat(resultCaptor.getValue().getRight().isAvailable(), equalTo(false));
+        verify(outbox).enqueue(eq("1"), eq("incident4"), eq(resultCaptor.getValue()));
+        verify(outbox).enqueue(eq("x"), eq("incident3"), resultCaptor.capture());
+        assertThat(resultCaptor.getValue().getLeft(), equalTo(false));
+        assertThat(resultCaptor.getValue().getMiddle(), equalTo("Invalid id"));
+        verify(outbox, times(3)).enqueue(any(), any(), any());
+        verify(responderDao).findByIds(any());
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    public void testConditionalUpdateResponders() {
+
+        setField(service, "conditionalUpdate", true);
+        setField(service, "updateChunkSize", 2);
+        ResponderEntity previous = new ResponderEntity.Builder(1L, 0L).name("John Doe").available(true).build();
+        ResponderEntity current = new ResponderEntity.Builder(1L, 1L).name("John Doe").available(false).build();
+        when(responderDao.conditionalUpdateAll(any())).thenReturn(
+                Arrays.asList(new ResponderUpdateResult(ResponderUpdateResult.Outcome.UPDATED, previous, current),
+                        new ResponderUpdateResult(ResponderUpdateResult.Outcome.NOT_FOUND, null, null)),
+                Collections.singletonList(new ResponderUpdateResult(ResponderUpdateResult.Outcome.UNCHANGED, current, current)));
+
+        List<ResponderUpdateStatus> statuses = service.updateResponders(Arrays.asList(
+                new Responder.Builder("1").available(false).build(),
+                new Responder.Builder("2").available(false).build(),
+                new Responder.Builder("1").available(false).build()));
+
+        assertThat(statuses.get(0).getStatus(), equalTo(ResponderUpdateStatus.Status.UPDATED));
+        assertThat(statuses.get(1).getStatus(), equalTo(ResponderUpdateStatus.Status.NOT_FOUND));
+        assertThat(statuses.get(2).getStatus(), equalTo(ResponderUpdateStatus.Status.UNCHANGED));
+        verify(responderDao, times(2)).conditionalUpdateAll(entityListCaptor.capture());
+        assertThat(entityListCaptor.getAllValues().get(0).size(), equalTo(2));
+        verify(transactionManager, times(2)).commit(any());
+        verify(publisher).publishEvent(any(ResponderChangedEvent.class));
+    }
+
+    @Test
+    public void testConditionalUpdateResponder() {
+
+        setField(service, "conditionalUpdate", true);
+        Responder toUpdate = new Responder.Builder("1").available(false).build();
+        ResponderEntity previous = new ResponderEntity.Builder(1L, 0L).name("John Doe").available(true).build();
+        ResponderEntity current = new ResponderEntity.Builder(1L, 1L).name("John Doe").available(false).build();
+        when(responderDao.conditionalUpdate(any(ResponderEntity.class)))
+                .thenReturn(new ResponderUpdateResult(ResponderUpdateResult.Outcome.UPDATED, previous, current));
+
+        Triple<Boolean, String, Responder> result = service.updateResponder(toUpdate);
+
+        assertThat(result.getLeft(), equalTo(true));
+        assertThat(result.getMiddle(), equalTo("Responder updated"));
+        assertThat(result.getRight().isAvailable(), equalTo(false));
+        verify(responderDao).conditionalUpdate(entityCaptor.capture());
+        ResponderEntity changes = entityCaptor.getValue();
+        assertThat(changes.getId(), equalTo(1L));
+        assertThat(changes.isAvailable(), equalTo(false));
+        assertThat(changes.getName(), nullValue());
+        verify(responderDao, never()).findById(any(Long.class));
+        verify(responderDao, never()).merge(any(ResponderEntity.class));
+        verify(publisher).publishEvent(changedEventCaptor.capture());
+        assertThat(changedEventCaptor.getValue().getPrevious().isAvailable(), equalTo(true));
+    }
+
+    @Test
+    public void testConditionalUpdateResponderWhenStateHasNotChanged() {
+
+        setField(service, "conditionalUpdate", true);
+        Responder toUpdate = new Responder.Builder("1").available(false).build();
+        ResponderEntity current = new ResponderEntity.Builder(1L, 0L).name("John Doe").available(false).build();
+        when(responderDao.conditionalUpdate(any(ResponderEntity.class)))
+                .thenReturn(new ResponderUpdateResult(ResponderUpdateResult.Outcome.UNCHANGED, current, current));
+
+        Triple<Boolean, String, Responder> result = service.updateResponder(toUpdate);
+
+        assertThat(result.getLeft(), equalTo(false));
+        assertThat(result.getMiddle(), equalTo("Responder state not changed"));
+        assertThat(result.getRight().getName(), equalTo("John Doe"));
+    }
+
+    @Test
+    public void testConditionalUpdateResponderWhenNotFound() {
+
+        setField(service, "conditionalUpdate", true);
+        Responder toUpdate = new Responder.Builder("1").available(false).build();
+        when(responderDao.conditionalUpdate(any(ResponderEntity.class)))
+                .thenReturn(new ResponderUpdateResult(ResponderUpdateResult.Outcome.NOT_FOUND, null, null));
+
+        Triple<Boolean, String, Responder> result = service.updateResponder(toUpdate);
+
+        assertThat(result.getLeft(), equalTo(false));
+        assertThat(result.getRight(), nullValue());
+    }
+
+    @Test
+    public void testConditionalUpdateResponderWhenUpdateFails() {
 
-        service.createResponders(Arrays.asList(toCreate1, toCreate2));
+        setField(service, "conditionalUpdate", true);
+        Responder toUpdate = new Responder.Builder("1").available(false).build();
+        when(responderDao.conditionalUpdate(any(ResponderEntity.class))).thenThrow(new PersistenceException("connection lost"));
+
+        Triple<Boolean, String, Responder> result = service.updateResponder(toUpdate, Collections.singletonList("incident"));
+
+        assertThat(result.getLeft(), equalTo(false));
+        assertThat(result.getMiddle(), equalTo("Exception 'class javax.persistence.PersistenceException' when updating Responder"));
+        assertThat(result.getRight(), nullValue());
+        verify(publisher, never()).publishEvent(any());
+        verify(outbox).enqueue("1", "incident", result);
+    }
+
+    @Test
+    public void testUpdateResponderWhenMergeFails() {
+
+        Responder toUpdate = new Responder.Builder("1").available(false).build();
+        ResponderEntity current = new ResponderEntity.Builder(1L, 0L).name("John Doe").available(true).build();
+        when(responderDao.findById(1L)).thenReturn(current);
+        when(responderDao.merge(any(ResponderEntity.class))).thenThrow(new PersistenceException("connection lost"));
 
-        verify(responderDao, times(2)).create(entityCaptor.capture());
+        Triple<Boolean, String, Responder> result = service.updateResponder(toUpdate);
+
+        assertThat(result.getLeft(), equalTo(false));
+        assertThat(result.getMiddle(), equalTo("Exception 'class javax.persistence.PersistenceException' when updating Responder"));
+        assertThat(result.getRight().isAvailable(), equalTo(true));
+        verify(publisher, never()).publishEvent(any());
     }
 
     @Test
     public void testReset() {
+        when(changeSequence.ofCurrentTransaction()).thenReturn(7L);
         service.reset();
         verify(responderDao).reset();
+        verify(publisher).publishEvent(resetEventCaptor.capture());
+        assertThat(resetEventCaptor.getValue().isClear(), equalTo(false));
+        assertThat(resetEventCaptor.getValue().getChangeSeq(), equalTo(7L));
     }
 
     @Test
     public void testClear() {
         service.clear();
         verify(responderDao).clear();
+        verify(publisher).publishEvent(resetEventCaptor.capture());
+        assertThat(resetEventCaptor.getValue().isClear(), equalTo(true));
     }
 
 }
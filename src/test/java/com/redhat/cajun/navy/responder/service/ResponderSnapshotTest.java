@@ -0,0 +1,106 @@
+package com.redhat.cajun.navy.responder.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.redhat.cajun.navy.responder.model.Responder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResponderSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+
+        Path file = folder.getRoot().toPath().resolve("registry.snapshot");
+        Responder full = new Responder.Builder("1")
+                .name("John Do\u00e9")
+                .phoneNumber("111-222-333")
+                .latitude(new BigDecimal("30.12345"))
+                .longitude(new BigDecimal("-70.98765"))
+                .boatCapacity(3)
+                .medicalKit(true)
+                .available(false)
+                .enrolled(true)
+                .person(true)
+                .build();
+        Responder empty = new Responder.Builder("2")
+                .latitude(new BigDecimal("1234567890123456789012345.123"))
+                .build();
+
+        ResponderSnapshot.write(file, 42, Arrays.asList(new VersionedResponder(full, 7), new VersionedResponder(empty, 0)));
+        ResponderSnapshot snapshot = ResponderSnapshot.read(file);
+
+        assertThat(snapshot.getWatermark(), equalTo(42L));
+        assertThat(snapshot.getResponders().size(), equalTo(2));
+        assertThat(snapshot.getResponders().get(0).getVersion(), equalTo(7L));
+        Responder read = snapshot.getResponders().get(0).getResponder();
+        assertThat(read.getId(), equalTo("1"));
+        assertThat(read.getName(), equalTo("John Do\u00e9"));
+        assertThat(read.getPhoneNumber(), equalTo("111-222-333"));
+        assertThat(read.getLatitude(), equalTo(new BigDecimal("30.12345")));
+        assertThat(read.getLongitude(), equalTo(new BigDecimal("-70.98765")));
+        assertThat(read.getBoatCapacity(), equalTo(3));
+        assertThat(read.isMedicalKit(), equalTo(true));
+        assertThat(read.isAvailable(), equalTo(false));
+        assertThat(read.isEnrolled(), equalTo(true));
+        assertThat(read.isPerson(), equalTo(true));
+        assertThat(snapshot.getResponders().get(1).getVersion(), equalTo(0L));
+        read = snapshot.getResponders().get(1).getResponder();
+        assertThat(read.getName(), nullValue());
+        assertThat(read.getLatitude(), equalTo(new BigDecimal("1234567890123456789012345.123")));
+        assertThat(read.getLongitude(), nullValue());
+        assertThat(read.getBoatCapacity(), nullValue());
+        assertThat(read.isAvailable(), nullValue());
+    }
+
+    @Test
+    public void testReplace() throws Exception {
+
+        Path file = folder.getRoot().toPath().resolve("registry.snapshot");
+
+        ResponderSnapshot.write(file, 1, Collections.singletonList(new VersionedResponder(new Responder.Builder("1").build(), 0)));
+        ResponderSnapshot.write(file, 2, Collections.emptyList());
+
+        ResponderSnapshot snapshot = ResponderSnapshot.read(file);
+        assertThat(snapshot.getWatermark(), equalTo(2L));
+        assertThat(snapshot.getResponders().size(), equalTo(0));
+        assertThat(folder.getRoot().list().length, equalTo(1));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadCorrupted() throws Exception {
+
+        Path file = folder.getRoot().toPath().resolve("registry.snapshot");
+        ResponderSnapshot.write(file, 42, Collections.singletonList(new VersionedResponder(new Responder.Builder("1").name("John Doe").build(), 0)));
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[30] ^= 1;
+        Files.write(file, bytes);
+
+        ResponderSnapshot.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadTruncated() throws Exception {
+
+        Path file = folder.getRoot().toPath().resolve("registry.snapshot");
+        ResponderSnapshot.write(file, 42, Collections.singletonList(new VersionedResponder(new Responder.Builder("1").name("John Doe").build(), 0)));
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 10));
+
+        ResponderSnapshot.read(file);
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.redhat.cajun.navy.responder.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.model.ResponderChanges;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.util.concurrent.ListenableFuture;
+
+public class ResponderStatePublisherTest {
+
+    @Mock
+    private ResponderService responderService;
+
+    @Mock
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    @Captor
+    private ArgumentCaptor<String> valueCaptor;
+
+    private ResponderStatePublisher publisher;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        publisher = new ResponderStatePublisher();
+        setField(publisher, null, responderService, ResponderService.class);
+        setField(publisher, null, kafkaTemplate, KafkaTemplate.class);
+        setField(publisher, "enabled", true);
+        setField(publisher, "destination", "responder-state");
+        setField(publisher, "batchSize", 2);
+        setField(publisher, "sendTimeout", 1000L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPublish() throws Exception {
+
+        ResponderChanges page1 = changes(Arrays.asList(responder("1", "John Doe"), responder("2", "John Foo")),
+                Collections.emptyList(), 5, true);
+        ResponderChanges page2 = changes(Collections.emptyList(), Collections.singletonList("3"), 7, false);
+        when(responderService.changesSince(0, 2)).thenReturn(page1);
+        when(responderService.changesSince(5, 2)).thenReturn(page2);
+        ListenableFuture future = mock(ListenableFuture.class);
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenReturn(future);
+
+        publisher.publish();
+
+        verify(kafkaTemplate).send(eq("responder-state"), eq("1"), valueCaptor.capture());
+        Map<String, Object> state = new ObjectMapper().readValue(valueCaptor.getValue(), Map.class);
+        assertThat(state.get("name"), equalTo("John Doe"));
+        verify(kafkaTemplate).send(eq("responder-state"), eq("2"), anyString());
+        // a deleted responder is a tombstone for the compaction
+        verify(kafkaTemplate).send(eq("responder-state"), eq("3"), isNull());
+        assertThat(publisher.getWatermark(), equalTo(7L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPublishWhenSendFails() throws Exception {
+
+        when(responderService.changesSince(0, 2)).thenReturn(changes(Collections.singletonList(responder("1", "John Doe")),
+                Collections.emptyList(), 5, false));
+        ListenableFuture future = mock(ListenableFuture.class);
+        when(future.get(anyLong(), any())).thenThrow(new IllegalStateException("broker down"));
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenReturn(future);
+
+        publisher.publish();
+
+        assertThat(publisher.getWatermark(), equalTo(0L));
+    }
+
+    @Test
+    public void testPublishWhenNothingChanged() {
+
+        when(responderService.changesSince(0, 2)).thenReturn(changes(Collections.emptyList(), Collections.emptyList(), 3, false));
+
+        publisher.publish();
+
+        verify(kafkaTemplate, never()).flush();
+        assertThat(publisher.getWatermark(), equalTo(3L));
+    }
+
+    @Test
+    public void testDisabled() {
+
+        setField(publisher, "enabled", false);
+
+        publisher.publish();
+
+        verify(responderService, never()).changesSince(anyLong(), anyInt());
+        verifyZeroInteractions(kafkaTemplate);
+    }
+
+    private ResponderChanges changes(List<Responder> changed, List<String> deleted, long nextSince, boolean more) {
+        ResponderChanges changes = new ResponderChanges();
+        changes.setChanged(changed);
+        changes.setDeleted(deleted);
+        changes.setNextSince(nextSince);
+        changes.setMore(more);
+        return changes;
+    }
+
+    private Responder responder(String id, String name) {
+        return new Responder.Builder(id).name(name).available(true).enrolled(true).build();
+    }
+
+}
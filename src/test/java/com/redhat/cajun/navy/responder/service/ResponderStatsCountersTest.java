@@ -0,0 +1,120 @@
+package com.redhat.cajun.navy.responder.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import com.redhat.cajun.navy.responder.dao.ResponderDao;
+import com.redhat.cajun.navy.responder.model.Responder;
+import com.redhat.cajun.navy.responder.model.ResponderStats;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+public class ResponderStatsCountersTest {
+
+    @Mock
+    private ResponderDao responderDao;
+
+    @Mock
+    private ResponderRegistry registry;
+
+    private ResponderStatsCounters counters;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        counters = new ResponderStatsCounters();
+        setField(counters, null, responderDao, ResponderDao.class);
+        setField(counters, null, registry, ResponderRegistry.class);
+        when(responderDao.enrolledRespondersCount()).thenReturn(10L);
+        when(responderDao.activeRespondersCount()).thenReturn(4L);
+    }
+
+    @Test
+    public void testReconcile() {
+
+        assertThat(counters.isInitialized(), equalTo(false));
+
+        counters.reconcile();
+
+        assertThat(counters.isInitialized(), equalTo(true));
+        ResponderStats stats = counters.stats();
+        assertThat(stats.getTotal(), equalTo(10));
+        assertThat(stats.getActive(), equalTo(4));
+    }
+
+    @Test
+    public void testOnResponderChanged() {
+
+        counters.reconcile();
+
+        // created, enrolled and available
+        counters.onResponderChanged(new ResponderChangedEvent(null, responder(true, true), 1));
+        assertStats(11, 4);
+
+        // becomes busy
+        counters.onResponderChanged(new ResponderChangedEvent(responder(true, true), responder(false, true), 1));
+        assertStats(11, 5);
+
+        // un-enrolled
+        counters.onResponderChanged(new ResponderChangedEvent(responder(false, true), responder(true, false), 1));
+        assertStats(10, 4);
+
+        // unrelated change
+        counters.onResponderChanged(new ResponderChangedEvent(responder(true, false), responder(true, false), 1));
+        assertStats(10, 4);
+
+        // enrolled without availability, which the database does not count as active
+        counters.onResponderChanged(new ResponderChangedEvent(null, new Responder.Builder("2").enrolled(true).build(), 0));
+        assertStats(11, 4);
+    }
+
+    @Test
+    public void testReconcileWhenRegistryIsLoaded() {
+
+        when(registry.isLoaded()).thenReturn(true);
+
+        counters.reconcile();
+
+        assertThat(counters.isInitialized(), equalTo(false));
+        verify(responderDao, never()).enrolledRespondersCount();
+    }
+
+    @Test
+    public void testOnRespondersReset() {
+
+        counters.reconcile();
+
+        counters.onRespondersReset(new RespondersResetEvent(false, 1));
+
+        assertStats(0, 0);
+    }
+
+    @Test
+    public void testReconcileCorrectsDrift() {
+
+        counters.reconcile();
+        counters.onResponderChanged(new ResponderChangedEvent(null, responder(false, true), 1));
+        assertStats(11, 5);
+
+        counters.reconcile();
+
+        assertStats(10, 4);
+    }
+
+    private void assertStats(int total, int active) {
+        ResponderStats stats = counters.stats();
+        assertThat(stats.getTotal(), equalTo(total));
+        assertThat(stats.getActive(), equalTo(active));
+    }
+
+    private Responder responder(boolean available, boolean enrolled) {
+        return new Responder.Builder("1").available(available).enrolled(enrolled).build();
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.redhat.cajun.navy.responder.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.cajun.navy.responder.dao.ResponderDao;
+import com.redhat.cajun.navy.responder.entity.OutboxEventEntity;
+import com.redhat.cajun.navy.responder.model.Responder;
+import org.apache.commons.lang3.tuple.ImmutableTriple;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.util.concurrent.ListenableFuture;
+
+public class ResponderUpdatedEventOutboxTest {
+
+    @Mock
+    private ResponderDao responderDao;
+
+    @Mock
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    @Captor
+    private ArgumentCaptor<OutboxEventEntity> eventCaptor;
+
+    @Captor
+    private ArgumentCaptor<List<Long>> idsCaptor;
+
+    private ResponderUpdatedEventOutbox outbox;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        outbox = new ResponderUpdatedEventOutbox();
+        setField(outbox, null, responderDao, ResponderDao.class);
+        setField(outbox, null, kafkaTemplate, KafkaTemplate.class);
+        setField(outbox, "destination", "test-topic");
+        setField(outbox, "batchSize", 100);
+        setField(outbox, "sendTimeout", 1000L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testEnqueue() throws Exception {
+
+        Responder responder = new Responder.Builder("1").name("John Doe").available(false).build();
+
+        outbox.enqueue("1", "incident", new ImmutableTriple<>(true, "Responder updated", responder));
+
+        verify(responderDao).createOutboxEvent(eventCaptor.capture());
+        OutboxEventEntity event = eventCaptor.getValue();
+        assertThat(event.getMessageKey(), equalTo("1"));
+        Map<String, Object> message = new ObjectMapper().readValue(event.getPayload(), Map.class);
+        assertThat(message.get("messageType"), equalTo("ResponderUpdatedEvent"));
+        assertThat(message.get("invokingService"), equalTo("ResponderService"));
+        assertThat(message.get("id"), notNullValue());
+        assertThat(((Map<String, Object>) message.get("header")).get("incidentId"), equalTo("incident"));
+        Map<String, Object> body = (Map<String, Object>) message.get("body");
+        assertThat(body.get("status"), equalTo("success"));
+        assertThat(body.get("statusMessage"), equalTo("Responder updated"));
+        assertThat(((Map<String, Object>) body.get("responder")).get("name"), equalTo("John Doe"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRelay() {
+
+        OutboxEventEntity event1 = event(1L, "1", "payload1");
+        OutboxEventEntity event2 = event(2L, "2", "payload2");
+        when(responderDao.outboxEvents(100)).thenReturn(Arrays.asList(event1, event2));
+        ListenableFuture future = mock(ListenableFuture.class);
+        when(kafkaTemplate.send(anyString(), anyString(), anyString())).thenReturn(future);
+
+        outbox.relay();
+
+        verify(kafkaTemplate).send("test-topic", "1", "payload1");
+        verify(kafkaTemplate).send("test-topic", "2", "payload2");
+        verify(kafkaTemplate).flush();
+        verify(responderDao).deleteOutboxEvents(idsCaptor.capture());
+        assertThat(idsCaptor.getValue(), equalTo(Arrays.asList(1L, 2L)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRelayWhenSendFails() throws Exception {
+
+        when(responderDao.outboxEvents(100)).thenReturn(Collections.singletonList(event(1L, "1", "payload1")));
+        ListenableFuture future = mock(ListenableFuture.class);
+        when(future.get(anyLong(), any())).thenThrow(new IllegalStateException("broker down"));
+        when(kafkaTemplate.send(anyString(), anyString(), anyString())).thenReturn(future);
+
+        try {
+            outbox.relay();
+            Assert.fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        verify(responderDao, never()).deleteOutboxEvents(anyList());
+    }
+
+    @Test
+    public void testRelayWhenOutboxEmpty() {
+
+        when(responderDao.outboxEvents(anyInt())).thenReturn(Collections.emptyList());
+
+        outbox.relay();
+
+        verify(kafkaTemplate, never()).send(anyString(), anyString(), anyString());
+        verify(kafkaTemplate, never()).flush();
+    }
+
+    private OutboxEventEntity event(long id, String key, String payload) {
+        OutboxEventEntity event = new OutboxEventEntity.Builder(key, payload).build();
+        setField(event, "id", id);
+        return event;
+    }
+
+}
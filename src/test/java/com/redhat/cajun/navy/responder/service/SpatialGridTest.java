@@ -0,0 +1,81 @@
+package com.redhat.cajun.navy.responder.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class SpatialGridTest {
+
+    @Test
+    public void testNearestMatchesLinearScan() {
+
+        Random random = new Random(42);
+        SpatialGrid grid = new SpatialGrid(0.1);
+        Map<Long, double[]> positions = new HashMap<>();
+        for (long id = 0; id < 2000; id++) {
+            double[] position = {29 + random.nextDouble() * 2, -96 + random.nextDouble() * 2};
+            positions.put(id, position);
+            grid.put(id, position[0], position[1]);
+        }
+        // move some of the positions around
+        for (long id = 0; id < 200; id++) {
+            double[] position = {29 + random.nextDouble() * 2, -96 + random.nextDouble() * 2};
+            positions.put(id, position);
+            grid.put(id, position[0], position[1]);
+        }
+        for (long id = 200; id < 300; id++) {
+            positions.remove(id);
+            grid.remove(id);
+        }
+
+        for (int i = 0; i < 50; i++) {
+            double latitude = 29 + random.nextDouble() * 2;
+            double longitude = -96 + random.nextDouble() * 2;
+            assertThat(grid.nearest(latitude, longitude, 10, Double.MAX_VALUE, id -> id % 2 == 0),
+                    equalTo(linearScan(positions, latitude, longitude, 10, Double.MAX_VALUE)));
+            assertThat(grid.nearest(latitude, longitude, Integer.MAX_VALUE, 15, id -> id % 2 == 0),
+                    equalTo(linearScan(positions, latitude, longitude, Integer.MAX_VALUE, 15)));
+        }
+    }
+
+    @Test
+    public void testNearestAcrossAntimeridian() {
+
+        SpatialGrid grid = new SpatialGrid(0.1);
+        grid.put(1L, 10, 179.95);
+        grid.put(2L, 10, -179.95);
+        grid.put(3L, 10, 170);
+
+        List<Long> nearest = grid.nearest(10, -179.99, 2, Double.MAX_VALUE, id -> true);
+
+        assertThat(nearest.get(0), equalTo(2L));
+        assertThat(nearest.get(1), equalTo(1L));
+    }
+
+    @Test
+    public void testNearestWhenEmpty() {
+
+        SpatialGrid grid = new SpatialGrid(0.1);
+
+        assertThat(grid.nearest(10, 10, 5, Double.MAX_VALUE, id -> true).size(), equalTo(0));
+    }
+
+    private List<Long> linearScan(Map<Long, double[]> positions, double latitude, double longitude, int limit, double radiusKm) {
+        return positions.entrySet().stream()
+                .filter(e -> e.getKey() % 2 == 0)
+                .filter(e -> SpatialGrid.distanceKm(latitude, longitude, e.getValue()[0], e.getValue()[1]) <= radiusKm)
+                .sorted(Comparator.comparingDouble(e -> SpatialGrid.distanceKm(latitude, longitude, e.getValue()[0], e.getValue()[1])))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+}
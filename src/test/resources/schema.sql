@@ -0,0 +1 @@
+CREATE SEQUENCE IF NOT EXISTS responder_change_sequence;